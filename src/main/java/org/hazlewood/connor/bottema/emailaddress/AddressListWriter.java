@@ -0,0 +1,280 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
+/**
+ * Writes addresses as the value of an address header, such as <code>To:</code> or <code>Cc:</code>: an RFC 2822 address-list that {@link
+ * EmailAddressParser#extractHeaderAddresses(String, EnumSet, boolean)} parses back into the same addresses (with {@link
+ * EmailAddressCriteria#RFC_COMPLIANT}, plus {@link EmailAddressCriteria#ALLOW_UTF8} for parts with characters outside of ASCII).
+ * <p>
+ * Parts are only quoted when they have to be: a personal name that is a series of atoms separated by single spaces (which includes RFC 2047
+ * encoded-words) is written as is, any other is written as a quoted string, escaping only &quot; and \. The same goes for a local part that isn't a
+ * dot-atom, unless it is a quoted string already (as {@link ParsedAddress#getLocalPart()} returns it when the quotes are needed). Addresses with a personal
+ * name are written in name-addr form (<code>Bob &lt;bob@example.com&gt;</code>), the others as a plain addr-spec. Consecutive addresses of the same group
+ * (see {@link ParsedAddress#getGroup()}) are written as a group (<code>team: ann@example.com, bob@example.com;</code>). Line breaks in any of the parts,
+ * which would allow injecting headers, are written as spaces.
+ * <p>
+ * Lines are folded before an address or angle-addr that would run past the line width, so a line only gets longer when a single address (or name) doesn't
+ * fit on it by itself. Everything is written straight to the given Appendable, e.g. a StringBuilder or a Writer, with just one reusable buffer for the
+ * part being written.
+ * <p>
+ * Usage: call {@link #write(ParsedAddress)} (or {@link #write(String, String, String, String)}) for every address, then {@link #finish()} to end the last
+ * group, if any. This class is not thread-safe.
+ *
+ * @author Benny Bottema
+ */
+@SuppressWarnings("WeakerAccess")
+public final class AddressListWriter {
+
+	/**
+	 * The line width RFC 2822 recommends (excluding the CRLF).
+	 */
+	public static final int DEFAULT_LINE_WIDTH = 78;
+
+	private static final String FOLD = "\r\n ";
+
+	@NotNull
+	private final Appendable out;
+	private final int lineWidth;
+	/**
+	 * The length of the current line so far.
+	 */
+	private int column;
+	private int addressCount;
+	/**
+	 * Whether anything has been written yet, so the next token needs a space (or line break) before it.
+	 */
+	private boolean started;
+	@Nullable
+	private String group;
+	/**
+	 * Holds the part being written, so its length is known before deciding whether to fold.
+	 */
+	@NotNull
+	private final StringBuilder token = new StringBuilder();
+
+	/**
+	 * @param out         Receives the header value.
+	 * @param lineWidth   The maximum length of a line, or 0 to write everything on one line.
+	 * @param startColumn The length of what is already on the first line, e.g. 4 for &quot;To: &quot;.
+	 */
+	public AddressListWriter(@NotNull final Appendable out, final int lineWidth, final int startColumn) {
+		if (lineWidth < 0) {
+			throw new IllegalArgumentException("lineWidth must not be negative: " + lineWidth);
+		}
+		this.out = out;
+		this.lineWidth = lineWidth;
+		this.column = startColumn;
+	}
+
+	/**
+	 * Writes the given addresses as a header value of lines of up to {@link #DEFAULT_LINE_WIDTH} characters, starting after the given header name and
+	 * &quot;: &quot;.
+	 *
+	 * @return The header value, e.g. <code>Bob &lt;bob@example.com&gt;, sue@example.com</code>.
+	 */
+	@NotNull
+	public static String format(@NotNull final String headerName, @NotNull final Iterable<ParsedAddress> addresses) {
+		final StringBuilder sb = new StringBuilder();
+		final AddressListWriter writer = new AddressListWriter(sb, DEFAULT_LINE_WIDTH, headerName.length() + 2);
+		try {
+			for (final ParsedAddress address : addresses) {
+				writer.write(address);
+			}
+			writer.finish();
+		} catch (IOException e) {
+			throw new IllegalStateException("StringBuilder can't fail", e);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the given address (including its group, if any).
+	 */
+	public void write(@NotNull final ParsedAddress address) throws IOException {
+		write(address.getPersonalName(), address.getLocalPart(), address.getDomain(), address.getGroup());
+	}
+
+	/**
+	 * Writes an address with the given parts.
+	 *
+	 * @param personalName The personal name, or null (or empty) to write a plain addr-spec.
+	 * @param localPart    The local part, either as is or already quoted.
+	 * @param domain       The domain, a domain name or a domain literal.
+	 * @param group        The name of the group the address is part of, or null.
+	 */
+	public void write(@Nullable final String personalName, @NotNull final String localPart, @NotNull final String domain, @Nullable final String group)
+			throws IOException {
+		final boolean sameGroup = group != null && group.equals(this.group);
+		if (this.group != null && !sameGroup) {
+			out.append(';');
+			column++;
+			this.group = null;
+		}
+		if (addressCount > 0) {
+			out.append(',');
+			column++;
+		}
+		if (group != null && !sameGroup) {
+			token.setLength(0);
+			appendPhrase(group, token);
+			writeToken(token.append(':'));
+			this.group = group;
+		}
+		final boolean nameAddr = personalName != null && !personalName.isEmpty();
+		if (nameAddr) {
+			token.setLength(0);
+			appendPhrase(personalName, token);
+			writeToken(token);
+		}
+		token.setLength(0);
+		if (nameAddr) {
+			token.append('<');
+		}
+		appendAddrSpec(localPart, domain, token);
+		if (nameAddr) {
+			token.append('>');
+		}
+		writeToken(token);
+		addressCount++;
+	}
+
+	/**
+	 * Ends the last group, if the last address was part of one. The writer can be used for more addresses afterwards, e.g. to write another list on the
+	 * same line.
+	 */
+	public void finish() throws IOException {
+		if (group != null) {
+			out.append(';');
+			column++;
+			group = null;
+		}
+	}
+
+	/**
+	 * Appends the given address (without personal name), quoting the local part if needed.
+	 *
+	 * @return The given buffer.
+	 */
+	@NotNull
+	public static StringBuilder appendAddrSpec(@NotNull final String localPart, @NotNull final String domain, @NotNull final StringBuilder out) {
+		if (isDotAtom(localPart) || isQuotedString(localPart)) {
+			appendWithoutLineBreaks(localPart, out);
+		} else {
+			appendQuoted(localPart, out);
+		}
+		out.append('@');
+		return appendWithoutLineBreaks(domain, out);
+	}
+
+	/**
+	 * Appends the given personal name (or group name), quoting it unless it is a series of atoms separated by single spaces.
+	 *
+	 * @return The given buffer.
+	 */
+	@NotNull
+	public static StringBuilder appendPhrase(@NotNull final String phrase, @NotNull final StringBuilder out) {
+		return isAtoms(phrase) ? appendWithoutLineBreaks(phrase, out) : appendQuoted(phrase, out);
+	}
+
+	/**
+	 * Writes the given token on the current line, preceded by a space if it isn't the first, or on a new line if it doesn't fit.
+	 */
+	private void writeToken(@NotNull final CharSequence s) throws IOException {
+		if (started) {
+			// leave room for the ";" and "," that may follow
+			if (lineWidth > 0 && column + 1 + s.length() + 2 > lineWidth && column > 1) {
+				out.append(FOLD);
+				column = 1;
+			} else {
+				out.append(' ');
+				column++;
+			}
+		}
+		out.append(s);
+		column += s.length();
+		started = true;
+	}
+
+	@NotNull
+	private static StringBuilder appendQuoted(@NotNull final String s, @NotNull final StringBuilder out) {
+		out.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.append('\\');
+			}
+			out.append(c == '\r' || c == '\n' ? ' ' : c);
+		}
+		return out.append('"');
+	}
+
+	@NotNull
+	private static StringBuilder appendWithoutLineBreaks(@NotNull final String s, @NotNull final StringBuilder out) {
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			out.append(c == '\r' || c == '\n' ? ' ' : c);
+		}
+		return out;
+	}
+
+	/**
+	 * @return Whether the given text is one or more atoms separated by single spaces.
+	 */
+	private static boolean isAtoms(@NotNull final String s) {
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			final boolean separator = c == ' ' && i > 0 && i < s.length() - 1 && s.charAt(i - 1) != ' ';
+			if (!separator && !isAtext(c)) {
+				return false;
+			}
+		}
+		return !s.isEmpty();
+	}
+
+	private static boolean isDotAtom(@NotNull final String s) {
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			final boolean separator = c == '.' && i > 0 && i < s.length() - 1 && s.charAt(i - 1) != '.';
+			if (!separator && !isAtext(c)) {
+				return false;
+			}
+		}
+		return !s.isEmpty();
+	}
+
+	/**
+	 * @return Whether the given text is a quoted string: in quotes, with any quotes and backslashes in between escaped, and no line breaks.
+	 */
+	private static boolean isQuotedString(@NotNull final String s) {
+		if (s.length() < 2 || s.charAt(0) != '"' || s.charAt(s.length() - 1) != '"') {
+			return false;
+		}
+		for (int i = 1; i < s.length() - 1; i++) {
+			final char c = s.charAt(i);
+			if (c == '\\') {
+				i++;
+				if (i == s.length() - 1) {
+					return false;
+				}
+			} else if (c == '"' || c == '\r' || c == '\n') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return Whether the given character may be part of an atom (any character outside of ASCII too, as with {@link EmailAddressCriteria#ALLOW_UTF8}).
+	 */
+	private static boolean isAtext(final char c) {
+		if (c >= 0x80) {
+			return true;
+		}
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || "!#$%&'*+-/=?^_`{|}~".indexOf(c) >= 0;
+	}
+}
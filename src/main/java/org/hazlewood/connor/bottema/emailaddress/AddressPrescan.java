@@ -0,0 +1,201 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+
+/**
+ * Classifies addresses in a packed buffer of (ASCII) bytes by the characters they contain, to route each one to the cheapest way of validating it before any
+ * parsing is done.
+ * <p>
+ * Most addresses in bulk data are plain <code>local@domain</code>, consisting of nothing but a-text, dots and a single @. For those, the grammar in {@link
+ * Dragons} comes down to two dot-atoms (or a dot-atom and an RFC 1035 domain name), which {@link #isValidDotAtomAddress(ByteBuffer, int, int, EnumSet)}
+ * checks directly. Everything else needs the full grammar: addresses containing characters that only appear in quoted strings, comments, domain literals,
+ * angle-addrs or folding whitespace ({@link #SPECIAL}), while addresses without an @ can't be valid at all, and neither can addresses with non-ASCII bytes
+ * (unless {@link EmailAddressCriteria#ALLOW_UTF8} is given, in which case they need the full grammar too).
+ * <p>
+ * The classification looks up each byte in a table, which the JIT compiles into a tight loop; see {@code demo.PrescanBenchmark}.
+ * <p>
+ * A batch of addresses is given as a buffer and an array of offsets, where address <code>i</code> is the bytes from <code>offsets[i]</code> up to
+ * <code>offsets[i + 1]</code>, so <code>count</code> addresses take <code>count + 1</code> offsets.
+ *
+ * @author Benny Bottema
+ */
+@SuppressWarnings("WeakerAccess")
+public final class AddressPrescan {
+
+	/**
+	 * Mask bit: the address contains an @.
+	 */
+	public static final int HAS_AT = 1;
+	/**
+	 * Mask bit: the address contains more than one @.
+	 */
+	public static final int MULTIPLE_AT = 1 << 1;
+	/**
+	 * Mask bit: the address contains whitespace, a control character or one of <code>"(),:;&lt;&gt;[\]</code>, which only appear in the parts of the
+	 * grammar that need the full engine.
+	 */
+	public static final int SPECIAL = 1 << 2;
+	/**
+	 * Mask bit: the address contains a byte outside of ASCII, which the grammar doesn't allow anywhere.
+	 */
+	public static final int NON_ASCII = 1 << 3;
+
+	/**
+	 * The mask bits of each byte value, except for the @ count.
+	 */
+	private static final byte[] BYTE_CLASSES = new byte[256];
+
+	static {
+		for (int b = 0; b < 256; b++) {
+			if (b >= 0x80) {
+				BYTE_CLASSES[b] = NON_ASCII;
+			} else if (b < 0x21 || b == 0x7F || "\"(),:;<>[\\]".indexOf(b) >= 0) {
+				BYTE_CLASSES[b] = SPECIAL;
+			}
+		}
+	}
+
+	private AddressPrescan() {
+		// utility class
+	}
+
+	/**
+	 * Classifies each address of the given batch.
+	 *
+	 * @param masks Receives the mask of address <code>i</code> at index <code>i</code>.
+	 * @see #classify(ByteBuffer, int, int)
+	 */
+	public static void classify(@NotNull final byte[] data, @NotNull final int[] offsets, final int count, @NotNull final byte[] masks) {
+		classify(ByteBuffer.wrap(data), offsets, count, masks);
+	}
+
+	/**
+	 * Classifies each address of the given batch.
+	 *
+	 * @param masks Receives the mask of address <code>i</code> at index <code>i</code>.
+	 * @see #classify(ByteBuffer, int, int)
+	 */
+	public static void classify(@NotNull final ByteBuffer buffer, @NotNull final int[] offsets, final int count, @NotNull final byte[] masks) {
+		for (int i = 0; i < count; i++) {
+			masks[i] = (byte) classify(buffer, offsets[i], offsets[i + 1]);
+		}
+	}
+
+	/**
+	 * @return The mask of the given part of the buffer (absolute positions, independent of the buffer's position and limit): a combination of {@link
+	 * #HAS_AT}, {@link #MULTIPLE_AT}, {@link #SPECIAL} and {@link #NON_ASCII}.
+	 */
+	public static int classify(@NotNull final ByteBuffer buffer, final int from, final int to) {
+		int mask = 0;
+		int ats = 0;
+		for (int pos = from; pos < to; pos++) {
+			final int b = buffer.get(pos) & 0xFF;
+			mask |= BYTE_CLASSES[b];
+			if (b == '@') {
+				ats++;
+			}
+		}
+		return withAts(mask, ats);
+	}
+
+	private static int withAts(final int mask, final int ats) {
+		return ats == 0 ? mask : ats == 1 ? mask | HAS_AT : mask | HAS_AT | MULTIPLE_AT;
+	}
+
+	/**
+	 * @return Whether the given mask can't be that of a valid address under any criteria without {@link EmailAddressCriteria#ALLOW_UTF8}: without an @,
+	 * with non-ASCII bytes, or with several @ and nothing (such as a quoted string) that could hold the extra ones.
+	 */
+	public static boolean isRejected(final int mask) {
+		return (mask & HAS_AT) == 0 || (mask & NON_ASCII) != 0 || (mask & (MULTIPLE_AT | SPECIAL)) == MULTIPLE_AT;
+	}
+
+	/**
+	 * @return Whether the given mask can't be that of a valid address under the given criteria: like {@link #isRejected(int)}, except that non-ASCII bytes
+	 * are fine with {@link EmailAddressCriteria#ALLOW_UTF8}.
+	 */
+	public static boolean isRejected(final int mask, @NotNull final EnumSet<EmailAddressCriteria> criteria) {
+		return criteria.contains(EmailAddressCriteria.ALLOW_UTF8) ? isRejected(mask & ~NON_ASCII) : isRejected(mask);
+	}
+
+	/**
+	 * @return Whether an address with the given mask can be validated with {@link #isValidDotAtomAddress(ByteBuffer, int, int, EnumSet)} instead of the full
+	 * grammar: it consists of a-text, dots and a single @ only.
+	 */
+	public static boolean isFastPath(final int mask) {
+		return mask == HAS_AT;
+	}
+
+	/**
+	 * Validates an address that is on the {@link #isFastPath(int) fast path}, with the same result as {@link EmailAddressValidator#isValid(String,
+	 * EnumSet)}: for such an address, the grammar comes down to a dot-atom local part and either a dot-atom domain (if {@link
+	 * EmailAddressCriteria#ALLOW_DOMAIN_LITERALS} is given) or an RFC 1035 domain name. The result is undefined for addresses not on the fast path.
+	 */
+	public static boolean isValidDotAtomAddress(@NotNull final ByteBuffer buffer, final int from, final int to,
+			@NotNull final EnumSet<EmailAddressCriteria> criteria) {
+		final int at = endOfDotAtom(buffer, from, to);
+		if (at == -1 || at == to || buffer.get(at) != '@') {
+			return false;
+		}
+		return criteria.contains(EmailAddressCriteria.ALLOW_DOMAIN_LITERALS) ? endOfDotAtom(buffer, at + 1, to) == to : isRfc1035DomainName(buffer, at + 1, to);
+	}
+
+	/**
+	 * @return The position of the first @ (or the end) after a dot-atom of a-text and dots, or -1 if it isn't one: it is empty, starts or ends with a dot,
+	 * or has two dots in a row.
+	 */
+	private static int endOfDotAtom(@NotNull final ByteBuffer buffer, final int from, final int to) {
+		boolean afterDot = true;
+		int pos = from;
+		for (; pos < to; pos++) {
+			final byte b = buffer.get(pos);
+			if (b == '@') {
+				break;
+			}
+			final boolean dot = b == '.';
+			if (dot && afterDot) {
+				return -1;
+			}
+			afterDot = dot;
+		}
+		return afterDot ? -1 : pos;
+	}
+
+	/**
+	 * @return Whether the given a-text and dots are a domain name like <code>rfc1035DomainName</code> in {@link Dragons}: labels of letters, digits and
+	 * inner hyphens of up to 63 characters, followed by a top-level domain of 2 to 26 letters.
+	 */
+	private static boolean isRfc1035DomainName(@NotNull final ByteBuffer buffer, final int from, final int to) {
+		int labels = 0;
+		int length = 0;
+		boolean letters = true;
+		byte previous = '.';
+		for (int pos = from; pos < to; pos++) {
+			final byte b = buffer.get(pos);
+			if (b == '.') {
+				if (length == 0 || length > 63 || previous == '-') {
+					return false;
+				}
+				labels++;
+				length = 0;
+				letters = true;
+			} else if (isLetter(b)) {
+				length++;
+			} else if ((b >= '0' && b <= '9') || (b == '-' && previous != '.')) {
+				length++;
+				letters = false;
+			} else {
+				return false;
+			}
+			previous = b;
+		}
+		return labels > 0 && letters && length >= 2 && length <= 26;
+	}
+
+	private static boolean isLetter(final byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+	}
+}
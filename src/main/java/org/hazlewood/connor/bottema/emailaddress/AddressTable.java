@@ -0,0 +1,287 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, columnar store for extracted addresses, as an alternative to keeping an InternetAddress object (with its three Strings) per address. Use it
+ * as the target of {@link EmailAddressParser#extractHeaderAddresses(String, EnumSet, boolean, AddressTable)} and {@link
+ * EmailAddressParser#extractAddress(String, EnumSet, boolean, AddressTable)}.
+ * <p>
+ * Local parts and personal names are stored as UTF-8 bytes, back to back in one shared growable byte array, with an <code>int</code> offset per value.
+ * Domains tend to repeat a lot, so they are interned instead: each distinct domain is stored only once and every row refers to it by an <code>int</code>
+ * id. All of this typically takes an order of magnitude less heap than the equivalent InternetAddress objects.
+ * <p>
+ * Rows are accessed by index. The getters returning a String create that String on demand (except for {@link #getDomain(int)}, which returns the interned
+ * domain); to process the rows without creating any objects, use {@link #getBytes()} together with the offset and length getters, e.g.:
+ * <p>
+ * <code>
+ * for (int i = 0; i &lt; table.size(); i++) {<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;process(table.getBytes(), table.getLocalPartOffset(i), table.getLocalPartLength(i), table.getDomainId(i));<br>
+ * }
+ * </code>
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Benny Bottema
+ */
+public final class AddressTable {
+
+	/**
+	 * Local parts and personal names of all rows, in row order, each row's local part directly followed by its personal name (if any).
+	 */
+	@NotNull
+	private byte[] bytes;
+	private int byteCount;
+
+	/**
+	 * For row <code>i</code>: <code>offsets[2 * i]</code> is where its local part starts, <code>offsets[2 * i + 1]</code> is where its personal name starts
+	 * (and so where the local part ends) and <code>offsets[2 * i + 2]</code> is where the personal name ends.
+	 */
+	@NotNull
+	private int[] offsets;
+	@NotNull
+	private int[] domainIds;
+	/**
+	 * One bit per row, set if the row has a personal name; needed to tell a missing personal name from an empty one.
+	 */
+	@NotNull
+	private long[] hasPersonalName;
+	private int size;
+
+	@NotNull
+	private final Map<String, Integer> domainDictionary = new HashMap<>();
+	@NotNull
+	private final List<String> domains = new ArrayList<>();
+
+	public AddressTable() {
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize The number of addresses this table should be able to hold without having to grow.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public AddressTable(final int expectedSize) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("expectedSize must not be negative: " + expectedSize);
+		}
+		final int capacity = Math.max(expectedSize, 1);
+		this.bytes = new byte[capacity * 16];
+		this.offsets = new int[capacity * 2 + 1];
+		this.domainIds = new int[capacity];
+		this.hasPersonalName = new long[(capacity + 63) >>> 6];
+	}
+
+	/**
+	 * Appends an address. Normally you let {@link EmailAddressParser} do this for you, since it makes sure the parts are valid and cleaned up.
+	 *
+	 * @param personalName The personal name, which may be null.
+	 * @param localPart    The local part, the part to the left of the @.
+	 * @param domain       The domain part, the part to the right of the @.
+	 * @return The index of the new row.
+	 */
+	public int add(@Nullable final String personalName, @NotNull final String localPart, @NotNull final String domain) {
+		ensureRowCapacity(size + 1);
+		final int row = size;
+		// offsets[2 * row] was already set by the previous row (or is 0 for the first row)
+		appendUtf8(localPart);
+		offsets[2 * row + 1] = byteCount;
+		if (personalName != null) {
+			appendUtf8(personalName);
+			hasPersonalName[row >>> 6] |= 1L << row;
+		}
+		offsets[2 * row + 2] = byteCount;
+		domainIds[row] = internDomain(domain);
+		return size++;
+	}
+
+	/**
+	 * @return The number of addresses in this table.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The local part of the given row, the part to the left of the @.
+	 */
+	@NotNull
+	public String getLocalPart(final int row) {
+		checkRow(row);
+		return new String(bytes, offsets[2 * row], offsets[2 * row + 1] - offsets[2 * row], Utf8.UTF_8);
+	}
+
+	/**
+	 * @return The interned domain of the given row, the part to the right of the @; the same String instance is returned for every row with this domain.
+	 */
+	@NotNull
+	public String getDomain(final int row) {
+		checkRow(row);
+		return domains.get(domainIds[row]);
+	}
+
+	/**
+	 * @return The personal name of the given row, or null if it has none.
+	 */
+	@Nullable
+	public String getPersonalName(final int row) {
+		checkRow(row);
+		return hasPersonalName(row) ? new String(bytes, offsets[2 * row + 1], offsets[2 * row + 2] - offsets[2 * row + 1], Utf8.UTF_8) : null;
+	}
+
+	/**
+	 * @return The address of the given row without the personal name, i.e. local part + &quot;@&quot; + domain, as returned by InternetAddress.getAddress().
+	 */
+	@NotNull
+	public String getAddress(final int row) {
+		return appendAddress(row, new StringBuilder()).toString();
+	}
+
+	/**
+	 * Appends the address of the given row (see {@link #getAddress(int)}) to the given buffer.
+	 *
+	 * @return The given buffer.
+	 */
+	@NotNull
+	public StringBuilder appendAddress(final int row, @NotNull final StringBuilder out) {
+		checkRow(row);
+		final int start = offsets[2 * row];
+		final int end = offsets[2 * row + 1];
+		for (int i = start; i < end; i++) {
+			if (bytes[i] < 0) {
+				// not plain ASCII, so let the UTF-8 decoder deal with it
+				return out.append(getLocalPart(row)).append('@').append(getDomain(row));
+			}
+		}
+		for (int i = start; i < end; i++) {
+			out.append((char) bytes[i]);
+		}
+		return out.append('@').append(getDomain(row));
+	}
+
+	/**
+	 * @return true if the given row has a personal name.
+	 */
+	public boolean hasPersonalName(final int row) {
+		checkRow(row);
+		return (hasPersonalName[row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * @return The id of the domain of the given row; rows with the same domain have the same id. See {@link #getDomainById(int)}.
+	 */
+	public int getDomainId(final int row) {
+		checkRow(row);
+		return domainIds[row];
+	}
+
+	/**
+	 * @return The number of distinct domains in this table; domain ids range from 0 up to (but not including) this number.
+	 */
+	@SuppressWarnings("unused")
+	public int getDomainCount() {
+		return domains.size();
+	}
+
+	/**
+	 * @return The interned domain with the given id.
+	 */
+	@NotNull
+	@SuppressWarnings("WeakerAccess")
+	public String getDomainById(final int domainId) {
+		return domains.get(domainId);
+	}
+
+	/**
+	 * @return The backing array holding the UTF-8 bytes of all local parts and personal names, to be used with the offset and length getters. This is not a
+	 * copy, so do not modify it; also note that it is replaced by a bigger array when the table grows.
+	 */
+	@NotNull
+	@SuppressWarnings("unused")
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	@SuppressWarnings("unused")
+	public int getLocalPartOffset(final int row) {
+		checkRow(row);
+		return offsets[2 * row];
+	}
+
+	@SuppressWarnings("unused")
+	public int getLocalPartLength(final int row) {
+		checkRow(row);
+		return offsets[2 * row + 1] - offsets[2 * row];
+	}
+
+	/**
+	 * @return The offset of the personal name of the given row in {@link #getBytes()}; the length is 0 if there is no personal name.
+	 */
+	@SuppressWarnings("unused")
+	public int getPersonalNameOffset(final int row) {
+		checkRow(row);
+		return offsets[2 * row + 1];
+	}
+
+	@SuppressWarnings("unused")
+	public int getPersonalNameLength(final int row) {
+		checkRow(row);
+		return offsets[2 * row + 2] - offsets[2 * row + 1];
+	}
+
+	/**
+	 * Removes all rows and domains, keeping the allocated capacity.
+	 */
+	@SuppressWarnings("unused")
+	public void clear() {
+		Arrays.fill(hasPersonalName, 0L);
+		domainDictionary.clear();
+		domains.clear();
+		byteCount = 0;
+		size = 0;
+	}
+
+	private int internDomain(@NotNull final String domain) {
+		final Integer id = domainDictionary.get(domain);
+		if (id != null) {
+			return id;
+		}
+		domains.add(domain);
+		domainDictionary.put(domain, domains.size() - 1);
+		return domains.size() - 1;
+	}
+
+	private void appendUtf8(@NotNull final String s) {
+		ensureByteCapacity(byteCount + Utf8.encodedLength(s));
+		byteCount = Utf8.encode(s, bytes, byteCount);
+	}
+
+	private void ensureByteCapacity(final int capacity) {
+		if (capacity > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+		}
+	}
+
+	private void ensureRowCapacity(final int rows) {
+		if (rows > domainIds.length) {
+			final int capacity = Math.max(rows, domainIds.length * 2);
+			offsets = Arrays.copyOf(offsets, capacity * 2 + 1);
+			domainIds = Arrays.copyOf(domainIds, capacity);
+			hasPersonalName = Arrays.copyOf(hasPersonalName, (capacity + 63) >>> 6);
+		}
+	}
+
+	private void checkRow(final int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("row " + row + " out of bounds for table of size " + size);
+		}
+	}
+}
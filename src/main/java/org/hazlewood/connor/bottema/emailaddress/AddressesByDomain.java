@@ -0,0 +1,199 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracted addresses grouped by domain, e.g. for a mail transfer agent that opens one connection per destination and sends the <code>RCPT TO</code>s of
+ * all recipients at that domain over it. Use it as the target of {@link EmailAddressParser#extractHeaderAddresses(String, EnumSet, AddressesByDomain)} and
+ * {@link EmailAddressParser#extractAddress(String, EnumSet, AddressesByDomain)}, for as many headers (and messages) as you like; there is no need to create
+ * an InternetAddress per address and split it on the @ again.
+ * <p>
+ * Domains are case-folded like in {@link EmailAddressParser#getCanonicalAddress(String, EnumSet)} (internationalized domain names in their ASCII form, in
+ * lower case) and interned: each distinct domain gets an id and is stored only once, no matter how it is capitalized in the headers. Looking up a domain
+ * the way it was written before doesn't create any objects. The local parts of each domain are appended to an array of their own, in the order they were
+ * added, so the recipients of a domain are simply <code>getLocalPart(domainId, 0)</code> up to <code>getLocalPart(domainId, getLocalPartCount(domainId) -
+ * 1)</code>. Personal names aren't kept, as they don't matter for delivery.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Benny Bottema
+ */
+@SuppressWarnings("WeakerAccess")
+public final class AddressesByDomain {
+
+	/**
+	 * The ids of the domains as they were written (in any case), so the same spelling doesn't have to be case-folded again.
+	 */
+	@NotNull
+	private final Map<String, Integer> domainIdsBySpelling = new HashMap<>();
+	/**
+	 * The ids of the case-folded domains.
+	 */
+	@NotNull
+	private final Map<String, Integer> domainIds = new HashMap<>();
+	@NotNull
+	private final List<String> domains = new ArrayList<>();
+	@NotNull
+	private String[][] localParts = new String[16][];
+	@NotNull
+	private int[] localPartCounts = new int[16];
+	private int size;
+
+	/**
+	 * Appends an address. Normally you let {@link EmailAddressParser} do this for you, since it makes sure the parts are valid and cleaned up.
+	 *
+	 * @param localPart The local part, the part to the left of the @.
+	 * @param domain    The domain part, the part to the right of the @, in any case.
+	 * @return The id of the (case-folded) domain the address was added to, or -1 if the domain is not a valid internationalized domain name.
+	 */
+	public int add(@NotNull final String localPart, @NotNull final String domain) {
+		final int domainId = internDomain(domain);
+		if (domainId < 0) {
+			return -1;
+		}
+		final int count = localPartCounts[domainId];
+		if (localParts[domainId] == null) {
+			localParts[domainId] = new String[4];
+		} else if (count == localParts[domainId].length) {
+			localParts[domainId] = Arrays.copyOf(localParts[domainId], count * 2);
+		}
+		localParts[domainId][count] = localPart;
+		localPartCounts[domainId] = count + 1;
+		size++;
+		return domainId;
+	}
+
+	/**
+	 * @return The total number of addresses added, over all domains.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The number of distinct (case-folded) domains; domain ids range from 0 up to (but not including) this number, in the order the domains were
+	 * first added.
+	 */
+	public int getDomainCount() {
+		return domains.size();
+	}
+
+	/**
+	 * @return The case-folded domain with the given id.
+	 */
+	@NotNull
+	public String getDomain(final int domainId) {
+		return domains.get(domainId);
+	}
+
+	/**
+	 * @return The id of the given domain (in any case), or -1 if no address with that domain was added.
+	 */
+	public int getDomainId(@NotNull final String domain) {
+		Integer id = domainIdsBySpelling.get(domain);
+		if (id == null) {
+			final String folded = foldDomain(domain);
+			id = folded == null ? null : domainIds.get(folded);
+		}
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @return The number of addresses with the domain with the given id.
+	 */
+	public int getLocalPartCount(final int domainId) {
+		checkDomainId(domainId);
+		return localPartCounts[domainId];
+	}
+
+	/**
+	 * @return Local part <code>index</code> of the addresses with the domain with the given id.
+	 */
+	@NotNull
+	public String getLocalPart(final int domainId, final int index) {
+		checkDomainId(domainId);
+		if (index < 0 || index >= localPartCounts[domainId]) {
+			throw new IndexOutOfBoundsException("index " + index + " out of bounds for " + localPartCounts[domainId] + " local parts");
+		}
+		return localParts[domainId][index];
+	}
+
+	/**
+	 * @return A copy of the local parts of the addresses with the domain with the given id, in the order they were added.
+	 */
+	@NotNull
+	public String[] getLocalParts(final int domainId) {
+		checkDomainId(domainId);
+		return Arrays.copyOf(localParts[domainId], localPartCounts[domainId]);
+	}
+
+	/**
+	 * Removes all addresses and domains, keeping the allocated capacity.
+	 */
+	public void clear() {
+		for (int i = 0; i < domains.size(); i++) {
+			Arrays.fill(localParts[i], 0, localPartCounts[i], null);
+			localPartCounts[i] = 0;
+		}
+		domainIdsBySpelling.clear();
+		domainIds.clear();
+		domains.clear();
+		size = 0;
+	}
+
+	private int internDomain(@NotNull final String domain) {
+		final Integer id = domainIdsBySpelling.get(domain);
+		if (id != null) {
+			return id;
+		}
+		final String folded = foldDomain(domain);
+		if (folded == null) {
+			return -1;
+		}
+		Integer foldedId = domainIds.get(folded);
+		if (foldedId == null) {
+			foldedId = domains.size();
+			domains.add(folded);
+			domainIds.put(folded, foldedId);
+			if (foldedId == localPartCounts.length) {
+				localParts = Arrays.copyOf(localParts, foldedId * 2);
+				localPartCounts = Arrays.copyOf(localPartCounts, foldedId * 2);
+			}
+		}
+		domainIdsBySpelling.put(domain, foldedId);
+		return foldedId;
+	}
+
+	/**
+	 * @return The given domain in its ASCII form and in lower case (domain literals are only lower cased), or null if it is not a valid internationalized
+	 * domain name.
+	 */
+	@Nullable
+	private static String foldDomain(@NotNull final String domain) {
+		final String ascii = EmailAddressParser.toAsciiDomain(domain);
+		if (ascii == null) {
+			return null;
+		}
+		final char[] folded = ascii.toCharArray();
+		for (int i = 0; i < folded.length; i++) {
+			final char c = folded[i];
+			// domains are ASCII-only (after IDNA), so no need for locale sensitive lower casing
+			folded[i] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+		}
+		return new String(folded);
+	}
+
+	private void checkDomainId(final int domainId) {
+		if (domainId < 0 || domainId >= domains.size()) {
+			throw new IndexOutOfBoundsException("domain id " + domainId + " out of bounds for " + domains.size() + " domains");
+		}
+	}
+}
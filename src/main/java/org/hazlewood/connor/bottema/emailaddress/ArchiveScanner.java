@@ -0,0 +1,626 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Extracts the addresses from the address headers (From, To, Cc, Bcc, Reply-To, Sender and Return-Path) of all messages in mail archives: mbox files and
+ * single-message (.eml) files. Run it from the command line (see {@link #main(String[])} for the options), or use it programmatically.
+ * <p>
+ * Like {@link BulkValidator}, each file is memory-mapped in chunks, which are processed by a pool of worker threads, and the results are reported in the
+ * original order. A file that starts with a <code>From </code> line is taken to be an mbox file, which is split into chunks at the message boundaries (the
+ * lines starting with <code>From </code>); any other file is taken to be a single message. Of each message, only the header is looked at: the header
+ * fields are found in the mapped bytes, and only the values of the address headers are unfolded, decoded (as UTF-8) and run through {@link
+ * EmailAddressParser#extractParsedAddresses(String, EnumSet, boolean)}. Bodies are only scanned for the next message boundary, never decoded.
+ * <p>
+ * The extracted addresses are passed to a {@link Handler} on the calling thread, or written to a {@link ParsedAddressWriter}. The {@link Summary} of a run
+ * reports the throughput in MB/s.
+ *
+ * @author Benny Bottema
+ */
+public final class ArchiveScanner {
+
+	private static final String USAGE = "Usage: java -cp emailaddress-rfc2822.jar " + ArchiveScanner.class.getName() + " [options] <file>...\n"
+			+ "Options:\n"
+			+ "  --criteria <criteria>  RECOMMENDED (default), RFC_COMPLIANT, NONE or a comma-separated list of EmailAddressCriteria\n"
+			+ "  --threads <n>          the number of worker threads (default: the number of processors)\n"
+			+ "  --output <file>        where to write the extracted addresses, in the format of ParsedAddressWriter\n";
+
+	/**
+	 * The default (nominal) size of the chunks mbox files are processed in; the actual chunks are extended to the start of the next message.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+	/**
+	 * The headers the addresses are extracted from, as reported to the {@link Handler}.
+	 */
+	private static final String[] ADDRESS_HEADERS = { "From", "To", "Cc", "Bcc", "Reply-To", "Sender", "Return-Path" };
+
+	private static final byte[] FROM_LINE = { 'F', 'r', 'o', 'm', ' ' };
+
+	@NotNull
+	private final EnumSet<EmailAddressCriteria> criteria;
+	private final int threads;
+	private final int chunkSize;
+	@Nullable
+	private final DomainPolicy policy;
+
+	/**
+	 * Receives the extracted addresses, in the order of the input, on the thread that runs the scanner.
+	 */
+	public interface Handler {
+		/**
+		 * @param file          The archive the address was found in.
+		 * @param messageOffset The position in the file of the start of the message (of its <code>From </code> line, in an mbox file).
+		 * @param headerName    The name of the header the address was found in, as in the list of address headers above (e.g. <code>Reply-To</code>).
+		 * @param address       The extracted address.
+		 */
+		void handle(@NotNull File file, long messageOffset, @NotNull String headerName, @NotNull ParsedAddress address) throws IOException;
+	}
+
+	/**
+	 * @param criteria The criteria to extract the addresses with.
+	 * @param threads  The number of worker threads.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public ArchiveScanner(@NotNull final EnumSet<EmailAddressCriteria> criteria, final int threads) {
+		this(criteria, threads, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param chunkSize The nominal size in bytes of the chunks mbox files are processed in; every chunk ends at the start of a message.
+	 * @see #ArchiveScanner(EnumSet, int)
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public ArchiveScanner(@NotNull final EnumSet<EmailAddressCriteria> criteria, final int threads, final int chunkSize) {
+		this(criteria, threads, chunkSize, null);
+	}
+
+	/**
+	 * @param policy Decides which domains are allowed; addresses with other domains are left out, see {@link
+	 *               EmailAddressParser#extractParsedAddresses(String, EnumSet, boolean, boolean, DomainPolicy)}. Null to allow any domain.
+	 * @see #ArchiveScanner(EnumSet, int, int)
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public ArchiveScanner(@NotNull final EnumSet<EmailAddressCriteria> criteria, final int threads, final int chunkSize, @Nullable final DomainPolicy policy) {
+		if (threads < 1 || chunkSize < 1) {
+			throw new IllegalArgumentException("threads and chunkSize must be positive");
+		}
+		this.criteria = EnumSet.copyOf(criteria);
+		this.threads = threads;
+		this.chunkSize = chunkSize;
+		this.policy = policy;
+	}
+
+	/**
+	 * Command-line entry point, run without arguments for the usage. Prints a summary when done, and exits with 0 on success and 2 on errors.
+	 */
+	public static void main(@NotNull final String[] args) {
+		EnumSet<EmailAddressCriteria> criteria = EmailAddressCriteria.RECOMMENDED;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String outputFile = null;
+		final List<File> inputs = new ArrayList<>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				final String arg = args[i];
+				if (arg.startsWith("--") && i + 1 < args.length) {
+					final String value = args[++i];
+					switch (arg) {
+						case "--criteria":
+							criteria = BulkValidator.parseCriteria(value);
+							break;
+						case "--threads":
+							threads = Integer.parseInt(value);
+							break;
+						case "--output":
+							outputFile = value;
+							break;
+						default:
+							throw new IllegalArgumentException("unknown option: " + arg);
+					}
+				} else if (!arg.startsWith("--")) {
+					inputs.add(new File(arg));
+				} else {
+					throw new IllegalArgumentException("unexpected argument: " + arg);
+				}
+			}
+			if (inputs.isEmpty()) {
+				throw new IllegalArgumentException("no input files");
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.print(USAGE);
+			System.exit(2);
+			return;
+		}
+
+		try {
+			final ArchiveScanner scanner = new ArchiveScanner(criteria, threads);
+			System.out.println(outputFile != null ? scanner.run(inputs, new File(outputFile)) : scanner.run(inputs, (Handler) null));
+			System.exit(0);
+		} catch (IOException e) {
+			System.err.println("archive scan failed: " + e);
+			System.exit(2);
+			return;
+		}
+	}
+
+	@NotNull
+	private Summary run(@NotNull final List<File> inputs, @NotNull final File output) throws IOException {
+		final ParsedAddressWriter out = new ParsedAddressWriter(new FileOutputStream(output));
+		try {
+			return run(inputs, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Scans the given files, writing the extracted addresses to the given writer in the order of the input (with the groups they are part of, if any).
+	 * The writer is not flushed or closed.
+	 */
+	@NotNull
+	@SuppressWarnings("WeakerAccess")
+	public Summary run(@NotNull final List<File> inputs, @NotNull final ParsedAddressWriter out) throws IOException {
+		return run(inputs, new Handler() {
+			@Override
+			public void handle(@NotNull File file, long messageOffset, @NotNull String headerName, @NotNull ParsedAddress address) throws IOException {
+				out.write(address);
+			}
+		});
+	}
+
+	/**
+	 * Scans the given files, passing the extracted addresses to the given handler in the order of the input.
+	 *
+	 * @param handler Receives the addresses, or null to only count them.
+	 */
+	@NotNull
+	@SuppressWarnings("WeakerAccess")
+	public Summary run(@NotNull final List<File> inputs, @Nullable final Handler handler) throws IOException {
+		final long startTime = System.nanoTime();
+		final Summary summary = new Summary();
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		// a bounded number of chunks in flight keeps the memory used for the results bounded as well
+		final Deque<Chunk> pending = new ArrayDeque<>();
+		Archive archive = null;
+		try {
+			int inputIndex = 0;
+			while (true) {
+				while (pending.size() < threads * 2 && (archive != null || inputIndex < inputs.size())) {
+					if (archive == null) {
+						archive = new Archive(inputs.get(inputIndex++));
+						summary.files++;
+						summary.bytes += archive.size;
+					}
+					final Chunk chunk = archive.nextChunk();
+					chunk.future = pool.submit(chunk);
+					pending.add(chunk);
+					if (chunk.last) {
+						archive = null;
+					}
+				}
+				if (pending.isEmpty()) {
+					break;
+				}
+				final Chunk chunk = pending.removeFirst();
+				final ChunkResult result = getResult(chunk);
+				if (chunk.last) {
+					chunk.archive.file.close();
+				}
+				summary.messages += result.messages;
+				summary.headers += result.headers;
+				summary.addresses += result.addresses.size();
+				if (handler != null) {
+					for (int i = 0; i < result.addresses.size(); i++) {
+						handler.handle(chunk.archive.input, chunk.start + result.messageOffsets[i], ADDRESS_HEADERS[result.headerIndexes[i]],
+								result.addresses.get(i));
+					}
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+			closeArchive(archive);
+			for (final Chunk chunk : pending) {
+				closeArchive(chunk.archive);
+			}
+		}
+		summary.elapsedNanos = System.nanoTime() - startTime;
+		return summary;
+	}
+
+	private static void closeArchive(@Nullable final Archive archive) throws IOException {
+		if (archive != null) {
+			archive.file.close();
+		}
+	}
+
+	/**
+	 * The totals of a run, see {@link #toString()} for a human readable report.
+	 */
+	public static final class Summary {
+		private long files;
+		private long bytes;
+		private long messages;
+		private long headers;
+		private long addresses;
+		private long elapsedNanos;
+
+		private Summary() {
+		}
+
+		@SuppressWarnings("unused")
+		public long getFiles() {
+			return files;
+		}
+
+		@SuppressWarnings("unused")
+		public long getBytes() {
+			return bytes;
+		}
+
+		public long getMessages() {
+			return messages;
+		}
+
+		/**
+		 * @return The number of address headers found.
+		 */
+		public long getHeaders() {
+			return headers;
+		}
+
+		public long getAddresses() {
+			return addresses;
+		}
+
+		@SuppressWarnings("unused")
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/**
+		 * @return The number of megabytes (of 1024 * 1024 bytes) of input scanned per second.
+		 */
+		@SuppressWarnings("WeakerAccess")
+		public double getMegabytesPerSecond() {
+			return bytes / (Math.max(elapsedNanos, 1) / 1e9) / (1024 * 1024);
+		}
+
+		@Override
+		public String toString() {
+			final double seconds = Math.max(elapsedNanos, 1) / 1e9;
+			return String.format(Locale.ROOT, "%d files, %d messages (%d address headers, %d addresses) in %.3f s: %.1f MB/s, %.0f messages/s",
+					files, messages, headers, addresses, seconds, getMegabytesPerSecond(), messages / seconds);
+		}
+	}
+
+	@NotNull
+	private static ChunkResult getResult(@NotNull final Chunk chunk) throws IOException {
+		try {
+			return chunk.future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return Whether the given range of the buffer starts with a <code>From </code> line.
+	 */
+	private static boolean isFromLine(@NotNull final ByteBuffer buffer, final int pos, final int end) {
+		if (end - pos < FROM_LINE.length) {
+			return false;
+		}
+		for (int i = 0; i < FROM_LINE.length; i++) {
+			if (buffer.get(pos + i) != FROM_LINE[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The position of the first <code>From </code> line that starts after the given position, or the end of the file if there is none.
+	 */
+	private static long findMessageStart(@NotNull final FileChannel channel, final long position, final long size) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(8192);
+		// a message starts just after a newline, so start looking at the byte before
+		long pos = position - 1;
+		while (pos < size) {
+			buffer.clear();
+			final int read = channel.read(buffer, pos);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read - FROM_LINE.length; i++) {
+				if (buffer.get(i) == '\n' && isFromLine(buffer, i + 1, read)) {
+					return pos + i + 1;
+				}
+			}
+			if (pos + read >= size) {
+				break;
+			}
+			// overlap, for a From line that is split over two reads
+			pos += read - FROM_LINE.length;
+		}
+		return size;
+	}
+
+	private static boolean startsWithFromLine(@NotNull final RandomAccessFile file) throws IOException {
+		final ByteBuffer start = ByteBuffer.allocate(FROM_LINE.length);
+		try {
+			file.getChannel().read(start, 0);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		return isFromLine(start, 0, start.position());
+	}
+
+	/**
+	 * An input file that is being split into chunks.
+	 */
+	private final class Archive {
+		@NotNull
+		final File input;
+		@NotNull
+		final RandomAccessFile file;
+		final long size;
+		final boolean mbox;
+		private long position;
+
+		Archive(@NotNull final File input) throws IOException {
+			this.input = input;
+			this.file = new RandomAccessFile(input, "r");
+			this.size = file.getChannel().size();
+			this.mbox = startsWithFromLine(file);
+		}
+
+		@NotNull
+		Chunk nextChunk() throws IOException {
+			if (!mbox) {
+				// a single message, of which only the header is scanned, so mapping the first 2 GB always suffices
+				position = size;
+				return new Chunk(this, 0, (int) Math.min(size, Integer.MAX_VALUE), true);
+			}
+			final long start = position;
+			final long end = findMessageStart(file.getChannel(), Math.min(start + chunkSize, size), size);
+			if (end - start > Integer.MAX_VALUE) {
+				throw new IOException("message too long at offset " + start + " of " + input);
+			}
+			position = end;
+			return new Chunk(this, start, (int) (end - start), end == size);
+		}
+	}
+
+	/**
+	 * The addresses extracted from one chunk, with for each of them the position of its message in the chunk and the index of its header.
+	 */
+	private static final class ChunkResult {
+		long messages;
+		long headers;
+		@NotNull
+		final List<ParsedAddress> addresses = new ArrayList<>();
+		@NotNull
+		int[] messageOffsets = new int[64];
+		@NotNull
+		byte[] headerIndexes = new byte[64];
+
+		void add(final int messageOffset, final int headerIndex, @NotNull final ParsedAddress address) {
+			final int i = addresses.size();
+			if (i == messageOffsets.length) {
+				messageOffsets = Arrays.copyOf(messageOffsets, i * 2);
+				headerIndexes = Arrays.copyOf(headerIndexes, i * 2);
+			}
+			messageOffsets[i] = messageOffset;
+			headerIndexes[i] = (byte) headerIndex;
+			addresses.add(address);
+		}
+	}
+
+	/**
+	 * Processes one chunk of a file: a single message, or a number of whole messages of an mbox file.
+	 */
+	private final class Chunk implements Callable<ChunkResult> {
+		@NotNull
+		final Archive archive;
+		final long start;
+		private final int length;
+		final boolean last;
+		Future<ChunkResult> future;
+
+		/**
+		 * Holds the unfolded value of the current address header.
+		 */
+		@NotNull
+		private byte[] value = new byte[1024];
+		private int valueLength;
+
+		Chunk(@NotNull final Archive archive, final long start, final int length, final boolean last) {
+			this.archive = archive;
+			this.start = start;
+			this.length = length;
+			this.last = last;
+		}
+
+		@Override
+		public ChunkResult call() throws IOException {
+			final ByteBuffer buffer = archive.file.getChannel().map(FileChannel.MapMode.READ_ONLY, start, length);
+			final ChunkResult result = new ChunkResult();
+			int pos = 0;
+			while (pos < length) {
+				final int messageStart = pos;
+				if (archive.mbox) {
+					// skip the From line
+					pos = nextLine(buffer, pos);
+				}
+				pos = scanHeader(buffer, pos, messageStart, result);
+				result.messages++;
+				if (!archive.mbox) {
+					break;
+				}
+				pos = findMessageStart(buffer, pos);
+			}
+			return result;
+		}
+
+		/**
+		 * Extracts the addresses from the address headers of the message header starting at the given position.
+		 *
+		 * @return The position after the blank line that ends the header.
+		 */
+		private int scanHeader(@NotNull final ByteBuffer buffer, int pos, final int messageStart, @NotNull final ChunkResult result) {
+			int headerIndex = -1;
+			while (pos < length) {
+				final int lineStart = pos;
+				pos = nextLine(buffer, pos);
+				final int lineEnd = trimLineBreak(buffer, lineStart, pos);
+				final boolean continuation = lineEnd > lineStart && isWsp(buffer.get(lineStart));
+				if (!continuation && headerIndex >= 0) {
+					extract(headerIndex, messageStart, result);
+					headerIndex = -1;
+				}
+				if (lineEnd == lineStart) {
+					break;
+				} else if (continuation) {
+					if (headerIndex >= 0) {
+						appendValue(buffer, lineStart, lineEnd);
+					}
+				} else {
+					final int colon = indexOf(buffer, ':', lineStart, lineEnd);
+					headerIndex = colon < 0 ? -1 : findAddressHeader(buffer, lineStart, colon);
+					if (headerIndex >= 0) {
+						valueLength = 0;
+						appendValue(buffer, colon + 1, lineEnd);
+					}
+				}
+			}
+			if (headerIndex >= 0) {
+				extract(headerIndex, messageStart, result);
+			}
+			return pos;
+		}
+
+		private void extract(final int headerIndex, final int messageStart, @NotNull final ChunkResult result) {
+			result.headers++;
+			final String header = new String(value, 0, valueLength, Utf8.UTF_8);
+			for (final ParsedAddress address : EmailAddressParser.extractParsedAddresses(header, criteria, false, false, policy)) {
+				result.add(messageStart, headerIndex, address);
+			}
+		}
+
+		/**
+		 * Appends the given range of the buffer to the header value; a continuation line is appended as is, which unfolds it.
+		 */
+		private void appendValue(@NotNull final ByteBuffer buffer, final int from, final int to) {
+			if (valueLength + to - from > value.length) {
+				value = Arrays.copyOf(value, Math.max(valueLength + to - from, value.length * 2));
+			}
+			for (int i = from; i < to; i++) {
+				value[valueLength++] = buffer.get(i);
+			}
+		}
+
+		/**
+		 * @return The position of the next <code>From </code> line at or after the given position, which must be at the start of a line, or the end of the
+		 * chunk if there is none.
+		 */
+		private int findMessageStart(@NotNull final ByteBuffer buffer, int pos) {
+			while (pos < length && !isFromLine(buffer, pos, length)) {
+				pos = nextLine(buffer, pos);
+			}
+			return pos;
+		}
+
+		/**
+		 * @return The position just after the newline at or after the given position, or the end of the chunk if there is none.
+		 */
+		private int nextLine(@NotNull final ByteBuffer buffer, int pos) {
+			while (pos < length && buffer.get(pos) != '\n') {
+				pos++;
+			}
+			return pos < length ? pos + 1 : length;
+		}
+	}
+
+	/**
+	 * @return The index of the address header with the given name (of which trailing whitespace is ignored, like the obsolete syntax allows), or -1.
+	 */
+	private static int findAddressHeader(@NotNull final ByteBuffer buffer, final int from, int to) {
+		while (to > from && isWsp(buffer.get(to - 1))) {
+			to--;
+		}
+		for (int i = 0; i < ADDRESS_HEADERS.length; i++) {
+			if (equalsIgnoreCase(buffer, from, to, ADDRESS_HEADERS[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean equalsIgnoreCase(@NotNull final ByteBuffer buffer, final int from, final int to, @NotNull final String name) {
+		if (to - from != name.length()) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			final char c = name.charAt(i);
+			// the names are letters and '-', and for ASCII letters only the case bit differs
+			if (c == '-' ? buffer.get(from + i) != '-' : (buffer.get(from + i) | 0x20) != (c | 0x20)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The end of the line between the given positions, without its newline (and carriage return, if any).
+	 */
+	private static int trimLineBreak(@NotNull final ByteBuffer buffer, final int from, int to) {
+		if (to > from && buffer.get(to - 1) == '\n') {
+			to--;
+		}
+		if (to > from && buffer.get(to - 1) == '\r') {
+			to--;
+		}
+		return to;
+	}
+
+	private static int indexOf(@NotNull final ByteBuffer buffer, final char c, final int from, final int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isWsp(final byte b) {
+		return b == ' ' || b == '\t';
+	}
+}
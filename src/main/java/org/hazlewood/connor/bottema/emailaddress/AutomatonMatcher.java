@@ -0,0 +1,414 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.regex.MatchResult;
+
+/**
+ * A stand-in for {@link java.util.regex.Matcher} on a {@link GrammarAutomaton}, with the same results (including the capturing groups) as the Matcher of the
+ * pattern the automaton was built from, for the part of the Matcher API used in this library.
+ * <p>
+ * Unlike java.util.regex, which backtracks recursively and so needs stack space in proportion to the input, this matcher runs the automaton's NFA as a Pike
+ * VM: all ways of matching are followed in lockstep, one character at a time, as a list of threads ordered by the regex's preference, each with its own
+ * capture positions. A thread that reaches the end cuts off the less preferred ones, which gives the same match as backtracking in order of preference
+ * would. The stack space used is constant, the work is linear in the input, and the memory is bounded by the size of the NFA; matches are checked with the
+ * DFA first, so the capturing groups are only worked out for input that does match. Threads are only started for the parts of the NFA that can read the
+ * next character (see {@link GrammarAutomaton#getFirstClasses(int)}), and the working memory is kept per thread, so a matcher made for a single match is
+ * cheap.
+ * <p>
+ * Like a Matcher, this class is not thread-safe.
+ */
+final class AutomatonMatcher implements MatchResult {
+
+	private static final int MODE_MATCHES = 0;
+	private static final int MODE_LOOKING_AT = 1;
+	private static final int MODE_FIND = 2;
+
+	/**
+	 * Whether to count the steps taken by all matchers on each thread (see {@link #getSteps()}), which the latency fuzzer uses as its feedback signal; set
+	 * with the system property <code>emailaddress.countSteps</code>. Off by default, so the JIT compiler leaves the counting out altogether.
+	 */
+	static final boolean COUNT_STEPS = Boolean.getBoolean("emailaddress.countSteps");
+
+	private static final ThreadLocal<long[]> STEPS = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	@NotNull
+	private final GrammarAutomaton automaton;
+	private final int slotCount;
+
+	@NotNull
+	private CharSequence input;
+	private int regionStart;
+	private int regionEnd;
+	/**
+	 * Where the next {@link #find()} starts.
+	 */
+	private int findFrom;
+
+	private boolean matched;
+	@NotNull
+	private final int[] groups;
+
+	/*
+	 * The working memory of a run, taken from the Scratch of the current thread (see there) when the run starts.
+	 */
+	private ThreadList current;
+	private ThreadList next;
+	/**
+	 * The capture positions of the thread being followed.
+	 */
+	private int[] work;
+	/**
+	 * The NFA states already followed for the current position.
+	 */
+	private int[] marks;
+	private int mark;
+	/**
+	 * The explicit stack used instead of recursion when following split and save states; entries are pairs of a state and 0, or of a negative slot and the
+	 * position to restore it to.
+	 */
+	private int[] stack;
+
+	AutomatonMatcher(@NotNull final GrammarAutomaton automaton, @NotNull final CharSequence input) {
+		this.automaton = automaton;
+		this.slotCount = 2 * (automaton.getGroupCount() + 1);
+		this.groups = new int[slotCount];
+		this.input = input;
+		reset();
+	}
+
+	/**
+	 * Resets the matcher and its region to the whole input.
+	 */
+	@NotNull
+	AutomatonMatcher reset() {
+		regionStart = 0;
+		regionEnd = input.length();
+		findFrom = 0;
+		matched = false;
+		return this;
+	}
+
+	/**
+	 * Resets the matcher to the given input.
+	 */
+	@NotNull
+	AutomatonMatcher reset(@NotNull final CharSequence input) {
+		this.input = input;
+		return reset();
+	}
+
+	/**
+	 * Limits matching to the given part of the input, like {@link java.util.regex.Matcher#region(int, int)}.
+	 */
+	@NotNull
+	AutomatonMatcher region(final int start, final int end) {
+		if (start < 0 || start > end || end > input.length()) {
+			throw new IndexOutOfBoundsException("region [" + start + ", " + end + "] not within [0, " + input.length() + "]");
+		}
+		reset();
+		regionStart = start;
+		regionEnd = end;
+		findFrom = start;
+		return this;
+	}
+
+	int regionStart() {
+		return regionStart;
+	}
+
+	int regionEnd() {
+		return regionEnd;
+	}
+
+	/**
+	 * @return Whether the whole region matches.
+	 */
+	boolean matches() {
+		matched = automaton.matches(input, regionStart, regionEnd) && run(regionStart, MODE_MATCHES);
+		return matched;
+	}
+
+	/**
+	 * @return Whether a prefix of the region matches; the most preferred one is the match, like with {@link java.util.regex.Matcher#lookingAt()}.
+	 */
+	boolean lookingAt() {
+		matched = automaton.matchesPrefix(input, regionStart, regionEnd) && run(regionStart, MODE_LOOKING_AT);
+		return matched;
+	}
+
+	/**
+	 * @return Whether there is a next match in the region, starting where the previous one ended.
+	 */
+	boolean find() {
+		matched = findFrom <= regionEnd && run(findFrom, MODE_FIND);
+		if (matched) {
+			findFrom = groups[1] == groups[0] ? groups[1] + 1 : groups[1];
+		} else {
+			findFrom = regionEnd + 1;
+		}
+		return matched;
+	}
+
+	@Override
+	public int start() {
+		return start(0);
+	}
+
+	@Override
+	public int start(final int group) {
+		checkGroup(group);
+		return groups[2 * group];
+	}
+
+	@Override
+	public int end() {
+		return end(0);
+	}
+
+	@Override
+	public int end(final int group) {
+		checkGroup(group);
+		return groups[2 * group + 1];
+	}
+
+	@Override
+	@NotNull
+	public String group() {
+		checkGroup(0);
+		return input.subSequence(groups[0], groups[1]).toString();
+	}
+
+	@Override
+	@Nullable
+	public String group(final int group) {
+		checkGroup(group);
+		final int start = groups[2 * group];
+		return start >= 0 ? input.subSequence(start, groups[2 * group + 1]).toString() : null;
+	}
+
+	@Override
+	public int groupCount() {
+		return automaton.getGroupCount();
+	}
+
+	private void checkGroup(final int group) {
+		if (!matched) {
+			throw new IllegalStateException("No match available");
+		}
+		if (group < 0 || group > groupCount()) {
+			throw new IndexOutOfBoundsException("No group " + group);
+		}
+	}
+
+	/**
+	 * Runs the Pike VM from the given position.
+	 *
+	 * @return Whether there was a match, in which case it is in {@link #groups}.
+	 */
+	private boolean run(final int from, final int mode) {
+		final Scratch scratch = automaton.getScratch();
+		current = scratch.current;
+		next = scratch.next;
+		work = scratch.work;
+		marks = scratch.marks;
+		mark = scratch.mark;
+		stack = scratch.stack;
+		boolean found = false;
+		long steps = 0;
+		current.size = 0;
+		nextMark();
+		startThread(from);
+		for (int pos = from; ; pos++) {
+			if (current.size == 0 && (mode != MODE_FIND || found)) {
+				break;
+			}
+			steps += current.size;
+			final boolean atEnd = pos == regionEnd;
+			nextMark();
+			next.size = 0;
+			for (int i = 0; i < current.size; i++) {
+				final int s = current.states[i];
+				if (automaton.getKind(s) == GrammarAutomaton.KIND_MATCH) {
+					if (mode != MODE_MATCHES || atEnd) {
+						System.arraycopy(current.captures, i * slotCount, groups, 0, slotCount);
+						groups[1] = pos;
+						found = true;
+						// the remaining threads are less preferred than this match
+						break;
+					}
+				} else if (!atEnd) {
+					System.arraycopy(current.captures, i * slotCount, work, 0, slotCount);
+					follow(next, automaton.getNext(s), pos + 1);
+				}
+			}
+			if (atEnd) {
+				break;
+			}
+			final ThreadList swap = current;
+			current = next;
+			next = swap;
+			if (mode == MODE_FIND && !found) {
+				// a match starting here is less preferred than one starting earlier
+				startThread(pos + 1);
+			}
+		}
+		if (COUNT_STEPS) {
+			addSteps(steps);
+		}
+		// the lists may have been swapped and the stack grown
+		scratch.current = current;
+		scratch.next = next;
+		scratch.mark = mark;
+		scratch.stack = stack;
+		return found;
+	}
+
+	private void nextMark() {
+		if (mark == Integer.MAX_VALUE) {
+			Arrays.fill(marks, 0);
+			mark = 0;
+		}
+		mark++;
+	}
+
+	/**
+	 * @return The number of steps taken by all matchers and automata on the current thread so far, if {@link #COUNT_STEPS} is on, else 0: threads run for
+	 * a character by the matchers, and transitions taken (plus NFA states looked at to compute new ones) by the DFA of {@link GrammarAutomaton}. A measure
+	 * of the work done for an input that, unlike the time taken, doesn't depend on the machine or its load.
+	 */
+	static long getSteps() {
+		return STEPS.get()[0];
+	}
+
+	/**
+	 * Adds to the steps counted for the current thread, see {@link #getSteps()}; only to be called if {@link #COUNT_STEPS} is on.
+	 */
+	static void addSteps(final long steps) {
+		STEPS.get()[0] += steps;
+	}
+
+	private void startThread(final int pos) {
+		Arrays.fill(work, -1);
+		work[0] = pos;
+		follow(current, automaton.getNfaStart(), pos);
+	}
+
+	/**
+	 * Adds threads for the character and match states reachable from the given state to the given list, in order of preference, without recursion. Threads
+	 * for character states that can't read the character at the given position are left out right away.
+	 */
+	private void follow(@NotNull final ThreadList list, final int from, final int pos) {
+		final boolean atEnd = pos == regionEnd;
+		final char c = atEnd ? 0 : input.charAt(pos);
+		// only the states that can read the character (or reach the match) lead to threads
+		final long viable = atEnd ? GrammarAutomaton.MATCH_BIT : automaton.classBit(c) | GrammarAutomaton.MATCH_BIT;
+		int sp = push(0, from, 0);
+		while (sp > 0) {
+			sp -= 2;
+			final int s = stack[sp];
+			if (s < 0) {
+				work[-s - 1] = stack[sp + 1];
+				continue;
+			}
+			if (marks[s] == mark) {
+				continue;
+			}
+			marks[s] = mark;
+			if ((automaton.getFirstClasses(s) & viable) == 0) {
+				continue;
+			}
+			switch (automaton.getKind(s)) {
+				case GrammarAutomaton.KIND_SPLIT:
+					final int[] targets = automaton.getSplit(s);
+					for (int i = targets.length - 1; i >= 0; i--) {
+						sp = push(sp, targets[i], 0);
+					}
+					break;
+				case GrammarAutomaton.KIND_SAVE:
+					final int slot = automaton.getSlot(s);
+					sp = push(sp, -slot - 1, work[slot]);
+					work[slot] = pos;
+					sp = push(sp, automaton.getNext(s), 0);
+					break;
+				case GrammarAutomaton.KIND_CHAR:
+					if (!atEnd && automaton.reads(s, c)) {
+						list.add(s, work);
+					}
+					break;
+				default:
+					list.add(s, work);
+			}
+		}
+	}
+
+	private int push(final int sp, final int first, final int second) {
+		if (sp + 2 > stack.length) {
+			stack = Arrays.copyOf(stack, stack.length * 2);
+		}
+		stack[sp] = first;
+		stack[sp + 1] = second;
+		return sp + 2;
+	}
+
+	/**
+	 * The working memory of the matchers of an automaton on one thread, which is the bulk of a matcher's memory (the marks alone take an int per NFA
+	 * state). Most matchers are made for a single match, so rather than allocating it for each, a matcher borrows it for the duration of a run; runs don't
+	 * nest, so the matchers of a thread can share it.
+	 */
+	static final class Scratch {
+		@NotNull
+		ThreadList current;
+		@NotNull
+		ThreadList next;
+		@NotNull
+		final int[] work;
+		@NotNull
+		final int[] marks;
+		int mark;
+		@NotNull
+		int[] stack = new int[64];
+
+		Scratch(@NotNull final GrammarAutomaton automaton) {
+			final int slotCount = 2 * (automaton.getGroupCount() + 1);
+			this.current = new ThreadList(slotCount);
+			this.next = new ThreadList(slotCount);
+			this.work = new int[slotCount];
+			this.marks = new int[automaton.getNfaSize()];
+		}
+	}
+
+	/**
+	 * The threads for one position: their NFA states, and their capture positions.
+	 */
+	private static final class ThreadList {
+		private final int slotCount;
+		@NotNull
+		int[] states = new int[32];
+		@NotNull
+		int[] captures;
+		int size;
+
+		ThreadList(final int slotCount) {
+			this.slotCount = slotCount;
+			this.captures = new int[32 * slotCount];
+		}
+
+		void add(final int state, @NotNull final int[] slots) {
+			if (size == states.length) {
+				states = Arrays.copyOf(states, size * 2);
+				captures = Arrays.copyOf(captures, size * 2 * slotCount);
+			}
+			states[size] = state;
+			System.arraycopy(slots, 0, captures, size * slotCount, slotCount);
+			size++;
+		}
+	}
+}
@@ -0,0 +1,587 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.MatchResult;
+
+/**
+ * Validates (or extracts addresses from) huge newline-delimited files, such as address dumps, on several threads at once. Run it from the command line with
+ * <code>java -jar emailaddress-rfc2822-[version]-cli.jar</code> (see {@link #main(String[])} for the options), or use it programmatically.
+ * <p>
+ * The input file is memory-mapped in line-aligned chunks, which are processed by a pool of worker threads; the results are written in the original order.
+ * Lines are handed to the grammar directly as a view on the mapped bytes (taken as ASCII, like the grammar; with {@link EmailAddressCriteria#ALLOW_UTF8},
+ * each other byte is taken as a non-ASCII character, which validates UTF-8 without decoding it), so in the default validation mode no String
+ * is created per line; most lines aren't even run through the grammar, as {@link AddressPrescan} sorts out the plain and the hopeless ones first. Each
+ * line is written to either the valid or the invalid output, and timing is recorded per line for the summary.
+ * <p>
+ * In extraction mode each line is taken to be an address header, from which the addresses are extracted like {@link
+ * EmailAddressParser#extractHeaderAddresses(String, EnumSet, boolean)} does; the extracted addresses (local part @ domain) are written to the valid
+ * output, one per line, and lines without any address are written to the invalid output. This mode does create a String per line.
+ * <p>
+ * Optionally only a single column of each line is checked (comma-separated, without any quoting), but the whole line is written to the output.
+ *
+ * @author Benny Bottema
+ */
+public final class BulkValidator {
+
+	private static final String USAGE = "Usage: java -jar emailaddress-rfc2822-cli.jar [options] <input file>\n"
+			+ "Options:\n"
+			+ "  --criteria <criteria>  RECOMMENDED (default), RFC_COMPLIANT, NONE or a comma-separated list of EmailAddressCriteria\n"
+			+ "  --extract              extract the addresses from each line as an address header, instead of validating each line as one address\n"
+			+ "  --column <n>           only check the n-th (0-based) comma-separated column of each line\n"
+			+ "  --threads <n>          the number of worker threads (default: the number of processors)\n"
+			+ "  --valid <file>         where to write the valid lines (or extracted addresses)\n"
+			+ "  --invalid <file>       where to write the invalid lines\n";
+
+	/**
+	 * The default (nominal) size of the chunks the input is processed in; the actual chunks are extended to the end of the line.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+	@NotNull
+	private final EnumSet<EmailAddressCriteria> criteria;
+	private final boolean extract;
+	private final int column;
+	private final int threads;
+	private final int chunkSize;
+
+	/**
+	 * @param criteria The criteria to validate or extract with.
+	 * @param extract  Whether to extract addresses from each line as an address header, rather than validating each line as a single address.
+	 * @param column   The 0-based comma-separated column to check, or -1 to check the whole line.
+	 * @param threads  The number of worker threads.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public BulkValidator(@NotNull final EnumSet<EmailAddressCriteria> criteria, final boolean extract, final int column, final int threads) {
+		this(criteria, extract, column, threads, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param chunkSize The nominal size in bytes of the chunks the input is processed in; every chunk ends at the end of a line.
+	 * @see #BulkValidator(EnumSet, boolean, int, int)
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public BulkValidator(@NotNull final EnumSet<EmailAddressCriteria> criteria, final boolean extract, final int column, final int threads,
+			final int chunkSize) {
+		if (threads < 1 || chunkSize < 1) {
+			throw new IllegalArgumentException("threads and chunkSize must be positive");
+		}
+		this.criteria = EnumSet.copyOf(criteria);
+		this.extract = extract;
+		this.column = column;
+		this.threads = threads;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Command-line entry point, run without arguments for the usage. Prints a summary when done, and exits with 0 if all lines were valid, 1 if there were
+	 * invalid lines and 2 on errors.
+	 */
+	public static void main(@NotNull final String[] args) {
+		EnumSet<EmailAddressCriteria> criteria = EmailAddressCriteria.RECOMMENDED;
+		boolean extract = false;
+		int column = -1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String validFile = null;
+		String invalidFile = null;
+		String inputFile = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				final String arg = args[i];
+				if (arg.equals("--extract")) {
+					extract = true;
+				} else if (arg.startsWith("--") && i + 1 < args.length) {
+					final String value = args[++i];
+					switch (arg) {
+						case "--criteria":
+							criteria = parseCriteria(value);
+							break;
+						case "--column":
+							column = Integer.parseInt(value);
+							break;
+						case "--threads":
+							threads = Integer.parseInt(value);
+							break;
+						case "--valid":
+							validFile = value;
+							break;
+						case "--invalid":
+							invalidFile = value;
+							break;
+						default:
+							throw new IllegalArgumentException("unknown option: " + arg);
+					}
+				} else if (inputFile == null && !arg.startsWith("--")) {
+					inputFile = arg;
+				} else {
+					throw new IllegalArgumentException("unexpected argument: " + arg);
+				}
+			}
+			if (inputFile == null) {
+				throw new IllegalArgumentException("no input file");
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.print(USAGE);
+			System.exit(2);
+			return;
+		}
+
+		try {
+			final OutputStream validOut = openOutput(validFile);
+			final OutputStream invalidOut = openOutput(invalidFile);
+			final Summary summary;
+			try {
+				summary = new BulkValidator(criteria, extract, column, threads).run(new File(inputFile), validOut, invalidOut);
+			} finally {
+				closeOutput(validOut);
+				closeOutput(invalidOut);
+			}
+			System.out.println(summary);
+			System.exit(summary.getInvalidLines() == 0 ? 0 : 1);
+		} catch (IOException e) {
+			System.err.println("bulk validation failed: " + e);
+			System.exit(2);
+			return;
+		}
+	}
+
+	@Nullable
+	private static OutputStream openOutput(@Nullable final String file) throws IOException {
+		return file != null ? new FileOutputStream(file) : null;
+	}
+
+	private static void closeOutput(@Nullable final OutputStream out) throws IOException {
+		if (out != null) {
+			out.close();
+		}
+	}
+
+	/**
+	 * Processes the given file, writing the results to the given streams in the order of the input.
+	 *
+	 * @param validOut   Where to write the valid lines (or extracted addresses), or null to discard them.
+	 * @param invalidOut Where to write the invalid lines, or null to discard them.
+	 */
+	@NotNull
+	@SuppressWarnings("WeakerAccess")
+	public Summary run(@NotNull final File input, @Nullable final OutputStream validOut, @Nullable final OutputStream invalidOut) throws IOException {
+		final long startTime = System.nanoTime();
+		final Summary summary = new Summary();
+		final RandomAccessFile file = new RandomAccessFile(input, "r");
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			final FileChannel channel = file.getChannel();
+			final long size = channel.size();
+			// a bounded number of chunks in flight keeps the memory used for the results bounded as well
+			final Deque<Future<ChunkResult>> pending = new ArrayDeque<>();
+			long position = 0;
+			while (position < size || !pending.isEmpty()) {
+				while (position < size && pending.size() < threads * 2) {
+					final long end = findLineEnd(channel, Math.min(position + chunkSize, size), size);
+					if (end - position > Integer.MAX_VALUE) {
+						throw new IOException("line too long at offset " + position);
+					}
+					pending.add(pool.submit(new ChunkTask(channel, position, (int) (end - position))));
+					position = end;
+				}
+				final ChunkResult result = getResult(pending.removeFirst());
+				if (validOut != null) {
+					validOut.write(result.valid.bytes, 0, result.valid.count);
+				}
+				if (invalidOut != null) {
+					invalidOut.write(result.invalid.bytes, 0, result.invalid.count);
+				}
+				summary.add(result);
+			}
+			summary.bytes = size;
+		} finally {
+			pool.shutdownNow();
+			file.close();
+		}
+		if (validOut != null) {
+			validOut.flush();
+		}
+		if (invalidOut != null) {
+			invalidOut.flush();
+		}
+		summary.elapsedNanos = System.nanoTime() - startTime;
+		return summary;
+	}
+
+	/**
+	 * The totals of a run, see {@link #toString()} for a human readable report.
+	 */
+	public static final class Summary {
+		private long bytes;
+		private long lines;
+		private long invalidLines;
+		private long addresses;
+		private long elapsedNanos;
+		/**
+		 * Latency histogram: bucket i counts the lines that took less than 2^i nanoseconds (and at least 2^(i-1)).
+		 */
+		@NotNull
+		private final long[] latencies = new long[64];
+
+		private Summary() {
+		}
+
+		private void add(@NotNull final ChunkResult result) {
+			lines += result.lines;
+			invalidLines += result.invalidLines;
+			addresses += result.addresses;
+			for (int i = 0; i < latencies.length; i++) {
+				latencies[i] += result.latencies[i];
+			}
+		}
+
+		@SuppressWarnings("unused")
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return The number of lines processed, not counting empty lines.
+		 */
+		public long getLines() {
+			return lines;
+		}
+
+		public long getValidLines() {
+			return lines - invalidLines;
+		}
+
+		public long getInvalidLines() {
+			return invalidLines;
+		}
+
+		/**
+		 * @return In extraction mode the number of addresses extracted, otherwise the number of valid lines.
+		 */
+		public long getAddresses() {
+			return addresses;
+		}
+
+		@SuppressWarnings("unused")
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/**
+		 * @param percentile A number between 0 and 100.
+		 * @return An upper bound (a power of two) for the time in nanoseconds it took to process the given percentage of the lines.
+		 */
+		@SuppressWarnings("WeakerAccess")
+		public long getLatencyPercentile(final double percentile) {
+			final long threshold = (long) Math.ceil(lines * percentile / 100);
+			long count = 0;
+			for (int i = 0; i < latencies.length; i++) {
+				count += latencies[i];
+				if (count >= threshold && count > 0) {
+					return 1L << i;
+				}
+			}
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			final double seconds = Math.max(elapsedNanos, 1) / 1e9;
+			return String.format(Locale.ROOT, "%d lines (%d valid, %d invalid, %d addresses) in %.3f s: %.1f MB/s, %.0f lines/s; "
+							+ "latency per line p50 < %.1f us, p99 < %.1f us, p99.9 < %.1f us, max < %.1f us",
+					lines, getValidLines(), invalidLines, addresses, seconds, bytes / seconds / (1024 * 1024), lines / seconds,
+					getLatencyPercentile(50) / 1e3, getLatencyPercentile(99) / 1e3, getLatencyPercentile(99.9) / 1e3, getLatencyPercentile(100) / 1e3);
+		}
+	}
+
+	/**
+	 * Parses the value of the <code>--criteria</code> option (also used by {@link ArchiveScanner}).
+	 */
+	@NotNull
+	static EnumSet<EmailAddressCriteria> parseCriteria(@NotNull final String value) {
+		switch (value) {
+			case "RECOMMENDED":
+				return EmailAddressCriteria.RECOMMENDED;
+			case "RFC_COMPLIANT":
+				return EmailAddressCriteria.RFC_COMPLIANT;
+			case "NONE":
+				return EnumSet.noneOf(EmailAddressCriteria.class);
+			default:
+				final EnumSet<EmailAddressCriteria> criteria = EnumSet.noneOf(EmailAddressCriteria.class);
+				for (String name : value.split(",")) {
+					criteria.add(EmailAddressCriteria.valueOf(name.trim()));
+				}
+				return criteria;
+		}
+	}
+
+	/**
+	 * @return The position just after the first newline at or after the given position, or the end of the file if there is none.
+	 */
+	private static long findLineEnd(@NotNull final FileChannel channel, long position, final long size) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (position < size) {
+			buffer.clear();
+			final int read = channel.read(buffer, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	@NotNull
+	private static ChunkResult getResult(@NotNull final Future<ChunkResult> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static final class ChunkResult {
+		@NotNull
+		final ByteSink valid = new ByteSink();
+		@NotNull
+		final ByteSink invalid = new ByteSink();
+		long lines;
+		long invalidLines;
+		long addresses;
+		@NotNull
+		final long[] latencies = new long[64];
+	}
+
+	/**
+	 * Processes one line-aligned chunk of the input.
+	 */
+	private final class ChunkTask implements Callable<ChunkResult> {
+		@NotNull
+		private final FileChannel channel;
+		private final long start;
+		private final int length;
+
+		ChunkTask(@NotNull final FileChannel channel, final long start, final int length) {
+			this.channel = channel;
+			this.start = start;
+			this.length = length;
+		}
+
+		@Override
+		public ChunkResult call() throws IOException {
+			final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+			final ChunkResult result = new ChunkResult();
+			final AsciiSequence line = new AsciiSequence(buffer);
+			final GrammarAutomaton automaton = extract ? null : Dragons.fromCriteria(criteria).getMailboxAutomaton();
+			int pos = 0;
+			while (pos < length) {
+				int eol = pos;
+				while (eol < length && buffer.get(eol) != '\n') {
+					eol++;
+				}
+				final int end = eol > pos && buffer.get(eol - 1) == '\r' ? eol - 1 : eol;
+				if (end > pos) {
+					selectColumn(buffer, line, pos, end);
+					final long before = System.nanoTime();
+					final boolean valid;
+					if (automaton != null) {
+						valid = isValid(buffer, line, automaton);
+						if (valid) {
+							result.valid.write(buffer, pos, end);
+							result.addresses++;
+						}
+					} else {
+						valid = extract(line.toString(), result);
+					}
+					result.latencies[64 - Long.numberOfLeadingZeros(System.nanoTime() - before)]++;
+					result.lines++;
+					if (!valid) {
+						result.invalid.write(buffer, pos, end);
+						result.invalidLines++;
+					}
+				}
+				pos = eol + 1;
+			}
+			return result;
+		}
+
+		/**
+		 * Validates the given line, routed by {@link AddressPrescan}: plain addresses are checked without the grammar, and lines that can't be valid aren't
+		 * run through it.
+		 */
+		private boolean isValid(@NotNull final ByteBuffer buffer, @NotNull final AsciiSequence line, @NotNull final GrammarAutomaton automaton) {
+			final int mask = AddressPrescan.classify(buffer, line.start, line.end);
+			if (AddressPrescan.isFastPath(mask)) {
+				return AddressPrescan.isValidDotAtomAddress(buffer, line.start, line.end, criteria);
+			}
+			return !AddressPrescan.isRejected(mask, criteria) && automaton.matches(line);
+		}
+
+		/**
+		 * Points the given line at the configured column of the given line, or at the whole line; a missing column ends up empty (and so invalid).
+		 */
+		private void selectColumn(@NotNull final ByteBuffer buffer, @NotNull final AsciiSequence line, final int lineStart, final int lineEnd) {
+			if (column < 0) {
+				line.set(lineStart, lineEnd);
+				return;
+			}
+			int columnStart = lineStart;
+			for (int n = 0; n < column; columnStart++) {
+				if (columnStart == lineEnd) {
+					line.set(lineEnd, lineEnd);
+					return;
+				}
+				if (buffer.get(columnStart) == ',') {
+					n++;
+				}
+			}
+			int columnEnd = columnStart;
+			while (columnEnd < lineEnd && buffer.get(columnEnd) != ',') {
+				columnEnd++;
+			}
+			line.set(columnStart, columnEnd);
+		}
+
+		/**
+		 * Writes the addresses extracted from the given header to the valid output.
+		 *
+		 * @return Whether any addresses were found.
+		 */
+		private boolean extract(@NotNull final String header, @NotNull final ChunkResult result) {
+			final long addressesBefore = result.addresses;
+			EmailAddressParser.extractHeaderAddresses(header, criteria, null, new EmailAddressParser.MailboxHandler() {
+				@Override
+				public void handle(@NotNull MatchResult m, @Nullable String group) {
+					final String[] parts = EmailAddressParser.getMatcherParts(m, criteria, false, true);
+					if (parts[1] != null && parts[2] != null) {
+						result.valid.writeAscii(parts[1]);
+						result.valid.writeByte('@');
+						result.valid.writeAscii(parts[2]);
+						result.valid.writeByte('\n');
+						result.addresses++;
+					}
+				}
+			});
+			return result.addresses > addressesBefore;
+		}
+	}
+
+	/**
+	 * A CharSequence view on a range of a ByteBuffer, each byte taken as one character, so the grammar can be matched without decoding into a String.
+	 */
+	private static final class AsciiSequence implements CharSequence {
+		@NotNull
+		private final ByteBuffer buffer;
+		private int start;
+		private int end;
+
+		AsciiSequence(@NotNull final ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		AsciiSequence(@NotNull final ByteBuffer buffer, final int start, final int end) {
+			this.buffer = buffer;
+			set(start, end);
+		}
+
+		void set(final int start, final int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(final int index) {
+			return (char) (buffer.get(start + index) & 0xFF);
+		}
+
+		@NotNull
+		@Override
+		public CharSequence subSequence(final int from, final int to) {
+			return new AsciiSequence(buffer, start + from, start + to);
+		}
+
+		@NotNull
+		@Override
+		public String toString() {
+			final char[] chars = new char[length()];
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = charAt(i);
+			}
+			return new String(chars);
+		}
+	}
+
+	/**
+	 * A minimal growable byte array for the output of one chunk.
+	 */
+	private static final class ByteSink {
+		@NotNull
+		byte[] bytes = new byte[4096];
+		int count;
+
+		/**
+		 * Writes the given range of the buffer, followed by a newline. This moves the position of the buffer.
+		 */
+		void write(@NotNull final ByteBuffer buffer, final int start, final int end) {
+			ensureCapacity(end - start + 1);
+			buffer.position(start);
+			buffer.get(bytes, count, end - start);
+			count += end - start;
+			bytes[count++] = '\n';
+		}
+
+		void writeAscii(@NotNull final String s) {
+			ensureCapacity(s.length());
+			for (int i = 0; i < s.length(); i++) {
+				bytes[count++] = (byte) s.charAt(i);
+			}
+		}
+
+		void writeByte(final int b) {
+			ensureCapacity(1);
+			bytes[count++] = (byte) b;
+		}
+
+		private void ensureCapacity(final int extra) {
+			if (count + extra > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(count + extra, bytes.length * 2));
+			}
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+/**
+ * A set of email addresses for deduplicating large volumes of addresses, e.g. for list hygiene. Addresses are compared by their canonical form (see {@link
+ * EmailAddressParser#getCanonicalAddress(String, EnumSet)}), so <code>&quot;bob&quot;@Example.COM</code>, <code>bob@example.com (Bob)</code> and
+ * <code>&lt;bob@example.com&gt;</code> are considered the same address.
+ * <p>
+ * Rather than keeping a String per address, this set only keeps a 64-bit fingerprint of each canonical address in an open-addressing table, so an address
+ * costs 8 to 16 bytes of heap regardless of its length. The price is that two different addresses might share a fingerprint, in which case the second one is
+ * wrongly reported as a duplicate. The chance of this happening at all is roughly <code>n<sup>2</sup> / 2<sup>65</sup></code> for <code>n</code> addresses,
+ * so about 0.7% for half a billion addresses; if you can't live with that, use a regular <code>Set</code> of canonical addresses instead.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Benny Bottema
+ */
+public final class CanonicalAddressSet {
+
+	/**
+	 * Empty slots are marked with 0, so a fingerprint that happens to be 0 is stored as this value instead.
+	 */
+	private static final long ZERO_FINGERPRINT_SUBSTITUTE = 0x9E3779B97F4A7C15L;
+
+	@NotNull
+	private final EnumSet<EmailAddressCriteria> criteria;
+
+	/**
+	 * Reused for canonicalizing each address, so adding an address doesn't need to create a String for it.
+	 */
+	@NotNull
+	private final StringBuilder canonicalBuffer = new StringBuilder(64);
+
+	@NotNull
+	private long[] table;
+	private int size;
+
+	/**
+	 * @param criteria The criteria used to parse the addresses added to this set; invalid addresses are never added.
+	 */
+	@SuppressWarnings("unused")
+	public CanonicalAddressSet(@NotNull final EnumSet<EmailAddressCriteria> criteria) {
+		this(criteria, 16);
+	}
+
+	/**
+	 * @param criteria     The criteria used to parse the addresses added to this set; invalid addresses are never added.
+	 * @param expectedSize The number of addresses this set should be able to hold without having to grow.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public CanonicalAddressSet(@NotNull final EnumSet<EmailAddressCriteria> criteria, final int expectedSize) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("expectedSize must not be negative: " + expectedSize);
+		}
+		this.criteria = EnumSet.copyOf(criteria);
+		// keep the load factor at or below one half
+		this.table = new long[tableSizeFor(Math.max(expectedSize, 8) * 2L)];
+	}
+
+	/**
+	 * Adds the given address to this set, if it is valid and not already present.
+	 *
+	 * @param email A single address, in any form accepted by {@link EmailAddressParser#getCanonicalAddress(String, EnumSet)}.
+	 * @return true if the address was valid and was not in this set before, false otherwise.
+	 */
+	public boolean add(@Nullable final String email) {
+		canonicalBuffer.setLength(0);
+		return EmailAddressParser.appendCanonicalAddress(email, criteria, canonicalBuffer) && addFingerprint(fingerprint(canonicalBuffer));
+	}
+
+	/**
+	 * Adds an address that the caller already canonicalized (see {@link EmailAddressParser#appendCanonicalAddress(String, EnumSet, StringBuilder)}). No
+	 * validation or canonicalization takes place, so passing in an address in another form will not match its canonical equivalent.
+	 *
+	 * @return true if the address was not in this set before, false otherwise.
+	 */
+	@SuppressWarnings("unused")
+	public boolean addCanonical(@NotNull final CharSequence canonicalAddress) {
+		return addFingerprint(fingerprint(canonicalAddress));
+	}
+
+	/**
+	 * @return true if the given address is valid and its canonical form is in this set.
+	 */
+	@SuppressWarnings("unused")
+	public boolean contains(@Nullable final String email) {
+		canonicalBuffer.setLength(0);
+		return EmailAddressParser.appendCanonicalAddress(email, criteria, canonicalBuffer) && containsFingerprint(fingerprint(canonicalBuffer));
+	}
+
+	/**
+	 * @return true if the given, already canonicalized, address is in this set.
+	 */
+	@SuppressWarnings("unused")
+	public boolean containsCanonical(@NotNull final CharSequence canonicalAddress) {
+		return containsFingerprint(fingerprint(canonicalAddress));
+	}
+
+	/**
+	 * @return The number of distinct addresses in this set.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all addresses from this set, keeping the allocated capacity.
+	 */
+	@SuppressWarnings("unused")
+	public void clear() {
+		Arrays.fill(table, 0L);
+		size = 0;
+	}
+
+	/**
+	 * @return The 64-bit fingerprint this set uses for the given canonical address: FNV-1a over the characters, followed by the MurmurHash3 finalizer to
+	 * spread the bits over the whole word (the table is indexed by the lower bits).
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public static long fingerprint(@NotNull final CharSequence canonicalAddress) {
+		long h = 0xCBF29CE484222325L;
+		for (int i = 0; i < canonicalAddress.length(); i++) {
+			h ^= canonicalAddress.charAt(i);
+			h *= 0x100000001B3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h != 0 ? h : ZERO_FINGERPRINT_SUBSTITUTE;
+	}
+
+	private boolean addFingerprint(final long fingerprint) {
+		int mask = table.length - 1;
+		int i = (int) fingerprint & mask;
+		while (table[i] != 0) {
+			if (table[i] == fingerprint) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		table[i] = fingerprint;
+		if (++size * 2 > table.length) {
+			grow();
+		}
+		return true;
+	}
+
+	private boolean containsFingerprint(final long fingerprint) {
+		int mask = table.length - 1;
+		int i = (int) fingerprint & mask;
+		while (table[i] != 0) {
+			if (table[i] == fingerprint) {
+				return true;
+			}
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	private void grow() {
+		final long[] old = table;
+		table = new long[tableSizeFor(old.length * 2L)];
+		final int mask = table.length - 1;
+		for (long fingerprint : old) {
+			if (fingerprint != 0) {
+				int i = (int) fingerprint & mask;
+				while (table[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				table[i] = fingerprint;
+			}
+		}
+	}
+
+	/**
+	 * @return The smallest power of two that is at least the given capacity.
+	 */
+	private static int tableSizeFor(final long capacity) {
+		if (capacity > 1 << 30) {
+			throw new IllegalStateException("too many addresses for a single set: " + capacity / 2);
+		}
+		return Integer.highestOneBit((int) Math.max(capacity - 1, 1)) << 1;
+	}
+}
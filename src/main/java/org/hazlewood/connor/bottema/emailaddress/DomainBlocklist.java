@@ -0,0 +1,54 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+
+/**
+ * A {@link DomainPolicy} that rejects the domains in a {@link DomainSet} and their subdomains, e.g. those of disposable email services.
+ * <p>
+ * The set can be replaced at any time with {@link #setDomains(DomainSet)}, e.g. when a newer version of the list has been read: validations that are
+ * already running finish with the old set, those that start later use the new one. Readers never wait for this (nor for each other).
+ *
+ * @author Benny Bottema
+ */
+@SuppressWarnings("WeakerAccess")
+public final class DomainBlocklist implements DomainPolicy {
+
+	@NotNull
+	private volatile DomainSet domains;
+
+	/**
+	 * Creates an empty blocklist, which allows any domain until {@link #setDomains(DomainSet)} is called.
+	 */
+	public DomainBlocklist() {
+		this(DomainSet.of(Collections.<String>emptyList()));
+	}
+
+	public DomainBlocklist(@NotNull final DomainSet domains) {
+		this.domains = domains;
+	}
+
+	/**
+	 * @return The blocked domains.
+	 */
+	@NotNull
+	public DomainSet getDomains() {
+		return domains;
+	}
+
+	/**
+	 * Replaces the blocked domains, atomically.
+	 */
+	public void setDomains(@NotNull final DomainSet domains) {
+		this.domains = domains;
+	}
+
+	/**
+	 * @return Whether the given domain is neither in the blocked domains nor a subdomain of one of them.
+	 */
+	@Override
+	public boolean isAllowed(@NotNull final CharSequence address, final int from, final int to) {
+		return !domains.contains(address, from, to);
+	}
+}
@@ -0,0 +1,214 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.EnumSet;
+
+/**
+ * Strictly parses the domain literals of RFC 5321 (section 4.1.3) into the IP addresses they stand for: <code>[192.0.2.1]</code> and
+ * <code>[IPv6:2001:db8::1]</code>, including the compressed and IPv4-mapped forms of IPv6 (<code>[IPv6:::ffff:192.0.2.1]</code>). The grammar (with
+ * {@link EmailAddressCriteria#ALLOW_DOMAIN_LITERALS}) accepts any text in brackets, e.g. <code>[999.1.1.1]</code> or <code>[localhost]</code>; see {@link
+ * EmailAddressValidator#isValid(String, EnumSet, boolean)} to only accept the literals that parse here, and {@link ParsedAddress#getDomainLiteral(byte[])}
+ * to get the address of an extracted one.
+ * <p>
+ * Unlike <code>InetAddress.getByName</code>, this never looks anything up (nor creates any objects): the text is parsed in place, straight into a 16 byte
+ * array. Like RFC 5321 prescribes, each IPv4 number is 1 to 3 decimal digits up to 255, and <code>::</code> stands for at least two groups of zeros (so no
+ * more than 6 groups, counting the IPv4 address of the mixed form as 2, can be next to it).
+ *
+ * @author Benny Bottema
+ */
+@SuppressWarnings("WeakerAccess")
+public final class DomainLiteral {
+
+	/**
+	 * Returned by {@link #parse(CharSequence, int, int, byte[])} for text that isn't an IPv4 or IPv6 domain literal.
+	 */
+	public static final int INVALID = 0;
+	/**
+	 * Returned by {@link #parse(CharSequence, int, int, byte[])} for an IPv4 domain literal, such as <code>[192.0.2.1]</code>.
+	 */
+	public static final int IPV4 = 4;
+	/**
+	 * Returned by {@link #parse(CharSequence, int, int, byte[])} for an IPv6 domain literal, such as <code>[IPv6:2001:db8::1]</code>.
+	 */
+	public static final int IPV6 = 6;
+
+	private static final String IPV6_TAG = "IPv6:";
+
+	private DomainLiteral() {
+		// utility class
+	}
+
+	/**
+	 * Parses the domain literal (including its brackets) at the given positions of the text.
+	 *
+	 * @param address Receives the IP address in network byte order, if not null and the literal is valid: all 16 bytes for an IPv6 address; an IPv4 address
+	 *                as the IPv4-mapped IPv6 address <code>::ffff:a.b.c.d</code>, so its 4 bytes are at offset 12. Left as is for an invalid literal.
+	 * @return {@link #IPV4}, {@link #IPV6} or {@link #INVALID}.
+	 */
+	public static int parse(@NotNull final CharSequence text, final int from, final int to, @Nullable final byte[] address) {
+		if (to - from < 2 || text.charAt(from) != '[' || text.charAt(to - 1) != ']') {
+			return INVALID;
+		}
+		if (startsWithIgnoreCase(text, from + 1, to - 1, IPV6_TAG)) {
+			return parseIpv6(text, from + 1 + IPV6_TAG.length(), to - 1, address) ? IPV6 : INVALID;
+		}
+		final long ipv4 = parseIpv4(text, from + 1, to - 1);
+		if (ipv4 < 0) {
+			return INVALID;
+		}
+		if (address != null) {
+			write(0L, 0xFFFF00000000L | ipv4, address);
+		}
+		return IPV4;
+	}
+
+	/**
+	 * @return Whether the domain literal (including its brackets) at the given positions of the text is a valid IPv4 or IPv6 domain literal.
+	 */
+	public static boolean isValid(@NotNull final CharSequence text, final int from, final int to) {
+		return parse(text, from, to, null) != INVALID;
+	}
+
+	/**
+	 * @see #isValid(CharSequence, int, int)
+	 */
+	public static boolean isValid(@NotNull final CharSequence text) {
+		return isValid(text, 0, text.length());
+	}
+
+	/**
+	 * @return The IPv4 address (four dot-separated numbers) at the given positions of the text as an unsigned 32-bit number, or -1 if it isn't one.
+	 */
+	private static long parseIpv4(@NotNull final CharSequence text, final int from, final int to) {
+		long ipv4 = 0;
+		int pos = from;
+		for (int part = 0; part < 4; part++) {
+			if (part > 0) {
+				if (pos >= to || text.charAt(pos) != '.') {
+					return -1;
+				}
+				pos++;
+			}
+			final int start = pos;
+			int value = 0;
+			while (pos < to && pos - start < 3 && isDigit(text.charAt(pos))) {
+				value = value * 10 + text.charAt(pos++) - '0';
+			}
+			if (pos == start || value > 255) {
+				return -1;
+			}
+			ipv4 = ipv4 << 8 | value;
+		}
+		return pos == to ? ipv4 : -1;
+	}
+
+	/**
+	 * Parses the IPv6 address at the given positions of the text (after the tag), collecting the groups before the <code>::</code> and those after it (or
+	 * all of them, if there is none) in two 128-bit numbers, each in two longs.
+	 */
+	private static boolean parseIpv6(@NotNull final CharSequence text, final int from, final int to, @Nullable final byte[] address) {
+		long headHigh = 0;
+		long headLow = 0;
+		long tailHigh = 0;
+		long tailLow = 0;
+		int headGroups = 0;
+		int tailGroups = 0;
+		boolean compressed = false;
+		int pos = from;
+		if (to - pos >= 2 && text.charAt(pos) == ':' && text.charAt(pos + 1) == ':') {
+			compressed = true;
+			pos += 2;
+		}
+		while (pos < to) {
+			final int start = pos;
+			int group = 0;
+			int digit;
+			while (pos < to && pos - start < 4 && (digit = hexDigit(text.charAt(pos))) >= 0) {
+				group = group << 4 | digit;
+				pos++;
+			}
+			final long ipv4 = pos < to && text.charAt(pos) == '.' ? parseIpv4(text, start, to) : -2;
+			if (ipv4 == -1 || pos == start) {
+				return false;
+			}
+			final int groups = ipv4 >= 0 ? 2 : 1;
+			final long value = ipv4 >= 0 ? ipv4 : group;
+			if (compressed) {
+				tailHigh = tailHigh << (16 * groups) | tailLow >>> (64 - 16 * groups);
+				tailLow = tailLow << (16 * groups) | value;
+				tailGroups += groups;
+			} else {
+				headHigh = headHigh << (16 * groups) | headLow >>> (64 - 16 * groups);
+				headLow = headLow << (16 * groups) | value;
+				headGroups += groups;
+			}
+			if (ipv4 >= 0 || headGroups + tailGroups > 8) {
+				// the IPv4 address can only come last
+				pos = to;
+				break;
+			}
+			if (pos == to) {
+				break;
+			}
+			if (text.charAt(pos) != ':' || pos + 1 == to) {
+				return false;
+			}
+			pos++;
+			if (text.charAt(pos) == ':') {
+				if (compressed) {
+					return false;
+				}
+				compressed = true;
+				pos++;
+			}
+		}
+		if (compressed ? headGroups + tailGroups > 6 : headGroups + tailGroups != 8) {
+			return false;
+		}
+		if (address != null) {
+			// the groups before the :: are the leading ones
+			for (int i = headGroups; i < 8; i++) {
+				headHigh = headHigh << 16 | headLow >>> 48;
+				headLow <<= 16;
+			}
+			write(headHigh | tailHigh, headLow | tailLow, address);
+		}
+		return true;
+	}
+
+	private static void write(final long high, final long low, @NotNull final byte[] address) {
+		for (int i = 0; i < 8; i++) {
+			address[i] = (byte) (high >>> (56 - 8 * i));
+			address[8 + i] = (byte) (low >>> (56 - 8 * i));
+		}
+	}
+
+	private static boolean startsWithIgnoreCase(@NotNull final CharSequence text, final int from, final int to, @NotNull final String prefix) {
+		if (to - from < prefix.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (Character.toLowerCase(text.charAt(from + i)) != Character.toLowerCase(prefix.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int hexDigit(final char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		} else if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		} else if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+
+	private static boolean isDigit(final char c) {
+		return c >= '0' && c <= '9';
+	}
+}
@@ -0,0 +1,25 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.EnumSet;
+
+/**
+ * Decides whether addresses with a given domain are acceptable, on top of being valid, e.g. by rejecting domains of disposable email services ({@link
+ * DomainBlocklist}) or domains without a known top-level domain ({@link PublicSuffixList}). See {@link EmailAddressValidator#isValid(String, EnumSet,
+ * DomainPolicy)}.
+ * <p>
+ * The domain is passed as its position in the address, so it can be checked without creating a String for it. It is a domain name (never a domain literal),
+ * without surrounding whitespace or comments, in whatever case the address has it. Implementations must be thread-safe.
+ *
+ * @author Benny Bottema
+ */
+public interface DomainPolicy {
+	/**
+	 * @param address The address (or any other text) that contains the domain.
+	 * @param from    The position in the address where the domain starts.
+	 * @param to      The position in the address where the domain ends.
+	 * @return Whether addresses with the given domain are acceptable.
+	 */
+	boolean isAllowed(@NotNull CharSequence address, int from, int to);
+}
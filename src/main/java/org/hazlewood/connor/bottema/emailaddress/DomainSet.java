@@ -0,0 +1,212 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An immutable set of domain names, such as the hundreds of thousands of domains of a disposable email domain list, that matches subdomains as well: a set
+ * with <code>example.com</code> contains <code>mail.example.com</code> too. See {@link DomainBlocklist} for rejecting addresses with these domains.
+ * <p>
+ * The domains are kept in their ASCII form (with A-labels for internationalized domain names), reversed and in lower case, in one sorted byte array (with
+ * an array of where each domain starts), which takes little more memory than the domains themselves. A lookup binary searches the array for the domain and
+ * each of its parent domains, comparing the domain where it is in place, ignoring case, so it doesn't create any objects (unless the domain has characters
+ * outside of ASCII).
+ * <p>
+ * Instances are thread-safe.
+ *
+ * @author Benny Bottema
+ */
+@SuppressWarnings("WeakerAccess")
+public final class DomainSet {
+
+	/**
+	 * The reversed domains, sorted; domain <code>i</code> is the bytes from <code>starts[i]</code> up to <code>starts[i + 1]</code>.
+	 */
+	@NotNull
+	private final byte[] domains;
+	@NotNull
+	private final int[] starts;
+
+	private DomainSet(@NotNull final List<String> reversedDomains) {
+		final String[] sorted = reversedDomains.toArray(new String[0]);
+		Arrays.sort(sorted);
+		int count = 0;
+		int length = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (i == 0 || !sorted[i].equals(sorted[i - 1])) {
+				sorted[count++] = sorted[i];
+				length += sorted[i].length();
+			}
+		}
+		domains = new byte[length];
+		starts = new int[count + 1];
+		int pos = 0;
+		for (int i = 0; i < count; i++) {
+			starts[i] = pos;
+			for (int j = 0; j < sorted[i].length(); j++) {
+				domains[pos++] = (byte) sorted[i].charAt(j);
+			}
+		}
+		starts[count] = pos;
+	}
+
+	/**
+	 * @param domains Domain names, in any case; leading and trailing dots are ignored, as are domains that aren't valid internationalized domain names.
+	 */
+	@NotNull
+	public static DomainSet of(@NotNull final Collection<String> domains) {
+		final List<String> reversedDomains = new ArrayList<>(domains.size());
+		for (final String domain : domains) {
+			addReversed(reversedDomains, domain);
+		}
+		return new DomainSet(reversedDomains);
+	}
+
+	/**
+	 * Reads a list of domain names, one per line, like most disposable email domain lists. Empty lines and lines starting with &quot;#&quot; are skipped;
+	 * otherwise like {@link #of(Collection)}.
+	 *
+	 * @param in The list, in UTF-8; the stream is not closed.
+	 */
+	@NotNull
+	public static DomainSet read(@NotNull final InputStream in) throws IOException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(in, Utf8.UTF_8));
+		final List<String> reversedDomains = new ArrayList<>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (!line.isEmpty() && !line.startsWith("#")) {
+				addReversed(reversedDomains, line);
+			}
+		}
+		return new DomainSet(reversedDomains);
+	}
+
+	/**
+	 * @see #read(InputStream)
+	 */
+	@NotNull
+	public static DomainSet read(@NotNull final File file) throws IOException {
+		final InputStream in = new FileInputStream(file);
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void addReversed(@NotNull final List<String> reversedDomains, @NotNull final String domain) {
+		int from = 0;
+		int to = domain.length();
+		while (from < to && domain.charAt(from) == '.') {
+			from++;
+		}
+		while (to > from && domain.charAt(to - 1) == '.') {
+			to--;
+		}
+		final String ascii = from < to ? IdnaCache.toAscii(domain.substring(from, to)) : null;
+		if (ascii != null) {
+			final char[] reversed = new char[ascii.length()];
+			for (int i = 0; i < reversed.length; i++) {
+				reversed[i] = toLowerCase(ascii.charAt(ascii.length() - 1 - i));
+			}
+			reversedDomains.add(new String(reversed));
+		}
+	}
+
+	/**
+	 * @return The number of domains in the set.
+	 */
+	public int size() {
+		return starts.length - 1;
+	}
+
+	/**
+	 * @return Whether the given domain (absolute positions), or any of its parent domains, is in the set; case is ignored.
+	 */
+	public boolean contains(@NotNull final CharSequence domain, final int from, final int to) {
+		if (!isAscii(domain, from, to)) {
+			final String ascii = IdnaCache.toAscii(domain.subSequence(from, to).toString());
+			return ascii != null && contains(ascii, 0, ascii.length());
+		}
+		// the domain itself, and each parent domain: everything after a dot
+		for (int i = to - 1; i >= from; i--) {
+			if ((i == from || domain.charAt(i - 1) == '.') && find(domain, i, to) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @see #contains(CharSequence, int, int)
+	 */
+	public boolean contains(@NotNull final CharSequence domain) {
+		return contains(domain, 0, domain.length());
+	}
+
+	/**
+	 * @return The index of the given ASCII domain in the set, or -1 if it isn't in it.
+	 */
+	private int find(@NotNull final CharSequence domain, final int from, final int to) {
+		int low = 0;
+		int high = size() - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final int comparison = compare(middle, domain, from, to);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Domain <code>i</code> of the set compared to the given domain reversed and in lower case, like String.compareTo.
+	 */
+	private int compare(final int i, @NotNull final CharSequence domain, final int from, final int to) {
+		final int start = starts[i];
+		final int length = starts[i + 1] - start;
+		final int n = Math.min(length, to - from);
+		for (int j = 0; j < n; j++) {
+			final char c = toLowerCase(domain.charAt(to - 1 - j));
+			if (domains[start + j] != c) {
+				return domains[start + j] - c;
+			}
+		}
+		return length - (to - from);
+	}
+
+	private static boolean isAscii(@NotNull final CharSequence s, final int from, final int to) {
+		for (int i = from; i < to; i++) {
+			if (s.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static char toLowerCase(final char c) {
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	@NotNull
+	@Override
+	public String toString() {
+		return "DomainSet[" + size() + " domains]";
+	}
+}
@@ -3,8 +3,8 @@ package org.hazlewood.connor.bottema.emailaddress;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import static java.lang.String.format;
@@ -14,6 +14,17 @@ import static java.lang.String.format;
  * <p>
  * Regular expressions based on given list of {@link EmailAddressCriteria}. Used in both validation ({@link EmailAddressValidator}) and email data extraction
  * ({@link EmailAddressParser}).
+ * <p>
+ * Dragons come in two breeds with the same language and the same capturing groups: the regular ones, and hardened ones for matching with java.util.regex (see
+ * {@link EmailAddressParser#getMailboxPattern(EnumSet, boolean)}). In the hardened ones, the parts that can only be matched one way are atomic or possessive,
+ * so a failing match doesn't retry every way of splitting them: the whitespace before a line break, the inside of comments, quoted strings and domain literals,
+ * atoms and dot-atoms. Where there is more than one way, the grammar is restructured or the choice is made atomic once it can't matter anymore: CFWS no longer
+ * matches its last comment both in its loop and after it, a domain literal no longer splits its runs of dcontent, the split of the CFWS and FWS between two
+ * words of a phrase is settled once the next word is reached (a near miss like a dozen names separated by two spaces used to try every split of every gap:
+ * seconds with the regular pattern), and the personal name before an angle-addr is tried first instead of last (it can't match anything an angle-addr starts
+ * with, so the outcome is the same). Domain names are left alone, as their last label really can go either way until the end. The automata treat atomic groups
+ * and possessive quantifiers as plain ones, which matches the same, so both breeds give the same results there, the hardened ones with fewer NFA states to
+ * follow.
  */
 final class Dragons {
 
@@ -47,9 +58,16 @@ final class Dragons {
 	final Pattern ESCAPED_BSLASH_PATTERN;
 
 	/**
-	 * Very simply cache to avoid recreating dragons all the time.
+	 * The automata for the patterns above, built on first use, see {@link #getAutomaton(Pattern)}.
+	 */
+	private final Map<Pattern, GrammarAutomaton> automata = new ConcurrentHashMap<>();
+
+	/**
+	 * Very simply cache to avoid recreating dragons all the time. Safe for concurrent use, since the parser and validator may be used from several threads at
+	 * once; at worst the same dragons are hatched twice.
 	 */
-	private static final Map<EnumSet<EmailAddressCriteria>, Dragons> cache = new HashMap<>();
+	private static final Map<EnumSet<EmailAddressCriteria>, Dragons> cache = new ConcurrentHashMap<>();
+	private static final Map<EnumSet<EmailAddressCriteria>, Dragons> hardenedCache = new ConcurrentHashMap<>();
 
 	/**
 	 * @return Dragons based on criteria, cached if the criteria have been used before
@@ -57,28 +75,74 @@ final class Dragons {
 	@SuppressWarnings("WeakerAccess")
 	@NotNull
 	protected static Dragons fromCriteria(@NotNull final EnumSet<EmailAddressCriteria> criteria) {
-		if (!cache.containsKey(criteria)) {
-			cache.put(criteria, new Dragons(criteria));
+		return fromCriteria(criteria, false);
+	}
+
+	/**
+	 * @param hardened Whether to return the hardened dragons, see {@link Dragons}.
+	 * @return Dragons based on criteria, cached if the criteria have been used before
+	 */
+	@NotNull
+	static Dragons fromCriteria(@NotNull final EnumSet<EmailAddressCriteria> criteria, final boolean hardened) {
+		final Map<EnumSet<EmailAddressCriteria>, Dragons> breed = hardened ? hardenedCache : cache;
+		Dragons dragons = breed.get(criteria);
+		if (dragons == null) {
+			// copy the key, so the cache isn't affected by the caller modifying its criteria later on
+			dragons = new Dragons(criteria, hardened);
+			breed.put(EnumSet.copyOf(criteria), dragons);
 		}
-		return cache.get(criteria);
+		return dragons;
+	}
+
+	/**
+	 * @return A {@link GrammarAutomaton} for the given pattern of these dragons, built on first use; at worst built twice when used from several threads at
+	 * once.
+	 */
+	@NotNull
+	GrammarAutomaton getAutomaton(@NotNull final Pattern pattern) {
+		GrammarAutomaton automaton = automata.get(pattern);
+		if (automaton == null) {
+			automaton = new GrammarAutomaton(pattern.pattern());
+			automata.put(pattern, automaton);
+		}
+		return automaton;
+	}
+
+	@NotNull
+	GrammarAutomaton getMailboxAutomaton() {
+		return getAutomaton(MAILBOX_PATTERN);
+	}
+
+	/**
+	 * @return A stack-safe matcher for the given pattern of these dragons, see {@link AutomatonMatcher}.
+	 */
+	@NotNull
+	AutomatonMatcher matcher(@NotNull final Pattern pattern, @NotNull final CharSequence input) {
+		return getAutomaton(pattern).matcher(input);
 	}
 
 	/**
 	 * Hatch dragons...
 	 */
 	@NotNull
-	private Dragons(@NotNull final EnumSet<EmailAddressCriteria> criteria) {
+	private Dragons(@NotNull final EnumSet<EmailAddressCriteria> criteria, final boolean hardened) {
 		// RFC 2822 2.2.2 Structured Header Field Bodies
 		final String crlf = "\\r\\n";
 		final String wsp = "[ \\t]"; //space or tab
-		final String fwsp = format("(?:%s*%s)?%s+", wsp, crlf, wsp);
+		final String fwsp = format(hardened ? "(?:%s*+%s)?%s+" : "(?:%s*%s)?%s+", wsp, crlf, wsp);
+		// hardened: inside comments, quoted strings and domain literals, FWS is always followed by something else than whitespace
+		final String enclosedFwsp = hardened ? format("(?:%s*+%s)?%s++", wsp, crlf, wsp) : fwsp;
+
+		//RFC 6532 3.2 Syntax extensions to RFC 5322: UTF8-non-ascii, added to the character classes below that stand for printable text (for java.util.regex,
+		// which matches by code point, the supplementary characters as well; the automata have all non-ASCII characters in one class anyway)
+		final String utf8NonAscii = criteria.contains(EmailAddressCriteria.ALLOW_UTF8) ? "\u0080-\uFFFF\uD800\uDC00-\uDBFF\uDFFF" : "";
 
 		//RFC 2822 3.2.1 Primitive tokens
 		final String dquote = "\"";
 		//ASCII Control characters excluding white space:
 		final String noWsCtl = "\\x01-\\x08\\x0B\\x0C\\x0E-\\x1F\\x7F";
 		//all ASCII characters except CR and LF:
-		final String asciiText = "[\\x01-\\x09\\x0B\\x0C\\x0E-\\x7F]";
+		final String asciiText = format("[\\x01-\\x09\\x0B\\x0C\\x0E-\\x7F%s]", utf8NonAscii);
 
 		// RFC 2822 3.2.2 Quoted characters:
 		//single backslash followed by a text char
@@ -89,22 +153,27 @@ final class Dragons {
 
 		// rewritten to be shorter:
 		//final String ctext = "[" + noWsCtl + "\\x21-\\x27\\x2A-\\x5B\\x5D-\\x7E]";
-		final String ctext = format("[%s!-'*-\\[\\]-~]", noWsCtl);
+		final String ctext = format("[%s!-'*-\\[\\]-~%s]", noWsCtl, utf8NonAscii);
 		final String ccontent = format("%s|%s", ctext, quotedPair); // + "|" + comment;
-		final String comment = format("\\((?:(?:%s)?%s)*(?:%s)?\\)", fwsp, ccontent, fwsp);
-		final String cfws = format("(?:(?:%s)?%s)*(?:(?:(?:%s)?%s)|(?:%s))", fwsp, comment, fwsp, comment, fwsp);
+		final String comment = hardened
+				? format("\\((?>(?:(?:%s)?%s)*(?:%s)?)\\)", enclosedFwsp, ccontent, enclosedFwsp)
+				: format("\\((?:(?:%s)?%s)*(?:%s)?\\)", fwsp, ccontent, fwsp);
+		// hardened: the same as (FWS? comment)+ FWS? | FWS, without matching the last comment both in the loop and after it
+		final String cfws = hardened
+				? format("(?:(?:%s)?%s)+(?:%s)?|%s", fwsp, comment, fwsp, fwsp)
+				: format("(?:(?:%s)?%s)*(?:(?:(?:%s)?%s)|(?:%s))", fwsp, comment, fwsp, comment, fwsp);
 
 		//RFC 2822 3.2.4 Atom:
 		
-		final String atext = format("[a-zA-Z0-9!#-'*+\\-/=?^-`{-~%s%s]",
+		final String atext = format("[a-zA-Z0-9!#-'*+\\-/=?^-`{-~%s%s%s]",
 				criteria.contains(EmailAddressCriteria.ALLOW_DOT_IN_A_TEXT) ? "." : "",
-				criteria.contains(EmailAddressCriteria.ALLOW_SQUARE_BRACKETS_IN_A_TEXT) ? "\\[\\]" : "");
+				criteria.contains(EmailAddressCriteria.ALLOW_SQUARE_BRACKETS_IN_A_TEXT) ? "\\[\\]" : "", utf8NonAscii);
 		// regular atext is same as atext but has no . or [ or ] allowed, no matter the class prefs, to prevent
 		// long recursions on e.g. "a.b.c.d.e.f.g.h.i.j.k.l.m.n.o.p.q.r.s.t"
-		final String regularAtext = "[a-zA-Z0-9!#-'*+\\-/=?^-`{-~]";
+		final String regularAtext = format("[a-zA-Z0-9!#-'*+\\-/=?^-`{-~%s]", utf8NonAscii);
 
-		final String atom = format("(?:%s)?%s+(?:%s)?", cfws, atext, cfws);
-		final String dotAtomText = format("%s+(?:\\.%s+)*", regularAtext, regularAtext);
+		final String atom = format(hardened ? "(?:%s)?%s++(?:%s)?" : "(?:%s)?%s+(?:%s)?", cfws, atext, cfws);
+		final String dotAtomText = format(hardened ? "%s++(?:\\.%s++)*+" : "%s+(?:\\.%s+)*", regularAtext, regularAtext);
 //		final String dotAtom = format("(?:%s)?%s(?:%s)?", cfws, dotAtomText, cfws);
 		final String capDotAtomNoCFWS = format("(?:%s)?(%s)(?:%s)?", cfws, dotAtomText, cfws);
 		final String capDotAtomTrailingCFWS = format("(?:%s)?(%s)(%s)?", cfws, dotAtomText, cfws);
@@ -112,16 +181,18 @@ final class Dragons {
 		//RFC 2822 3.2.5 Quoted strings:
 		//noWsCtl and the rest of ASCII except the doublequote and backslash characters:
 
-		final String qtext = format("[%s!#-\\[\\]-~]", noWsCtl);
-		final String localPartqtext = format("[%s%s", noWsCtl,
-				criteria.contains(EmailAddressCriteria.ALLOW_PARENS_IN_LOCALPART) ? "!#-\\[\\]-~]" : "!#-'\\*-\\[\\]-~]");
+		final String qtext = format("[%s!#-\\[\\]-~%s]", noWsCtl, utf8NonAscii);
+		final String localPartqtext = format("[%s%s%s]", noWsCtl,
+				criteria.contains(EmailAddressCriteria.ALLOW_PARENS_IN_LOCALPART) ? "!#-\\[\\]-~" : "!#-'\\*-\\[\\]-~", utf8NonAscii);
 
 		final String qcontent = format("(?:%s|%s)", qtext, quotedPair);
 		final String localPartqcontent = format("(?>%s|%s)", localPartqtext, quotedPair);
-		final String quotedStringWOCFWS = format("%s(?>(?:%s)?%s)*(?:%s)?%s", dquote, fwsp, qcontent, fwsp, dquote);
+		final String quotedStringWOCFWS = hardened
+				? format("%s(?>(?:(?:%s)?%s)*(?:%s)?)%s", dquote, enclosedFwsp, qcontent, enclosedFwsp, dquote)
+				: format("%s(?>(?:%s)?%s)*(?:%s)?%s", dquote, fwsp, qcontent, fwsp, dquote);
 		final String quotedString = format("(?:%s)?%s(?:%s)?", cfws, quotedStringWOCFWS, cfws);
-		final String localPartQuotedString = format("(?:%s)?(%s(?:(?:%s)?%s)*(?:%s)?%s)(?:%s)?",
-				cfws, dquote, fwsp, localPartqcontent, fwsp, dquote, cfws);
+		final String localPartQuotedString = format(hardened ? "(?:%s)?(%s(?>(?:(?:%s)?%s)*(?:%s)?)%s)(?:%s)?" : "(?:%s)?(%s(?:(?:%s)?%s)*(?:%s)?%s)(?:%s)?",
+				cfws, dquote, enclosedFwsp, localPartqcontent, enclosedFwsp, dquote, cfws);
 
 		//RFC 2822 3.2.6 Miscellaneous tokens
 		final String word = format("(?:(?:%s)|(?:%s))", atom, quotedString);
@@ -129,12 +200,17 @@ final class Dragons {
 		// implemented here as: phrase = word (FWS word)*
 		// so that aaaa can't be four words, which can cause tons of recursive backtracking
 		//final String phrase = "(?:" + word + "+?)"; //one or more words
-		final String phrase = format("%s(?:(?:%s)%s)*", word, fwsp, word);
-
-		//RFC 1035 tokens for domain names:
-		final String letter = "[a-zA-Z]";
-		final String letDig = "[a-zA-Z0-9]";
-		final String letDigHyp = "[a-zA-Z0-9-]";
+		// hardened: the same as CFWS? word-text (CFWS? FWS CFWS? word-text)* CFWS?, where the CFWS and FWS between two words can be split in several ways,
+		// but always end at the next word, so once one way is found the others needn't be tried
+		final String phrase = hardened
+				? format("(?:%s)?+(?:%s++|%s)(?:(?>(?:%s)?%s(?:%s)?)(?:%s++|%s))*+(?:%s)?", cfws, atext, quotedStringWOCFWS, cfws, fwsp, cfws, atext,
+				quotedStringWOCFWS, cfws)
+				: format("%s(?:(?:%s)%s)*", word, fwsp, word);
+
+		//RFC 1035 tokens for domain names (with UTF-8, the labels may be U-labels as per RFC 6531, so non-ASCII characters count as letters):
+		final String letter = format("[a-zA-Z%s]", utf8NonAscii);
+		final String letDig = format("[a-zA-Z0-9%s]", utf8NonAscii);
+		final String letDigHyp = format("[a-zA-Z0-9%s-]", utf8NonAscii);
 		final String rfcLabel = format("%s(?:%s{0,61}%s)?", letDig, letDigHyp, letDig);
 		final String rfc1035DomainName = format("%s(?:\\.%s)*\\.%s{2,26}", rfcLabel, rfcLabel, letter);
 
@@ -143,13 +219,15 @@ final class Dragons {
 		// including [, ], or \:
 		// rewritten to save space:
 		//final String dtext = "[" + noWsCtl + "\\x21-\\x5A\\x5E-\\x7E]";
-		final String dtext = format("[%s!-Z^-~]", noWsCtl);
+		final String dtext = format("[%s!-Z^-~%s]", noWsCtl, utf8NonAscii);
 
 		final String dcontent = format("%s|%s", dtext, quotedPair);
-		final String capDomainLiteralNoCFWS =
-				format("(?:%s)?(\\[(?:(?:%s)?(?:%s)+)*(?:%s)?])(?:%s)?", cfws, fwsp, dcontent, fwsp, cfws);
-		final String capDomainLiteralTrailingCFWS =
-				format("(?:%s)?(\\[(?:(?:%s)?(?:%s)+)*(?:%s)?])(%s)?", cfws, fwsp, dcontent, fwsp, cfws);
+		// hardened: (FWS? dcontent+)* can split a run of dcontent in any number of ways, (FWS? dcontent)* only in one
+		final String domainLiteral = hardened
+				? format("\\[(?>(?:(?:%s)?(?:%s))*(?:%s)?)]", enclosedFwsp, dcontent, enclosedFwsp)
+				: format("\\[(?:(?:%s)?(?:%s)+)*(?:%s)?]", fwsp, dcontent, fwsp);
+		final String capDomainLiteralNoCFWS = format("(?:%s)?(%s)(?:%s)?", cfws, domainLiteral, cfws);
+		final String capDomainLiteralTrailingCFWS = format("(?:%s)?(%s)(%s)?", cfws, domainLiteral, cfws);
 		final String rfc2822Domain = format("(?:%s|%s)", capDotAtomNoCFWS, capDomainLiteralNoCFWS);
 		final String capCFWSRfc2822Domain = format("(?:%s|%s)", capDotAtomTrailingCFWS, capDomainLiteralTrailingCFWS);
 
@@ -177,7 +255,7 @@ final class Dragons {
 		// case by skipping over it at the start by default? Doesn't seem to solve the
 		// issue of recursion on long strings like [A-Za-z], but issue was solved by
 		// changing phrase definition (see above):
-		final String nameAddr = format("(%s)??(%s)", phrase, angleAddr);
+		final String nameAddr = format(hardened ? "(%s)?(%s)" : "(%s)??(%s)", phrase, angleAddr);
 		final String mailboxName = criteria.contains(EmailAddressCriteria.ALLOW_QUOTED_IDENTIFIERS)
 				? format("(%s)|", nameAddr) : "";
 		final String mailbox = format("%s(%s)", mailboxName, uniqueAddrSpec);
@@ -215,10 +293,11 @@ final class Dragons {
 		//  12: non-cfws dot-atom local-part of said addr-spec (10)
 		//  13: non-cfws quoted-string local-part of said addr-spec (10)
 		//  14: non-cfws dot-atom domain-part of said addr-spec (10)
-		//  15: non-cfws domain-literal domain-part of said addr-spec (10)
-		//  16: any CFWS that follows (14) or (15)
+		//  15: any CFWS that follows (14)
+		//  16: non-cfws domain-literal domain-part of said addr-spec (10)
+		//  17: any CFWS that follows (16)
 		// if name-addr: addr w/o CFWS is part (5|6) + "@" + (7|8), personal name is part (2|9)
-		// if addr-spec: addr w/o CFWS is part (12|13) + "@" + (14|15), personal name is part (16)
+		// if addr-spec: addr w/o CFWS is part (12|13) + "@" + (14|16), personal name is part (15|17)
 
 		// If ALLOW_QUOTED_IDENTIFIERS and !ALLOW_DOMAIN_LITERALS:
 		// 1: name-addr (inlc angle-addr only)
@@ -253,13 +332,20 @@ final class Dragons {
 		//   3: non-cfws dot-atom local-part of said addr-spec (1)
 		//   4: non-cfws quoted-string local-part of said addr-spec (1)
 		//   5: non-cfws dot-atom domain-part of said addr-spec (1)
-		//   6: non-cfws domain-literal domain-part of said addr-spec (1)
-		//   7: any CFWS that follows (5) or (6)
-		// addr w/o CFWS is part (3|4) + "@" + (5|6), personal name is part (7)
+		//   6: any CFWS that follows (5)
+		//   7: non-cfws domain-literal domain-part of said addr-spec (1)
+		//   8: any CFWS that follows (7)
+		// addr w/o CFWS is part (3|4) + "@" + (5|7), personal name is part (6|8)
 
 		// For RETURN_PATH_PATTERN, there is one matching group at the head of the
 		// group ID tree that matches the content inside the angle brackets (including
 		// CFWS, etc.: Group 1.
+		// If the return path is not empty (i.e. not just CFWS), the addr-spec inside it provides:
+		//  2: local-part
+		//   3: non-cfws dot-atom local-part
+		//   4: non-cfws quoted-string local-part
+		//   5: non-cfws dot-atom domain-part
+		//   6: non-cfws domain-literal domain-part (only if ALLOW_DOMAIN_LITERALS)
 
 		// optimize: could pre-make matchers as well and use reset(s) on them?
 
@@ -5,7 +5,8 @@ import java.util.EnumSet;
 import static java.util.EnumSet.of;
 
 /**
- * Defines a set of restriction flags for email address validation. To remain completely true to RFC 2822, all flags should be set to <code>true</code>.
+ * Defines a set of restriction flags for email address validation. To remain completely true to RFC 2822, all flags except {@link #ALLOW_UTF8} (which goes
+ * beyond RFC 2822) should be set to <code>true</code>, see {@link #RFC_COMPLIANT}.
  * <p>
  * There are a few basic use cases:
  * <ol>
@@ -103,7 +104,22 @@ public enum EmailAddressCriteria {
 	 * <p>
 	 * If this criteria is not included, it will prevent such addresses from being valid, even though they are: &quot;bob(hi)smith&quot;@test.com
 	 */
-	ALLOW_PARENS_IN_LOCALPART;
+	ALLOW_PARENS_IN_LOCALPART,
+
+	/**
+	 * This criteria allows internationalized addresses as per <a href="https://tools.ietf.org/html/rfc6532">RFC 6532</a> (the message format for
+	 * <a href="https://tools.ietf.org/html/rfc6531">SMTPUTF8</a>): any character outside of ASCII may then appear wherever the grammar allows printable
+	 * text, i.e. in local parts, personal names, quoted strings, comments and domain literals, and domain names may consist of U-labels, e.g.:
+	 * <p>
+	 * <code>&quot;&szlig;o&micro;&quot; &lt;j&uuml;rgen@b&uuml;cher.de&gt;</code>
+	 * <p>
+	 * The whole address is still validated in a single pass, the non-ASCII characters are simply part of the grammar. Since such addresses can only be
+	 * delivered by servers that support SMTPUTF8, this criteria is not part of {@link #RFC_COMPLIANT}; see {@link
+	 * EmailAddressParser#getAsciiDomain(String, EnumSet)} for the domain as needed for DNS lookups.
+	 * <p>
+	 * If this criteria is not included, any character outside of ASCII makes an address invalid. For ASCII addresses it makes no difference at all.
+	 */
+	ALLOW_UTF8;
 
 	/**
 	 * The recommended setting is not strictly 2822 compliant. For example, it does not include the {@link #ALLOW_DOMAIN_LITERALS} criteria, which results in
@@ -120,6 +136,9 @@ public enum EmailAddressCriteria {
 	/**
 	 * Criteria which is most RFC 2822 compliant and allows all compliant address forms, including the more exotic ones. Most useful for validating the broadest
 	 * range of email address that should be allowed within the boundaries of RFC compliancy.
+	 * <p>
+	 * Includes all criteria except {@link #ALLOW_UTF8}, which allows addresses that RFC 2822 doesn't.
 	 */
-	public static final EnumSet<EmailAddressCriteria> RFC_COMPLIANT = EnumSet.allOf(EmailAddressCriteria.class);
+	public static final EnumSet<EmailAddressCriteria> RFC_COMPLIANT = of(ALLOW_DOMAIN_LITERALS, ALLOW_QUOTED_IDENTIFIERS, ALLOW_DOT_IN_A_TEXT,
+			ALLOW_SQUARE_BRACKETS_IN_A_TEXT, ALLOW_PARENS_IN_LOCALPART);
 }
\ No newline at end of file
@@ -8,7 +8,9 @@ import javax.mail.internet.InternetAddress;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static java.util.Objects.requireNonNull;
 
@@ -39,6 +41,21 @@ import static java.util.Objects.requireNonNull;
  * <code>&lt;bob@example.com&gt; (Bobby)</code> yields personal name &quot;Bobby&quot;<br>
  * <code>bob@example.com (Bobby)</code> yields personal name &quot;Bobby&quot;<br>
  * <code>bob@example.com (Bob) (Smith)</code> yields personal name &quot;Bob&quot;
+ * <p>
+ * <strong>Regarding long input:</strong>
+ * <p>
+ * The grammar in {@link Dragons} is not matched with java.util.regex here: its backtracking recurses once per repetition, so a long phrase, comment or
+ * quoted string (a few dozen words or a few hundred characters on a small thread stack) ends in a {@link StackOverflowError}. Instead, all methods of this
+ * class match with an {@link AutomatonMatcher}, which gives the same results and groups using constant stack space, linear time and memory bounded by the
+ * size of the grammar, so there is no limit on the size of the input.
+ * <p>
+ * <strong>Regarding RFC 2047 encoded personal names:</strong>
+ * <p>
+ * By default, personal names are returned as they appear in the header, e.g. <code>=?UTF-8?Q?J=C3=BCrgen?=</code>. getInternetAddress,
+ * getParsedAddress, getPersonalName, extractHeaderAddresses and extractParsedAddresses have an overload with a <code>decodeEncodedWords</code> parameter,
+ * which decodes the encoded-words in them, e.g. into <code>J&uuml;rgen</code>, with the same result as passing the name through
+ * <code>MimeUtility.decodeText</code> afterwards. The decoding reuses its buffers per thread and caches the
+ * charsets it looks up, and names without <code>=?</code> in them cost nothing extra.
  */
 public final class EmailAddressParser {
 	/**
@@ -59,7 +76,11 @@ public final class EmailAddressParser {
 	 */
 	@SuppressWarnings("WeakerAccess")
 	public static boolean isValidReturnPath(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria) {
-		return email != null && Dragons.fromCriteria(criteria).RETURN_PATH_PATTERN.matcher(email).matches();
+		if (email == null) {
+			return false;
+		}
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		return dragons.getAutomaton(dragons.RETURN_PATH_PATTERN).matches(email);
 	}
 	
 	/**
@@ -77,26 +98,58 @@ public final class EmailAddressParser {
 		if (email == null) {
 			return null;
 		}
-		Matcher m = Dragons.fromCriteria(criteria).RETURN_PATH_PATTERN.matcher(email);
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		AutomatonMatcher m = dragons.matcher(dragons.RETURN_PATH_PATTERN, email);
 		return m.matches() ? m.group(1) : null;
 	}
 	
 	/**
-	 * Pull out the cleaned-up return path address. May return an empty string. Will require two parsings due to an inefficiency.
+	 * Pull out the cleaned-up return path address. May return an empty string. Validation, detection of the null return path and extraction are all done
+	 * in a single match of the return path grammar, whose capturing groups give the address parts directly.
+	 * <p>
+	 * Note that, for historic reasons (the address used to be extracted as a mailbox), the address is only extracted when {@link
+	 * EmailAddressCriteria#ALLOW_QUOTED_IDENTIFIERS} is included, since the angle brackets are part of the quoted identifier form; without it, any valid
+	 * return path yields an empty string.
 	 *
-	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
 	 * @return null if there are any syntax issues or other weirdness, otherwise the valid, trimmed return path email address without CFWS, surrounding angle
 	 * brackets, with quotes stripped where possible, etc. (may return an empty string).
 	 */
 	@SuppressWarnings("unused")
 	@Nullable
-	public static String getReturnPathAddress(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames) {
-		if (!isValidReturnPath(email, criteria)) {
+	public static String getReturnPathAddress(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria) {
+		if (email == null) {
 			return null;
 		}
-		// inefficient, but there is no parallel grammar tree to extract the return path accurately:
-		InternetAddress ia = getInternetAddress(email, criteria, extractCfwsPersonalNames);
-		return ia == null ? "" : ia.getAddress();
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		final AutomatonMatcher m = dragons.matcher(dragons.RETURN_PATH_PATTERN, email);
+		if (!m.matches()) {
+			return null;
+		}
+		// see the group-ID lists in the grammar comments; group 2 is absent for the null return path <>
+		if (m.group(2) == null || !criteria.contains(EmailAddressCriteria.ALLOW_QUOTED_IDENTIFIERS)) {
+			return "";
+		}
+		String localPart = (m.group(3) != null ? m.group(3) : m.group(4)).trim();
+		final String domain = (m.group(5) != null ? m.group(5) : m.group(6)).trim();
+		// remove any unnecessary bounding quotes from the local part, like getMatcherParts does; a dot-atom has none to remove
+		if (m.group(3) == null) {
+			final String unquotedLocalPart = removeAnyBounding('"', '"', localPart);
+			if (dragons.getAutomaton(dragons.ADDR_SPEC_PATTERN).matches(unquotedLocalPart + "@" + domain)) {
+				localPart = unquotedLocalPart;
+			}
+		}
+		return localPart + "@" + domain;
+	}
+	
+	/**
+	 * @param extractCfwsPersonalNames Ignored, as the personal name isn't part of the return path address.
+	 * @deprecated Use {@link #getReturnPathAddress(String, EnumSet)}, which gives the same result.
+	 */
+	@Deprecated
+	@SuppressWarnings("unused")
+	@Nullable
+	public static String getReturnPathAddress(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames) {
+		return getReturnPathAddress(email, criteria);
 	}
 	
 	/**
@@ -111,7 +164,8 @@ public final class EmailAddressParser {
 	 */
 	@SuppressWarnings({"unused", "WeakerAccess"})
 	public static boolean isValidMailboxList(@NotNull String header_txt, @NotNull EnumSet<EmailAddressCriteria> criteria) {
-		return Dragons.fromCriteria(criteria).MAILBOX_LIST_PATTERN.matcher(header_txt).matches();
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		return dragons.getAutomaton(dragons.MAILBOX_LIST_PATTERN).matches(header_txt);
 	}
 	
 	/**
@@ -129,7 +183,8 @@ public final class EmailAddressParser {
 		// creating the actual ADDRESS_LIST_PATTERN string proved too large for java, but
 		// fortunately we can use this alternative FSM to check. Since the address pattern
 		// is ugreedy, it will match all CFWS up to the comma which we can then require easily.
-		final Matcher m = Dragons.fromCriteria(criteria).ADDRESS_PATTERN.matcher(header_txt);
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		final AutomatonMatcher m = dragons.matcher(dragons.ADDRESS_PATTERN, header_txt);
 		final int max = header_txt.length();
 		while (m.lookingAt()) {
 			if (m.end() == max) {
@@ -166,8 +221,8 @@ public final class EmailAddressParser {
 	 * could not have parsed itself. Thus, it's possible that for InternetAddress addr, which came as the result of this method, the following may throw an
 	 * exception <b>or</b> may silently fail:<BR> InternetAddress addr2 = InternetAddress.parse(addr.toString());
 	 * <p>
-	 * The InternetAddress objects returned by this method will not do any decoding of RFC-2047 encoded personal names. See the documentation for this overall
-	 * class (above) for more.
+	 * The InternetAddress objects returned by this method will not do any decoding of RFC-2047 encoded personal names, unless asked to with {@link
+	 * #getInternetAddress(String, EnumSet, boolean, boolean)}. See the documentation for this overall class (above) for more.
 	 * <p>
 	 * Again, all other uses of that addr object should work OK. It is recommended that if you are using this class that you never create an InternetAddress
 	 * object using InternetAddress's own constructors or parsing methods; rather, retrieve them through this class. Perhaps the addr.clone() would work OK,
@@ -188,11 +243,58 @@ public final class EmailAddressParser {
 	 */
 	@Nullable
 	public static InternetAddress getInternetAddress(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames) {
+		return getInternetAddress(email, criteria, extractCfwsPersonalNames, false);
+	}
+
+	/**
+	 * See getInternetAddress; does the same thing but if <code>decodeEncodedWords</code> is true, decodes any RFC 2047 encoded-words in the personal name.
+	 *
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 * @param decodeEncodedWords       See {@link EmailAddressParser}
+	 */
+	@SuppressWarnings("WeakerAccess")
+	@Nullable
+	public static InternetAddress getInternetAddress(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames,
+			boolean decodeEncodedWords) {
+		if (email == null) {
+			return null;
+		}
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		AutomatonMatcher m = dragons.matcher(dragons.MAILBOX_PATTERN, email);
+		return m.matches() ? pullInternetAddress(m, criteria, extractCfwsPersonalNames, decodeEncodedWords) : null;
+	}
+	
+	/**
+	 * See getInternetAddress; does the same thing but returns a lightweight, immutable {@link ParsedAddress} instead of an InternetAddress, so it doesn't
+	 * require Jakarta Mail on the classpath and doesn't pay for InternetAddress's charset encoding of the personal name. Use {@link
+	 * ParsedAddress#toInternetAddress()} if you need an InternetAddress after all.
+	 *
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 * @return null if the address is invalid.
+	 */
+	@SuppressWarnings("unused")
+	@Nullable
+	public static ParsedAddress getParsedAddress(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames) {
+		return getParsedAddress(email, criteria, extractCfwsPersonalNames, false);
+	}
+
+	/**
+	 * See getParsedAddress; does the same thing but if <code>decodeEncodedWords</code> is true, decodes any RFC 2047 encoded-words in the personal name.
+	 *
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 * @param decodeEncodedWords       See {@link EmailAddressParser}
+	 * @return null if the address is invalid.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	@Nullable
+	public static ParsedAddress getParsedAddress(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames,
+			boolean decodeEncodedWords) {
 		if (email == null) {
 			return null;
 		}
-		Matcher m = Dragons.fromCriteria(criteria).MAILBOX_PATTERN.matcher(email);
-		return m.matches() ? pullFromGroups(m, criteria, extractCfwsPersonalNames) : null;
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		AutomatonMatcher m = dragons.matcher(dragons.MAILBOX_PATTERN, email);
+		return m.matches() ? pullParsedAddress(m, criteria, extractCfwsPersonalNames, decodeEncodedWords, null) : null;
 	}
 	
 	/**
@@ -215,26 +317,41 @@ public final class EmailAddressParser {
 		if (email == null) {
 			return null;
 		}
-		Matcher m = Dragons.fromCriteria(criteria).MAILBOX_PATTERN.matcher(email);
-		return m.matches() ? getMatcherParts(m, criteria, extractCfwsPersonalNames) : null;
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		AutomatonMatcher m = dragons.matcher(dragons.MAILBOX_PATTERN, email);
+		return m.matches() ? getMatcherParts(m, criteria, extractCfwsPersonalNames, true) : null;
 	}
 	
 	/**
 	 * See getInternetAddress; does the same thing but returns the personal name that would have been returned from getInternetAddress() in String form.
 	 * <p>
-	 * The Strings returned by this method will not reflect any decoding of RFC-2047 encoded personal names. See the documentation for this overall class
-	 * (above) for more.
+	 * The Strings returned by this method will not reflect any decoding of RFC-2047 encoded personal names, unless asked to with {@link
+	 * #getPersonalName(String, EnumSet, boolean, boolean)}. See the documentation for this overall class (above) for more.
 	 *
 	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
 	 */
 	@SuppressWarnings("unused")
 	@Nullable
 	public static String getPersonalName(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames) {
+		return getPersonalName(email, criteria, extractCfwsPersonalNames, false);
+	}
+
+	/**
+	 * See getPersonalName; does the same thing but if <code>decodeEncodedWords</code> is true, decodes any RFC 2047 encoded-words in the personal name.
+	 *
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 * @param decodeEncodedWords       See {@link EmailAddressParser}
+	 */
+	@SuppressWarnings("WeakerAccess")
+	@Nullable
+	public static String getPersonalName(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames,
+			boolean decodeEncodedWords) {
 		if (email == null) {
 			return null;
 		}
-		Matcher m = Dragons.fromCriteria(criteria).MAILBOX_PATTERN.matcher(email);
-		return m.matches() ? getMatcherParts(m, criteria, extractCfwsPersonalNames)[0] : null;
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		AutomatonMatcher m = dragons.matcher(dragons.MAILBOX_PATTERN, email);
+		return m.matches() ? getMatcherParts(m, criteria, extractCfwsPersonalNames, true, decodeEncodedWords)[0] : null;
 	}
 	
 	/**
@@ -250,8 +367,9 @@ public final class EmailAddressParser {
 		if (email == null) {
 			return null;
 		}
-		Matcher m = Dragons.fromCriteria(criteria).MAILBOX_PATTERN.matcher(email);
-		return m.matches() ? getMatcherParts(m, criteria, extractCfwsPersonalNames)[1] : null;
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		AutomatonMatcher m = dragons.matcher(dragons.MAILBOX_PATTERN, email);
+		return m.matches() ? getMatcherParts(m, criteria, extractCfwsPersonalNames, true)[1] : null;
 	}
 	
 	/**
@@ -266,10 +384,93 @@ public final class EmailAddressParser {
 		if (email == null) {
 			return null;
 		}
-		Matcher m = Dragons.fromCriteria(criteria).MAILBOX_PATTERN.matcher(email);
-		return m.matches() ? getMatcherParts(m, criteria, extractCfwsPersonalNames)[2] : null;
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		AutomatonMatcher m = dragons.matcher(dragons.MAILBOX_PATTERN, email);
+		return m.matches() ? getMatcherParts(m, criteria, extractCfwsPersonalNames, true)[2] : null;
+	}
+
+	/**
+	 * See getDomain; does the same thing but returns an internationalized domain (see {@link EmailAddressCriteria#ALLOW_UTF8}) in its ASCII form, as needed
+	 * for DNS lookups and for servers that don't support SMTPUTF8: <code>j&uuml;rgen@b&uuml;cher.de</code> has the domain <code>xn--bcher-kva.de</code>.
+	 * The conversion is done by {@link java.net.IDN#toASCII(String)} (IDNA 2003), and the results are cached, as the same domains tend to come up over and
+	 * over. ASCII domains (including all domain literals) are returned as they are.
+	 *
+	 * @return null if the address is invalid, or if its domain isn't a valid internationalized domain name.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	@Nullable
+	public static String getAsciiDomain(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria) {
+		final String domain = getDomain(email, criteria, false);
+		return domain == null ? null : toAsciiDomain(domain);
+	}
+
+	/**
+	 * @return The ASCII form of the given domain part (domain literals are left alone), or null if it can't be converted.
+	 */
+	@Nullable
+	static String toAsciiDomain(@NotNull String domain) {
+		return domain.startsWith("[") ? domain : IdnaCache.toAscii(domain);
+	}
+
+	/**
+	 * See getInternetAddress; does the same thing but returns the address in a canonical form that is suitable for comparing and deduplicating addresses.
+	 * Different notations of the same recipient yield the same canonical address, e.g. all of the following become <code>bob@example.com</code>:
+	 * <p>
+	 * <code>&quot;bob&quot;@Example.COM</code><br>
+	 * <code>bob@example.com (Bob)</code><br>
+	 * <code>&lt;bob@example.com&gt;</code>
+	 * <p>
+	 * The canonical form is the local part (without CFWS, with bounding quotes stripped where that doesn't damage its parsability) + &quot;@&quot; + the domain
+	 * part (without CFWS) in lower case. The case of the local part is preserved, since per 2822 only the domain is case-insensitive. An internationalized
+	 * domain (see {@link EmailAddressCriteria#ALLOW_UTF8}) is converted to its ASCII form (see {@link #getAsciiDomain(String, EnumSet)}), so
+	 * <code>bob@B&uuml;cher.de</code> and <code>bob@xn--bcher-kva.de</code> are the same too.
+	 *
+	 * @return null if the address is invalid (or its domain isn't a valid internationalized domain name), otherwise the canonical address.
+	 * @see #appendCanonicalAddress(String, EnumSet, StringBuilder)
+	 */
+	@SuppressWarnings("unused")
+	@Nullable
+	public static String getCanonicalAddress(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria) {
+		if (email == null) {
+			return null;
+		}
+		final StringBuilder sb = new StringBuilder(email.length());
+		return appendCanonicalAddress(email, criteria, sb) ? sb.toString() : null;
 	}
-	
+
+	/**
+	 * See getCanonicalAddress; does the same thing but appends the canonical address to the given buffer, so that a caller processing many addresses can reuse
+	 * one buffer rather than creating a String per address. Nothing is appended if the address is invalid.
+	 *
+	 * @return true if the address was valid and its canonical form was appended to <code>out</code>, false otherwise.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public static boolean appendCanonicalAddress(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria, @NotNull StringBuilder out) {
+		if (email == null) {
+			return false;
+		}
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		AutomatonMatcher m = dragons.matcher(dragons.MAILBOX_PATTERN, email);
+		if (!m.matches()) {
+			return false;
+		}
+		final String[] parts = getMatcherParts(m, criteria, false, false);
+		if (parts[1] == null || parts[2] == null) {
+			return false;
+		}
+		final String domain = toAsciiDomain(parts[2]);
+		if (domain == null) {
+			return false;
+		}
+		out.append(parts[1]).append('@');
+		for (int i = 0; i < domain.length(); i++) {
+			final char c = domain.charAt(i);
+			// domains are ASCII-only (after IDNA), so no need for locale sensitive lower casing
+			out.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+		}
+		return true;
+	}
+
 	/**
 	 * Given the value of a header, like the From:, extract valid 2822 addresses from it and place them in an array. Returns an empty array if none found, will
 	 * not return null. Note that you should pass in everything except, e.g. &quot;From: &quot;, in other words, the header value without the header name and
@@ -299,98 +500,273 @@ public final class EmailAddressParser {
 	 */
 	@SuppressWarnings("unused")
 	@NotNull
-	public static InternetAddress[] extractHeaderAddresses(@Nullable String header_txt, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames) {
-		// you may go insane from this code
+	public static InternetAddress[] extractHeaderAddresses(@Nullable String header_txt, @NotNull final EnumSet<EmailAddressCriteria> criteria,
+			final boolean extractCfwsPersonalNames) {
+		return extractHeaderAddresses(header_txt, criteria, extractCfwsPersonalNames, false);
+	}
+
+	/**
+	 * See extractHeaderAddresses; does the same thing but if <code>decodeEncodedWords</code> is true, decodes any RFC 2047 encoded-words in the personal
+	 * names.
+	 *
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 * @param decodeEncodedWords       See {@link EmailAddressParser}
+	 * @return zero-length array if errors or none found; will not return null.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	@NotNull
+	public static InternetAddress[] extractHeaderAddresses(@Nullable String header_txt, @NotNull final EnumSet<EmailAddressCriteria> criteria,
+			final boolean extractCfwsPersonalNames, final boolean decodeEncodedWords) {
+		return extractHeaderAddresses(header_txt, criteria, extractCfwsPersonalNames, decodeEncodedWords, null);
+	}
+
+	/**
+	 * See extractHeaderAddresses; does the same thing but leaves out the addresses whose domain isn't allowed by the given policy, which gets the domain
+	 * where it is in the header during the same pass, like {@link EmailAddressValidator#isValid(String, EnumSet, DomainPolicy)} does. Domain literals aren't
+	 * passed to the policy.
+	 *
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 * @param decodeEncodedWords       See {@link EmailAddressParser}
+	 * @param policy                   Decides which domains are allowed; null to allow any domain.
+	 * @return zero-length array if errors or none found; will not return null.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	@NotNull
+	public static InternetAddress[] extractHeaderAddresses(@Nullable String header_txt, @NotNull final EnumSet<EmailAddressCriteria> criteria,
+			final boolean extractCfwsPersonalNames, final boolean decodeEncodedWords, @Nullable final DomainPolicy policy) {
 		if (header_txt == null || header_txt.equals("")) {
 			return new InternetAddress[0];
 		}
-		// optimize: separate method or boolean to indicate if group should be worried about at all
-		final Dragons dragons = Dragons.fromCriteria(criteria);
-		final Matcher m = dragons.MAILBOX_PATTERN.matcher(header_txt);
-		final Matcher gp = dragons.GROUP_PREFIX_PATTERN.matcher(header_txt);
 		final ArrayList<InternetAddress> result = new ArrayList<>(1);
-		final int max = header_txt.length();
-		boolean group_start = false;
-		boolean group_end = false;
-		int next_comma_index;
-		int next_semicolon_index;
-		int just_after_group_end = -1;
-		// skip past any group prefixes, gobble addresses as usual in a list but
-		// skip past the terminating semicolon
-		while (true) {
-			if (group_end) {
-				next_comma_index = header_txt.indexOf(',', just_after_group_end);
-				if (next_comma_index < 0) {
-					break;
-				}
-				if (next_comma_index >= max - 1) {
-					break;
+		extractHeaderAddresses(header_txt, criteria, policy, new MailboxHandler() {
+			@Override
+			public void handle(@NotNull MatchResult m, @Nullable String group) {
+				InternetAddress cur_addr = pullInternetAddress(m, criteria, extractCfwsPersonalNames, decodeEncodedWords);
+				if (cur_addr != null) {
+					result.add(cur_addr);
 				}
-				gp.region(next_comma_index + 1, max);
-				m.region(next_comma_index + 1, max);
-				group_end = false;
 			}
-			if (header_txt.charAt(m.regionStart()) == ';') {
-				group_start = false;
-				m.region(m.regionStart() + 1, max);
-				// could say >= max - 1 or even max - 3 or something, but just to be
-				// proper:
-				if (m.regionStart() >= max) {
-					break;
+		});
+		return result.size() > 0 ? result.toArray(new InternetAddress[0]) : new InternetAddress[0];
+	}
+
+	/**
+	 * See extractHeaderAddresses; does the same thing but returns lightweight, immutable {@link ParsedAddress} objects instead of InternetAddresses (see
+	 * {@link #getParsedAddress(String, EnumSet, boolean)}), which also tell the group each address was part of.
+	 *
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 * @return zero-length array if errors or none found; will not return null.
+	 */
+	@SuppressWarnings("unused")
+	@NotNull
+	public static ParsedAddress[] extractParsedAddresses(@Nullable String header_txt, @NotNull final EnumSet<EmailAddressCriteria> criteria,
+			final boolean extractCfwsPersonalNames) {
+		return extractParsedAddresses(header_txt, criteria, extractCfwsPersonalNames, false);
+	}
+
+	/**
+	 * See extractParsedAddresses; does the same thing but if <code>decodeEncodedWords</code> is true, decodes any RFC 2047 encoded-words in the personal
+	 * names.
+	 *
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 * @param decodeEncodedWords       See {@link EmailAddressParser}
+	 * @return zero-length array if errors or none found; will not return null.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	@NotNull
+	public static ParsedAddress[] extractParsedAddresses(@Nullable String header_txt, @NotNull final EnumSet<EmailAddressCriteria> criteria,
+			final boolean extractCfwsPersonalNames, final boolean decodeEncodedWords) {
+		return extractParsedAddresses(header_txt, criteria, extractCfwsPersonalNames, decodeEncodedWords, null);
+	}
+
+	/**
+	 * See extractParsedAddresses; does the same thing but leaves out the addresses whose domain isn't allowed by the given policy, see {@link
+	 * #extractHeaderAddresses(String, EnumSet, boolean, boolean, DomainPolicy)}.
+	 *
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 * @param decodeEncodedWords       See {@link EmailAddressParser}
+	 * @param policy                   Decides which domains are allowed; null to allow any domain.
+	 * @return zero-length array if errors or none found; will not return null.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	@NotNull
+	public static ParsedAddress[] extractParsedAddresses(@Nullable String header_txt, @NotNull final EnumSet<EmailAddressCriteria> criteria,
+			final boolean extractCfwsPersonalNames, final boolean decodeEncodedWords, @Nullable final DomainPolicy policy) {
+		if (header_txt == null || header_txt.equals("")) {
+			return new ParsedAddress[0];
+		}
+		final ArrayList<ParsedAddress> result = new ArrayList<>(1);
+		extractHeaderAddresses(header_txt, criteria, policy, new MailboxHandler() {
+			@Override
+			public void handle(@NotNull MatchResult m, @Nullable String group) {
+				ParsedAddress cur_addr = pullParsedAddress(m, criteria, extractCfwsPersonalNames, decodeEncodedWords, group);
+				if (cur_addr != null) {
+					result.add(cur_addr);
 				}
-				gp.region(m.regionStart(), max);
-				group_end = true;
-				just_after_group_end = m.regionStart();
 			}
-			if (m.lookingAt()) {
-				group_start = false;
-				// must test m.end() == max first with early exit
-				if (m.end() == max || header_txt.charAt(m.end()) == ',' ||
-						(group_end = header_txt.charAt(m.end()) == ';')) {
-					InternetAddress cur_addr = pullFromGroups(m, criteria, extractCfwsPersonalNames);
-					if (cur_addr != null) {
-						result.add(cur_addr);
-					}
-					if (m.end() < max - 1) {
-						if (!group_end) {
-							// skip the comma
-							gp.region(m.end() + 1, max);
-							m.region(m.end() + 1, max);
-						} else {
-							just_after_group_end = m.end() + 1;
-						}
-					} else {
-						break;
-					}
-				} else {
-					break;
-				}
-			} else if (gp.lookingAt()) {
-				if (gp.end() < max) {
-					// the colon is included in the gp match, so nothing to skip
-					m.region(gp.end(), max);
-					gp.region(gp.end(), max);
-					group_start = true;
-				} else {
-					break;
+		});
+		return result.toArray(new ParsedAddress[0]);
+	}
+
+	/**
+	 * See extractHeaderAddresses; does the same thing but rather than creating an InternetAddress object per address, appends the addresses to the given
+	 * table, which stores them in a much more compact form. Useful when extracting addresses from large numbers of messages.
+	 *
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 * @param target                   The table to append the extracted addresses to.
+	 * @return The number of addresses appended to the table.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public static int extractHeaderAddresses(@Nullable String header_txt, @NotNull final EnumSet<EmailAddressCriteria> criteria,
+			final boolean extractCfwsPersonalNames, @NotNull final AddressTable target) {
+		return extractHeaderAddresses(header_txt, criteria, extractCfwsPersonalNames, null, target);
+	}
+
+	/**
+	 * See extractHeaderAddresses; does the same thing but leaves out the addresses whose domain isn't allowed by the given policy, see {@link
+	 * #extractHeaderAddresses(String, EnumSet, boolean, boolean, DomainPolicy)}.
+	 *
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 * @param policy                   Decides which domains are allowed; null to allow any domain.
+	 * @param target                   The table to append the extracted addresses to.
+	 * @return The number of addresses appended to the table.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public static int extractHeaderAddresses(@Nullable String header_txt, @NotNull final EnumSet<EmailAddressCriteria> criteria,
+			final boolean extractCfwsPersonalNames, @Nullable final DomainPolicy policy, @NotNull final AddressTable target) {
+		if (header_txt == null || header_txt.equals("")) {
+			return 0;
+		}
+		final int sizeBefore = target.size();
+		extractHeaderAddresses(header_txt, criteria, policy, new MailboxHandler() {
+			@Override
+			public void handle(@NotNull MatchResult m, @Nullable String group) {
+				final String[] parts = getMatcherParts(m, criteria, extractCfwsPersonalNames, true);
+				if (parts[1] != null && parts[2] != null) {
+					target.add(parts[0], parts[1], parts[2]);
 				}
-			} else if (group_start) {
-				next_semicolon_index = header_txt.indexOf(';', m.regionStart());
-				if (next_semicolon_index < 0) {
-					break;
-				} else if (next_semicolon_index >= max - 1) {
-					break;
+			}
+		});
+		return target.size() - sizeBefore;
+	}
+
+	/**
+	 * See getAddressParts; does the same thing but appends the parts of the address to the given table rather than returning them.
+	 *
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 * @param target                   The table to append the address to.
+	 * @return true if the address was valid and appended to the table, false otherwise.
+	 */
+	@SuppressWarnings("unused")
+	public static boolean extractAddress(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames,
+			@NotNull AddressTable target) {
+		final String[] parts = getAddressParts(email, criteria, extractCfwsPersonalNames);
+		if (parts == null || parts[1] == null || parts[2] == null) {
+			return false;
+		}
+		target.add(parts[0], parts[1], parts[2]);
+		return true;
+	}
+
+	/**
+	 * See extractHeaderAddresses; does the same thing but rather than creating an InternetAddress object per address, appends the local part of each address
+	 * to the given target under its (case-folded) domain, ready for sending to all recipients at a domain at once. Call it for every header of every message
+	 * to collect all recipients in one target.
+	 *
+	 * @param target The addresses by domain to append the extracted addresses to.
+	 * @return The number of addresses appended to the target.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public static int extractHeaderAddresses(@Nullable String header_txt, @NotNull final EnumSet<EmailAddressCriteria> criteria,
+			@NotNull final AddressesByDomain target) {
+		return extractHeaderAddresses(header_txt, criteria, null, target);
+	}
+
+	/**
+	 * See extractHeaderAddresses; does the same thing but leaves out the addresses whose domain isn't allowed by the given policy, see {@link
+	 * #extractHeaderAddresses(String, EnumSet, boolean, boolean, DomainPolicy)}. E.g. with a {@link DomainBlocklist}, no recipients at blocked domains end
+	 * up in the target, without looking up each domain again afterwards.
+	 *
+	 * @param policy Decides which domains are allowed; null to allow any domain.
+	 * @param target The addresses by domain to append the extracted addresses to.
+	 * @return The number of addresses appended to the target.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public static int extractHeaderAddresses(@Nullable String header_txt, @NotNull final EnumSet<EmailAddressCriteria> criteria,
+			@Nullable final DomainPolicy policy, @NotNull final AddressesByDomain target) {
+		if (header_txt == null || header_txt.equals("")) {
+			return 0;
+		}
+		final int sizeBefore = target.size();
+		extractHeaderAddresses(header_txt, criteria, policy, new MailboxHandler() {
+			@Override
+			public void handle(@NotNull MatchResult m, @Nullable String group) {
+				// personal names don't matter here, so they aren't even cleaned up
+				final String[] parts = getMatcherParts(m, criteria, false, false);
+				if (parts[1] != null && parts[2] != null) {
+					target.add(parts[1], parts[2]);
 				}
-				m.region(next_semicolon_index + 1, max);
-				gp.region(next_semicolon_index + 1, max);
-				group_start = false;
-				group_end = true;
-				just_after_group_end = m.regionStart();
-			} else if (!group_end) {
+			}
+		});
+		return target.size() - sizeBefore;
+	}
+
+	/**
+	 * See getAddressParts; does the same thing but appends the local part of the address to the given target under its (case-folded) domain.
+	 *
+	 * @param target The addresses by domain to append the address to.
+	 * @return true if the address was valid and appended to the target, false otherwise.
+	 */
+	@SuppressWarnings("unused")
+	public static boolean extractAddress(@Nullable String email, @NotNull EnumSet<EmailAddressCriteria> criteria, @NotNull AddressesByDomain target) {
+		final String[] parts = getAddressParts(email, criteria, false);
+		return parts != null && parts[1] != null && parts[2] != null && target.add(parts[1], parts[2]) >= 0;
+	}
+
+	/**
+	 * Receives the mailboxes found by {@link #extractHeaderAddresses(String, EnumSet, DomainPolicy, MailboxHandler)}.
+	 */
+	interface MailboxHandler {
+		/**
+		 * @param m     A matcher which has just successfully matched a mailbox, see {@link #getMatcherParts(Matcher, EnumSet, boolean)}.
+		 * @param group The cleaned up name of the group the mailbox is part of (see {@link #cleanupPersonalString(String, EnumSet)}), or null if it is
+		 *              not part of a group.
+		 */
+		void handle(@NotNull MatchResult m, @Nullable String group);
+	}
+
+	/**
+	 * The logic behind the extractHeaderAddresses methods: walks through the header and passes every mailbox found to the given handler. See those methods
+	 * for the details.
+	 * <p>
+	 * The header is walked element by element in a single pass: a {@link HeaderLexer} looks ahead for the separator that ends the element (a top level
+	 * <code>,</code> <code>:</code> or <code>;</code>, or the end), and a {@link HeaderElementWalker} decides what to do with it. Skipping an invalid group,
+	 * or the rest of a group after its semicolon, just moves on to the next element, without looking at the skipped text again.
+	 *
+	 * @param policy Decides which domains are allowed, see {@link #isAllowedDomain(CharSequence, MatchResult, EnumSet, DomainPolicy)}; the mailboxes with
+	 *               other domains aren't passed to the handler. Null to allow any domain.
+	 */
+	static void extractHeaderAddresses(@NotNull String header_txt, @NotNull EnumSet<EmailAddressCriteria> criteria, @Nullable DomainPolicy policy,
+			@NotNull MailboxHandler handler) {
+		final AutomatonMatcher m = Dragons.fromCriteria(criteria).getMailboxAutomaton().matcher(header_txt);
+		final HeaderLexer lexer = new HeaderLexer();
+		final HeaderElementWalker walker = new HeaderElementWalker(criteria);
+		final int max = header_txt.length();
+		int start = 0;
+		while (start < max) {
+			int end = start;
+			int separator = HeaderLexer.CONTENT;
+			while (end < max && (separator = lexer.next(header_txt.charAt(end))) == HeaderLexer.CONTENT) {
+				end++;
+			}
+			final int outcome = walker.next(header_txt, start, end, separator, m);
+			if (outcome == HeaderElementWalker.STOP) {
 				break;
+			} else if (outcome == HeaderElementWalker.MAILBOX && (policy == null || isAllowedDomain(header_txt, m, criteria, policy))) {
+				handler.handle(m, walker.getMailboxGroup());
 			}
+			start = end + 1;
 		}
-		return result.size() > 0 ? result.toArray(new InternetAddress[0]) : new InternetAddress[0];
 	}
 	
 	/**
@@ -414,7 +790,17 @@ public final class EmailAddressParser {
 	@SuppressWarnings("WeakerAccess")
 	@Nullable
 	public static InternetAddress pullFromGroups(@NotNull Matcher m, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames) {
-		final String[] parts = getMatcherParts(m, criteria, extractCfwsPersonalNames);
+		return pullInternetAddress(m, criteria, extractCfwsPersonalNames, false);
+	}
+
+	/**
+	 * See {@link #pullFromGroups(Matcher, EnumSet, boolean)}; works on the result of any match of the mailbox grammar, including the {@link
+	 * AutomatonMatcher} this class uses itself.
+	 */
+	@Nullable
+	static InternetAddress pullInternetAddress(@NotNull MatchResult m, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames,
+			boolean decodeEncodedWords) {
+		final String[] parts = getMatcherParts(m, criteria, extractCfwsPersonalNames, true, decodeEncodedWords);
 		if (parts[1] != null && parts[2] != null) {
 			// if for some reason you want to require that the result be re-parsable by InternetAddress,
 			// you could uncomment the appropriate stuff below, but note that not all the utility functions
@@ -430,6 +816,16 @@ public final class EmailAddressParser {
 		return null;
 	}
 	
+	/**
+	 * Like {@link #pullFromGroups(Matcher, EnumSet, boolean)}, but creates a ParsedAddress, which can't fail on encoding errors.
+	 */
+	@Nullable
+	private static ParsedAddress pullParsedAddress(@NotNull MatchResult m, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames,
+			boolean decodeEncodedWords, @Nullable String group) {
+		final String[] parts = getMatcherParts(m, criteria, extractCfwsPersonalNames, true, decodeEncodedWords);
+		return parts[1] != null && parts[2] != null ? new ParsedAddress(parts[0], parts[1], parts[2], getMatcherForm(m, criteria), group) : null;
+	}
+	
 	/**
 	 * See {@link #pullFromGroups(Matcher, EnumSet, boolean)}.
 	 *
@@ -439,6 +835,45 @@ public final class EmailAddressParser {
 	@SuppressWarnings("WeakerAccess")
 	@NotNull
 	public static String[] getMatcherParts(@NotNull Matcher m, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames) {
+		return getMatcherParts(m, criteria, extractCfwsPersonalNames, true);
+	}
+
+	/**
+	 * The RFC 2822 mailbox grammar for the given criteria as a java.util.regex Pattern, for rolling your own: a successful <code>matches()</code> or
+	 * <code>lookingAt()</code> of its Matcher can be passed to {@link #pullFromGroups(Matcher, EnumSet, boolean)} and {@link #getMatcherParts(Matcher,
+	 * EnumSet, boolean)}, with the same results as the methods of this class.
+	 * <p>
+	 * The hardened pattern matches exactly the same, with the same groups, but has atomic groups and possessive quantifiers wherever there is only one way
+	 * to match, so java.util.regex gives up on a near miss without backtracking into them; a personal name of a dozen words separated by two spaces and not
+	 * followed by an address takes seconds with the regular pattern, for instance, and microseconds with the hardened one. Either way, java.util.regex still
+	 * recurses per repetition (see &quot;Regarding long input&quot; above), which the methods of this class don't, so limit the length of the input you
+	 * match with it.
+	 *
+	 * @param hardened Whether to return the hardened pattern rather than the regular one.
+	 */
+	@SuppressWarnings({"unused", "WeakerAccess"})
+	@NotNull
+	public static Pattern getMailboxPattern(@NotNull EnumSet<EmailAddressCriteria> criteria, boolean hardened) {
+		return Dragons.fromCriteria(criteria, hardened).MAILBOX_PATTERN;
+	}
+
+	/**
+	 * See {@link #getMatcherParts(Matcher, EnumSet, boolean)}. If <code>cleanupPersonalName</code> is false, the personal name is returned as matched, saving
+	 * the cleanup for callers that are only interested in the address.
+	 */
+	@NotNull
+	static String[] getMatcherParts(@NotNull MatchResult m, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames,
+			boolean cleanupPersonalName) {
+		return getMatcherParts(m, criteria, extractCfwsPersonalNames, cleanupPersonalName, false);
+	}
+
+	/**
+	 * See {@link #getMatcherParts(Matcher, EnumSet, boolean)}. If <code>decodeEncodedWords</code> is true, any RFC 2047 encoded-words in the (cleaned up)
+	 * personal name are decoded.
+	 */
+	@NotNull
+	static String[] getMatcherParts(@NotNull MatchResult m, @NotNull EnumSet<EmailAddressCriteria> criteria, boolean extractCfwsPersonalNames,
+			boolean cleanupPersonalName, boolean decodeEncodedWords) {
 		String current_localpart = null;
 		String current_domainpart = null;
 		String local_part_da;
@@ -476,12 +911,14 @@ public final class EmailAddressParser {
 					}
 					domain_part_da = m.group(14);
 					if (domain_part_da == null) {
-						domain_part_dl = m.group(15);
+						domain_part_dl = m.group(16);
 					}
 					current_localpart = local_part_da == null ? local_part_qs : local_part_da;
 					current_domainpart = domain_part_da == null ? domain_part_dl : domain_part_da;
-					if (extractCfwsPersonalNames) {
-						personal_string = m.group(16);
+					// only the CFWS after a domain literal; the CFWS after a dot-atom domain has never been taken as personal name with domain literals
+					// allowed (unlike without them, see below), and changing that would change the result for plain addresses
+					if (extractCfwsPersonalNames && domain_part_da == null) {
+						personal_string = m.group(17);
 						personal_string = removeAnyBounding('(', ')', getFirstComment(personal_string, criteria));
 					}
 				}
@@ -522,12 +959,13 @@ public final class EmailAddressParser {
 			}
 			domain_part_da = m.group(5);
 			if (domain_part_da == null && allowDomainLiterals) {
-				domain_part_dl = m.group(6);
+				domain_part_dl = m.group(7);
 			}
 			current_localpart = local_part_da == null ? local_part_qs : local_part_da;
 			current_domainpart = domain_part_da == null ? domain_part_dl : domain_part_da;
-			if (extractCfwsPersonalNames) {
-				personal_string = m.group((allowDomainLiterals ? 1 : 0) + 6);
+			// as above, with domain literals allowed only the CFWS after a domain literal
+			if (extractCfwsPersonalNames && (!allowDomainLiterals || domain_part_da == null)) {
+				personal_string = m.group(domain_part_da == null ? 8 : 6);
 				personal_string = removeAnyBounding('(', ')', getFirstComment(personal_string, criteria));
 			}
 		}
@@ -537,22 +975,93 @@ public final class EmailAddressParser {
 		if (current_domainpart != null) {
 			current_domainpart = current_domainpart.trim();
 		}
-		if (personal_string != null) {
+		if (personal_string != null && cleanupPersonalName) {
 			// trim even though calling cPS which trims, because the latter may return
 			// the same thing back without trimming
 			personal_string = personal_string.trim();
 			personal_string = cleanupPersonalString(personal_string, criteria);
+			if (decodeEncodedWords) {
+				personal_string = EncodedWordDecoder.decode(personal_string);
+			}
 		}
 		// remove any unecessary bounding quotes from the localpart:
 		String test_addr = removeAnyBounding('"', '"', current_localpart) +
 				"@" + current_domainpart;
-		if (Dragons.fromCriteria(criteria).ADDR_SPEC_PATTERN.matcher(test_addr).matches()) {
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		if (dragons.getAutomaton(dragons.ADDR_SPEC_PATTERN).matches(test_addr)) {
 			current_localpart = removeAnyBounding('"', '"', current_localpart);
 		}
 		//noinspection ConstantConditions
 		return new String[] { personal_string, current_localpart, current_domainpart };
 	}
 	
+	/**
+	 * @return The form of the mailbox matched by the given matcher (see {@link #getMatcherParts(Matcher, EnumSet, boolean)}).
+	 */
+	@NotNull
+	static ParsedAddress.Form getMatcherForm(@NotNull MatchResult m, @NotNull EnumSet<EmailAddressCriteria> criteria) {
+		// see the group-ID lists in the grammar comments: group 1 is the name-addr, if quoted identifiers are allowed at all
+		return criteria.contains(EmailAddressCriteria.ALLOW_QUOTED_IDENTIFIERS) && m.group(1) != null
+				? ParsedAddress.Form.NAME_ADDR
+				: ParsedAddress.Form.ADDR_SPEC;
+	}
+
+	/**
+	 * @return The group of the domain (untrimmed, like in {@link #getMatcherParts(Matcher, EnumSet, boolean)}) matched by the given matcher if it is a domain
+	 * name, or -1 if it is a domain literal (see {@link #getDomainLiteralGroup(MatchResult, EnumSet)}).
+	 */
+	static int getDomainGroup(@NotNull MatchResult m, @NotNull EnumSet<EmailAddressCriteria> criteria) {
+		// see the group-ID lists in the grammar comments
+		final int group;
+		if (!criteria.contains(EmailAddressCriteria.ALLOW_QUOTED_IDENTIFIERS)) {
+			group = 5;
+		} else if (criteria.contains(EmailAddressCriteria.ALLOW_DOMAIN_LITERALS)) {
+			group = m.group(1) != null ? 7 : 14;
+		} else {
+			group = m.group(1) != null ? 7 : 13;
+		}
+		return m.start(group) >= 0 ? group : -1;
+	}
+
+	/**
+	 * @param input The input the matcher matched.
+	 * @return Whether the domain matched by the given matcher is allowed by the given policy, which gets its position in the input (without the whitespace
+	 * around it); domain literals are always allowed.
+	 */
+	static boolean isAllowedDomain(@NotNull CharSequence input, @NotNull MatchResult m, @NotNull EnumSet<EmailAddressCriteria> criteria,
+			@NotNull DomainPolicy policy) {
+		final int group = getDomainGroup(m, criteria);
+		if (group < 0) {
+			return true;
+		}
+		int from = m.start(group);
+		int to = m.end(group);
+		while (from < to && Character.isWhitespace(input.charAt(from))) {
+			from++;
+		}
+		while (to > from && Character.isWhitespace(input.charAt(to - 1))) {
+			to--;
+		}
+		return policy.isAllowed(input, from, to);
+	}
+
+	/**
+	 * @return The group of the domain literal (including its brackets) matched by the given matcher, or -1 if the domain is a domain name.
+	 */
+	static int getDomainLiteralGroup(@NotNull MatchResult m, @NotNull EnumSet<EmailAddressCriteria> criteria) {
+		// see the group-ID lists in the grammar comments
+		if (!criteria.contains(EmailAddressCriteria.ALLOW_DOMAIN_LITERALS)) {
+			return -1;
+		}
+		final int group;
+		if (!criteria.contains(EmailAddressCriteria.ALLOW_QUOTED_IDENTIFIERS)) {
+			group = 7;
+		} else {
+			group = m.group(1) != null ? 8 : 16;
+		}
+		return m.start(group) >= 0 ? group : -1;
+	}
+
 	/**
 	 * Given a string, extract the first matched comment token as defined in 2822, trimmed; return null on all errors or non-findings
 	 * <p>
@@ -567,7 +1076,8 @@ public final class EmailAddressParser {
 		if (text == null) {
 			return null; // important
 		}
-		Matcher m = Dragons.fromCriteria(criteria).COMMENT_PATTERN.matcher(text);
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		AutomatonMatcher m = dragons.matcher(dragons.COMMENT_PATTERN, text);
 		if (!m.find()) {
 			return null;
 		}
@@ -590,7 +1100,7 @@ public final class EmailAddressParser {
 		}
 		String text = string.trim();
 		final Dragons dragons = Dragons.fromCriteria(criteria);
-		Matcher m = dragons.QUOTED_STRING_WO_CFWS_PATTERN.matcher(text);
+		AutomatonMatcher m = dragons.matcher(dragons.QUOTED_STRING_WO_CFWS_PATTERN, text);
 		if (!m.matches()) {
 			return text;
 		}
@@ -28,7 +28,10 @@ package org.hazlewood.connor.bottema.emailaddress;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.regex.MatchResult;
 
 /**
  * A utility class to parse, clean up, and extract email addresses from messages per RFC2822 syntax. Designed to integrate with Javamail (this class will
@@ -109,6 +112,38 @@ import java.util.EnumSet;
  */
 public final class EmailAddressValidator {
 
+	/**
+	 * All criteria combinations (see {@link #getCriteriaCombination(int)}), ordered by the number of criteria in them.
+	 */
+	private static final int[] COMBINATIONS_BY_SIZE = new int[1 << EmailAddressCriteria.values().length];
+
+	/**
+	 * The bit of {@link EmailAddressCriteria#ALLOW_UTF8} in a criteria combination.
+	 */
+	private static final int UTF8_COMBINATION = 1 << EmailAddressCriteria.ALLOW_UTF8.ordinal();
+
+	/**
+	 * All criteria, for matching an address against the most permissive grammar.
+	 */
+	private static final EnumSet<EmailAddressCriteria> ALL_CRITERIA = EnumSet.allOf(EmailAddressCriteria.class);
+
+	/**
+	 * The {@link Supersets} of each criteria combination for {@link #validate(String, EnumSet)}, at index <code>2 * combination</code> for ASCII addresses
+	 * and <code>2 * combination + 1</code> for others; each built on first use, at worst twice when used from several threads at once.
+	 */
+	private static final Supersets[] SUPERSETS = new Supersets[2 * COMBINATIONS_BY_SIZE.length];
+
+	static {
+		int i = 0;
+		for (int size = 0; size <= EmailAddressCriteria.values().length; size++) {
+			for (int combination = 0; combination < COMBINATIONS_BY_SIZE.length; combination++) {
+				if (Integer.bitCount(combination) == size) {
+					COMBINATIONS_BY_SIZE[i++] = combination;
+				}
+			}
+		}
+	}
+
 	/**
 	 * Private constructor; this is a utility class with static methods only, not designed for extension.
 	 */
@@ -163,6 +198,429 @@ public final class EmailAddressValidator {
 		return isValidMailbox(email, Dragons.fromCriteria(criteria));
 	}
 
+	/**
+	 * Like {@link #isValid(String, EnumSet)}, but also requires the domain to be allowed by the given policy, in the same call: e.g. with {@link
+	 * PublicSuffixList#getDefault()}, <code>joe@gmail.cmo</code> is invalid, and with a {@link DomainBlocklist} of disposable email domains, so are addresses
+	 * at those domains. Domain literals aren't passed to the policy.
+	 * <p>
+	 * The policy gets the domain where it is in the address, so this doesn't create any objects for plain addresses (those without quotes, comments, angle
+	 * brackets or whitespace) beyond what {@link #isValid(String, EnumSet)} does; no need to get the domain with {@link EmailAddressParser#getDomain(String,
+	 * EnumSet, boolean)} (which matches the address all over again) and lower case it to look it up.
+	 *
+	 * @param policy Decides which domains are allowed.
+	 */
+	@SuppressWarnings("unused")
+	public static boolean isValid(@Nullable final String email, @NotNull final EnumSet<EmailAddressCriteria> criteria,
+			@NotNull final DomainPolicy policy) {
+		return isValid(email, criteria, policy, false);
+	}
+
+	/**
+	 * Like {@link #isValid(String, EnumSet)}, but if <code>strictDomainLiterals</code> is true, a domain literal (with {@link
+	 * EmailAddressCriteria#ALLOW_DOMAIN_LITERALS}) must also be an IPv4 or IPv6 address literal, see {@link DomainLiteral}: <code>[192.0.2.1]</code> and
+	 * <code>[IPv6:2001:db8::1]</code> are valid, but <code>[999.1.1.1]</code> and <code>[localhost]</code> aren't. The literal is parsed where it is in the
+	 * address, without any lookups.
+	 */
+	@SuppressWarnings("unused")
+	public static boolean isValid(@Nullable final String email, @NotNull final EnumSet<EmailAddressCriteria> criteria, final boolean strictDomainLiterals) {
+		return isValid(email, criteria, null, strictDomainLiterals);
+	}
+
+	/**
+	 * Combines {@link #isValid(String, EnumSet, DomainPolicy)} and {@link #isValid(String, EnumSet, boolean)}.
+	 *
+	 * @param policy Decides which domains are allowed; null to allow any domain.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public static boolean isValid(@Nullable final String email, @NotNull final EnumSet<EmailAddressCriteria> criteria, @Nullable final DomainPolicy policy,
+			final boolean strictDomainLiterals) {
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		if (!isValidMailbox(email, dragons)) {
+			return false;
+		}
+		if (isPlainAddress(email)) {
+			return policy == null || policy.isAllowed(email, email.lastIndexOf('@') + 1, email.length());
+		}
+		if (policy == null && (!strictDomainLiterals || email.indexOf('[') < 0)) {
+			return true;
+		}
+		final AutomatonMatcher m = dragons.matcher(dragons.MAILBOX_PATTERN, email);
+		if (!m.matches()) {
+			return false;
+		}
+		final int group = EmailAddressParser.getDomainGroup(m, criteria);
+		if (group < 0) {
+			final int literalGroup = EmailAddressParser.getDomainLiteralGroup(m, criteria);
+			return !strictDomainLiterals || DomainLiteral.isValid(email, m.start(literalGroup), m.end(literalGroup));
+		}
+		return policy == null || EmailAddressParser.isAllowedDomain(email, m, criteria, policy);
+	}
+
+	/**
+	 * @return Whether the given (valid) address has nothing but a local part and a domain name, so that its domain is simply everything after the last @.
+	 */
+	private static boolean isPlainAddress(@NotNull final String email) {
+		for (int i = 0; i < email.length(); i++) {
+			final char c = email.charAt(i);
+			if (c == '"' || c == '(' || c == '<' || c == '[' || c == '\\' || Character.isWhitespace(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @see #validateBatch(ByteBuffer, int[], int, EnumSet, long[])
+	 */
+	@SuppressWarnings("unused")
+	public static int validateBatch(@NotNull final byte[] data, @NotNull final int[] offsets, final int count,
+			@NotNull final EnumSet<EmailAddressCriteria> criteria, @NotNull final long[] valid) {
+		return validateBatch(ByteBuffer.wrap(data), offsets, count, criteria, valid);
+	}
+
+	/**
+	 * Validates a batch of addresses given as UTF-8 bytes in a shared buffer, such as a message batch or a column of a columnar file, with the same result as
+	 * {@link #isValid(String, EnumSet)} per address, but without creating a String (or any other object) per address.
+	 * <p>
+	 * Address <code>i</code> is the bytes from <code>offsets[i]</code> up to <code>offsets[i + 1]</code> (absolute positions in the buffer, independent of its
+	 * position and limit), so <code>count</code> addresses take <code>count + 1</code> offsets. Unless the criteria include {@link
+	 * EmailAddressCriteria#ALLOW_UTF8}, addresses with bytes outside of ASCII are invalid; with it, such bytes are taken as UTF-8 encoded characters (each
+	 * counting as one character towards the length limits of labels, as in the String), without checking that they are well-formed UTF-8. The addresses are
+	 * routed by {@link AddressPrescan}, so most plain addresses never even get to the grammar.
+	 *
+	 * @param valid Receives the results as a bitset: bit <code>i % 64</code> of <code>valid[i / 64]</code> is set if address <code>i</code> is valid. The
+	 *              first <code>(count + 63) / 64</code> elements are overwritten.
+	 * @return The number of valid addresses.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public static int validateBatch(@NotNull final ByteBuffer buffer, @NotNull final int[] offsets, final int count,
+			@NotNull final EnumSet<EmailAddressCriteria> criteria, @NotNull final long[] valid) {
+		final GrammarAutomaton automaton = Dragons.fromCriteria(criteria).getMailboxAutomaton();
+		Arrays.fill(valid, 0, (count + 63) >>> 6, 0L);
+		int validCount = 0;
+		for (int i = 0; i < count; i++) {
+			final int from = offsets[i];
+			final int to = offsets[i + 1];
+			final int mask = AddressPrescan.classify(buffer, from, to);
+			final boolean isValid;
+			if (AddressPrescan.isFastPath(mask)) {
+				isValid = AddressPrescan.isValidDotAtomAddress(buffer, from, to, criteria);
+			} else {
+				isValid = !AddressPrescan.isRejected(mask, criteria) && automaton.matches(buffer, from, to);
+			}
+			if (isValid) {
+				valid[i >>> 6] |= 1L << i;
+				validCount++;
+			}
+		}
+		return validCount;
+	}
+
+	/**
+	 * Like {@link #isValid(String, EnumSet)}, but tells what is wrong with an invalid address: the offset of the first character that can't be part of a valid
+	 * address, the grammar element it failed in and the criteria that would have allowed the address (see {@link ValidationResult}).
+	 * <p>
+	 * This takes a single pass over the address, without backtracking: the address is run through a {@link GrammarAutomaton} for the given criteria, in
+	 * lockstep with those for every more permissive criteria combination, so the failure is explained by the time it is detected. For valid addresses this is
+	 * also quite a bit faster than matching the regular expression. (Combinations that only add {@link EmailAddressCriteria#ALLOW_UTF8} are skipped for
+	 * ASCII addresses, for which it makes no difference.)
+	 *
+	 * @param email    A complete email address.
+	 * @param criteria A set of criteria flags that restrict or relax RFC 2822 compliance.
+	 * @return {@link ValidationResult#isValid()} if the address is valid, otherwise a description of the problem. A null address is invalid at offset 0.
+	 */
+	@NotNull
+	@SuppressWarnings("unused")
+	public static ValidationResult validate(@Nullable final String email, @NotNull final EnumSet<EmailAddressCriteria> criteria) {
+		if (email == null) {
+			return new ValidationResult(0, null, null);
+		}
+		// index 0 is the given combination, the others are its supersets, smallest first
+		final int given = toCombination(criteria);
+		final Supersets supersets = getSupersets(given, isAscii(email));
+		final int[] combinations = supersets.combinations;
+		final GrammarAutomaton[] automata = supersets.automata;
+		final int count = automata.length;
+		final GrammarAutomaton.State[] states = new GrammarAutomaton.State[count];
+		for (int k = 0; k < count; k++) {
+			states[k] = automata[k].getStart();
+		}
+
+		final MailboxElementTracker tracker = new MailboxElementTracker();
+		int offset = -1;
+		ValidationResult.Element element = null;
+		for (int i = 0; i < email.length(); i++) {
+			final char c = email.charAt(i);
+			boolean alive = false;
+			for (int k = 0; k < count; k++) {
+				if (!states[k].dead) {
+					states[k] = automata[k].step(states[k], c);
+					alive |= !states[k].dead;
+				}
+			}
+			if (offset < 0 && states[0].dead) {
+				offset = i;
+				element = tracker.getElement(c);
+			}
+			if (!alive) {
+				break;
+			}
+			tracker.next(c);
+		}
+		if (offset < 0) {
+			if (states[0].accepting) {
+				return ValidationResult.VALID;
+			}
+			offset = email.length();
+			element = tracker.getElement(-1);
+		}
+		for (int k = 1; k < count; k++) {
+			if (states[k].accepting) {
+				return new ValidationResult(offset, element, getCriteriaCombination(combinations[k] & ~given));
+			}
+		}
+		return new ValidationResult(offset, element, null);
+	}
+
+	@NotNull
+	private static Supersets getSupersets(final int given, final boolean ascii) {
+		final int index = 2 * given + (ascii ? 0 : 1);
+		Supersets supersets = SUPERSETS[index];
+		if (supersets == null) {
+			supersets = new Supersets(given, ascii);
+			SUPERSETS[index] = supersets;
+		}
+		return supersets;
+	}
+
+	/**
+	 * A criteria combination and its supersets, smallest first, with their mailbox automata, as run in lockstep by {@link #validate(String, EnumSet)}.
+	 * Combinations that only add {@link EmailAddressCriteria#ALLOW_UTF8} are left out for ASCII addresses.
+	 */
+	private static final class Supersets {
+		@NotNull
+		final int[] combinations;
+		@NotNull
+		final GrammarAutomaton[] automata;
+
+		Supersets(final int given, final boolean ascii) {
+			int count = 0;
+			final int[] all = new int[COMBINATIONS_BY_SIZE.length];
+			for (int combination : COMBINATIONS_BY_SIZE) {
+				if ((combination & given) == given && (!ascii || (combination & UTF8_COMBINATION) == (given & UTF8_COMBINATION))) {
+					all[count++] = combination;
+				}
+			}
+			combinations = Arrays.copyOf(all, count);
+			automata = new GrammarAutomaton[count];
+			for (int k = 0; k < count; k++) {
+				automata[k] = Dragons.fromCriteria(getCriteriaCombination(combinations[k])).getMailboxAutomaton();
+			}
+		}
+	}
+
+	/**
+	 * Evaluates an e-mail against all possible criteria at once, e.g. to classify addresses by how permissive a grammar they need, without validating them
+	 * with one criteria set after the other. The address is matched only once, against the most permissive grammar (all criteria, i.e. {@link
+	 * EmailAddressCriteria#RFC_COMPLIANT} plus {@link EmailAddressCriteria#ALLOW_UTF8}); the parts of the address that only some criteria allow are then
+	 * picked from the match:
+	 * <ul>
+	 * <li>{@link EmailAddressCriteria#ALLOW_QUOTED_IDENTIFIERS}: the address is in name-addr form (it has angle brackets)</li>
+	 * <li>{@link EmailAddressCriteria#ALLOW_DOMAIN_LITERALS}: the domain is a domain literal, or not an RFC 1035 domain name with at least two levels</li>
+	 * <li>{@link EmailAddressCriteria#ALLOW_DOT_IN_A_TEXT}: the personal name has a &quot;.&quot; outside of quotes and comments</li>
+	 * <li>{@link EmailAddressCriteria#ALLOW_SQUARE_BRACKETS_IN_A_TEXT}: the personal name has a &quot;[&quot; or &quot;]&quot; outside of quotes and
+	 * comments</li>
+	 * <li>{@link EmailAddressCriteria#ALLOW_PARENS_IN_LOCALPART}: the local part is a quoted string with a &quot;(&quot; or &quot;)&quot; in it</li>
+	 * <li>{@link EmailAddressCriteria#ALLOW_UTF8}: the address has a character outside of ASCII anywhere</li>
+	 * </ul>
+	 *
+	 * @param email A string representing an email address.
+	 * @return The smallest set of criteria under which the address is valid (empty if it is valid under any criteria), or null if it isn't valid under any
+	 * criteria. The address is valid under a set of criteria if and only if that set contains all the criteria returned here.
+	 * @see #getValidCriteriaMask(String)
+	 */
+	@Nullable
+	@SuppressWarnings("WeakerAccess")
+	public static EnumSet<EmailAddressCriteria> getRequiredCriteria(@Nullable final String email) {
+		if (email == null) {
+			return null;
+		}
+		final Dragons dragons = Dragons.fromCriteria(ALL_CRITERIA);
+		final AutomatonMatcher m = dragons.matcher(dragons.MAILBOX_PATTERN, email);
+		if (!m.matches()) {
+			return null;
+		}
+		final EnumSet<EmailAddressCriteria> required = getRequiredCriteria(m);
+		if (!isAscii(email)) {
+			required.add(EmailAddressCriteria.ALLOW_UTF8);
+		}
+		return required;
+	}
+
+	/**
+	 * Like {@link #getRequiredCriteria(String)}, but returns all criteria combinations under which the address is valid as a bitmask: bit <code>i</code> is
+	 * set if the address is valid under criteria combination <code>i</code>, which is the combination of the criteria whose {@link
+	 * EmailAddressCriteria#ordinal()} bit is set in <code>i</code> (see {@link #getCriteriaCombination(int)}).
+	 * <p>
+	 * Only the 32 combinations without {@link EmailAddressCriteria#ALLOW_UTF8} fit in the mask. That criteria makes no difference for ASCII addresses, so
+	 * for those the combinations with it are valid just like the ones without; addresses with other characters require it, so for those the mask is 0 (use
+	 * {@link #getRequiredCriteria(String)} instead).
+	 *
+	 * @param email A string representing an email address.
+	 * @return The bitmask of valid criteria combinations; 0 if the address isn't valid under any criteria without {@link EmailAddressCriteria#ALLOW_UTF8}.
+	 */
+	@SuppressWarnings("unused")
+	public static int getValidCriteriaMask(@Nullable final String email) {
+		final EnumSet<EmailAddressCriteria> required = getRequiredCriteria(email);
+		if (required == null) {
+			return 0;
+		}
+		final int requiredBits = toCombination(required);
+		int mask = 0;
+		// ALLOW_UTF8 is the last criteria, so the combinations without it come first
+		for (int combination = 0; combination < UTF8_COMBINATION; combination++) {
+			if ((combination & requiredBits) == requiredBits) {
+				mask |= 1 << combination;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * @param combination A number of which each bit stands for the criteria with that {@link EmailAddressCriteria#ordinal()}.
+	 * @return The criteria combination with the given number, as used in {@link #getValidCriteriaMask(String)}.
+	 */
+	@NotNull
+	@SuppressWarnings("WeakerAccess")
+	public static EnumSet<EmailAddressCriteria> getCriteriaCombination(final int combination) {
+		final EnumSet<EmailAddressCriteria> criteria = EnumSet.noneOf(EmailAddressCriteria.class);
+		for (EmailAddressCriteria criterion : EmailAddressCriteria.values()) {
+			if ((combination & (1 << criterion.ordinal())) != 0) {
+				criteria.add(criterion);
+			}
+		}
+		return criteria;
+	}
+
+	private static int toCombination(@NotNull final EnumSet<EmailAddressCriteria> criteria) {
+		int combination = 0;
+		for (EmailAddressCriteria criterion : criteria) {
+			combination |= 1 << criterion.ordinal();
+		}
+		return combination;
+	}
+
+	/**
+	 * @param m A successful match of the mailbox pattern for all criteria; the result doesn't include {@link EmailAddressCriteria#ALLOW_UTF8}.
+	 */
+	@NotNull
+	static EnumSet<EmailAddressCriteria> getRequiredCriteria(@NotNull final MatchResult m) {
+		final EnumSet<EmailAddressCriteria> required = EnumSet.noneOf(EmailAddressCriteria.class);
+		// see the group-ID lists in the grammar comments (for quoted identifiers and domain literals)
+		final boolean nameAddr = m.group(1) != null;
+		if (nameAddr) {
+			required.add(EmailAddressCriteria.ALLOW_QUOTED_IDENTIFIERS);
+			final String phrase = m.group(2);
+			if (phrase != null) {
+				addRequiredPhraseCriteria(phrase, required);
+			}
+		}
+		final String quotedLocalPart = m.group(nameAddr ? 6 : 13);
+		if (quotedLocalPart != null && hasUnescapedParens(quotedLocalPart)) {
+			required.add(EmailAddressCriteria.ALLOW_PARENS_IN_LOCALPART);
+		}
+		final String dotAtomDomain = m.group(nameAddr ? 7 : 14);
+		if (dotAtomDomain == null || !isRfc1035DomainName(dotAtomDomain)) {
+			required.add(EmailAddressCriteria.ALLOW_DOMAIN_LITERALS);
+		}
+		return required;
+	}
+
+	/**
+	 * Dots and square brackets in a phrase can only be part of atoms, if they aren't in a quoted string or comment.
+	 */
+	private static void addRequiredPhraseCriteria(@NotNull final String phrase, @NotNull final EnumSet<EmailAddressCriteria> required) {
+		boolean quoted = false;
+		boolean comment = false;
+		for (int i = 0; i < phrase.length(); i++) {
+			final char c = phrase.charAt(i);
+			if ((quoted || comment) && c == '\\') {
+				i++;
+			} else if (quoted) {
+				quoted = c != '"';
+			} else if (comment) {
+				comment = c != ')';
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == '(') {
+				comment = true;
+			} else if (c == '.') {
+				required.add(EmailAddressCriteria.ALLOW_DOT_IN_A_TEXT);
+			} else if (c == '[' || c == ']') {
+				required.add(EmailAddressCriteria.ALLOW_SQUARE_BRACKETS_IN_A_TEXT);
+			}
+		}
+	}
+
+	private static boolean hasUnescapedParens(@NotNull final String quotedString) {
+		for (int i = 0; i < quotedString.length(); i++) {
+			final char c = quotedString.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '(' || c == ')') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Hand-written equivalent of the RFC 1035 domain name grammar in {@link Dragons}, for a domain that is already known to be a valid dot-atom: labels of
+	 * letters, digits and hyphens (not at either end) of at most 63 characters, ending in a top level label of 2 to 26 letters. Characters outside of ASCII
+	 * count as letters, see {@link #isLetter(char)}.
+	 */
+	static boolean isRfc1035DomainName(@NotNull final String domain) {
+		final int tldStart = domain.lastIndexOf('.') + 1;
+		if (tldStart == 0 || domain.length() - tldStart < 2 || domain.length() - tldStart > 26) {
+			return false;
+		}
+		for (int i = tldStart; i < domain.length(); i++) {
+			if (!isLetter(domain.charAt(i))) {
+				return false;
+			}
+		}
+		int labelStart = 0;
+		for (int i = 0; i < tldStart; i++) {
+			final char c = domain.charAt(i);
+			if (c == '.') {
+				final int labelLength = i - labelStart;
+				if (labelLength == 0 || labelLength > 63 || domain.charAt(labelStart) == '-' || domain.charAt(i - 1) == '-') {
+					return false;
+				}
+				labelStart = i + 1;
+			} else if (!isLetter(c) && !(c >= '0' && c <= '9') && c != '-') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Characters outside of ASCII count as letters, like in the grammar for {@link EmailAddressCriteria#ALLOW_UTF8} (U-labels).
+	 */
+	private static boolean isLetter(final char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c >= 0x80;
+	}
+
+	static boolean isAscii(@NotNull final CharSequence s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Checks to see if the specified string is a valid email address according to the RFC 2822 specification, which is remarkably squirrely. See doc for this
 	 * class: 2822 not fully implemented, but probably close enough for almost any needs. <b>Note that things like spaces in addresses ("bob @hi.com") are
@@ -178,6 +636,6 @@ public final class EmailAddressValidator {
 	 * @return true if the given email text is valid according to RFC 2822, false otherwise.
 	 */
 	private static boolean isValidMailbox(@Nullable final String email, @NotNull final Dragons dragons) {
-		return (email != null) && dragons.MAILBOX_PATTERN.matcher(email).matches();
+		return (email != null) && dragons.getMailboxAutomaton().matches(email);
 	}
 }
\ No newline at end of file
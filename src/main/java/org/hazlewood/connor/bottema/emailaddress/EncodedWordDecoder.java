@@ -0,0 +1,274 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decodes RFC 2047 encoded-words (<code>=?charset?Q?...?=</code> and <code>=?charset?B?...?=</code>) in personal names, with the same result as
+ * <code>MimeUtility.decodeText</code> for well-formed input, but without its per-call allocations: text without <code>=?</code> is returned as is, and
+ * the encoded bytes and decoded characters go through buffers that are reused per thread, so decoding a name creates nothing but the resulting String.
+ * <p>
+ * Charsets are looked up once per name in a shared cache; the last one used is remembered per thread, so a run of names in the same charset doesn't even
+ * need the cache. Whitespace between encoded-words is dropped, and consecutive encoded-words in the same charset are decoded as one, so a multi-byte
+ * character split across two words comes out whole. Anything that isn't a well-formed encoded-word in a supported charset is left as it is.
+ */
+final class EncodedWordDecoder {
+
+	/**
+	 * The charsets by lower case name, or {@link #UNSUPPORTED}.
+	 */
+	private static final ConcurrentMap<String, Object> CHARSETS = new ConcurrentHashMap<>();
+	/**
+	 * Stands in for unsupported charset names in {@link #CHARSETS}, so they aren't looked up over and over.
+	 */
+	private static final Object UNSUPPORTED = new Object();
+
+	private static final ThreadLocal<EncodedWordDecoder> DECODERS = new ThreadLocal<EncodedWordDecoder>() {
+		@Override
+		protected EncodedWordDecoder initialValue() {
+			return new EncodedWordDecoder();
+		}
+	};
+
+	private static final byte[] BASE64 = new byte[128];
+
+	static {
+		Arrays.fill(BASE64, (byte) -1);
+		final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		for (int i = 0; i < alphabet.length(); i++) {
+			BASE64[alphabet.charAt(i)] = (byte) i;
+		}
+	}
+
+	@NotNull
+	private final StringBuilder out = new StringBuilder();
+	@NotNull
+	private ByteBuffer bytes = ByteBuffer.allocate(64);
+	@NotNull
+	private CharBuffer chars = CharBuffer.allocate(64);
+	@Nullable
+	private String lastCharsetName;
+	@Nullable
+	private CharsetDecoder lastDecoder;
+
+	/**
+	 * The charset of the bytes in {@link #bytes} still to be decoded, if any.
+	 */
+	@Nullable
+	private CharsetDecoder pending;
+
+	private EncodedWordDecoder() {
+	}
+
+	/**
+	 * @return The given text with its encoded-words decoded; the given instance itself if there are none.
+	 */
+	@Nullable
+	static String decode(@Nullable final String text) {
+		if (text == null || !text.contains("=?")) {
+			return text;
+		}
+		return DECODERS.get().decodeText(text);
+	}
+
+	@NotNull
+	private String decodeText(@NotNull final String text) {
+		out.setLength(0);
+		pending = null;
+		int copied = 0;
+		int pos = text.indexOf("=?");
+		while (pos >= 0) {
+			final int end = decodeWord(text, pos, copied);
+			if (end > 0) {
+				copied = end;
+				pos = text.indexOf("=?", end);
+			} else {
+				pos = text.indexOf("=?", pos + 2);
+			}
+		}
+		flush();
+		out.append(text, copied, text.length());
+		return out.toString();
+	}
+
+	/**
+	 * Decodes the encoded-word at the given position, if it is one, after the text from <code>copied</code> up to it.
+	 *
+	 * @return The end of the encoded-word, or -1 if there isn't one at the given position.
+	 */
+	private int decodeWord(@NotNull final String text, final int start, final int copied) {
+		final int charsetEnd = text.indexOf('?', start + 2);
+		if (charsetEnd < 0 || charsetEnd + 2 >= text.length() || text.charAt(charsetEnd + 2) != '?') {
+			return -1;
+		}
+		final char encoding = Character.toUpperCase(text.charAt(charsetEnd + 1));
+		final int textStart = charsetEnd + 3;
+		final int textEnd = text.indexOf("?=", textStart);
+		if ((encoding != 'Q' && encoding != 'B') || textEnd < 0 || containsWhitespace(text, start, textEnd)) {
+			return -1;
+		}
+		final CharsetDecoder decoder = getDecoder(text, start + 2, charsetEnd);
+		if (decoder == null) {
+			return -1;
+		}
+		// whitespace between two encoded-words is dropped (copied is only past the start after an encoded-word)
+		final boolean adjacent = copied > 0 && isWhitespace(text, copied, start);
+		if (pending != null && (pending != decoder || !adjacent)) {
+			flush();
+		}
+		// bytes.position() is where the bytes of this word start, after those of any previous word in the same charset
+		final int mark = bytes.position();
+		if (!(encoding == 'Q' ? decodeQ(text, textStart, textEnd) : decodeB(text, textStart, textEnd))) {
+			bytes.position(mark);
+			return -1;
+		}
+		if (!adjacent) {
+			out.append(text, copied, start);
+		}
+		pending = decoder;
+		return textEnd + 2;
+	}
+
+	/**
+	 * Decodes the pending bytes into {@link #out}.
+	 */
+	private void flush() {
+		if (pending == null) {
+			return;
+		}
+		bytes.flip();
+		final int maxChars = (int) Math.ceil(bytes.remaining() * (double) pending.maxCharsPerByte()) + 1;
+		if (chars.capacity() < maxChars) {
+			chars = CharBuffer.allocate(Math.max(maxChars, chars.capacity() * 2));
+		}
+		chars.clear();
+		pending.reset();
+		pending.decode(bytes, chars, true);
+		pending.flush(chars);
+		chars.flip();
+		out.append(chars);
+		bytes.clear();
+		pending = null;
+	}
+
+	private boolean decodeQ(@NotNull final String text, final int from, final int to) {
+		for (int i = from; i < to; i++) {
+			final char c = text.charAt(i);
+			if (c == '_') {
+				put((byte) ' ');
+			} else if (c == '=') {
+				final int high = i + 2 < to ? Character.digit(text.charAt(i + 1), 16) : -1;
+				final int low = high >= 0 ? Character.digit(text.charAt(i + 2), 16) : -1;
+				if (low < 0) {
+					return false;
+				}
+				put((byte) (high << 4 | low));
+				i += 2;
+			} else if (c < 0x80) {
+				put((byte) c);
+			} else {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean decodeB(@NotNull final String text, final int from, final int to) {
+		int bits = 0;
+		int bitCount = 0;
+		for (int i = from; i < to; i++) {
+			final char c = text.charAt(i);
+			if (c == '=') {
+				break;
+			}
+			final int value = c < 0x80 ? BASE64[c] : -1;
+			if (value < 0) {
+				return false;
+			}
+			bits = bits << 6 | value;
+			bitCount += 6;
+			if (bitCount >= 8) {
+				bitCount -= 8;
+				put((byte) (bits >> bitCount));
+			}
+		}
+		return true;
+	}
+
+	private void put(final byte b) {
+		if (!bytes.hasRemaining()) {
+			final ByteBuffer larger = ByteBuffer.allocate(bytes.capacity() * 2);
+			bytes.flip();
+			larger.put(bytes);
+			bytes = larger;
+		}
+		bytes.put(b);
+	}
+
+	/**
+	 * @return A decoder for the charset named in the given part of the text (ignoring any RFC 2231 language suffix), or null if it isn't supported.
+	 */
+	@Nullable
+	private CharsetDecoder getDecoder(@NotNull final String text, final int from, final int to) {
+		final int star = text.indexOf('*', from);
+		final int nameEnd = star >= 0 && star < to ? star : to;
+		final int length = nameEnd - from;
+		if (lastDecoder != null && lastCharsetName != null && lastCharsetName.length() == length
+				&& text.regionMatches(true, from, lastCharsetName, 0, length)) {
+			return lastDecoder;
+		}
+		final String name = text.substring(from, nameEnd).toLowerCase(Locale.ROOT);
+		Object charset = CHARSETS.get(name);
+		if (charset == null) {
+			charset = lookupCharset(name);
+			CHARSETS.putIfAbsent(name, charset);
+		}
+		if (charset == UNSUPPORTED) {
+			return null;
+		}
+		flush();
+		lastCharsetName = name;
+		lastDecoder = ((Charset) charset).newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		return lastDecoder;
+	}
+
+	/**
+	 * @return The charset with the given name, or {@link #UNSUPPORTED}.
+	 */
+	@NotNull
+	private static Object lookupCharset(@NotNull final String name) {
+		try {
+			return Charset.forName(name);
+		} catch (IllegalArgumentException e) {
+			return UNSUPPORTED;
+		}
+	}
+
+	private static boolean containsWhitespace(@NotNull final String text, final int from, final int to) {
+		for (int i = from; i < to; i++) {
+			if (Character.isWhitespace(text.charAt(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isWhitespace(@NotNull final String text, final int from, final int to) {
+		for (int i = from; i < to; i++) {
+			if (!Character.isWhitespace(text.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,789 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An automaton for one of the patterns in {@link Dragons}, which matches the same language as the regex, but one character at a time, without
+ * backtracking and without recursion (so no StackOverflowError on long input either).
+ * <p>
+ * The pattern string is compiled into a Thompson NFA. For plain matching, DFA states are built from it lazily (only the states actually reached by the
+ * input) and cached, so after a short warm-up matching costs a table lookup per character and doesn't allocate anything. For the capturing groups, see
+ * {@link AutomatonMatcher}, which runs the NFA itself.
+ * <p>
+ * Only the regex syntax used by the grammar is supported: literals, escapes, character classes, capturing, non-capturing and atomic groups, alternation and
+ * the greedy, reluctant and possessive quantifiers. Atomic groups are treated as non-capturing groups and possessive quantifiers as greedy ones, which only
+ * gives the same result because the grammar uses them only where the way they match can't change the outcome (see {@link Dragons}).
+ * <p>
+ * This class is thread-safe: new DFA states are created under a lock, and the states themselves are safely published through their final fields.
+ */
+final class GrammarAutomaton {
+
+	/**
+	 * A DFA state; the dead state is the one from which no input can lead to a match anymore.
+	 */
+	static final class State {
+		final boolean accepting;
+		final boolean dead;
+		/**
+		 * The sorted NFA states (character and match states only) this DFA state consists of.
+		 */
+		@NotNull
+		final int[] nfaStates;
+		/**
+		 * The next state per character class, filled in lazily.
+		 */
+		@NotNull
+		final State[] next;
+
+		private State(@NotNull final int[] nfaStates, final boolean accepting, final int classCount) {
+			this.nfaStates = nfaStates;
+			this.accepting = accepting;
+			this.dead = nfaStates.length == 0;
+			this.next = new State[classCount];
+		}
+	}
+
+	/**
+	 * NFA state that reads a character of its character set.
+	 */
+	static final int KIND_CHAR = 0;
+	/**
+	 * NFA state that continues with each of its next states, in order of preference.
+	 */
+	static final int KIND_SPLIT = 1;
+	/**
+	 * The final NFA state.
+	 */
+	static final int KIND_MATCH = 2;
+	/**
+	 * NFA state that records the current position in its capture slot: <code>2n</code> for the start of group <code>n</code>, <code>2n+1</code> for its
+	 * end.
+	 */
+	static final int KIND_SAVE = 3;
+
+	/**
+	 * The bit in {@link #getFirstClasses(int)} for the match state.
+	 */
+	static final long MATCH_BIT = 1L << 63;
+
+	private static final int OTHER_CHAR = 128;
+
+	/*
+	 * The NFA: per state its kind, for character states the character set, for save states the slot, for both the next state, and for split states the
+	 * next states.
+	 */
+	private int[] kinds = new int[1024];
+	private int[] arguments = new int[1024];
+	private int[] nexts = new int[1024];
+	private int[][] splits = new int[1024][];
+	private int nfaSize;
+	private final int nfaStart;
+	private int groupCount;
+	@NotNull
+	private final List<BitSet> sets = new ArrayList<>();
+
+	/**
+	 * The character class of each ASCII character, and of all other characters at index {@value #OTHER_CHAR}.
+	 */
+	@NotNull
+	private final int[] classOf = new int[OTHER_CHAR + 1];
+	private int classCount;
+	/**
+	 * For each character set, whether it contains the characters of each class.
+	 */
+	@NotNull
+	private final boolean[][] setContainsClass;
+	/**
+	 * Per NFA state, a bit for each character class read by the character states reachable from it through split and save states, and {@link #MATCH_BIT}
+	 * if the match state is reachable that way; all bits if there are too many classes for a long.
+	 */
+	@NotNull
+	private final long[] firstClasses;
+	/**
+	 * The working memory for the matchers of this automaton, per thread.
+	 */
+	@NotNull
+	private final ThreadLocal<AutomatonMatcher.Scratch> scratch = new ThreadLocal<AutomatonMatcher.Scratch>() {
+		@Override
+		protected AutomatonMatcher.Scratch initialValue() {
+			return new AutomatonMatcher.Scratch(GrammarAutomaton.this);
+		}
+	};
+
+	@NotNull
+	private final State start;
+	@NotNull
+	private final Map<Key, State> states = new HashMap<>();
+
+	/*
+	 * Scratch space for the epsilon closures, only used under the lock.
+	 */
+	@NotNull
+	private final int[] marks;
+	private int mark;
+	@NotNull
+	private int[] stack;
+
+	GrammarAutomaton(@NotNull final String regex) {
+		final Parser parser = new Parser(regex);
+		final Node root = parser.parseAlternation();
+		if (parser.pos != regex.length()) {
+			throw new IllegalArgumentException("unsupported regex syntax at " + parser.pos + ": " + regex);
+		}
+		final int match = newState(KIND_MATCH);
+		nfaStart = compile(root, match);
+
+		computeCharacterClasses();
+		setContainsClass = new boolean[sets.size()][classCount];
+		for (int set = 0; set < sets.size(); set++) {
+			for (int c = 0; c <= OTHER_CHAR; c++) {
+				if (sets.get(set).get(c)) {
+					setContainsClass[set][classOf[c]] = true;
+				}
+			}
+		}
+
+		firstClasses = computeFirstClasses();
+
+		marks = new int[nfaSize];
+		stack = new int[nfaSize];
+		synchronized (this) {
+			start = state(closure(new int[] { nfaStart }, 1));
+		}
+	}
+
+	/**
+	 * @return A new matcher for this automaton, see {@link AutomatonMatcher}.
+	 */
+	@NotNull
+	AutomatonMatcher matcher(@NotNull final CharSequence input) {
+		return new AutomatonMatcher(this, input);
+	}
+
+	/**
+	 * @return The working memory for the matchers of this automaton on the current thread.
+	 */
+	@NotNull
+	AutomatonMatcher.Scratch getScratch() {
+		return scratch.get();
+	}
+
+	@NotNull
+	State getStart() {
+		return start;
+	}
+
+	/**
+	 * @return The state after reading the given character in the given state. Counts as a step for {@link AutomatonMatcher#getSteps()}, and so does each
+	 * NFA state looked at if the transition has to be computed.
+	 */
+	@NotNull
+	State step(@NotNull final State state, final char c) {
+		if (AutomatonMatcher.COUNT_STEPS) {
+			AutomatonMatcher.addSteps(1);
+		}
+		final int cls = classOf[c < OTHER_CHAR ? c : OTHER_CHAR];
+		final State next = state.next[cls];
+		return next != null ? next : computeNext(state, cls);
+	}
+
+	/**
+	 * @return Whether the whole given input matches.
+	 */
+	boolean matches(@NotNull final CharSequence input) {
+		return matches(input, 0, input.length());
+	}
+
+	/**
+	 * @return Whether the given part of the input matches.
+	 */
+	boolean matches(@NotNull final CharSequence input, final int from, final int to) {
+		State state = start;
+		for (int i = from; i < to && !state.dead; i++) {
+			state = step(state, input.charAt(i));
+		}
+		return state.accepting;
+	}
+
+	/**
+	 * @return Whether the given part of the buffer (absolute positions), taken as UTF-8, matches. All non-ASCII characters are in the same character class,
+	 * so rather than decoding them, each is read as a non-ASCII character per UTF-16 code unit it would take in a String (two outside of the BMP), so the
+	 * grammar's length limits count the same as for the String. The encoding isn't checked: a byte that doesn't start or continue a sequence is read as a
+	 * character of its own. Without {@link EmailAddressCriteria#ALLOW_UTF8}, non-ASCII characters don't match anything.
+	 */
+	boolean matches(@NotNull final ByteBuffer input, final int from, final int to) {
+		State state = start;
+		int i = from;
+		while (i < to && !state.dead) {
+			final int b = input.get(i++) & 0xFF;
+			if (b < 0x80) {
+				state = step(state, (char) b);
+			} else {
+				final int continuations = b >= 0xF8 ? 0 : b >= 0xF0 ? 3 : b >= 0xE0 ? 2 : b >= 0xC0 ? 1 : 0;
+				int read = 0;
+				while (read < continuations && i < to && (input.get(i) & 0xC0) == 0x80) {
+					i++;
+					read++;
+				}
+				state = step(state, (char) OTHER_CHAR);
+				if (read == 3 && !state.dead) {
+					state = step(state, (char) OTHER_CHAR);
+				}
+			}
+		}
+		return state.accepting;
+	}
+
+	/**
+	 * @return Whether some prefix of the given part of the input matches.
+	 */
+	boolean matchesPrefix(@NotNull final CharSequence input, final int from, final int to) {
+		State state = start;
+		for (int i = from; i < to && !state.accepting && !state.dead; i++) {
+			state = step(state, input.charAt(i));
+		}
+		return state.accepting;
+	}
+
+	/**
+	 * @return The number of DFA states built so far.
+	 */
+	synchronized int getStateCount() {
+		return states.size();
+	}
+
+	/*
+	 * Access to the NFA, for AutomatonMatcher.
+	 */
+
+	int getGroupCount() {
+		return groupCount;
+	}
+
+	int getNfaSize() {
+		return nfaSize;
+	}
+
+	int getNfaStart() {
+		return nfaStart;
+	}
+
+	int getKind(final int nfaState) {
+		return kinds[nfaState];
+	}
+
+	/**
+	 * @return For a character or save state, the next state.
+	 */
+	int getNext(final int nfaState) {
+		return nexts[nfaState];
+	}
+
+	/**
+	 * @return For a split state, the next states in order of preference.
+	 */
+	@NotNull
+	int[] getSplit(final int nfaState) {
+		return splits[nfaState];
+	}
+
+	/**
+	 * @return For a save state, the capture slot.
+	 */
+	int getSlot(final int nfaState) {
+		return arguments[nfaState];
+	}
+
+	/**
+	 * @return For a character state, whether it reads the given character.
+	 */
+	boolean reads(final int nfaState, final char c) {
+		return setContainsClass[arguments[nfaState]][classOf[c < OTHER_CHAR ? c : OTHER_CHAR]];
+	}
+
+	/**
+	 * @return The bit for the class of the given character in {@link #getFirstClasses(int)}.
+	 */
+	long classBit(final char c) {
+		return 1L << classOf[c < OTHER_CHAR ? c : OTHER_CHAR];
+	}
+
+	/**
+	 * @return The character classes that can be read first from the given state, and whether the match state can be reached without reading anything, as
+	 * {@link #classBit(char)} bits and {@link #MATCH_BIT}; so if the class of the next character isn't among them, following the state is pointless.
+	 */
+	long getFirstClasses(final int nfaState) {
+		return firstClasses[nfaState];
+	}
+
+	@NotNull
+	private synchronized State computeNext(@NotNull final State state, final int cls) {
+		State next = state.next[cls];
+		if (next == null) {
+			if (AutomatonMatcher.COUNT_STEPS) {
+				AutomatonMatcher.addSteps(state.nfaStates.length);
+			}
+			final int[] targets = new int[state.nfaStates.length];
+			int count = 0;
+			for (int nfaState : state.nfaStates) {
+				if (kinds[nfaState] == KIND_CHAR && setContainsClass[arguments[nfaState]][cls]) {
+					targets[count++] = nexts[nfaState];
+				}
+			}
+			next = state(closure(targets, count));
+			state.next[cls] = next;
+		}
+		return next;
+	}
+
+	/**
+	 * @return The existing or new DFA state for the given NFA states.
+	 */
+	@NotNull
+	private State state(@NotNull final int[] nfaStates) {
+		final Key key = new Key(nfaStates);
+		State state = states.get(key);
+		if (state == null) {
+			boolean accepting = false;
+			for (int nfaState : nfaStates) {
+				accepting |= kinds[nfaState] == KIND_MATCH;
+			}
+			state = new State(nfaStates, accepting, classCount);
+			if (state.dead) {
+				Arrays.fill(state.next, state);
+			}
+			states.put(key, state);
+		}
+		return state;
+	}
+
+	/**
+	 * @return The sorted character and match states reachable from the given states through split and save states only.
+	 */
+	@NotNull
+	private int[] closure(@NotNull final int[] from, final int count) {
+		mark++;
+		int sp = 0;
+		int[] result = new int[16];
+		int resultSize = 0;
+		for (int i = 0; i < count; i++) {
+			sp = push(sp, from[i]);
+		}
+		while (sp > 0) {
+			final int s = stack[--sp];
+			if (marks[s] == mark) {
+				continue;
+			}
+			marks[s] = mark;
+			if (kinds[s] == KIND_SAVE) {
+				sp = push(sp, nexts[s]);
+			} else if (kinds[s] == KIND_SPLIT) {
+				for (int target : splits[s]) {
+					sp = push(sp, target);
+				}
+			} else {
+				if (resultSize == result.length) {
+					result = Arrays.copyOf(result, resultSize * 2);
+				}
+				result[resultSize++] = s;
+			}
+		}
+		result = Arrays.copyOf(result, resultSize);
+		Arrays.sort(result);
+		return result;
+	}
+
+	private int push(final int sp, final int nfaState) {
+		if (sp == stack.length) {
+			stack = Arrays.copyOf(stack, sp * 2);
+		}
+		stack[sp] = nfaState;
+		return sp + 1;
+	}
+
+	/**
+	 * Groups the characters that are in exactly the same character sets; the DFA transitions only need to distinguish those classes.
+	 */
+	private void computeCharacterClasses() {
+		final Map<BitSet, Integer> signatures = new HashMap<>();
+		for (int c = 0; c <= OTHER_CHAR; c++) {
+			final BitSet signature = new BitSet(sets.size());
+			for (int set = 0; set < sets.size(); set++) {
+				if (sets.get(set).get(c)) {
+					signature.set(set);
+				}
+			}
+			Integer cls = signatures.get(signature);
+			if (cls == null) {
+				cls = classCount++;
+				signatures.put(signature, cls);
+			}
+			classOf[c] = cls;
+		}
+	}
+
+	/**
+	 * Works out {@link #firstClasses}, by spreading the bits of the character and match states back through the split and save states until nothing
+	 * changes; as the NFA is built back to front, most states come after the states they lead to, so that takes only a few rounds.
+	 */
+	@NotNull
+	private long[] computeFirstClasses() {
+		final long[] first = new long[nfaSize];
+		if (classCount >= 63) {
+			Arrays.fill(first, -1L);
+			return first;
+		}
+		for (int s = 0; s < nfaSize; s++) {
+			if (kinds[s] == KIND_CHAR) {
+				for (int cls = 0; cls < classCount; cls++) {
+					if (setContainsClass[arguments[s]][cls]) {
+						first[s] |= 1L << cls;
+					}
+				}
+			} else if (kinds[s] == KIND_MATCH) {
+				first[s] = MATCH_BIT;
+			}
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int s = 0; s < nfaSize; s++) {
+				long bits = first[s];
+				if (kinds[s] == KIND_SAVE) {
+					bits |= first[nexts[s]];
+				} else if (kinds[s] == KIND_SPLIT) {
+					for (int target : splits[s]) {
+						bits |= first[target];
+					}
+				}
+				if (bits != first[s]) {
+					first[s] = bits;
+					changed = true;
+				}
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * Compiles the given node into NFA states leading to the given next state, building the NFA back to front.
+	 *
+	 * @return The first state of the compiled node.
+	 */
+	private int compile(@NotNull final Node node, final int next) {
+		switch (node.type) {
+			case Node.SET:
+				return newState(KIND_CHAR, node.argument, next);
+			case Node.CONCAT:
+				int cont = next;
+				for (int i = node.children.size() - 1; i >= 0; i--) {
+					cont = compile(node.children.get(i), cont);
+				}
+				return cont;
+			case Node.ALTERNATION:
+				final int[] alternatives = new int[node.children.size()];
+				for (int i = 0; i < alternatives.length; i++) {
+					alternatives[i] = compile(node.children.get(i), next);
+				}
+				return newSplit(alternatives);
+			case Node.CAPTURE:
+				final int end = newState(KIND_SAVE, 2 * node.argument + 1, next);
+				return newState(KIND_SAVE, 2 * node.argument, compile(node.children.get(0), end));
+			default:
+				return compileRepeat(node, next);
+		}
+	}
+
+	private int compileRepeat(@NotNull final Node node, final int next) {
+		final Node child = node.children.get(0);
+		int cont;
+		if (node.max == Node.UNBOUNDED) {
+			final int loop = newSplit(new int[2]);
+			final int body = compile(child, loop);
+			splits[loop][0] = node.greedy ? body : next;
+			splits[loop][1] = node.greedy ? next : body;
+			cont = loop;
+		} else {
+			cont = next;
+			for (int i = node.min; i < node.max; i++) {
+				final int body = compile(child, cont);
+				cont = newSplit(node.greedy ? new int[] { body, next } : new int[] { next, body });
+			}
+		}
+		for (int i = 0; i < node.min; i++) {
+			cont = compile(child, cont);
+		}
+		return cont;
+	}
+
+	private int newSplit(@NotNull final int[] targets) {
+		final int s = newState(KIND_SPLIT);
+		splits[s] = targets;
+		return s;
+	}
+
+	private int newState(final int kind, final int argument, final int next) {
+		final int s = newState(kind);
+		arguments[s] = argument;
+		nexts[s] = next;
+		return s;
+	}
+
+	private int newState(final int kind) {
+		if (nfaSize == kinds.length) {
+			kinds = Arrays.copyOf(kinds, nfaSize * 2);
+			arguments = Arrays.copyOf(arguments, nfaSize * 2);
+			nexts = Arrays.copyOf(nexts, nfaSize * 2);
+			splits = Arrays.copyOf(splits, nfaSize * 2);
+		}
+		kinds[nfaSize] = kind;
+		return nfaSize++;
+	}
+
+	private int addSet(@NotNull final BitSet set) {
+		sets.add(set);
+		return sets.size() - 1;
+	}
+
+	/**
+	 * A node of the parsed regex.
+	 */
+	private static final class Node {
+		static final int SET = 0;
+		static final int CONCAT = 1;
+		static final int ALTERNATION = 2;
+		static final int REPEAT = 3;
+		static final int CAPTURE = 4;
+		static final int UNBOUNDED = -1;
+
+		final int type;
+		@NotNull
+		final List<Node> children = new ArrayList<>();
+		/**
+		 * The character set of a set node, the group number of a capture node.
+		 */
+		int argument;
+		int min;
+		int max;
+		boolean greedy = true;
+
+		Node(final int type) {
+			this.type = type;
+		}
+	}
+
+	/**
+	 * Parses the regex subset described in the class documentation.
+	 */
+	private final class Parser {
+		@NotNull
+		private final String regex;
+		private int pos;
+
+		Parser(@NotNull final String regex) {
+			this.regex = regex;
+		}
+
+		@NotNull
+		Node parseAlternation() {
+			final Node alternation = new Node(Node.ALTERNATION);
+			alternation.children.add(parseConcatenation());
+			while (pos < regex.length() && regex.charAt(pos) == '|') {
+				pos++;
+				alternation.children.add(parseConcatenation());
+			}
+			return alternation.children.size() == 1 ? alternation.children.get(0) : alternation;
+		}
+
+		@NotNull
+		private Node parseConcatenation() {
+			final Node concatenation = new Node(Node.CONCAT);
+			while (pos < regex.length() && regex.charAt(pos) != '|' && regex.charAt(pos) != ')') {
+				concatenation.children.add(parseQuantified(parseAtom()));
+			}
+			return concatenation;
+		}
+
+		@NotNull
+		private Node parseAtom() {
+			final char c = regex.charAt(pos++);
+			switch (c) {
+				case '(':
+					if (regex.startsWith("?:", pos) || regex.startsWith("?>", pos)) {
+						pos += 2;
+						final Node group = parseAlternation();
+						expect(')');
+						return group;
+					} else if (pos < regex.length() && regex.charAt(pos) == '?') {
+						throw unsupported();
+					}
+					final Node capture = new Node(Node.CAPTURE);
+					capture.argument = ++groupCount;
+					capture.children.add(parseAlternation());
+					expect(')');
+					return capture;
+				case '[':
+					return setNode(parseClass());
+				case '\\':
+					return setNode(single(parseEscape()));
+				case '.':
+				case '^':
+				case '$':
+				case '*':
+				case '+':
+				case '?':
+				case '{':
+					throw unsupported();
+				default:
+					return setNode(single(c));
+			}
+		}
+
+		@NotNull
+		private Node parseQuantified(@NotNull final Node atom) {
+			Node result = atom;
+			while (pos < regex.length()) {
+				final char c = regex.charAt(pos);
+				final Node repeat = new Node(Node.REPEAT);
+				if (c == '*') {
+					repeat.min = 0;
+					repeat.max = Node.UNBOUNDED;
+				} else if (c == '+') {
+					repeat.min = 1;
+					repeat.max = Node.UNBOUNDED;
+				} else if (c == '?') {
+					repeat.min = 0;
+					repeat.max = 1;
+				} else if (c == '{') {
+					final int close = regex.indexOf('}', pos);
+					final String[] bounds = regex.substring(pos + 1, close).split(",", -1);
+					repeat.min = Integer.parseInt(bounds[0]);
+					repeat.max = bounds.length == 1 ? repeat.min : bounds[1].isEmpty() ? Node.UNBOUNDED : Integer.parseInt(bounds[1]);
+					pos = close;
+				} else {
+					break;
+				}
+				pos++;
+				if (pos < regex.length() && regex.charAt(pos) == '?') {
+					repeat.greedy = false;
+					pos++;
+				} else if (pos < regex.length() && regex.charAt(pos) == '+') {
+					// possessive, which like the atomic groups doesn't change the outcome in the grammar
+					pos++;
+				}
+				repeat.children.add(result);
+				result = repeat;
+			}
+			return result;
+		}
+
+		@NotNull
+		private BitSet parseClass() {
+			final BitSet set = new BitSet(OTHER_CHAR + 1);
+			if (pos < regex.length() && regex.charAt(pos) == '^') {
+				throw unsupported();
+			}
+			while (regex.charAt(pos) != ']') {
+				final char from = classChar();
+				if (regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+					pos++;
+					final char to = classChar();
+					set.set(Math.min(from, OTHER_CHAR), Math.min(to, OTHER_CHAR) + 1);
+				} else {
+					set.set(Math.min(from, OTHER_CHAR));
+				}
+			}
+			pos++;
+			return set;
+		}
+
+		private char classChar() {
+			final char c = regex.charAt(pos++);
+			if (c == '[') {
+				throw unsupported();
+			}
+			return c == '\\' ? parseEscape() : c;
+		}
+
+		private char parseEscape() {
+			final char c = regex.charAt(pos++);
+			switch (c) {
+				case 't':
+					return '\t';
+				case 'r':
+					return '\r';
+				case 'n':
+					return '\n';
+				case 'x':
+					pos += 2;
+					return (char) Integer.parseInt(regex.substring(pos - 2, pos), 16);
+				default:
+					if (Character.isLetterOrDigit(c)) {
+						throw unsupported();
+					}
+					return c;
+			}
+		}
+
+		/**
+		 * All characters outside of ASCII are in the same character class (see {@link #classOf}), as the grammar only ever allows all of them or none.
+		 */
+		@NotNull
+		private BitSet single(final char c) {
+			final BitSet set = new BitSet(OTHER_CHAR + 1);
+			set.set(Math.min(c, OTHER_CHAR));
+			return set;
+		}
+
+		@NotNull
+		private Node setNode(@NotNull final BitSet set) {
+			final Node node = new Node(Node.SET);
+			node.argument = addSet(set);
+			return node;
+		}
+
+		private void expect(final char c) {
+			if (pos >= regex.length() || regex.charAt(pos) != c) {
+				throw unsupported();
+			}
+			pos++;
+		}
+
+		@NotNull
+		private IllegalArgumentException unsupported() {
+			return new IllegalArgumentException("unsupported regex syntax at " + pos + ": " + regex);
+		}
+	}
+
+	/**
+	 * A set of NFA states as hash key.
+	 */
+	private static final class Key {
+		@NotNull
+		private final int[] nfaStates;
+		private final int hash;
+
+		Key(@NotNull final int[] nfaStates) {
+			this.nfaStates = nfaStates;
+			this.hash = Arrays.hashCode(nfaStates);
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			return o instanceof Key && Arrays.equals(nfaStates, ((Key) o).nfaStates);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
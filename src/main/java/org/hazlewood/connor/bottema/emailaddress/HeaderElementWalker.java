@@ -0,0 +1,148 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.EnumSet;
+
+/**
+ * Decides what to do with each of the elements a {@link HeaderLexer} splits an address header into, for the extractHeaderAddresses methods of {@link
+ * EmailAddressParser} and {@link IncrementalHeaderParser}, so both extract the same addresses from a header, whether it comes in one piece or in chunks:
+ * <ul>
+ * <li>a group prefix starts a group, in which an invalid first element gets the whole group skipped;</li>
+ * <li>anything between the end of a group and the next comma is ignored, and so is an invalid element right after an empty group;</li>
+ * <li>any other invalid element (including an empty one) ends the extraction.</li>
+ * </ul>
+ * Each element is matched against just one pattern, told by the separator that ends it: a group prefix if it ends with a colon, a mailbox otherwise. As
+ * the parts of a group prefix aren't needed, it is only run through the automaton, without capturing.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class HeaderElementWalker {
+
+	/**
+	 * The element is a mailbox, as matched by the matcher given to {@link #next(CharSequence, int, int, int, AutomatonMatcher)}.
+	 */
+	static final int MAILBOX = 0;
+	/**
+	 * The element is a group prefix, or it is skipped.
+	 */
+	static final int NO_MAILBOX = 1;
+	/**
+	 * The element is invalid, which ends the extraction.
+	 */
+	static final int STOP = 2;
+
+	@NotNull
+	private final EnumSet<EmailAddressCriteria> criteria;
+	@NotNull
+	private final GrammarAutomaton mailbox;
+	@NotNull
+	private final GrammarAutomaton groupPrefix;
+
+	/**
+	 * The separator to skip the elements up to (and including): ELEMENT_END after a group, GROUP_END for the rest of an invalid group, or CONTENT if not
+	 * skipping.
+	 */
+	private int skipUntil = HeaderLexer.CONTENT;
+	/**
+	 * Whether the group prefix was the previous element, as an invalid first element of a group gets the group skipped rather than ending extraction.
+	 */
+	private boolean groupStart;
+	/**
+	 * Whether an empty group (with nothing between the colon and semicolon) was just closed, after which an invalid element is skipped as well.
+	 */
+	private boolean groupEnd;
+	@Nullable
+	private String group;
+	@Nullable
+	private String mailboxGroup;
+
+	HeaderElementWalker(@NotNull final EnumSet<EmailAddressCriteria> criteria) {
+		this.criteria = criteria;
+		final Dragons dragons = Dragons.fromCriteria(criteria);
+		this.mailbox = dragons.getMailboxAutomaton();
+		this.groupPrefix = dragons.getAutomaton(dragons.GROUP_PREFIX_PATTERN);
+	}
+
+	/**
+	 * @param input     Holds the element, followed by its separator if that is a colon.
+	 * @param start     The start of the element in the input.
+	 * @param end       The end of the element in the input.
+	 * @param separator The {@link HeaderLexer} separator that ended the element, or {@link HeaderLexer#CONTENT} if the header did.
+	 * @param m         A mailbox matcher on the input, which has matched the element if {@link #MAILBOX} is returned.
+	 * @return {@link #MAILBOX}, {@link #NO_MAILBOX} or {@link #STOP}.
+	 */
+	int next(@NotNull final CharSequence input, final int start, final int end, final int separator, @NotNull final AutomatonMatcher m) {
+		final boolean afterEmptyGroup = groupEnd;
+		groupEnd = false;
+		if (skipUntil != HeaderLexer.CONTENT) {
+			if (separator == skipUntil) {
+				skipUntil = separator == HeaderLexer.GROUP_END ? HeaderLexer.ELEMENT_END : HeaderLexer.CONTENT;
+				group = null;
+			}
+		} else if (separator == HeaderLexer.GROUP_START) {
+			// the colon is part of the group prefix
+			if (groupPrefix.matches(input, start, end + 1)) {
+				group = EmailAddressParser.cleanupPersonalString(input.subSequence(start, end).toString(), criteria);
+				groupStart = true;
+			} else if ((groupStart || afterEmptyGroup) && !mailbox.matchesPrefix(input, start, end)) {
+				skipUntil = groupStart ? HeaderLexer.GROUP_END : HeaderLexer.ELEMENT_END;
+				group = null;
+				groupStart = false;
+			} else {
+				return STOP;
+			}
+		} else if (start == end && separator == HeaderLexer.GROUP_END) {
+			group = null;
+			groupStart = false;
+			groupEnd = true;
+		} else if (m.region(start, end).lookingAt()) {
+			if (m.end() != end) {
+				return STOP;
+			}
+			mailboxGroup = group;
+			groupStart = false;
+			if (separator == HeaderLexer.GROUP_END) {
+				// anything between the end of the group and the next comma is ignored
+				skipUntil = HeaderLexer.ELEMENT_END;
+				group = null;
+			}
+			return MAILBOX;
+		} else if (groupStart) {
+			// an invalid first element gets the whole group skipped
+			skipUntil = separator == HeaderLexer.GROUP_END ? HeaderLexer.ELEMENT_END : HeaderLexer.GROUP_END;
+			group = null;
+			groupStart = false;
+		} else if (afterEmptyGroup) {
+			skipUntil = separator == HeaderLexer.ELEMENT_END ? HeaderLexer.CONTENT : HeaderLexer.ELEMENT_END;
+		} else {
+			return STOP;
+		}
+		return NO_MAILBOX;
+	}
+
+	/**
+	 * @return Whether the next element will be skipped whatever it is, so it needn't be kept.
+	 */
+	boolean isSkipping() {
+		return skipUntil != HeaderLexer.CONTENT;
+	}
+
+	/**
+	 * @return The cleaned up name of the group the last {@link #MAILBOX} is part of (see {@link EmailAddressParser#cleanupPersonalString(String,
+	 * EnumSet)}), or null if it is not part of a group.
+	 */
+	@Nullable
+	String getMailboxGroup() {
+		return mailboxGroup;
+	}
+
+	void reset() {
+		skipUntil = HeaderLexer.CONTENT;
+		groupStart = false;
+		groupEnd = false;
+		group = null;
+		mailboxGroup = null;
+	}
+}
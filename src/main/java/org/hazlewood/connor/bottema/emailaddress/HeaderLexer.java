@@ -0,0 +1,143 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Splits an address header into its elements (mailboxes and group prefixes) one character at a time, by keeping track of just enough state to tell the
+ * separators (<code>,</code> <code>:</code> <code>;</code>) that end an element from those inside quoted strings, comments, domain literals and angle
+ * addresses. It doesn't validate anything; each element is still to be matched against the actual grammar in {@link Dragons}.
+ * <p>
+ * Nested comments aren't supported by the grammar, but they are tracked here anyway, so that a separator inside one doesn't split the element. A
+ * <code>[</code> only opens a domain literal right after an <code>@</code> (give or take whitespace and comments), as elsewhere it is just a character
+ * of a phrase (see {@link EmailAddressCriteria#ALLOW_SQUARE_BRACKETS_IN_A_TEXT}).
+ */
+final class HeaderLexer {
+
+	/**
+	 * The character is part of the current element.
+	 */
+	static final int CONTENT = 0;
+	/**
+	 * The character is a top level <code>,</code>, which ends the current element.
+	 */
+	static final int ELEMENT_END = 1;
+	/**
+	 * The character is a top level <code>:</code>, which ends the current element, being the group name.
+	 */
+	static final int GROUP_START = 2;
+	/**
+	 * The character is a top level <code>;</code>, which ends the current element and the group it is in.
+	 */
+	static final int GROUP_END = 3;
+
+	private static final int MODE_TOP = 0;
+	private static final int MODE_QUOTED_STRING = 1;
+	private static final int MODE_COMMENT = 2;
+	private static final int MODE_DOMAIN_LITERAL = 3;
+
+	private int mode = MODE_TOP;
+	private int commentDepth;
+	private boolean escaped;
+	private boolean inAngleAddr;
+	/**
+	 * Whether the last character at the top level, other than whitespace, was an <code>@</code>.
+	 */
+	private boolean afterAt;
+
+	/**
+	 * @return One of {@link #CONTENT}, {@link #ELEMENT_END}, {@link #GROUP_START} or {@link #GROUP_END}.
+	 */
+	int next(final char c) {
+		if (escaped) {
+			escaped = false;
+			return CONTENT;
+		}
+		switch (mode) {
+			case MODE_QUOTED_STRING:
+				if (c == '\\') {
+					escaped = true;
+				} else if (c == '"') {
+					mode = MODE_TOP;
+				}
+				return CONTENT;
+			case MODE_COMMENT:
+				if (c == '\\') {
+					escaped = true;
+				} else if (c == '(') {
+					commentDepth++;
+				} else if (c == ')' && --commentDepth == 0) {
+					mode = MODE_TOP;
+				}
+				return CONTENT;
+			case MODE_DOMAIN_LITERAL:
+				if (c == '\\') {
+					escaped = true;
+				} else if (c == ']') {
+					mode = MODE_TOP;
+				}
+				return CONTENT;
+			default:
+				if (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '(') {
+					if (c == '(') {
+						mode = MODE_COMMENT;
+						commentDepth = 1;
+					}
+					return CONTENT;
+				}
+				final boolean domainStart = afterAt;
+				afterAt = c == '@';
+				switch (c) {
+					case '"':
+						mode = MODE_QUOTED_STRING;
+						return CONTENT;
+					case '[':
+						if (domainStart) {
+							mode = MODE_DOMAIN_LITERAL;
+						}
+						return CONTENT;
+					case '<':
+						inAngleAddr = true;
+						return CONTENT;
+					case '>':
+						inAngleAddr = false;
+						return CONTENT;
+					case ',':
+						return inAngleAddr ? CONTENT : ELEMENT_END;
+					case ':':
+						return inAngleAddr ? CONTENT : GROUP_START;
+					case ';':
+						return inAngleAddr ? CONTENT : GROUP_END;
+					default:
+						return CONTENT;
+				}
+		}
+	}
+
+	/**
+	 * @return A description of the construct that is still open, i.e. that an element would be cut off in, or null if none is open.
+	 */
+	@Nullable
+	String getOpenConstruct() {
+		if (escaped) {
+			return "quoted-pair";
+		}
+		switch (mode) {
+			case MODE_QUOTED_STRING:
+				return "quoted-string";
+			case MODE_COMMENT:
+				return "comment";
+			case MODE_DOMAIN_LITERAL:
+				return "domain-literal";
+			default:
+				return inAngleAddr ? "angle-addr" : null;
+		}
+	}
+
+	void reset() {
+		mode = MODE_TOP;
+		commentDepth = 0;
+		escaped = false;
+		inAngleAddr = false;
+		afterAt = false;
+	}
+}
@@ -0,0 +1,66 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.IDN;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts internationalized domain names (U-labels) to their ASCII form (A-labels, e.g. <code>b&uuml;cher.de</code> becomes
+ * <code>xn--bcher-kva.de</code>) with {@link IDN#toASCII(String)}, for the domains of addresses validated with {@link EmailAddressCriteria#ALLOW_UTF8}.
+ * <p>
+ * The conversion (IDNA 2003 nameprep and punycode) creates quite a few objects per domain, while in bulk data the same domains come up over and over. So the
+ * results are cached, up to a fixed number of domains: when the cache is full, it is simply cleared, which is cheaper than keeping track of which domains
+ * were used least recently, and just as good for the few domains that make up most of the addresses. ASCII domains aren't converted (nor cached) at all.
+ * <p>
+ * Safe for concurrent use; at worst a domain is converted twice.
+ */
+final class IdnaCache {
+
+	/**
+	 * The maximum number of domains in the cache.
+	 */
+	static final int CAPACITY = 4096;
+
+	/**
+	 * Stands in for the domains that can't be converted, so they aren't tried over and over (empty, which no converted domain is).
+	 */
+	private static final String INVALID = "";
+
+	private static final Map<String, String> cache = new ConcurrentHashMap<>();
+
+	private IdnaCache() {
+		// utility class
+	}
+
+	/**
+	 * @return The ASCII form of the given domain; the given instance itself if it is ASCII already, or null if it isn't a valid internationalized domain
+	 * name.
+	 */
+	@Nullable
+	static String toAscii(@NotNull final String domain) {
+		if (EmailAddressValidator.isAscii(domain)) {
+			return domain;
+		}
+		String ascii = cache.get(domain);
+		if (ascii == null) {
+			ascii = convert(domain);
+			if (cache.size() >= CAPACITY) {
+				cache.clear();
+			}
+			cache.put(domain, ascii);
+		}
+		return ascii.isEmpty() ? null : ascii;
+	}
+
+	@NotNull
+	private static String convert(@NotNull final String domain) {
+		try {
+			return IDN.toASCII(domain);
+		} catch (IllegalArgumentException e) {
+			return INVALID;
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.EnumSet;
+
+/**
+ * A push-style variant of {@link EmailAddressParser#extractHeaderAddresses(String, EnumSet, boolean)} for headers that arrive in chunks, e.g. straight
+ * from the network: feed it the chunks as they come in, and it reports each address to its {@link Listener} as soon as the address is complete. Chunks may
+ * be split anywhere, including in the middle of an address or a folding CRLF.
+ * <p>
+ * Rather than the whole header, the parser only keeps the element it is currently reading (a mailbox or a group name), up to a configurable maximum
+ * length, and not even that for elements it skips. It extracts the same addresses as extractHeaderAddresses does from the whole header, with the same
+ * rules for groups and the elements that are skipped (see {@link HeaderElementWalker}); where that stops extracting at a bad element, this reports an error
+ * to the listener, after which all further input is ignored.
+ * <p>
+ * Input bytes are taken to be ASCII, like the grammar in this library; any other byte makes the element it is in invalid. (With {@link
+ * EmailAddressCriteria#ALLOW_UTF8}, such bytes are accepted, but each of them becomes a character of its own; decode headers with UTF-8 into a String
+ * and use {@link EmailAddressParser} instead.)
+ * <p>
+ * Usage: call {@link #feed(byte[], int, int)} for every chunk of the header value (without the header name and &quot;: &quot;), then {@link #finish()}
+ * to process the last address and to check for anything left unterminated. Call {@link #reset()} to reuse the parser for the next header.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Benny Bottema
+ */
+public final class IncrementalHeaderParser {
+
+	/**
+	 * Receives the results of an {@link IncrementalHeaderParser}.
+	 */
+	public interface Listener {
+		/**
+		 * Called for each address, as soon as it is complete.
+		 */
+		void onAddress(@NotNull ParsedAddress address);
+
+		/**
+		 * Called at most once per header, when parsing stops because of a bad element or because the header ended in the middle of something.
+		 *
+		 * @param offset  The offset in the header (in characters, counting from 0) of the start of the bad element, or of the end of the header.
+		 * @param message A description of the problem.
+		 */
+		void onError(long offset, @NotNull String message);
+	}
+
+	/**
+	 * The default maximum length of a single element, see {@link #IncrementalHeaderParser(EnumSet, boolean, Listener, int)}.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public static final int DEFAULT_MAX_ELEMENT_LENGTH = 16 * 1024;
+
+	@NotNull
+	private final EnumSet<EmailAddressCriteria> criteria;
+	private final boolean extractCfwsPersonalNames;
+	@NotNull
+	private final Listener listener;
+	private final int maxElementLength;
+
+	@NotNull
+	private final AutomatonMatcher mailboxMatcher;
+	@NotNull
+	private final HeaderElementWalker walker;
+
+	@NotNull
+	private final HeaderLexer lexer = new HeaderLexer();
+	@NotNull
+	private final StringBuilder element = new StringBuilder();
+	/**
+	 * The offset of the current element, just after the separator before it.
+	 */
+	private long elementOffset;
+	private long offset;
+	private boolean failed;
+	private boolean finished;
+
+	/**
+	 * Creates a parser with a maximum element length of {@value #DEFAULT_MAX_ELEMENT_LENGTH}.
+	 *
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 */
+	@SuppressWarnings("unused")
+	public IncrementalHeaderParser(@NotNull final EnumSet<EmailAddressCriteria> criteria, final boolean extractCfwsPersonalNames,
+			@NotNull final Listener listener) {
+		this(criteria, extractCfwsPersonalNames, listener, DEFAULT_MAX_ELEMENT_LENGTH);
+	}
+
+	/**
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 * @param maxElementLength         The maximum length of a single mailbox or group name, including any CFWS around it; this bounds the memory used by the
+	 *                                 parser. A longer element is reported as an error.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public IncrementalHeaderParser(@NotNull final EnumSet<EmailAddressCriteria> criteria, final boolean extractCfwsPersonalNames,
+			@NotNull final Listener listener, final int maxElementLength) {
+		this.criteria = EnumSet.copyOf(criteria);
+		this.extractCfwsPersonalNames = extractCfwsPersonalNames;
+		this.listener = listener;
+		this.maxElementLength = maxElementLength;
+		final Dragons dragons = Dragons.fromCriteria(this.criteria);
+		this.mailboxMatcher = dragons.matcher(dragons.MAILBOX_PATTERN, "");
+		this.walker = new HeaderElementWalker(this.criteria);
+	}
+
+	/**
+	 * Feeds the next chunk of the header, in which every byte is taken as a (ASCII) character.
+	 *
+	 * @return false if parsing has stopped because of an error, true otherwise.
+	 */
+	public boolean feed(@NotNull final byte[] chunk, final int off, final int len) {
+		checkNotFinished();
+		for (int i = off; i < off + len && !failed; i++) {
+			next((char) (chunk[i] & 0xFF));
+		}
+		return !failed;
+	}
+
+	/**
+	 * Feeds the next chunk of the header.
+	 *
+	 * @return false if parsing has stopped because of an error, true otherwise.
+	 */
+	@SuppressWarnings("unused")
+	public boolean feed(@NotNull final CharSequence chunk) {
+		checkNotFinished();
+		for (int i = 0; i < chunk.length() && !failed; i++) {
+			next(chunk.charAt(i));
+		}
+		return !failed;
+	}
+
+	/**
+	 * Signals the end of the header, processing the last element.
+	 *
+	 * @return false if parsing stopped because of an error at any point, including a quoted string, comment, domain literal or angle address left
+	 * unterminated at the end of the header; true otherwise.
+	 */
+	public boolean finish() {
+		checkNotFinished();
+		finished = true;
+		if (!failed) {
+			final String openConstruct = lexer.getOpenConstruct();
+			if (openConstruct != null) {
+				fail(offset, "header ended inside " + openConstruct);
+			} else if (offset > elementOffset) {
+				// as in extractHeaderAddresses, a separator at the very end isn't followed by an (empty) element
+				endElement(HeaderLexer.CONTENT);
+			}
+		}
+		return !failed;
+	}
+
+	/**
+	 * Makes the parser ready for the next header.
+	 */
+	@SuppressWarnings("unused")
+	public void reset() {
+		lexer.reset();
+		element.setLength(0);
+		walker.reset();
+		elementOffset = 0;
+		offset = 0;
+		failed = false;
+		finished = false;
+	}
+
+	private void next(final char c) {
+		final int separator = lexer.next(c);
+		offset++;
+		if (separator != HeaderLexer.CONTENT) {
+			endElement(separator);
+			elementOffset = offset;
+		} else if (!walker.isSkipping()) {
+			// (an element that is skipped isn't kept)
+			if (element.length() == maxElementLength) {
+				fail(elementOffset, "element longer than " + maxElementLength + " characters");
+			} else {
+				element.append(c);
+			}
+		}
+	}
+
+	private void endElement(final int separator) {
+		final int end = element.length();
+		if (separator == HeaderLexer.GROUP_START) {
+			// the colon is part of the group prefix
+			element.append(':');
+		}
+		mailboxMatcher.reset(element);
+		switch (walker.next(element, 0, end, separator, mailboxMatcher)) {
+			case HeaderElementWalker.MAILBOX:
+				final String[] parts = EmailAddressParser.getMatcherParts(mailboxMatcher, criteria, extractCfwsPersonalNames, true);
+				if (parts[1] != null && parts[2] != null) {
+					listener.onAddress(new ParsedAddress(parts[0], parts[1], parts[2], EmailAddressParser.getMatcherForm(mailboxMatcher, criteria),
+							walker.getMailboxGroup()));
+				}
+				break;
+			case HeaderElementWalker.STOP:
+				fail(elementOffset, separator == HeaderLexer.GROUP_START ? "invalid group name" : "invalid mailbox");
+				break;
+			default:
+				break;
+		}
+		element.setLength(0);
+	}
+
+	private void fail(final long errorOffset, @NotNull final String message) {
+		if (!failed) {
+			failed = true;
+			listener.onError(errorOffset, message);
+		}
+	}
+
+	private void checkNotFinished() {
+		if (finished) {
+			throw new IllegalStateException("header already finished, call reset() first");
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+/**
+ * Validates an e-mail address while it is being typed: append characters as they come in (or pass the whole field with {@link #check(CharSequence)} on
+ * every change) and get back whether the input so far is a {@link Status#VALID} address, could still become one ({@link Status#VIABLE_PREFIX}) or never
+ * can anymore ({@link Status#DEAD}).
+ * <p>
+ * Each character costs constant work: the input is run through a deterministic automaton for the mailbox grammar of the given criteria (the same language
+ * as {@link EmailAddressValidator#isValid(String, EnumSet)}), and the automaton state after each character is remembered, so an edit only needs to
+ * process the characters after the first one that changed. Once the input is dead, it stays dead without any further work.
+ * <p>
+ * <code>
+ * IncrementalValidator validator = new IncrementalValidator(EmailAddressCriteria.RECOMMENDED);<br>
+ * // on every change of the field:<br>
+ * IncrementalValidator.Status status = validator.check(field.getText());
+ * </code>
+ * <p>
+ * This class is not thread-safe; use one instance per input field (e.g. per session).
+ *
+ * @author Benny Bottema
+ */
+public final class IncrementalValidator {
+
+	/**
+	 * The status of the input so far.
+	 */
+	public enum Status {
+		/**
+		 * The input is a valid address (though more input may still make it invalid).
+		 */
+		VALID,
+		/**
+		 * The input isn't a valid address, but there is input that would make it one.
+		 */
+		VIABLE_PREFIX,
+		/**
+		 * No input can make this a valid address anymore, short of changing what was already entered.
+		 */
+		DEAD
+	}
+
+	@NotNull
+	private final GrammarAutomaton automaton;
+	@NotNull
+	private final StringBuilder input = new StringBuilder();
+	/**
+	 * The automaton state after each character: <code>states[i]</code> is the state after the first <code>i</code> characters.
+	 */
+	@NotNull
+	private GrammarAutomaton.State[] states = new GrammarAutomaton.State[64];
+
+	public IncrementalValidator(@NotNull final EnumSet<EmailAddressCriteria> criteria) {
+		this.automaton = Dragons.fromCriteria(criteria).getMailboxAutomaton();
+		this.states[0] = automaton.getStart();
+	}
+
+	/**
+	 * Appends a character to the input.
+	 *
+	 * @return The status of the whole input so far.
+	 */
+	@NotNull
+	public Status append(final char c) {
+		final int length = input.length();
+		if (length + 1 == states.length) {
+			states = Arrays.copyOf(states, states.length * 2);
+		}
+		input.append(c);
+		states[length + 1] = automaton.step(states[length], c);
+		return getStatus();
+	}
+
+	/**
+	 * Appends characters to the input.
+	 *
+	 * @return The status of the whole input so far.
+	 */
+	@NotNull
+	@SuppressWarnings("WeakerAccess")
+	public Status append(@NotNull final CharSequence s) {
+		for (int i = 0; i < s.length(); i++) {
+			append(s.charAt(i));
+		}
+		return getStatus();
+	}
+
+	/**
+	 * Removes characters from the end of the input, e.g. for backspace.
+	 *
+	 * @param length The new length of the input, at most the current length.
+	 * @return The status of the remaining input, without any processing.
+	 */
+	@NotNull
+	@SuppressWarnings("WeakerAccess")
+	public Status truncate(final int length) {
+		if (length < 0 || length > input.length()) {
+			throw new IndexOutOfBoundsException("length " + length + " not in [0, " + input.length() + "]");
+		}
+		input.setLength(length);
+		return getStatus();
+	}
+
+	/**
+	 * Replaces the input with the given text, only processing the characters after the part it has in common with the current input.
+	 *
+	 * @return The status of the given text.
+	 */
+	@NotNull
+	@SuppressWarnings("unused")
+	public Status check(@NotNull final CharSequence text) {
+		final int max = Math.min(text.length(), input.length());
+		int common = 0;
+		while (common < max && text.charAt(common) == input.charAt(common)) {
+			common++;
+		}
+		truncate(common);
+		return append(text.subSequence(common, text.length()));
+	}
+
+	/**
+	 * @return The status of the input so far.
+	 */
+	@NotNull
+	public Status getStatus() {
+		final GrammarAutomaton.State state = states[input.length()];
+		if (state.accepting) {
+			return Status.VALID;
+		}
+		return state.dead ? Status.DEAD : Status.VIABLE_PREFIX;
+	}
+
+	/**
+	 * @return The length of the longest part of the input that is still a viable prefix; equal to the input length unless the input is {@link Status#DEAD},
+	 * in which case this is the offset of the first character that made it so.
+	 */
+	@SuppressWarnings("unused")
+	public int getViableLength() {
+		int length = input.length();
+		while (states[length].dead) {
+			length--;
+		}
+		return length;
+	}
+
+	public int length() {
+		return input.length();
+	}
+
+	/**
+	 * Clears the input.
+	 */
+	@SuppressWarnings("unused")
+	public void reset() {
+		input.setLength(0);
+	}
+}
@@ -0,0 +1,110 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps track of which grammar element of a mailbox is being read, one character at a time, alongside a {@link GrammarAutomaton} that does the actual
+ * validation. Like {@link HeaderLexer}, it only looks at the characters that open and close elements, so on invalid input it tells where the input was,
+ * not whether it was any good.
+ */
+final class MailboxElementTracker {
+
+	private static final int MODE_TOP = 0;
+	private static final int MODE_QUOTED_STRING = 1;
+	private static final int MODE_COMMENT = 2;
+	private static final int MODE_DOMAIN_LITERAL = 3;
+
+	private int mode = MODE_TOP;
+	private int commentDepth;
+	private boolean escaped;
+	private boolean inAngleAddr;
+	private boolean afterAngleAddr;
+	private boolean inDomain;
+
+	void next(final char c) {
+		if (escaped) {
+			escaped = false;
+			return;
+		}
+		switch (mode) {
+			case MODE_QUOTED_STRING:
+				if (c == '\\') {
+					escaped = true;
+				} else if (c == '"') {
+					mode = MODE_TOP;
+				}
+				break;
+			case MODE_COMMENT:
+				if (c == '\\') {
+					escaped = true;
+				} else if (c == '(') {
+					commentDepth++;
+				} else if (c == ')' && --commentDepth == 0) {
+					mode = MODE_TOP;
+				}
+				break;
+			case MODE_DOMAIN_LITERAL:
+				if (c == '\\') {
+					escaped = true;
+				} else if (c == ']') {
+					mode = MODE_TOP;
+				}
+				break;
+			default:
+				switch (c) {
+					case '"':
+						mode = MODE_QUOTED_STRING;
+						break;
+					case '(':
+						mode = MODE_COMMENT;
+						commentDepth = 1;
+						break;
+					case '[':
+						// outside the domain, square brackets can only be atext of the personal name
+						if (inDomain) {
+							mode = MODE_DOMAIN_LITERAL;
+						}
+						break;
+					case '<':
+						inAngleAddr = true;
+						break;
+					case '>':
+						inAngleAddr = false;
+						afterAngleAddr = true;
+						inDomain = false;
+						break;
+					case '@':
+						inDomain = true;
+						break;
+					default:
+						break;
+				}
+		}
+	}
+
+	/**
+	 * @param c The character that couldn't be read, or -1 for the end of the input.
+	 * @return The element the given character failed in.
+	 */
+	@Nullable
+	ValidationResult.Element getElement(final int c) {
+		switch (mode) {
+			case MODE_QUOTED_STRING:
+				return ValidationResult.Element.QUOTED_STRING;
+			case MODE_COMMENT:
+				return ValidationResult.Element.COMMENT;
+			case MODE_DOMAIN_LITERAL:
+				return ValidationResult.Element.DOMAIN_LITERAL;
+			default:
+				if (inDomain) {
+					return ValidationResult.Element.DOMAIN;
+				} else if (afterAngleAddr) {
+					return null;
+				} else if (!inAngleAddr && c == '<') {
+					// what came before can't be a personal name
+					return ValidationResult.Element.PERSONAL_NAME;
+				}
+				return ValidationResult.Element.LOCAL_PART;
+		}
+	}
+}
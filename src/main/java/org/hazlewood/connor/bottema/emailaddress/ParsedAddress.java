@@ -0,0 +1,162 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.mail.internet.InternetAddress;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * An immutable address as extracted by {@link EmailAddressParser}: the cleaned up personal name, local part and domain (see {@link
+ * EmailAddressParser#getAddressParts(String, java.util.EnumSet, boolean)}), along with the form the address was written in and, when extracted from a
+ * header, the group it was part of.
+ * <p>
+ * Unlike InternetAddress, this class doesn't depend on Jakarta Mail, and creating one is little more than storing the parts. Use {@link
+ * #toInternetAddress()} to convert it where an InternetAddress is needed (this does require Jakarta Mail on the classpath).
+ *
+ * @author Benny Bottema
+ */
+public final class ParsedAddress {
+
+	/**
+	 * The 2822 form an address was written in.
+	 */
+	public enum Form {
+		/**
+		 * A bare address, e.g. <code>bob@example.com</code> or <code>bob@example.com (Bob)</code>.
+		 */
+		ADDR_SPEC,
+		/**
+		 * An address in angle brackets, optionally preceded by a personal name, e.g. <code>Bob &lt;bob@example.com&gt;</code>. Only possible when {@link
+		 * EmailAddressCriteria#ALLOW_QUOTED_IDENTIFIERS} is included.
+		 */
+		NAME_ADDR
+	}
+
+	@Nullable
+	private final String personalName;
+	@NotNull
+	private final String localPart;
+	@NotNull
+	private final String domain;
+	@NotNull
+	private final Form form;
+	@Nullable
+	private final String group;
+
+	public ParsedAddress(@Nullable final String personalName, @NotNull final String localPart, @NotNull final String domain, @NotNull final Form form,
+			@Nullable final String group) {
+		this.personalName = personalName;
+		this.localPart = localPart;
+		this.domain = domain;
+		this.form = form;
+		this.group = group;
+	}
+
+	/**
+	 * @return The personal name, or null if there is none. Like the other parts, any RFC-2047 encoding is preserved.
+	 */
+	@Nullable
+	public String getPersonalName() {
+		return personalName;
+	}
+
+	/**
+	 * @return The local part, the part to the left of the @.
+	 */
+	@NotNull
+	public String getLocalPart() {
+		return localPart;
+	}
+
+	/**
+	 * @return The domain, the part to the right of the @.
+	 */
+	@NotNull
+	public String getDomain() {
+		return domain;
+	}
+
+	/**
+	 * Parses the domain, if it is a domain literal, into the IP address it stands for, see {@link DomainLiteral#parse(CharSequence, int, int, byte[])}.
+	 *
+	 * @param address Receives the IP address (16 bytes) if the domain is a valid IPv4 or IPv6 domain literal.
+	 * @return {@link DomainLiteral#IPV4}, {@link DomainLiteral#IPV6}, or {@link DomainLiteral#INVALID} if the domain is a domain name or another kind of
+	 * domain literal.
+	 */
+	@SuppressWarnings("unused")
+	public int getDomainLiteral(@NotNull final byte[] address) {
+		return DomainLiteral.parse(domain, 0, domain.length(), address);
+	}
+
+	/**
+	 * @return The address without personal name: local part + &quot;@&quot; + domain, the same as InternetAddress.getAddress() would return.
+	 */
+	@NotNull
+	public String getAddress() {
+		return localPart + "@" + domain;
+	}
+
+	/**
+	 * Creates the InternetAddress that {@link EmailAddressParser#getInternetAddress(String, java.util.EnumSet, boolean)} would have returned for this
+	 * address; this requires Jakarta Mail on the classpath.
+	 *
+	 * @throws UnsupportedEncodingException if the personal name can't be encoded by InternetAddress.
+	 */
+	@NotNull
+	@SuppressWarnings("unused")
+	public InternetAddress toInternetAddress() throws UnsupportedEncodingException {
+		return new InternetAddress(getAddress(), personalName);
+	}
+
+	@NotNull
+	public Form getForm() {
+		return form;
+	}
+
+	/**
+	 * @return The name of the group this address was part of when it was extracted from a header, or null if it wasn't part of a group.
+	 */
+	@Nullable
+	public String getGroup() {
+		return group;
+	}
+
+	@Override
+	public boolean equals(@Nullable final Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		final ParsedAddress that = (ParsedAddress) o;
+		return localPart.equals(that.localPart) &&
+				domain.equals(that.domain) &&
+				form == that.form &&
+				(personalName != null ? personalName.equals(that.personalName) : that.personalName == null) &&
+				(group != null ? group.equals(that.group) : that.group == null);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = personalName != null ? personalName.hashCode() : 0;
+		result = 31 * result + localPart.hashCode();
+		result = 31 * result + domain.hashCode();
+		result = 31 * result + form.hashCode();
+		result = 31 * result + (group != null ? group.hashCode() : 0);
+		return result;
+	}
+
+	@Override
+	@NotNull
+	public String toString() {
+		return "ParsedAddress{" +
+				"personalName=" + personalName +
+				", localPart=" + localPart +
+				", domain=" + domain +
+				", form=" + form +
+				", group=" + group +
+				'}';
+	}
+}
@@ -0,0 +1,297 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static org.hazlewood.connor.bottema.emailaddress.ParsedAddressWriter.FLAG_GROUP;
+import static org.hazlewood.connor.bottema.emailaddress.ParsedAddressWriter.FLAG_NAME_ADDR;
+import static org.hazlewood.connor.bottema.emailaddress.ParsedAddressWriter.FLAG_PERSONAL_NAME;
+import static org.hazlewood.connor.bottema.emailaddress.ParsedAddressWriter.MAGIC;
+import static org.hazlewood.connor.bottema.emailaddress.ParsedAddressWriter.STRING_TABLE_CAPACITY;
+import static org.hazlewood.connor.bottema.emailaddress.ParsedAddressWriter.VERSION;
+
+/**
+ * Reads back the records written by {@link ParsedAddressWriter} (see there for the format), without any regex parsing.
+ * <p>
+ * The reader works directly on a ByteBuffer, typically a memory-mapped file (see {@link #map(FileChannel)}), and doesn't copy anything up front: {@link
+ * #next()} only decodes the offsets of the current record, after which the parts can be read as Strings on demand, or as offsets and lengths into {@link
+ * #getBuffer()} to avoid creating objects at all. Domains and group names are decoded only once per file, so recurring ones are the same String instance.
+ * <p>
+ * <code>
+ * ParsedAddressReader reader = ParsedAddressReader.map(fileChannel);<br>
+ * while (reader.next()) {<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;process(reader.getLocalPart(), reader.getDomain());<br>
+ * }
+ * </code>
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Benny Bottema
+ */
+public final class ParsedAddressReader {
+
+	@NotNull
+	private final ByteBuffer buffer;
+	private int position;
+
+	/*
+	 * The string table: offset and length of each entry in the buffer, and its decoded String once needed.
+	 */
+	@NotNull
+	private int[] tableOffsets = new int[64];
+	@NotNull
+	private int[] tableLengths = new int[64];
+	@NotNull
+	private String[] tableStrings = new String[64];
+	private int tableSize;
+
+	/*
+	 * The current record.
+	 */
+	private int flags;
+	private int localPartOffset;
+	private int localPartLength;
+	private int domainIndex;
+	private int personalNameOffset;
+	private int personalNameLength;
+	private int groupIndex;
+	private long recordCount;
+
+	/**
+	 * @param buffer The data written by a {@link ParsedAddressWriter}, from its position up to its limit. The buffer's position is not changed.
+	 * @throws IOException if the data doesn't start with a supported file header.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public ParsedAddressReader(@NotNull final ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.duplicate();
+		this.position = this.buffer.position();
+		if (this.buffer.limit() - position < MAGIC.length + 1) {
+			throw new IOException("not a parsed address file: too short");
+		}
+		for (byte b : MAGIC) {
+			if (this.buffer.get(position++) != b) {
+				throw new IOException("not a parsed address file: wrong magic number");
+			}
+		}
+		final int version = this.buffer.get(position++);
+		if (version != VERSION) {
+			throw new IOException("unsupported parsed address file version: " + version);
+		}
+	}
+
+	/**
+	 * Memory-maps the given file and creates a reader for it. Files larger than 2 GB are not supported; write those as several files.
+	 */
+	@NotNull
+	@SuppressWarnings("unused")
+	public static ParsedAddressReader map(@NotNull final FileChannel channel) throws IOException {
+		if (channel.size() > Integer.MAX_VALUE) {
+			throw new IOException("parsed address file too large to map: " + channel.size() + " bytes");
+		}
+		return new ParsedAddressReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+	}
+
+	/**
+	 * Advances to the next record.
+	 *
+	 * @return false if there are no more records.
+	 * @throws IOException if the data is corrupt or truncated.
+	 */
+	public boolean next() throws IOException {
+		if (position >= buffer.limit()) {
+			return false;
+		}
+		try {
+			flags = buffer.get(position++);
+			localPartLength = readVarint();
+			localPartOffset = skip(localPartLength);
+			domainIndex = readTableString(STRING_TABLE_CAPACITY);
+			if ((flags & FLAG_PERSONAL_NAME) != 0) {
+				personalNameLength = readVarint();
+				personalNameOffset = skip(personalNameLength);
+			} else {
+				personalNameLength = 0;
+				personalNameOffset = position;
+			}
+			groupIndex = (flags & FLAG_GROUP) != 0 ? readTableString(STRING_TABLE_CAPACITY + 1) : -1;
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("parsed address file is truncated", e);
+		}
+		recordCount++;
+		return true;
+	}
+
+	/**
+	 * Convenience method that advances to the next record and returns it as a ParsedAddress.
+	 *
+	 * @return null if there are no more records.
+	 */
+	@Nullable
+	@SuppressWarnings("unused")
+	public ParsedAddress read() throws IOException {
+		return next() ? new ParsedAddress(getPersonalName(), getLocalPart(), getDomain(), getForm(), getGroup()) : null;
+	}
+
+	/**
+	 * @return The number of records read so far, i.e. the 1-based number of the current record.
+	 */
+	@SuppressWarnings("unused")
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	@NotNull
+	public String getLocalPart() {
+		return decode(localPartOffset, localPartLength);
+	}
+
+	@NotNull
+	public String getDomain() {
+		return tableString(domainIndex);
+	}
+
+	@Nullable
+	public String getPersonalName() {
+		return hasPersonalName() ? decode(personalNameOffset, personalNameLength) : null;
+	}
+
+	@Nullable
+	public String getGroup() {
+		return groupIndex >= 0 ? tableString(groupIndex) : null;
+	}
+
+	@NotNull
+	public ParsedAddress.Form getForm() {
+		return (flags & FLAG_NAME_ADDR) != 0 ? ParsedAddress.Form.NAME_ADDR : ParsedAddress.Form.ADDR_SPEC;
+	}
+
+	public boolean hasPersonalName() {
+		return (flags & FLAG_PERSONAL_NAME) != 0;
+	}
+
+	/**
+	 * @return A read-only view of the underlying data, to be used with the offset and length getters.
+	 */
+	@NotNull
+	@SuppressWarnings("unused")
+	public ByteBuffer getBuffer() {
+		return buffer.asReadOnlyBuffer();
+	}
+
+	@SuppressWarnings("unused")
+	public int getLocalPartOffset() {
+		return localPartOffset;
+	}
+
+	@SuppressWarnings("unused")
+	public int getLocalPartLength() {
+		return localPartLength;
+	}
+
+	@SuppressWarnings("unused")
+	public int getDomainOffset() {
+		return tableOffsets[domainIndex];
+	}
+
+	@SuppressWarnings("unused")
+	public int getDomainLength() {
+		return tableLengths[domainIndex];
+	}
+
+	@SuppressWarnings("unused")
+	public int getPersonalNameOffset() {
+		return personalNameOffset;
+	}
+
+	/**
+	 * @return The length of the personal name, 0 if there is none (see {@link #hasPersonalName()}).
+	 */
+	@SuppressWarnings("unused")
+	public int getPersonalNameLength() {
+		return personalNameLength;
+	}
+
+	/**
+	 * Reads a table-string, adding it to the string table if it's a new one.
+	 *
+	 * @param overflowSlot Where to keep the string if the table is already full; the domain and group of a record each need their own slot for that.
+	 * @return The index of the string in the string table.
+	 */
+	private int readTableString(final int overflowSlot) throws IOException {
+		final int n = readVarint();
+		if ((n & 1) != 0) {
+			final int index = n >>> 1;
+			if (index >= tableSize) {
+				throw new IOException("parsed address file is corrupt: unknown string table entry " + index);
+			}
+			return index;
+		}
+		final int length = n >>> 1;
+		final int offset = skip(length);
+		// the writer doesn't add any strings once the table is full, so neither do we
+		final int index = tableSize < STRING_TABLE_CAPACITY ? tableSize++ : overflowSlot;
+		if (index >= tableOffsets.length) {
+			final int capacity = Math.min(Math.max(tableOffsets.length * 2, index + 1), STRING_TABLE_CAPACITY + 2);
+			tableOffsets = Arrays.copyOf(tableOffsets, capacity);
+			tableLengths = Arrays.copyOf(tableLengths, capacity);
+			tableStrings = Arrays.copyOf(tableStrings, capacity);
+		}
+		tableOffsets[index] = offset;
+		tableLengths[index] = length;
+		tableStrings[index] = null;
+		return index;
+	}
+
+	@NotNull
+	private String tableString(final int index) {
+		String s = tableStrings[index];
+		if (s == null) {
+			s = decode(tableOffsets[index], tableLengths[index]);
+			tableStrings[index] = s;
+		}
+		return s;
+	}
+
+	/**
+	 * Skips the given number of bytes.
+	 *
+	 * @return The position before skipping.
+	 */
+	private int skip(final int length) throws IOException {
+		if (length < 0 || length > buffer.limit() - position) {
+			throw new IOException("parsed address file is truncated");
+		}
+		final int start = position;
+		position += length;
+		return start;
+	}
+
+	private int readVarint() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			final byte b = buffer.get(position++);
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IOException("parsed address file is corrupt: malformed number");
+	}
+
+	@NotNull
+	private String decode(final int offset, final int length) {
+		if (buffer.hasArray()) {
+			return new String(buffer.array(), buffer.arrayOffset() + offset, length, Utf8.UTF_8);
+		}
+		final byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buffer.get(offset + i);
+		}
+		return new String(bytes, Utf8.UTF_8);
+	}
+}
@@ -0,0 +1,231 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.MatchResult;
+
+/**
+ * Writes parsed addresses in a compact binary format, so they can be persisted and read back later with {@link ParsedAddressReader} instead of parsing the
+ * original headers all over again.
+ * <p>
+ * The format (version 1) is as follows; all strings are UTF-8 and all numbers are unsigned LEB128 varints:
+ * <pre>
+ * file         = magic version record*
+ * magic        = the 4 bytes "EAPR"
+ * version      = 1 byte, currently 1
+ * record       = flags local-part domain [personal-name] [group]
+ * flags        = 1 byte: bit 0 set if the form is NAME_ADDR, bit 1 set if a personal name follows, bit 2 set if a group follows
+ * local-part   = string
+ * domain       = table-string
+ * personal-name = string
+ * group        = table-string
+ * string       = length, followed by that many bytes
+ * table-string = n: if n is odd, this refers to entry (n &gt;&gt; 1) of the string table; if n is even, a string of (n &gt;&gt; 1) bytes follows, which is
+ *                added to the string table as the next entry, as long as the table has less than {@value #STRING_TABLE_CAPACITY} entries
+ * </pre>
+ * The string table makes sure recurring domains (and group names) are only written once per file.
+ * <p>
+ * The writer buffers its output, so remember to {@link #flush()} or {@link #close()} it. This class is not thread-safe.
+ *
+ * @author Benny Bottema
+ */
+public final class ParsedAddressWriter implements Closeable, Flushable {
+
+	static final byte[] MAGIC = { 'E', 'A', 'P', 'R' };
+	static final int VERSION = 1;
+	static final int STRING_TABLE_CAPACITY = 1 << 16;
+
+	static final int FLAG_NAME_ADDR = 1;
+	static final int FLAG_PERSONAL_NAME = 1 << 1;
+	static final int FLAG_GROUP = 1 << 2;
+
+	@Nullable
+	private final OutputStream out;
+	@Nullable
+	private final WritableByteChannel channel;
+
+	@NotNull
+	private byte[] buffer = new byte[8192];
+	private int count;
+	private long recordCount;
+
+	@NotNull
+	private final Map<String, Integer> stringTable = new HashMap<>();
+
+	/**
+	 * Creates a writer for the given stream; the file header is written with the first flush.
+	 */
+	@SuppressWarnings("unused")
+	public ParsedAddressWriter(@NotNull final OutputStream out) {
+		this(out, null);
+	}
+
+	/**
+	 * Creates a writer for the given channel, e.g. a <code>FileChannel</code>; the file header is written with the first flush.
+	 */
+	@SuppressWarnings("unused")
+	public ParsedAddressWriter(@NotNull final WritableByteChannel channel) {
+		this(null, channel);
+	}
+
+	private ParsedAddressWriter(@Nullable final OutputStream out, @Nullable final WritableByteChannel channel) {
+		this.out = out;
+		this.channel = channel;
+		System.arraycopy(MAGIC, 0, buffer, 0, MAGIC.length);
+		buffer[MAGIC.length] = VERSION;
+		count = MAGIC.length + 1;
+	}
+
+	/**
+	 * Writes the given address as the next record.
+	 */
+	@SuppressWarnings("unused")
+	public void write(@NotNull final ParsedAddress address) throws IOException {
+		write(address.getPersonalName(), address.getLocalPart(), address.getDomain(), address.getForm(), address.getGroup());
+	}
+
+	/**
+	 * Writes the given address parts as the next record.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public void write(@Nullable final String personalName, @NotNull final String localPart, @NotNull final String domain,
+			@NotNull final ParsedAddress.Form form, @Nullable final String group) throws IOException {
+		int flags = form == ParsedAddress.Form.NAME_ADDR ? FLAG_NAME_ADDR : 0;
+		flags |= personalName != null ? FLAG_PERSONAL_NAME : 0;
+		flags |= group != null ? FLAG_GROUP : 0;
+		ensureCapacity(1);
+		buffer[count++] = (byte) flags;
+		writeString(localPart);
+		writeTableString(domain);
+		if (personalName != null) {
+			writeString(personalName);
+		}
+		if (group != null) {
+			writeTableString(group);
+		}
+		recordCount++;
+	}
+
+	/**
+	 * Extracts the addresses from the given header, like {@link EmailAddressParser#extractHeaderAddresses(String, EnumSet, boolean)}, and writes them
+	 * directly as records, including the form of each address and the group it is part of, if any.
+	 *
+	 * @param extractCfwsPersonalNames See {@link EmailAddressParser}
+	 * @return The number of records written.
+	 */
+	@SuppressWarnings("unused")
+	public int writeHeaderAddresses(@Nullable final String header_txt, @NotNull final EnumSet<EmailAddressCriteria> criteria,
+			final boolean extractCfwsPersonalNames) throws IOException {
+		if (header_txt == null || header_txt.equals("")) {
+			return 0;
+		}
+		final long recordCountBefore = recordCount;
+		final IOException[] failure = new IOException[1];
+		EmailAddressParser.extractHeaderAddresses(header_txt, criteria, null, new EmailAddressParser.MailboxHandler() {
+			@Override
+			public void handle(@NotNull MatchResult m, @Nullable String group) {
+				final String[] parts = EmailAddressParser.getMatcherParts(m, criteria, extractCfwsPersonalNames, true);
+				if (failure[0] == null && parts[1] != null && parts[2] != null) {
+					try {
+						write(parts[0], parts[1], parts[2], EmailAddressParser.getMatcherForm(m, criteria), group);
+					} catch (IOException e) {
+						failure[0] = e;
+					}
+				}
+			}
+		});
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		return (int) (recordCount - recordCountBefore);
+	}
+
+	/**
+	 * @return The number of records written so far.
+	 */
+	@SuppressWarnings("unused")
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (out != null) {
+			out.write(buffer, 0, count);
+			out.flush();
+		} else if (channel != null) {
+			final ByteBuffer bb = ByteBuffer.wrap(buffer, 0, count);
+			while (bb.hasRemaining()) {
+				channel.write(bb);
+			}
+		}
+		count = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		if (out != null) {
+			out.close();
+		} else if (channel != null) {
+			channel.close();
+		}
+	}
+
+	private void writeTableString(@NotNull final String s) throws IOException {
+		final Integer index = stringTable.get(s);
+		if (index != null) {
+			writeVarint((index << 1) | 1);
+		} else {
+			if (stringTable.size() < STRING_TABLE_CAPACITY) {
+				stringTable.put(s, stringTable.size());
+			}
+			writeUtf8(s, true);
+		}
+	}
+
+	private void writeString(@NotNull final String s) throws IOException {
+		writeUtf8(s, false);
+	}
+
+	/**
+	 * Writes the length (shifted left one bit if it is a table-string) followed by the UTF-8 bytes.
+	 */
+	private void writeUtf8(@NotNull final String s, final boolean tableString) throws IOException {
+		final int length = Utf8.encodedLength(s);
+		writeVarint(tableString ? length << 1 : length);
+		ensureCapacity(length);
+		count = Utf8.encode(s, buffer, count);
+	}
+
+	private void writeVarint(int value) throws IOException {
+		ensureCapacity(5);
+		while ((value & ~0x7F) != 0) {
+			buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[count++] = (byte) value;
+	}
+
+	/**
+	 * Makes sure the given number of bytes fit in the buffer, flushing it if needed, or growing it for (very) long strings.
+	 */
+	private void ensureCapacity(final int bytes) throws IOException {
+		if (count + bytes > buffer.length) {
+			flush();
+			if (bytes > buffer.length) {
+				buffer = new byte[bytes];
+			}
+		}
+	}
+}
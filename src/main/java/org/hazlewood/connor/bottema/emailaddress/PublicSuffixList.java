@@ -0,0 +1,347 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.IDN;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The top-level domains and other public suffixes (such as <code>co.uk</code>) of the <a href="https://publicsuffix.org/">Public Suffix List</a>, for
+ * telling whether a domain ends in a top-level domain that actually exists (<code>gmail.com</code>, but not <code>gmail.cmo</code>), and for finding the
+ * registrable domain of a domain (<code>bbc.co.uk</code> for <code>www.news.bbc.co.uk</code>). See {@link EmailAddressValidator#isValid(String, EnumSet,
+ * DomainPolicy)} for validating addresses with it.
+ * <p>
+ * A copy of the list is bundled with this library, see {@link #getDefault()}. It is read once, on first use, into a compact read-only trie of the labels of
+ * the rules, from the top-level domain down: per node just a few array entries, the children of a node sorted next to each other so that they can be
+ * binary searched. Lookups work on a slice of any CharSequence and compare the labels in place (ignoring case), so they don't create any objects.
+ * <p>
+ * Rules with U-labels (e.g. <code>&#x516C;&#x53F8;.cn</code>) are also added in their ASCII form (<code>xn--55qx5d.cn</code>), so domains match in
+ * either form. Like the list's own algorithm prescribes, a domain whose top-level domain isn't on the list has that top-level domain as its public suffix
+ * (see {@link #isKnownTopLevelDomain(CharSequence, int, int)} for telling these apart).
+ * <p>
+ * As a {@link DomainPolicy}, it allows the domains whose top-level domain is on the list. Instances are immutable and thread-safe.
+ *
+ * @author Benny Bottema
+ */
+@SuppressWarnings("WeakerAccess")
+public final class PublicSuffixList implements DomainPolicy {
+
+	private static final String RESOURCE = "public_suffix_list.dat";
+
+	/**
+	 * Node flag: the labels from the root down to this node are a rule.
+	 */
+	private static final byte RULE = 1;
+	/**
+	 * Node flag: any label below this node is a rule (<code>*.ck</code>).
+	 */
+	private static final byte WILDCARD = 1 << 1;
+	/**
+	 * Node flag: the labels from the root down to this node are an exception to a wildcard rule (<code>!www.ck</code>).
+	 */
+	private static final byte EXCEPTION = 1 << 2;
+
+	/*
+	 * The trie, node 0 being the root. The label of node i is labels[labelStarts[i]] up to labels[labelStarts[i + 1]], and its children are the nodes
+	 * firstChilds[i] up to firstChilds[i + 1], sorted by label.
+	 */
+	@NotNull
+	private final char[] labels;
+	@NotNull
+	private final int[] labelStarts;
+	@NotNull
+	private final int[] firstChilds;
+	@NotNull
+	private final byte[] flags;
+
+	private static final class DefaultHolder {
+		private static final PublicSuffixList DEFAULT = readDefault();
+	}
+
+	private PublicSuffixList(@NotNull final Builder root) {
+		// breadth first, so the children of each node end up next to each other
+		final List<Builder> nodes = new ArrayList<>();
+		nodes.add(root);
+		int labelCount = 0;
+		for (int i = 0; i < nodes.size(); i++) {
+			nodes.addAll(nodes.get(i).children.values());
+			labelCount += nodes.get(i).label.length();
+		}
+		labels = new char[labelCount];
+		labelStarts = new int[nodes.size() + 1];
+		firstChilds = new int[nodes.size() + 1];
+		flags = new byte[nodes.size()];
+		int labelPos = 0;
+		int childPos = 1;
+		for (int i = 0; i < nodes.size(); i++) {
+			final Builder node = nodes.get(i);
+			labelStarts[i] = labelPos;
+			node.label.getChars(0, node.label.length(), labels, labelPos);
+			labelPos += node.label.length();
+			firstChilds[i] = childPos;
+			childPos += node.children.size();
+			flags[i] = node.flags;
+		}
+		labelStarts[nodes.size()] = labelPos;
+		firstChilds[nodes.size()] = childPos;
+	}
+
+	/**
+	 * @return The list bundled with this library, including the private domains (such as <code>github.io</code>), read on first use.
+	 */
+	@NotNull
+	public static PublicSuffixList getDefault() {
+		return DefaultHolder.DEFAULT;
+	}
+
+	/**
+	 * Reads a list in the format of the <a href="https://publicsuffix.org/list/">Public Suffix List</a>, e.g. a more recent version of it.
+	 *
+	 * @param in                    The list, in UTF-8; the stream is not closed.
+	 * @param includePrivateDomains Whether to include the rules in the list's private domains section, or just those of the ICANN section.
+	 */
+	@NotNull
+	public static PublicSuffixList read(@NotNull final InputStream in, final boolean includePrivateDomains) throws IOException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(in, Utf8.UTF_8));
+		final Builder root = new Builder("");
+		boolean privateDomains = false;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (line.startsWith("//")) {
+				privateDomains |= line.contains("===BEGIN PRIVATE DOMAINS===");
+			} else if (!line.isEmpty() && (includePrivateDomains || !privateDomains)) {
+				// a rule ends at the first whitespace
+				final String rule = line.split("\\s", 2)[0];
+				root.add(rule);
+				if (!EmailAddressValidator.isAscii(rule)) {
+					final String asciiRule = toAscii(rule);
+					if (asciiRule != null) {
+						root.add(asciiRule);
+					}
+				}
+			}
+		}
+		return new PublicSuffixList(root);
+	}
+
+	@NotNull
+	private static PublicSuffixList readDefault() {
+		final InputStream in = PublicSuffixList.class.getResourceAsStream(RESOURCE);
+		if (in == null) {
+			throw new IllegalStateException("bundled resource missing: " + RESOURCE);
+		}
+		try {
+			try {
+				return read(in, true);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("unable to read bundled resource: " + RESOURCE, e);
+		}
+	}
+
+	/**
+	 * @return The given rule with its U-labels converted to A-labels (wildcards and exception marks kept), or null if it can't be converted.
+	 */
+	@Nullable
+	private static String toAscii(@NotNull final String rule) {
+		final boolean exception = rule.startsWith("!");
+		final String[] ruleLabels = (exception ? rule.substring(1) : rule).split("\\.");
+		final StringBuilder ascii = new StringBuilder(exception ? "!" : "");
+		for (int i = 0; i < ruleLabels.length; i++) {
+			try {
+				ascii.append(i > 0 ? "." : "").append(ruleLabels[i].equals("*") ? "*" : IDN.toASCII(ruleLabels[i]));
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+		return ascii.toString();
+	}
+
+	/**
+	 * @return Whether the last label of the given domain (absolute positions) is a top-level domain on the list.
+	 */
+	public boolean isKnownTopLevelDomain(@NotNull final CharSequence domain, final int from, final int to) {
+		final int tldStart = lastIndexOf('.', domain, from, to) + 1;
+		return tldStart < to && findChild(0, domain, tldStart, to) >= 0;
+	}
+
+	/**
+	 * @see #isKnownTopLevelDomain(CharSequence, int, int)
+	 */
+	public boolean isKnownTopLevelDomain(@NotNull final CharSequence domain) {
+		return isKnownTopLevelDomain(domain, 0, domain.length());
+	}
+
+	/**
+	 * @return Whether the given domain ends in a top-level domain on the list, see {@link #isKnownTopLevelDomain(CharSequence, int, int)}.
+	 */
+	@Override
+	public boolean isAllowed(@NotNull final CharSequence address, final int from, final int to) {
+		return isKnownTopLevelDomain(address, from, to);
+	}
+
+	/**
+	 * Finds the public suffix of the given domain (absolute positions) by the list's algorithm: the longest matching rule, unless an exception rule matches,
+	 * or the top-level domain if no rule matches.
+	 *
+	 * @return The position in the domain where its public suffix starts, or -1 if the domain is empty or has an empty label.
+	 */
+	public int getPublicSuffixStart(@NotNull final CharSequence domain, final int from, final int to) {
+		int labelEnd = to;
+		int labelStart = lastIndexOf('.', domain, from, labelEnd) + 1;
+		// the default rule "*": the top-level domain
+		int suffixStart = labelStart;
+		int node = 0;
+		while (labelStart < labelEnd) {
+			final int child = findChild(node, domain, labelStart, labelEnd);
+			if (child >= 0 && (flags[child] & EXCEPTION) != 0) {
+				// the suffix is the exception rule without its first label
+				return labelEnd + 1;
+			}
+			if ((flags[node] & WILDCARD) != 0 || (child >= 0 && (flags[child] & RULE) != 0)) {
+				suffixStart = labelStart;
+			}
+			if (child < 0 || labelStart == from) {
+				return suffixStart;
+			}
+			node = child;
+			labelEnd = labelStart - 1;
+			labelStart = lastIndexOf('.', domain, from, labelEnd) + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The position in the given domain (absolute positions) where its registrable domain (its public suffix plus the label before it) starts, or -1
+	 * if it doesn't have one, because it is a public suffix itself (or empty, or has an empty label).
+	 */
+	public int getRegistrableDomainStart(@NotNull final CharSequence domain, final int from, final int to) {
+		final int suffixStart = getPublicSuffixStart(domain, from, to);
+		if (suffixStart <= from) {
+			return -1;
+		}
+		final int start = lastIndexOf('.', domain, from, suffixStart - 1) + 1;
+		return start < suffixStart - 1 ? start : -1;
+	}
+
+	/**
+	 * @return The registrable domain of the given domain, e.g. <code>bbc.co.uk</code> for <code>www.news.bbc.co.uk</code> (the given instance itself if it
+	 * is the registrable domain already), or null if it doesn't have one, see {@link #getRegistrableDomainStart(CharSequence, int, int)}.
+	 */
+	@Nullable
+	public String getRegistrableDomain(@NotNull final String domain) {
+		final int start = getRegistrableDomainStart(domain, 0, domain.length());
+		return start < 0 ? null : domain.substring(start);
+	}
+
+	/**
+	 * @return The child of the given node with the given label (compared ignoring case), or -1 if there is none.
+	 */
+	private int findChild(final int node, @NotNull final CharSequence domain, final int from, final int to) {
+		int low = firstChilds[node];
+		int high = firstChilds[node + 1] - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final int comparison = compareLabel(middle, domain, from, to);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The label of the given node compared to the given part of the domain in lower case, like String.compareTo.
+	 */
+	private int compareLabel(final int node, @NotNull final CharSequence domain, final int from, final int to) {
+		final int start = labelStarts[node];
+		final int length = labelStarts[node + 1] - start;
+		final int n = Math.min(length, to - from);
+		for (int i = 0; i < n; i++) {
+			final char c = toLowerCase(domain.charAt(from + i));
+			if (labels[start + i] != c) {
+				return labels[start + i] - c;
+			}
+		}
+		return length - (to - from);
+	}
+
+	private static char toLowerCase(final char c) {
+		if (c < 0x80) {
+			return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+		}
+		return Character.toLowerCase(c);
+	}
+
+	private static int lastIndexOf(final char c, @NotNull final CharSequence s, final int from, final int to) {
+		for (int i = to - 1; i >= from; i--) {
+			if (s.charAt(i) == c) {
+				return i;
+			}
+		}
+		return from - 1;
+	}
+
+	/**
+	 * A node of the trie while it is being built.
+	 */
+	private static final class Builder {
+		@NotNull
+		private final String label;
+		/**
+		 * Sorted by label, like the children in the finished trie.
+		 */
+		@NotNull
+		private final Map<String, Builder> children = new TreeMap<>();
+		private byte flags;
+
+		Builder(@NotNull final String label) {
+			this.label = label;
+		}
+
+		void add(@NotNull final String rule) {
+			final boolean exception = rule.startsWith("!");
+			final String[] ruleLabels = (exception ? rule.substring(1) : rule).split("\\.");
+			Builder node = this;
+			for (int i = ruleLabels.length - 1; i >= 0; i--) {
+				final String ruleLabel = lowerCase(ruleLabels[i]);
+				if (i == 0 && ruleLabel.equals("*")) {
+					node.flags |= WILDCARD;
+					return;
+				}
+				Builder child = node.children.get(ruleLabel);
+				if (child == null) {
+					child = new Builder(ruleLabel);
+					node.children.put(ruleLabel, child);
+				}
+				node = child;
+			}
+			node.flags |= exception ? EXCEPTION : RULE;
+		}
+
+		@NotNull
+		private static String lowerCase(@NotNull final String label) {
+			final char[] chars = label.toCharArray();
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = toLowerCase(chars[i]);
+			}
+			return new String(chars);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.Charset;
+
+/**
+ * UTF-8 encoding directly into a byte array, for the compact address stores that would otherwise create an intermediate byte[] per String through
+ * String.getBytes().
+ */
+final class Utf8 {
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private Utf8() {
+		//
+	}
+
+	/**
+	 * @return The number of bytes {@link #encode(String, byte[], int)} will write for the given String.
+	 */
+	static int encodedLength(@NotNull final String s) {
+		int length = 0;
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else {
+				length += Character.isSurrogate(c) ? 1 : 3;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Encodes the given String into the given array, which must have room for {@link #encodedLength(String)} bytes from the given position. Unpaired
+	 * surrogates are encoded as '?', the same way String.getBytes() does.
+	 *
+	 * @return The position just after the last byte written.
+	 */
+	static int encode(@NotNull final String s, @NotNull final byte[] bytes, int pos) {
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c < 0x80) {
+				bytes[pos++] = (byte) c;
+			} else if (c < 0x800) {
+				bytes[pos++] = (byte) (0xC0 | (c >> 6));
+				bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				final int codePoint = Character.toCodePoint(c, s.charAt(++i));
+				bytes[pos++] = (byte) (0xF0 | (codePoint >> 18));
+				bytes[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				bytes[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				bytes[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				bytes[pos++] = (byte) '?';
+			} else {
+				bytes[pos++] = (byte) (0xE0 | (c >> 12));
+				bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return pos;
+	}
+}
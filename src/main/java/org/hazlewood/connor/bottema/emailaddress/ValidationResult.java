@@ -0,0 +1,110 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.EnumSet;
+
+/**
+ * The result of {@link EmailAddressValidator#validate(String, EnumSet)}: whether an address is valid, and if not, where and why it went wrong.
+ * <p>
+ * For an invalid address, this tells the offset of the first character that can't be part of a valid address (everything before it is the start of some
+ * valid address), the grammar element being read at that point, and the criteria that would have allowed the address. For example, <code>"b(o)b"@x.com</code>
+ * validated without any criteria fails at offset 2 in a {@link Element#QUOTED_STRING}, and would be valid with {@link
+ * EmailAddressCriteria#ALLOW_PARENS_IN_LOCALPART}.
+ *
+ * @author Benny Bottema
+ */
+public final class ValidationResult {
+
+	/**
+	 * The grammar elements an address can fail in.
+	 */
+	public enum Element {
+		/**
+		 * The phrase before an angle-addr, e.g. <code>Bob</code> in <code>Bob &lt;bob@example.com&gt;</code>.
+		 */
+		PERSONAL_NAME,
+		/**
+		 * The local part, the part to the left of the @ (outside of any quoted string or comment).
+		 */
+		LOCAL_PART,
+		/**
+		 * The domain, the part to the right of the @ (outside of any domain literal or comment).
+		 */
+		DOMAIN,
+		/**
+		 * A quoted string, in the local part or the personal name, e.g. <code>"bob smith"</code> in <code>"bob smith"@example.com</code>.
+		 */
+		QUOTED_STRING,
+		/**
+		 * A comment, anywhere it is allowed, e.g. <code>(Bob)</code> in <code>bob@example.com (Bob)</code>.
+		 */
+		COMMENT,
+		/**
+		 * A domain literal, the domain between square brackets, e.g. <code>[10.0.0.1]</code> in <code>bob@[10.0.0.1]</code>.
+		 */
+		DOMAIN_LITERAL
+	}
+
+	static final ValidationResult VALID = new ValidationResult(true, -1, null, null);
+
+	private final boolean valid;
+	private final int offset;
+	@Nullable
+	private final Element element;
+	@Nullable
+	private final EnumSet<EmailAddressCriteria> missingCriteria;
+
+	ValidationResult(final int offset, @Nullable final Element element, @Nullable final EnumSet<EmailAddressCriteria> missingCriteria) {
+		this(false, offset, element, missingCriteria);
+	}
+
+	private ValidationResult(final boolean valid, final int offset, @Nullable final Element element,
+			@Nullable final EnumSet<EmailAddressCriteria> missingCriteria) {
+		this.valid = valid;
+		this.offset = offset;
+		this.element = element;
+		this.missingCriteria = missingCriteria;
+	}
+
+	public boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * @return The offset of the first character that can't be part of a valid address, the length of the address if it ended too soon, or -1 if the address
+	 * is valid.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return The grammar element the character at {@link #getOffset()} failed in, or null if the address is valid, is null, or if the failure isn't in
+	 * any particular element (e.g. after the closing angle bracket).
+	 */
+	@Nullable
+	public Element getElement() {
+		return element;
+	}
+
+	/**
+	 * @return The smallest set of criteria that, added to the criteria validated with, would have made the address valid; null if the address is valid, or if
+	 * it isn't valid under any criteria.
+	 */
+	@Nullable
+	@SuppressWarnings("WeakerAccess")
+	public EnumSet<EmailAddressCriteria> getMissingCriteria() {
+		return missingCriteria != null ? EnumSet.copyOf(missingCriteria) : null;
+	}
+
+	@Override
+	@NotNull
+	public String toString() {
+		if (valid) {
+			return "valid";
+		}
+		return "invalid at offset " + offset + (element != null ? " in " + element : "") + (missingCriteria != null ? ", allowed by " + missingCriteria : "");
+	}
+}
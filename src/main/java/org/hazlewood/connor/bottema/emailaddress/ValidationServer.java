@@ -0,0 +1,374 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.EnumSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves validation and extraction over HTTP, for services that can't call this library directly (e.g. written in Python or Go), so they all get the same
+ * results and one warm JVM (with its compiled code and cached grammar automata) serves them all. It runs on the HTTP server that comes with the JDK
+ * (<code>com.sun.net.httpserver</code>), so it needs nothing else on the classpath. Run it from the command line (see {@link #main(String[])} for the
+ * options), or embed it.
+ * <p>
+ * Requests are batches: the body of a <code>POST</code> is UTF-8 text with one address (or header) per line, and the response has a compact result for each
+ * line, in the same order:
+ * <ul>
+ * <li><code>POST /validate</code>: one character per line, <code>1</code> if the line is a valid address as per {@link
+ * EmailAddressValidator#isValid(String, EnumSet)} and <code>0</code> if it isn't, followed by a single newline. A batch of three gives e.g.
+ * <code>101\n</code>.</li>
+ * <li><code>POST /extract</code>: each line is taken to be an address header, like {@link EmailAddressParser#extractParsedAddresses(String, EnumSet,
+ * boolean)} takes it; the response has one line per line, with the extracted addresses (local part @ domain) separated by tabs, or an empty line if there
+ * are none. As a quoted local part may contain tabs and line breaks, backslashes, tabs, CRs and LFs in an address are escaped as <code>\\</code>,
+ * <code>\t</code>, <code>\r</code> and <code>\n</code>, so split each line on tabs first and then unescape the addresses.</li>
+ * </ul>
+ * Both take the criteria as a query parameter, as in <code>/validate?criteria=RFC_COMPLIANT</code> or
+ * <code>/validate?criteria=ALLOW_QUOTED_IDENTIFIERS,ALLOW_UTF8</code> (see {@link #main(String[])}), or use those of the server. Line ends may be LF or
+ * CRLF. Other methods get a 405, unknown criteria a 400 and batches over the maximum size a 413.
+ * <p>
+ * Requests are handled on the given Executor, one request per task. On JDK 21 or later, that can be <code>Executors.newVirtualThreadPerTaskExecutor()</code>
+ * to give each request a virtual thread of its own; as matching is CPU-bound, a pool of one thread per processor (as the command line uses) serves about as
+ * many addresses per second, but the virtual threads don't keep a slow caller's request waiting behind the others.
+ * <p>
+ * The JDK's server writes the headers and the body of a response separately, so with Nagle's algorithm on (the default), each response waits for the
+ * caller's delayed ACK, some 40 ms whatever the size of the batch. The command line turns it off (see {@link #main(String[])}); when embedding, do the same
+ * by starting the JVM with <code>-Dsun.net.httpserver.nodelay=true</code>, or setting that system property before the first HttpServer is created.
+ *
+ * @author Benny Bottema
+ */
+public final class ValidationServer {
+
+	@SuppressWarnings("WeakerAccess")
+	public static final int DEFAULT_PORT = 2822;
+
+	@SuppressWarnings("WeakerAccess")
+	public static final int DEFAULT_MAX_BATCH_BYTES = 16 * 1024 * 1024;
+
+	private static final String USAGE = "Usage: java -cp emailaddress-rfc2822.jar " + ValidationServer.class.getName() + " [options]\n"
+			+ "Options:\n"
+			+ "  --criteria <criteria>  when a request has none: RECOMMENDED (default), RFC_COMPLIANT, NONE or a list of EmailAddressCriteria\n"
+			+ "  --bind <address>       the address to listen on (default: 127.0.0.1, for local callers only)\n"
+			+ "  --port <n>             the port to listen on (default: " + DEFAULT_PORT + ")\n"
+			+ "  --threads <n>          the number of worker threads (default: the number of processors)\n"
+			+ "  --max-batch <bytes>    the maximum size of a request body (default: 16 MB)\n";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@NotNull
+	private final EnumSet<EmailAddressCriteria> criteria;
+	private final int maxBatchBytes;
+	@NotNull
+	private final HttpServer server;
+	@NotNull
+	private final AtomicLong requests = new AtomicLong();
+	@NotNull
+	private final AtomicLong lines = new AtomicLong();
+
+	/**
+	 * Creates a server bound to the given address, which doesn't accept requests until {@link #start()} is called.
+	 *
+	 * @param address  Where to listen, e.g. <code>new InetSocketAddress(InetAddress.getLoopbackAddress(), ValidationServer.DEFAULT_PORT)</code>; port 0
+	 *                 picks a free port (see {@link #getAddress()}).
+	 * @param criteria The criteria for requests that don't specify any.
+	 * @param executor Runs the requests; it is not shut down by {@link #stop(int)}.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public ValidationServer(@NotNull final InetSocketAddress address, @NotNull final EnumSet<EmailAddressCriteria> criteria, @NotNull final Executor executor)
+			throws IOException {
+		this(address, criteria, executor, DEFAULT_MAX_BATCH_BYTES);
+	}
+
+	/**
+	 * @param maxBatchBytes The maximum size in bytes of a request body.
+	 * @see #ValidationServer(InetSocketAddress, EnumSet, Executor)
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public ValidationServer(@NotNull final InetSocketAddress address, @NotNull final EnumSet<EmailAddressCriteria> criteria, @NotNull final Executor executor,
+			final int maxBatchBytes) throws IOException {
+		if (maxBatchBytes < 1) {
+			throw new IllegalArgumentException("maxBatchBytes must be positive");
+		}
+		this.criteria = EnumSet.copyOf(criteria);
+		this.maxBatchBytes = maxBatchBytes;
+		this.server = HttpServer.create(address, 0);
+		server.createContext("/validate", new BatchHandler(false));
+		server.createContext("/extract", new BatchHandler(true));
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Command-line entry point, run with <code>--help</code> for the usage. Serves until the process is stopped, and exits with 2 on errors. Unless the
+	 * system property <code>sun.net.httpserver.nodelay</code> is given, sets it to <code>true</code>, to turn off Nagle's algorithm (see above).
+	 */
+	public static void main(@NotNull final String[] args) {
+		EnumSet<EmailAddressCriteria> criteria = EmailAddressCriteria.RECOMMENDED;
+		String bind = "127.0.0.1";
+		int port = DEFAULT_PORT;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				final String arg = args[i];
+				if (arg.startsWith("--") && i + 1 < args.length) {
+					final String value = args[++i];
+					switch (arg) {
+						case "--criteria":
+							criteria = BulkValidator.parseCriteria(value);
+							break;
+						case "--bind":
+							bind = value;
+							break;
+						case "--port":
+							port = Integer.parseInt(value);
+							break;
+						case "--threads":
+							threads = Integer.parseInt(value);
+							break;
+						case "--max-batch":
+							maxBatchBytes = Integer.parseInt(value);
+							break;
+						default:
+							throw new IllegalArgumentException("unknown option: " + arg);
+					}
+				} else {
+					throw new IllegalArgumentException("unexpected argument: " + arg);
+				}
+			}
+			if (threads < 1) {
+				throw new IllegalArgumentException("threads must be positive");
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.print(USAGE);
+			System.exit(2);
+			return;
+		}
+
+		// the JDK's server reads this once, when the first server is created
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			final ValidationServer server = new ValidationServer(new InetSocketAddress(bind, port), criteria, pool, maxBatchBytes);
+			server.start();
+			System.out.println("serving POST /validate and POST /extract on " + server.getAddress());
+		} catch (IOException e) {
+			System.err.println("validation server failed to start: " + e);
+			pool.shutdownNow();
+			System.exit(2);
+			return;
+		}
+	}
+
+	/**
+	 * Starts accepting requests, on a thread of the HTTP server's own.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests, and closes the connections once the requests being handled are done or the given delay has passed.
+	 */
+	@SuppressWarnings("WeakerAccess")
+	public void stop(final int delaySeconds) {
+		server.stop(delaySeconds);
+	}
+
+	/**
+	 * @return The address the server is bound to, with the actual port.
+	 */
+	@NotNull
+	@SuppressWarnings("WeakerAccess")
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * @return The number of batches handled successfully so far.
+	 */
+	@SuppressWarnings("unused")
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * @return The number of lines (addresses or headers) in the batches handled so far.
+	 */
+	@SuppressWarnings("unused")
+	public long getLines() {
+		return lines.get();
+	}
+
+	/**
+	 * Handles the batches for one of the endpoints.
+	 */
+	private final class BatchHandler implements HttpHandler {
+		private final boolean extract;
+
+		BatchHandler(final boolean extract) {
+			this.extract = extract;
+		}
+
+		@Override
+		public void handle(@NotNull final HttpExchange exchange) throws IOException {
+			try {
+				if (!"POST".equals(exchange.getRequestMethod())) {
+					exchange.getResponseHeaders().set("Allow", "POST");
+					respond(exchange, 405, "only POST is supported\n");
+					return;
+				}
+				final EnumSet<EmailAddressCriteria> requestCriteria = getCriteria(exchange.getRequestURI());
+				if (requestCriteria == null) {
+					respond(exchange, 400, "unknown criteria\n");
+					return;
+				}
+				// reject a batch that is declared too large right away, and one that turns out to be (e.g. when sent in chunks) while reading it
+				final byte[] body = declaresTooLarge(exchange.getRequestHeaders().getFirst("Content-Length")) ? null : readBody(exchange.getRequestBody());
+				if (body == null) {
+					respond(exchange, 413, "batch larger than " + maxBatchBytes + " bytes\n");
+					return;
+				}
+				respond(exchange, 200, handleBatch(new String(body, UTF_8), requestCriteria));
+			} finally {
+				exchange.close();
+			}
+		}
+
+		@NotNull
+		private String handleBatch(@NotNull final String batch, @NotNull final EnumSet<EmailAddressCriteria> requestCriteria) {
+			final StringBuilder result = new StringBuilder(extract ? batch.length() : batch.length() / 16 + 1);
+			int count = 0;
+			int start = 0;
+			while (start < batch.length()) {
+				int end = batch.indexOf('\n', start);
+				final int next = end < 0 ? batch.length() : end + 1;
+				end = end < 0 ? batch.length() : end;
+				if (end > start && batch.charAt(end - 1) == '\r') {
+					end--;
+				}
+				final String line = batch.substring(start, end);
+				if (extract) {
+					final ParsedAddress[] addresses = EmailAddressParser.extractParsedAddresses(line, requestCriteria, false);
+					for (int i = 0; i < addresses.length; i++) {
+						appendEscaped(result.append(i > 0 ? "\t" : ""), addresses[i].getAddress());
+					}
+					result.append('\n');
+				} else {
+					result.append(EmailAddressValidator.isValid(line, requestCriteria) ? '1' : '0');
+				}
+				count++;
+				start = next;
+			}
+			if (!extract) {
+				result.append('\n');
+			}
+			requests.incrementAndGet();
+			lines.addAndGet(count);
+			return result.toString();
+		}
+
+		/**
+		 * @return The criteria from the query of the given request, the server's if there are none, or null if they aren't valid.
+		 */
+		@Nullable
+		private EnumSet<EmailAddressCriteria> getCriteria(@NotNull final URI uri) throws UnsupportedEncodingException {
+			final String query = uri.getRawQuery();
+			if (query != null) {
+				for (String parameter : query.split("&")) {
+					if (parameter.startsWith("criteria=")) {
+						try {
+							return BulkValidator.parseCriteria(URLDecoder.decode(parameter.substring("criteria=".length()), "UTF-8"));
+						} catch (IllegalArgumentException e) {
+							return null;
+						}
+					}
+				}
+			}
+			return criteria;
+		}
+
+		/**
+		 * Appends the given address with its backslashes, tabs, CRs and LFs escaped, see the class documentation.
+		 */
+		private void appendEscaped(@NotNull final StringBuilder result, @NotNull final String address) {
+			for (int i = 0; i < address.length(); i++) {
+				final char c = address.charAt(i);
+				switch (c) {
+					case '\\':
+						result.append("\\\\");
+						break;
+					case '\t':
+						result.append("\\t");
+						break;
+					case '\r':
+						result.append("\\r");
+						break;
+					case '\n':
+						result.append("\\n");
+						break;
+					default:
+						result.append(c);
+				}
+			}
+		}
+
+		/**
+		 * @return Whether the given Content-Length is over the maximum batch size; false if there is none, or it isn't a number.
+		 */
+		private boolean declaresTooLarge(@Nullable final String contentLength) {
+			if (contentLength == null) {
+				return false;
+			}
+			try {
+				return Long.parseLong(contentLength.trim()) > maxBatchBytes;
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * @return The whole body, or null if it is larger than the maximum batch size.
+		 */
+		@Nullable
+		private byte[] readBody(@NotNull final InputStream in) throws IOException {
+			final ByteArrayOutputStream body = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				if (body.size() + read > maxBatchBytes) {
+					return null;
+				}
+				body.write(buffer, 0, read);
+			}
+			return body.toByteArray();
+		}
+
+		private void respond(@NotNull final HttpExchange exchange, final int status, @NotNull final String text) throws IOException {
+			final byte[] bytes = text.getBytes(UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(status, bytes.length);
+			final OutputStream out = exchange.getResponseBody();
+			out.write(bytes);
+			out.close();
+		}
+	}
+}
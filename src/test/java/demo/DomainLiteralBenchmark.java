@@ -0,0 +1,73 @@
+package demo;
+
+import org.hazlewood.connor.bottema.emailaddress.DomainLiteral;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Locale;
+
+/**
+ * Compares parsing domain literals with {@link DomainLiteral#parse(CharSequence, int, int, byte[])} with parsing their contents with
+ * <code>InetAddress.getByName</code> (which doesn't do a lookup for IP address literals, but does create objects and throws for invalid ones). Not a unit
+ * test; run its main method (after a build) with the test classpath, e.g. from your IDE.
+ */
+public class DomainLiteralBenchmark {
+
+	private static final String[] LITERALS = {
+			"[192.0.2.1]",
+			"[10.0.0.254]",
+			"[IPv6:2001:db8:85a3:0:0:8a2e:370:7334]",
+			"[IPv6:2001:db8::1]",
+			"[IPv6:::ffff:192.0.2.1]",
+			"[IPv6:fe80::1:2:3:4]"
+	};
+
+	private static final int COUNT = 1_000_000;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws UnknownHostException {
+		// InetAddress takes IPv6 literals in brackets, but without the tag
+		final String[] inetLiterals = new String[LITERALS.length];
+		for (int i = 0; i < LITERALS.length; i++) {
+			inetLiterals[i] = LITERALS[i].startsWith("[IPv6:") ? "[" + LITERALS[i].substring(6) : LITERALS[i].substring(1, LITERALS[i].length() - 1);
+		}
+		for (int round = 1; round <= ROUNDS; round++) {
+			System.out.println("round " + round + (round == 1 ? " (warm-up)" : ""));
+			report("DomainLiteral.parse", benchmarkDomainLiteral());
+			report("InetAddress.getByName", benchmarkInetAddress(inetLiterals));
+		}
+	}
+
+	private static long benchmarkDomainLiteral() {
+		final byte[] address = new byte[16];
+		long start = System.nanoTime();
+		int sink = 0;
+		for (int i = 0; i < COUNT; i++) {
+			final String literal = LITERALS[i % LITERALS.length];
+			sink += DomainLiteral.parse(literal, 0, literal.length(), address) + address[15];
+		}
+		return consume(sink, start);
+	}
+
+	private static long benchmarkInetAddress(String[] inetLiterals) throws UnknownHostException {
+		long start = System.nanoTime();
+		int sink = 0;
+		for (int i = 0; i < COUNT; i++) {
+			final byte[] address = InetAddress.getByName(inetLiterals[i % inetLiterals.length]).getAddress();
+			sink += address.length + address[address.length - 1];
+		}
+		return consume(sink, start);
+	}
+
+	private static long consume(int sink, long start) {
+		long elapsed = System.nanoTime() - start;
+		if (sink == 42) {
+			System.out.println("(unlikely)");
+		}
+		return elapsed;
+	}
+
+	private static void report(String name, long elapsedNanos) {
+		System.out.println(String.format(Locale.ROOT, "  %-22s %8.1f ns/literal", name, (double) elapsedNanos / COUNT));
+	}
+}
@@ -0,0 +1,74 @@
+package demo;
+
+import org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria;
+import org.hazlewood.connor.bottema.emailaddress.EmailAddressParser;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Locale;
+
+/**
+ * Measures the time per call of the extracting methods of {@link EmailAddressParser} (getAddressParts, getPersonalName, getLocalPart and getDomain) on a
+ * mix of typical addresses, for the RECOMMENDED and RFC_COMPLIANT criteria. It only uses methods that have been in the API from the start, so it can be run
+ * against older versions for comparison. Not a unit test; run its main method (after a build) with the test classpath, e.g. from your IDE.
+ */
+public class ExtractionBenchmark {
+
+	private static final String[] ADDRESSES = {
+			"bob@example.com",
+			"Bob Smith <bob.smith@example.com>",
+			"\"Smith, Bob\" <bob@mail.example.co.uk>",
+			"sue.jones+news@example.org (Sue Jones)",
+			"\"j o e\"@example.net",
+			"Max Mustermann <max.mustermann@sub.domain.example.de>",
+			"ann@[192.0.2.1]",
+			"not an address"
+	};
+
+	private static final int ROUNDS = 5;
+	private static final long ROUND_NANOS = 2_000_000_000L;
+
+	public static void main(String[] args) {
+		for (int round = 0; round < ROUNDS; round++) {
+			System.out.println(round == 0 ? "warm-up round" : "round " + round);
+			for (EnumSet<EmailAddressCriteria> criteria : Arrays.asList(EmailAddressCriteria.RECOMMENDED, EmailAddressCriteria.RFC_COMPLIANT)) {
+				System.out.println(String.format(Locale.ROOT, "  %-13s getAddressParts %6.2f us, getPersonalName %6.2f us, getLocalPart %6.2f us, "
+								+ "getDomain %6.2f us", criteria.equals(EmailAddressCriteria.RECOMMENDED) ? "RECOMMENDED" : "RFC_COMPLIANT",
+						measure(criteria, 0) / 1e3, measure(criteria, 1) / 1e3, measure(criteria, 2) / 1e3, measure(criteria, 3) / 1e3));
+			}
+		}
+	}
+
+	/**
+	 * @return The average time per call, in nanoseconds.
+	 */
+	private static double measure(EnumSet<EmailAddressCriteria> criteria, int method) {
+		final long start = System.nanoTime();
+		long count = 0;
+		int sink = 0;
+		do {
+			for (String address : ADDRESSES) {
+				final boolean extractCfwsPersonalNames = (count & 1) == 0;
+				switch (method) {
+					case 0:
+						sink += EmailAddressParser.getAddressParts(address, criteria, extractCfwsPersonalNames) != null ? 1 : 0;
+						break;
+					case 1:
+						sink += EmailAddressParser.getPersonalName(address, criteria, extractCfwsPersonalNames) != null ? 1 : 0;
+						break;
+					case 2:
+						sink += EmailAddressParser.getLocalPart(address, criteria, extractCfwsPersonalNames) != null ? 1 : 0;
+						break;
+					default:
+						sink += EmailAddressParser.getDomain(address, criteria, extractCfwsPersonalNames) != null ? 1 : 0;
+				}
+				count++;
+			}
+		} while (System.nanoTime() - start < ROUND_NANOS);
+		final long elapsed = System.nanoTime() - start;
+		if (sink == 42) {
+			System.out.println("(unlikely)");
+		}
+		return (double) elapsed / count;
+	}
+}
@@ -0,0 +1,103 @@
+package demo;
+
+import org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria;
+import org.hazlewood.connor.bottema.emailaddress.EmailAddressParser;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Compares matching near misses (input that almost is an address, so a backtracking matcher tries every way of matching it before giving up) with the
+ * regular and the hardened mailbox pattern of {@link EmailAddressParser#getMailboxPattern(EnumSet, boolean)}, and with the parser itself, which doesn't use
+ * java.util.regex. The near misses grow in size per round, to show which of them take exponential time. Not a unit test; run its main method (after a
+ * build) with the test classpath, e.g. from your IDE. Give it a large thread stack (e.g. <code>-Xss16m</code>), as java.util.regex recurses per repetition.
+ */
+public class HardenedPatternBenchmark {
+
+	private static final EnumSet<EmailAddressCriteria> CRITERIA = EnumSet.allOf(EmailAddressCriteria.class);
+
+	/**
+	 * Per near miss: the text before, the text that is repeated and the text after.
+	 */
+	private static final String[][] NEAR_MISSES = {
+			{ "bob@[", "a", "" },
+			{ "", "Bob  ", "bob@example.com" },
+			{ "", "(a) ", "x" },
+			{ "\"", "a ", "@example.com" },
+			{ "", "a.", "a" },
+			{ "bob@example.com (", "a ", "" }
+	};
+
+	private static final int[] SIZES = { 4, 8, 12, 14 };
+
+	/**
+	 * Each measurement repeats the match for at least this long, and stops after the first match that takes longer.
+	 */
+	private static final long MEASURE_NANOS = 200_000_000L;
+
+	public static void main(String[] args) {
+		final Pattern regular = EmailAddressParser.getMailboxPattern(CRITERIA, false);
+		final Pattern hardened = EmailAddressParser.getMailboxPattern(CRITERIA, true);
+		// warm up
+		for (String[] nearMiss : NEAR_MISSES) {
+			final String input = nearMiss(nearMiss, SIZES[0]);
+			measureRegex(regular, input);
+			measureRegex(hardened, input);
+			measureParser(input);
+		}
+		for (int size : SIZES) {
+			System.out.println(size + " repetitions");
+			for (String[] nearMiss : NEAR_MISSES) {
+				final String input = nearMiss(nearMiss, size);
+				System.out.println(String.format(Locale.ROOT, "  %-40s regular %12.1f us  hardened %8.1f us  parser %8.1f us",
+						input.length() > 40 ? input.substring(0, 37) + "..." : input,
+						measureRegex(regular, input) / 1e3, measureRegex(hardened, input) / 1e3, measureParser(input) / 1e3));
+			}
+		}
+	}
+
+	private static String nearMiss(String[] nearMiss, int size) {
+		final StringBuilder sb = new StringBuilder(nearMiss[0]);
+		for (int i = 0; i < size; i++) {
+			sb.append(nearMiss[1]);
+		}
+		return sb.append(nearMiss[2]).toString();
+	}
+
+	/**
+	 * @return The average time per match, in nanoseconds.
+	 */
+	private static double measureRegex(Pattern pattern, String input) {
+		final long start = System.nanoTime();
+		int count = 0;
+		int sink = 0;
+		do {
+			sink += pattern.matcher(input).matches() ? 1 : 0;
+			count++;
+		} while (System.nanoTime() - start < MEASURE_NANOS);
+		return consume(sink, start, count);
+	}
+
+	/**
+	 * @return The average time per match, in nanoseconds.
+	 */
+	private static double measureParser(String input) {
+		final long start = System.nanoTime();
+		int count = 0;
+		int sink = 0;
+		do {
+			sink += EmailAddressParser.getAddressParts(input, CRITERIA, false) != null ? 1 : 0;
+			count++;
+		} while (System.nanoTime() - start < MEASURE_NANOS);
+		return consume(sink, start, count);
+	}
+
+	private static double consume(int sink, long start, int count) {
+		final long elapsed = System.nanoTime() - start;
+		if (sink == 42) {
+			System.out.println("(unlikely)");
+		}
+		return (double) elapsed / count;
+	}
+}
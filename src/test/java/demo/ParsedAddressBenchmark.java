@@ -0,0 +1,92 @@
+package demo;
+
+import org.hazlewood.connor.bottema.emailaddress.EmailAddressParser;
+import org.hazlewood.connor.bottema.emailaddress.ParsedAddress;
+
+import javax.mail.internet.InternetAddress;
+import java.util.Locale;
+
+import static org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria.RECOMMENDED;
+
+/**
+ * Compares the per-address cost of {@link EmailAddressParser#getInternetAddress} and {@link EmailAddressParser#getParsedAddress}, and of the header
+ * variants. Not a unit test; run its main method (after a build) with the test classpath, e.g. from your IDE.
+ */
+public class ParsedAddressBenchmark {
+
+	private static final String[] ADDRESSES = {
+			"bob@example.com",
+			"\"Bob Smith\" <bob.smith@example.com>",
+			"Sue Jones <sue@mail.example.org>",
+			"joe@example.com (Joe)",
+			"\"Jürgen\" <juergen@example.de>"
+	};
+	private static final String HEADER = "\"Bob Smith\" <bob.smith@example.com>, Sue Jones <sue@mail.example.org>, joe@example.com (Joe), x@y.org";
+
+	private static final int ROUNDS = 5;
+	private static final int ITERATIONS = 200_000;
+
+	public static void main(String[] args) {
+		for (int round = 1; round <= ROUNDS; round++) {
+			System.out.println("round " + round + (round == 1 ? " (warm-up)" : ""));
+			report("getInternetAddress", ADDRESSES.length, benchmarkInternetAddress());
+			report("getParsedAddress", ADDRESSES.length, benchmarkParsedAddress());
+			report("extractHeaderAddresses", 4, benchmarkExtractHeaderAddresses());
+			report("extractParsedAddresses", 4, benchmarkExtractParsedAddresses());
+		}
+	}
+
+	private static long benchmarkInternetAddress() {
+		long start = System.nanoTime();
+		int sink = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			for (String address : ADDRESSES) {
+				InternetAddress ia = EmailAddressParser.getInternetAddress(address, RECOMMENDED, true);
+				sink += ia != null ? ia.getAddress().length() : 0;
+			}
+		}
+		return consume(sink, start);
+	}
+
+	private static long benchmarkParsedAddress() {
+		long start = System.nanoTime();
+		int sink = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			for (String address : ADDRESSES) {
+				ParsedAddress pa = EmailAddressParser.getParsedAddress(address, RECOMMENDED, true);
+				sink += pa != null ? pa.getAddress().length() : 0;
+			}
+		}
+		return consume(sink, start);
+	}
+
+	private static long benchmarkExtractHeaderAddresses() {
+		long start = System.nanoTime();
+		int sink = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += EmailAddressParser.extractHeaderAddresses(HEADER, RECOMMENDED, true).length;
+		}
+		return consume(sink, start);
+	}
+
+	private static long benchmarkExtractParsedAddresses() {
+		long start = System.nanoTime();
+		int sink = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += EmailAddressParser.extractParsedAddresses(HEADER, RECOMMENDED, true).length;
+		}
+		return consume(sink, start);
+	}
+
+	private static long consume(int sink, long start) {
+		long elapsed = System.nanoTime() - start;
+		if (sink == 42) {
+			System.out.println("(unlikely)");
+		}
+		return elapsed;
+	}
+
+	private static void report(String name, int addressesPerIteration, long elapsedNanos) {
+		System.out.println(String.format(Locale.ROOT, "  %-24s %8.1f ns/address", name, (double) elapsedNanos / ITERATIONS / addressesPerIteration));
+	}
+}
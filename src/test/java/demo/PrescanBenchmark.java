@@ -0,0 +1,132 @@
+package demo;
+
+import org.hazlewood.connor.bottema.emailaddress.AddressPrescan;
+import org.hazlewood.connor.bottema.emailaddress.EmailAddressValidator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+import static org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria.RECOMMENDED;
+
+/**
+ * Measures {@link AddressPrescan#classify(ByteBuffer, int, int)}, and compares validating a packed batch of addresses routed by the prescan with validating
+ * each of them with {@link EmailAddressValidator#isValid(String, java.util.EnumSet)}. Not a unit test; run its main method (after a build) with the test
+ * classpath, e.g. from your IDE. Pass <code>direct</code> to use a direct buffer (like the memory-mapped ones of {@link
+ * org.hazlewood.connor.bottema.emailaddress.BulkValidator}) instead of a heap buffer; run the two in separate JVMs, as the JIT compiles the buffer access for
+ * the buffer class it sees.
+ */
+public class PrescanBenchmark {
+
+	private static final String[] ADDRESSES = {
+			"bob@example.com",
+			"sue.jones@mail.example.org",
+			"joe+newsletter@example.co.uk",
+			"first.last.with.a.longer.local.part@subdomain.example.com",
+			"\"Bob Smith\" <bob.smith@example.com>",
+			"joe@example.com (Joe)",
+			"jürgen@example.de",
+			"not an address",
+			"a..b@example.com"
+	};
+
+	private static final int COUNT = 100_000;
+	private static final int ROUNDS = 5;
+	private static final int ITERATIONS = 20;
+
+	public static void main(String[] args) {
+		final int[] offsets = new int[COUNT + 1];
+		final ByteBuffer heap = pack(offsets);
+		final ByteBuffer buffer = args.length > 0 && args[0].equals("direct") ? ByteBuffer.allocateDirect(heap.capacity()).put(heap) : heap;
+		final byte[] masks = new byte[COUNT];
+		for (int round = 1; round <= ROUNDS; round++) {
+			System.out.println("round " + round + (round == 1 ? " (warm-up)" : ""));
+			report("classify", offsets[COUNT], benchmarkClassify(buffer, offsets));
+			report("isValid per String", offsets[COUNT], benchmarkIsValid(buffer, offsets));
+			report("routed by prescan", offsets[COUNT], benchmarkRouted(buffer, offsets, masks));
+		}
+	}
+
+	private static ByteBuffer pack(int[] offsets) {
+		final byte[][] encoded = new byte[ADDRESSES.length][];
+		int size = 0;
+		for (int i = 0; i < COUNT; i++) {
+			int a = i % ADDRESSES.length;
+			if (encoded[a] == null) {
+				encoded[a] = ADDRESSES[a].getBytes(Charset.forName("UTF-8"));
+			}
+			size += encoded[a].length;
+		}
+		final byte[] data = new byte[size];
+		int pos = 0;
+		for (int i = 0; i < COUNT; i++) {
+			final byte[] address = encoded[i % ADDRESSES.length];
+			offsets[i] = pos;
+			System.arraycopy(address, 0, data, pos, address.length);
+			pos += address.length;
+		}
+		offsets[COUNT] = pos;
+		return ByteBuffer.wrap(data);
+	}
+
+	private static long benchmarkClassify(ByteBuffer buffer, int[] offsets) {
+		long start = System.nanoTime();
+		int sink = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			for (int a = 0; a < COUNT; a++) {
+				sink += AddressPrescan.classify(buffer, offsets[a], offsets[a + 1]);
+			}
+		}
+		return consume(sink, start);
+	}
+
+	private static long benchmarkIsValid(ByteBuffer buffer, int[] offsets) {
+		long start = System.nanoTime();
+		int sink = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			for (int a = 0; a < COUNT; a++) {
+				sink += EmailAddressValidator.isValid(string(buffer, offsets[a], offsets[a + 1]), RECOMMENDED) ? 1 : 0;
+			}
+		}
+		return consume(sink, start);
+	}
+
+	private static long benchmarkRouted(ByteBuffer buffer, int[] offsets, byte[] masks) {
+		long start = System.nanoTime();
+		int sink = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			AddressPrescan.classify(buffer, offsets, COUNT, masks);
+			for (int a = 0; a < COUNT; a++) {
+				final boolean valid;
+				if (AddressPrescan.isFastPath(masks[a])) {
+					valid = AddressPrescan.isValidDotAtomAddress(buffer, offsets[a], offsets[a + 1], RECOMMENDED);
+				} else {
+					valid = !AddressPrescan.isRejected(masks[a]) && EmailAddressValidator.isValid(string(buffer, offsets[a], offsets[a + 1]), RECOMMENDED);
+				}
+				sink += valid ? 1 : 0;
+			}
+		}
+		return consume(sink, start);
+	}
+
+	private static String string(ByteBuffer buffer, int from, int to) {
+		final byte[] bytes = new byte[to - from];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(from + i);
+		}
+		return new String(bytes, Charset.forName("UTF-8"));
+	}
+
+	private static long consume(int sink, long start) {
+		long elapsed = System.nanoTime() - start;
+		if (sink == 42) {
+			System.out.println("(unlikely)");
+		}
+		return elapsed;
+	}
+
+	private static void report(String name, int bytes, long elapsedNanos) {
+		System.out.println(String.format(Locale.ROOT, "  %-20s %8.1f ns/address %9.1f MB/s", name, (double) elapsedNanos / ITERATIONS / COUNT,
+				(double) bytes * ITERATIONS / elapsedNanos * 1000));
+	}
+}
@@ -1,20 +1,64 @@
 package demo;
 
+import org.hazlewood.connor.bottema.emailaddress.AddressListWriter;
+import org.hazlewood.connor.bottema.emailaddress.AddressPrescan;
+import org.hazlewood.connor.bottema.emailaddress.AddressTable;
+import org.hazlewood.connor.bottema.emailaddress.AddressesByDomain;
+import org.hazlewood.connor.bottema.emailaddress.ArchiveScanner;
+import org.hazlewood.connor.bottema.emailaddress.BulkValidator;
+import org.hazlewood.connor.bottema.emailaddress.CanonicalAddressSet;
+import org.hazlewood.connor.bottema.emailaddress.DomainBlocklist;
+import org.hazlewood.connor.bottema.emailaddress.DomainLiteral;
+import org.hazlewood.connor.bottema.emailaddress.DomainSet;
 import org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria;
 import org.hazlewood.connor.bottema.emailaddress.EmailAddressParser;
 import org.hazlewood.connor.bottema.emailaddress.EmailAddressValidator;
+import org.hazlewood.connor.bottema.emailaddress.IncrementalHeaderParser;
+import org.hazlewood.connor.bottema.emailaddress.IncrementalValidator;
+import org.hazlewood.connor.bottema.emailaddress.LatencyFuzzer;
+import org.hazlewood.connor.bottema.emailaddress.ParsedAddress;
+import org.hazlewood.connor.bottema.emailaddress.ParsedAddressReader;
+import org.hazlewood.connor.bottema.emailaddress.ParsedAddressWriter;
+import org.hazlewood.connor.bottema.emailaddress.PublicSuffixList;
+import org.hazlewood.connor.bottema.emailaddress.ValidationResult;
+import org.hazlewood.connor.bottema.emailaddress.ValidationServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.junit.Ignore;
 import org.junit.Test;
 
 import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeUtility;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static java.util.EnumSet.of;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria.ALLOW_DOMAIN_LITERALS;
 import static org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria.ALLOW_DOT_IN_A_TEXT;
 import static org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria.ALLOW_PARENS_IN_LOCALPART;
 import static org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria.ALLOW_QUOTED_IDENTIFIERS;
 import static org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria.ALLOW_SQUARE_BRACKETS_IN_A_TEXT;
+import static org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria.ALLOW_UTF8;
 import static org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria.RECOMMENDED;
 import static org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria.RFC_COMPLIANT;
 import static org.junit.Assert.assertFalse;
@@ -125,4 +169,1073 @@ public class TestClass {
 						"testmail.com"
 				);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testCanonicalAddress() {
+		assertThat(EmailAddressParser.getCanonicalAddress("\"bob\"@Example.COM", RECOMMENDED)).isEqualTo("bob@example.com");
+		assertThat(EmailAddressParser.getCanonicalAddress("bob@example.com (Bob)", RECOMMENDED)).isEqualTo("bob@example.com");
+		assertThat(EmailAddressParser.getCanonicalAddress("<bob@example.com>", RECOMMENDED)).isEqualTo("bob@example.com");
+		assertThat(EmailAddressParser.getCanonicalAddress("\"Bob Smith\" <Bob@EXAMPLE.com>", RECOMMENDED)).isEqualTo("Bob@example.com");
+		assertThat(EmailAddressParser.getCanonicalAddress("\"bob smith\"@example.com", RECOMMENDED)).isEqualTo("\"bob smith\"@example.com");
+		assertThat(EmailAddressParser.getCanonicalAddress("NotAnEmail", RECOMMENDED)).isNull();
+
+		CanonicalAddressSet set = new CanonicalAddressSet(RECOMMENDED, 2);
+		assertThat(set.add("\"bob\"@Example.COM")).isTrue();
+		assertThat(set.add("bob@example.com (Bob)")).isFalse();
+		assertThat(set.add("<bob@example.com>")).isFalse();
+		assertThat(set.add("Bob@example.com")).isTrue();
+		assertThat(set.add("NotAnEmail")).isFalse();
+		for (int i = 0; i < 1000; i++) {
+			assertThat(set.add("user" + i + "@example.com")).isTrue();
+		}
+		assertThat(set.size()).isEqualTo(1002);
+		assertThat(set.contains("USER999@example.com")).isFalse();
+		assertThat(set.contains("user999@EXAMPLE.COM")).isTrue();
+	}
+
+	@Test
+	public void testExtractHeaderAddressesIntoTable() {
+		String header = "\"Bob\" <bob@example.com>, undisclosed-recipients:;, Sue Smith <sue@Example.com>, joe@other.org (Joe)";
+		AddressTable table = new AddressTable(1);
+		assertThat(EmailAddressParser.extractHeaderAddresses(header, RECOMMENDED, true, table)).isEqualTo(3);
+		InternetAddress[] expected = EmailAddressParser.extractHeaderAddresses(header, RECOMMENDED, true);
+		assertThat(table.size()).isEqualTo(expected.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertThat(table.getAddress(i)).isEqualTo(expected[i].getAddress());
+			assertThat(table.getPersonalName(i)).isEqualTo(expected[i].getPersonal());
+		}
+		assertThat(table.getDomainCount()).isEqualTo(3);
+		assertThat(EmailAddressParser.extractAddress("bob@example.com", RECOMMENDED, true, table)).isTrue();
+		assertThat(table.getDomainId(3)).isEqualTo(table.getDomainId(0));
+		assertThat(table.hasPersonalName(3)).isFalse();
+		assertThat(EmailAddressParser.extractAddress("NotAnEmail", RECOMMENDED, true, table)).isFalse();
+		assertThat(table.size()).isEqualTo(4);
+	}
+
+	@Test
+	public void testParsedAddressWriterAndReader() throws Exception {
+		File file = File.createTempFile("addresses", ".bin");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			ParsedAddressWriter writer = new ParsedAddressWriter(raf.getChannel());
+			assertThat(writer.writeHeaderAddresses("\"Bob\" <bob@example.com>, friends: sue@example.com (Sue), \"Joe\" <joe@example.com>;, x@y.org",
+					RECOMMENDED, true)).isEqualTo(4);
+			writer.write(new ParsedAddress("Jürgen", "jürgen", "example.com", ParsedAddress.Form.NAME_ADDR, null));
+			writer.flush();
+
+			ParsedAddressReader reader = ParsedAddressReader.map(raf.getChannel());
+			assertThat(reader.read()).isEqualTo(new ParsedAddress("Bob", "bob", "example.com", ParsedAddress.Form.NAME_ADDR, null));
+			assertThat(reader.read()).isEqualTo(new ParsedAddress("Sue", "sue", "example.com", ParsedAddress.Form.ADDR_SPEC, "friends"));
+			assertThat(reader.read()).isEqualTo(new ParsedAddress("Joe", "joe", "example.com", ParsedAddress.Form.NAME_ADDR, "friends"));
+			assertThat(reader.next()).isTrue();
+			assertThat(reader.getLocalPart()).isEqualTo("x");
+			assertThat(reader.getDomain()).isEqualTo("y.org");
+			assertThat(reader.getGroup()).isNull();
+			assertThat(reader.hasPersonalName()).isFalse();
+			assertThat(reader.read()).isEqualTo(new ParsedAddress("Jürgen", "jürgen", "example.com", ParsedAddress.Form.NAME_ADDR, null));
+			assertThat(reader.next()).isFalse();
+		} finally {
+			raf.close();
+			file.deleteOnExit();
+		}
+	}
+
+	@Test
+	public void testIncrementalHeaderParser() {
+		final String header = "\"Bob, Jr.\" <bob@example.com>, friends: sue@example.com (Sue), \"Joe\" <joe@[10.0.0.1]>;,\r\n x@y.org";
+		final List<ParsedAddress> addresses = new ArrayList<>();
+		final List<Long> errors = new ArrayList<>();
+		IncrementalHeaderParser parser = new IncrementalHeaderParser(RFC_COMPLIANT, true, new IncrementalHeaderParser.Listener() {
+			@Override
+			public void onAddress(@NotNull ParsedAddress address) {
+				addresses.add(address);
+			}
+
+			@Override
+			public void onError(long offset, @NotNull String message) {
+				errors.add(offset);
+			}
+		});
+		byte[] bytes = header.getBytes(Charset.forName("US-ASCII"));
+		for (int i = 0; i < bytes.length; i++) {
+			assertThat(parser.feed(bytes, i, 1)).isTrue();
+		}
+		assertThat(parser.finish()).isTrue();
+		InternetAddress[] expected = EmailAddressParser.extractHeaderAddresses(header, RFC_COMPLIANT, true);
+		assertThat(addresses).hasSize(expected.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertThat(addresses.get(i).getAddress()).isEqualTo(expected[i].getAddress());
+			assertThat(addresses.get(i).getPersonalName()).isEqualTo(expected[i].getPersonal());
+		}
+		assertThat(addresses.get(1).getGroup()).isEqualTo("friends");
+		assertThat(addresses.get(3).getGroup()).isNull();
+		assertThat(errors).isEmpty();
+
+		addresses.clear();
+		parser.reset();
+		assertThat(parser.feed("a@b.com, \"unterminated <c@d.com>")).isTrue();
+		assertThat(parser.finish()).isFalse();
+		assertThat(addresses).hasSize(1);
+		assertThat(errors).containsExactly(32L);
+
+		errors.clear();
+		parser.reset();
+		assertThat(parser.feed("a@b.com, not an address, c@d.com")).isFalse();
+		assertThat(errors).containsExactly(8L);
+
+		// the same groups and skipped elements as extracting from the whole header
+		assertThat(parseIncrementally("team: a@b.com; junk, c@d.org")).containsExactly("a@b.com/team", "c@d.org/null");
+		assertThat(parseIncrementally("team: ;;bad, x@y.com; c@d.org")).containsExactly("x@y.com/null");
+		for (String h : Arrays.asList("team: a@b.com; junk, c@d.org", "team: ;;bad, x@y.com; c@d.org", "a@b.com, undisclosed-recipients:;, c@d.org",
+				"list: not an address, x@y.org; , c@d.org", "a@b.com, , c@d.org", "a@b.com, junk, c@d.org", "a@b.com,")) {
+			assertThat(parseIncrementally(h)).as(h).isEqualTo(extractWithGroups(h, RECOMMENDED));
+		}
+	}
+
+	private static List<String> parseIncrementally(String header) {
+		final List<String> result = new ArrayList<>();
+		IncrementalHeaderParser parser = new IncrementalHeaderParser(RECOMMENDED, false, new IncrementalHeaderParser.Listener() {
+			@Override
+			public void onAddress(@NotNull ParsedAddress address) {
+				result.add(address.getAddress() + "/" + address.getGroup());
+			}
+
+			@Override
+			public void onError(long offset, @NotNull String message) {
+				// extraction from the whole header just stops there as well
+			}
+		});
+		for (int i = 0; i < header.length(); i++) {
+			parser.feed(header.substring(i, i + 1));
+		}
+		parser.finish();
+		return result;
+	}
+
+	@Test
+	public void testBulkValidator() throws Exception {
+		String[] lines = { "bob@example.com", "NotAnEmail", "", "\"Sue\" <sue@example.com>", "joe@[10.0.0.1]", "a@b@c", "x@y.org" };
+		File file = File.createTempFile("addresses", ".txt");
+		file.deleteOnExit();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		StringBuilder expectedValid = new StringBuilder();
+		StringBuilder expectedInvalid = new StringBuilder();
+		try {
+			for (int i = 0; i < 100; i++) {
+				String line = lines[i % lines.length];
+				raf.write((line + (i % 2 == 0 ? "\r\n" : "\n")).getBytes("US-ASCII"));
+				if (!line.isEmpty()) {
+					(EmailAddressValidator.isValid(line, RECOMMENDED) ? expectedValid : expectedInvalid).append(line).append('\n');
+				}
+			}
+		} finally {
+			raf.close();
+		}
+		ByteArrayOutputStream valid = new ByteArrayOutputStream();
+		ByteArrayOutputStream invalid = new ByteArrayOutputStream();
+		BulkValidator.Summary summary = new BulkValidator(RECOMMENDED, false, -1, 3, 64).run(file, valid, invalid);
+		assertThat(valid.toString("US-ASCII")).isEqualTo(expectedValid.toString());
+		assertThat(invalid.toString("US-ASCII")).isEqualTo(expectedInvalid.toString());
+		assertThat(summary.getLines()).isEqualTo(86);
+		assertThat(summary.getInvalidLines()).isEqualTo(expectedInvalid.toString().split("\n").length);
+		assertThat(summary.getLatencyPercentile(100)).isGreaterThan(0);
+
+		valid.reset();
+		invalid.reset();
+		summary = new BulkValidator(RECOMMENDED, true, -1, 2, 100).run(file, valid, invalid);
+		assertThat(summary.getAddresses()).isEqualTo(summary.getValidLines());
+		assertThat(valid.toString("US-ASCII")).startsWith("bob@example.com\nsue@example.com\nx@y.org\n");
+	}
+
+	@Test
+	public void testParsedAddresses() throws Exception {
+		for (String email : new String[] { "bob@example.com", "\"Bob\" <bob@example.com>", "sue@example.com (Sue)", "\"Jo. B\" <\"jo\"@example.com>",
+				"NotAnEmail" }) {
+			InternetAddress expected = EmailAddressParser.getInternetAddress(email, RECOMMENDED, true);
+			ParsedAddress actual = EmailAddressParser.getParsedAddress(email, RECOMMENDED, true);
+			if (expected == null) {
+				assertThat(actual).isNull();
+			} else {
+				assertThat(actual).isNotNull();
+				assertThat(actual.getAddress()).isEqualTo(expected.getAddress());
+				assertThat(actual.getPersonalName()).isEqualTo(expected.getPersonal());
+				assertThat(actual.toInternetAddress()).isEqualTo(expected);
+			}
+		}
+		String header = "\"Bob\" <bob@example.com>, friends: sue@example.com (Sue), joe@example.com;, x@y.org";
+		InternetAddress[] expected = EmailAddressParser.extractHeaderAddresses(header, RECOMMENDED, false);
+		ParsedAddress[] actual = EmailAddressParser.extractParsedAddresses(header, RECOMMENDED, false);
+		assertThat(actual).hasSize(expected.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertThat(actual[i].toInternetAddress()).isEqualTo(expected[i]);
+		}
+		assertThat(actual[1].getGroup()).isEqualTo("friends");
+		assertThat(EmailAddressParser.extractParsedAddresses(null, RECOMMENDED, false)).isEmpty();
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testReturnPathAddress() {
+		String[] returnPaths = { "<>", "< >", "<(comment)>", "<bob@example.com>", " <bob@example.com> ", "<(a) bob@example.com (b)>", "<\"bob\"@example.com>",
+				"<\"bob smith\"@example.com>", "<bob@[10.0.0.1]>", "<\"\">", "bob@example.com", "<bob@example.com", "<bob.@example.com>", "<b(o)b@example.com>",
+				"<a.b@c.d.example.com> (comment)", "<\"a(b)\"@example.com>", null };
+		for (int flags = 0; flags < 32; flags++) {
+			EnumSet<EmailAddressCriteria> criteria = EnumSet.noneOf(EmailAddressCriteria.class);
+			for (EmailAddressCriteria criterion : EmailAddressCriteria.values()) {
+				if ((flags & (1 << criterion.ordinal())) != 0) {
+					criteria.add(criterion);
+				}
+			}
+			for (String returnPath : returnPaths) {
+				// the original two-pass implementation
+				String expected = null;
+				if (EmailAddressParser.isValidReturnPath(returnPath, criteria)) {
+					InternetAddress ia = EmailAddressParser.getInternetAddress(returnPath, criteria, true);
+					expected = ia == null ? "" : ia.getAddress();
+				}
+				assertThat(EmailAddressParser.getReturnPathAddress(returnPath, criteria)).as(returnPath + " " + criteria).isEqualTo(expected);
+			}
+		}
+		assertThat(EmailAddressParser.getReturnPathAddress("<\"bob\"@example.com>", RECOMMENDED)).isEqualTo("bob@example.com");
+		// the deprecated overload ignores its extractCfwsPersonalNames
+		assertThat(EmailAddressParser.getReturnPathAddress("<\"bob\"@example.com>", RECOMMENDED, true)).isEqualTo("bob@example.com");
+		assertThat(EmailAddressParser.getReturnPathAddress("<>", RECOMMENDED)).isEmpty();
+	}
+
+	@Test
+	public void testRequiredCriteria() {
+		for (String email : criteriaCorpus()) {
+			int expectedMask = 0;
+			for (int combination = 0; combination < 32; combination++) {
+				if (EmailAddressValidator.isValid(email, EmailAddressValidator.getCriteriaCombination(combination))) {
+					expectedMask |= 1 << combination;
+				}
+			}
+			assertThat(EmailAddressValidator.getValidCriteriaMask(email)).as(email).isEqualTo(expectedMask);
+		}
+		assertThat(EmailAddressValidator.getRequiredCriteria("\"a(b)\" <\"a(b)\"@[10.0.0.1]>"))
+				.containsExactlyInAnyOrder(ALLOW_QUOTED_IDENTIFIERS, ALLOW_PARENS_IN_LOCALPART, EmailAddressCriteria.ALLOW_DOMAIN_LITERALS);
+		assertThat(EmailAddressValidator.getRequiredCriteria("bob@example.com")).isEmpty();
+		assertThat(EmailAddressValidator.getRequiredCriteria("NotAnEmail")).isNull();
+	}
+
+	@Test
+	public void testValidationResult() {
+		for (String email : criteriaCorpus()) {
+			EnumSet<EmailAddressCriteria> required = EmailAddressValidator.getRequiredCriteria(email);
+			for (int combination = 0; combination < 32; combination++) {
+				EnumSet<EmailAddressCriteria> criteria = EmailAddressValidator.getCriteriaCombination(combination);
+				ValidationResult result = EmailAddressValidator.validate(email, criteria);
+				assertThat(result.isValid()).as(email + " " + criteria).isEqualTo(EmailAddressValidator.isValid(email, criteria));
+				if (!result.isValid()) {
+					assertThat(result.getOffset()).as(email).isBetween(0, email.length());
+					if (required == null) {
+						assertThat(result.getMissingCriteria()).as(email).isNull();
+					} else {
+						EnumSet<EmailAddressCriteria> missing = EnumSet.copyOf(required);
+						missing.removeAll(criteria);
+						assertThat(result.getMissingCriteria()).as(email + " " + criteria).isEqualTo(missing);
+					}
+				}
+			}
+		}
+		assertValidationResult(EnumSet.noneOf(EmailAddressCriteria.class), "\"b(o)b\"@x.com", 2, ValidationResult.Element.QUOTED_STRING, of(ALLOW_PARENS_IN_LOCALPART));
+		assertValidationResult(RECOMMENDED, "me@[1.2.3.4]", 3, ValidationResult.Element.DOMAIN, of(EmailAddressCriteria.ALLOW_DOMAIN_LITERALS));
+		assertValidationResult(RECOMMENDED, "Kayaks.org <kayaks@kayaks.org>", 11, ValidationResult.Element.PERSONAL_NAME, of(ALLOW_DOT_IN_A_TEXT));
+		assertValidationResult(RECOMMENDED, "me (x\u0000) @example.com", 5, ValidationResult.Element.COMMENT, null);
+		assertValidationResult(RECOMMENDED, "me@example.com>", 14, ValidationResult.Element.DOMAIN, null);
+		assertValidationResult(RECOMMENDED, "<me@example.com> x", 17, null, null);
+		assertValidationResult(RECOMMENDED, "me@", 3, ValidationResult.Element.DOMAIN, null);
+		assertThat(EmailAddressValidator.validate("me@example.com", RECOMMENDED).isValid()).isTrue();
+		assertThat(EmailAddressValidator.validate(null, RECOMMENDED).getOffset()).isEqualTo(0);
+	}
+
+	@Test
+	public void testIncrementalValidator() {
+		for (int combination = 0; combination < 32; combination += 5) {
+			EnumSet<EmailAddressCriteria> criteria = EmailAddressValidator.getCriteriaCombination(combination);
+			IncrementalValidator validator = new IncrementalValidator(criteria);
+			for (String email : criteriaCorpus()) {
+				boolean valid = EmailAddressValidator.isValid(email, criteria);
+				validator.reset();
+				for (int i = 0; i < email.length(); i++) {
+					IncrementalValidator.Status status = validator.append(email.charAt(i));
+					String prefix = email.substring(0, i + 1);
+					assertThat(status == IncrementalValidator.Status.VALID).as(prefix).isEqualTo(EmailAddressValidator.isValid(prefix, criteria));
+					if (valid) {
+						assertThat(status).as(prefix).isNotEqualTo(IncrementalValidator.Status.DEAD);
+					}
+				}
+			}
+		}
+
+		IncrementalValidator validator = new IncrementalValidator(RECOMMENDED);
+		assertThat(validator.getStatus()).isEqualTo(IncrementalValidator.Status.VIABLE_PREFIX);
+		assertThat(validator.check("bob@example")).isEqualTo(IncrementalValidator.Status.VIABLE_PREFIX);
+		assertThat(validator.check("bob@example.com")).isEqualTo(IncrementalValidator.Status.VALID);
+		assertThat(validator.check("bob@@example.com")).isEqualTo(IncrementalValidator.Status.DEAD);
+		assertThat(validator.getViableLength()).isEqualTo(4);
+		assertThat(validator.append(".org")).isEqualTo(IncrementalValidator.Status.DEAD);
+		assertThat(validator.truncate(3)).isEqualTo(IncrementalValidator.Status.VIABLE_PREFIX);
+		assertThat(validator.check("Bob <bob@example.com>")).isEqualTo(IncrementalValidator.Status.VALID);
+		assertThat(validator.length()).isEqualTo(21);
+	}
+
+	@Test
+	public void testLongInputOnSmallStack() throws Exception {
+		final Throwable[] failure = new Throwable[1];
+		// java.util.regex overflows a stack this size on a phrase of about 20 words
+		Thread thread = new Thread(null, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					assertLongInput();
+				} catch (Throwable e) {
+					failure[0] = e;
+				}
+			}
+		}, "small-stack", 64 * 1024);
+		thread.start();
+		thread.join();
+		if (failure[0] != null) {
+			throw new AssertionError(failure[0]);
+		}
+	}
+
+	private static void assertLongInput() {
+		StringBuilder phrase = new StringBuilder();
+		StringBuilder comments = new StringBuilder();
+		StringBuilder quoted = new StringBuilder();
+		StringBuilder dotAtom = new StringBuilder("a");
+		for (int i = 0; i < 5000; i++) {
+			phrase.append("word ");
+			comments.append(" (comment ").append(i).append(')');
+			quoted.append("q\\\"");
+			dotAtom.append(".a");
+		}
+		String nameAddr = phrase + "<bob@example.com>";
+		String commented = "bob@example.com" + comments;
+		String quotedLocalPart = "\"" + quoted + "\"@example.com";
+		String dotAtomLocalPart = dotAtom + "@example.com";
+
+		String[] parts = EmailAddressParser.getAddressParts(nameAddr, RFC_COMPLIANT, false);
+		assertThat(parts).isNotNull();
+		assertThat(parts[0]).isEqualTo(phrase.toString().trim());
+		assertThat(parts[1]).isEqualTo("bob");
+		assertThat(parts[2]).isEqualTo("example.com");
+		assertThat(EmailAddressParser.getPersonalName(commented, RECOMMENDED, true)).isEqualTo("comment 0");
+		assertThat(EmailAddressParser.getLocalPart(quotedLocalPart, RFC_COMPLIANT, false)).isEqualTo("\"" + quoted + "\"");
+		assertThat(EmailAddressParser.getDomain(dotAtomLocalPart, RFC_COMPLIANT, false)).isEqualTo("example.com");
+		assertThat(EmailAddressParser.getInternetAddress(nameAddr, RFC_COMPLIANT, false)).isNotNull();
+		assertThat(EmailAddressParser.getParsedAddress(quotedLocalPart, RFC_COMPLIANT, false)).isNotNull();
+		assertThat(EmailAddressParser.getCanonicalAddress(commented, RFC_COMPLIANT)).isEqualTo("bob@example.com");
+		assertThat(EmailAddressParser.getReturnPathAddress("<" + dotAtomLocalPart + ">", RFC_COMPLIANT)).isEqualTo(dotAtomLocalPart);
+		assertThat(EmailAddressParser.isValidReturnPath("<" + quotedLocalPart + ">", RFC_COMPLIANT)).isTrue();
+
+		String header = nameAddr + ", " + commented + ", group: " + quotedLocalPart + ", " + dotAtomLocalPart + ";";
+		assertThat(EmailAddressParser.isValidAddressList(header, RFC_COMPLIANT)).isTrue();
+		assertThat(EmailAddressParser.isValidMailboxList(nameAddr + ", " + commented, RFC_COMPLIANT)).isTrue();
+		assertThat(EmailAddressParser.extractHeaderAddresses(header, RFC_COMPLIANT, true)).hasSize(4);
+		assertThat(EmailAddressParser.extractParsedAddresses(header, RFC_COMPLIANT, true)).hasSize(4);
+
+		for (String email : Arrays.asList(nameAddr, commented, quotedLocalPart, dotAtomLocalPart)) {
+			assertThat(EmailAddressValidator.isValid(email, RFC_COMPLIANT)).as(email).isTrue();
+			assertThat(EmailAddressValidator.getRequiredCriteria(email)).as(email).isNotNull();
+		}
+		assertThat(EmailAddressValidator.isValid(phrase + "<bob@example.com", RFC_COMPLIANT)).isFalse();
+	}
+
+	@Test
+	public void testAddressPrescan() {
+		List<String> addresses = criteriaCorpus();
+		addresses.addAll(Arrays.asList("plain.address@example.com", "a..b@example.com", ".a@example.com", "a@example.c", "a@-example.com",
+				"a@example-.com", "a@example.com-", "a@ex_ample.com", "a@example.abcdefghijklmnopqrstuvwxyz", "a@example.abcdefghijklmnopqrstuvwxyza",
+				"a@123456789012345678901234567890123456789012345678901234567890123.com",
+				"a@1234567890123456789012345678901234567890123456789012345678901234.com", "a@b@example.com", "no-at-sign", "j\u00fcrgen@example.de",
+				"tab\tinside@example.com", "a@example.com;"));
+		StringBuilder packed = new StringBuilder();
+		int[] offsets = new int[addresses.size() + 1];
+		for (int i = 0; i < addresses.size(); i++) {
+			offsets[i] = packed.length();
+			packed.append(addresses.get(i));
+		}
+		offsets[addresses.size()] = packed.length();
+		byte[] data = new byte[packed.length()];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) packed.charAt(i);
+		}
+		byte[] masks = new byte[addresses.size()];
+		AddressPrescan.classify(data, offsets, addresses.size(), masks);
+
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		int fastPath = 0;
+		for (int i = 0; i < addresses.size(); i++) {
+			String email = addresses.get(i);
+			for (EnumSet<EmailAddressCriteria> criteria : Arrays.asList(EnumSet.noneOf(EmailAddressCriteria.class), RECOMMENDED, RFC_COMPLIANT)) {
+				boolean valid = EmailAddressValidator.isValid(email, criteria);
+				if (AddressPrescan.isRejected(masks[i])) {
+					assertThat(valid).as(email).isFalse();
+				} else if (AddressPrescan.isFastPath(masks[i])) {
+					assertThat(AddressPrescan.isValidDotAtomAddress(buffer, offsets[i], offsets[i + 1], criteria)).as(email + " " + criteria).isEqualTo(valid);
+				}
+			}
+			fastPath += AddressPrescan.isFastPath(masks[i]) ? 1 : 0;
+		}
+		assertThat(fastPath).isGreaterThan(10);
+		assertThat(AddressPrescan.classify(ByteBuffer.wrap("\"Bob\" <bob@example.com>".getBytes()), 0, 23))
+				.isEqualTo(AddressPrescan.HAS_AT | AddressPrescan.SPECIAL);
+		assertThat(AddressPrescan.classify(ByteBuffer.wrap("a@b@c".getBytes()), 0, 5)).isEqualTo(AddressPrescan.HAS_AT | AddressPrescan.MULTIPLE_AT);
+	}
+
+	@Test
+	public void testValidateBatch() {
+		List<String> addresses = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			addresses.addAll(criteriaCorpus());
+		}
+		addresses.addAll(Arrays.asList("jürgen@example.de", "\"Jürgen\" <juergen@example.de>", "", "plain@example.com"));
+		ByteArrayOutputStream packed = new ByteArrayOutputStream();
+		int[] offsets = new int[addresses.size() + 1];
+		packed.write('x');
+		for (int i = 0; i < addresses.size(); i++) {
+			offsets[i] = packed.size();
+			byte[] bytes = addresses.get(i).getBytes(Charset.forName("UTF-8"));
+			packed.write(bytes, 0, bytes.length);
+		}
+		offsets[addresses.size()] = packed.size();
+		byte[] data = packed.toByteArray();
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data);
+
+		for (EnumSet<EmailAddressCriteria> criteria : Arrays.asList(RECOMMENDED, RFC_COMPLIANT)) {
+			long[] valid = new long[(addresses.size() + 63) / 64];
+			long[] validDirect = new long[valid.length];
+			Arrays.fill(valid, -1L);
+			int validCount = EmailAddressValidator.validateBatch(data, offsets, addresses.size(), criteria, valid);
+			assertThat(EmailAddressValidator.validateBatch(direct, offsets, addresses.size(), criteria, validDirect)).isEqualTo(validCount);
+			assertThat(validDirect).isEqualTo(valid);
+			int expectedCount = 0;
+			for (int i = 0; i < addresses.size(); i++) {
+				String email = addresses.get(i);
+				boolean expected = EmailAddressValidator.isValid(email, criteria) && Charset.forName("US-ASCII").newEncoder().canEncode(email);
+				assertThat((valid[i / 64] & 1L << i) != 0).as(email).isEqualTo(expected);
+				expectedCount += expected ? 1 : 0;
+			}
+			assertThat(validCount).isEqualTo(expectedCount).isGreaterThan(0);
+			assertThat(valid[valid.length - 1] >>> 1 >>> (addresses.size() - 1) % 64).as("bits past the batch").isZero();
+		}
+	}
+
+	@Test
+	public void testDecodeEncodedWords() throws Exception {
+		String email = "=?UTF-8?Q?Gesellschaft_f=C3=BCr_Freiheitsrechte_e=2EV=2E?= <info@freiheitsrechte.org>";
+		assertThat(EmailAddressParser.getPersonalName(email, RFC_COMPLIANT, false)).isEqualTo("=?UTF-8?Q?Gesellschaft_f=C3=BCr_Freiheitsrechte_e=2EV=2E?=");
+		assertThat(EmailAddressParser.getPersonalName(email, RFC_COMPLIANT, false, true)).isEqualTo("Gesellschaft f\u00fcr Freiheitsrechte e.V.");
+		InternetAddress address = EmailAddressParser.getInternetAddress(email, RFC_COMPLIANT, false, true);
+		assertThat(address).isNotNull();
+		assertThat(address.getPersonal()).isEqualTo("Gesellschaft f\u00fcr Freiheitsrechte e.V.");
+		assertThat(address.getAddress()).isEqualTo("info@freiheitsrechte.org");
+		ParsedAddress parsed = EmailAddressParser.getParsedAddress("bob@example.com (=?ISO-8859-1?B?SvxyZ2Vu?=)", RECOMMENDED, true, true);
+		assertThat(parsed).isNotNull();
+		assertThat(parsed.getPersonalName()).isEqualTo("J\u00fcrgen");
+
+		String header = "=?UTF-8?Q?J=C3?= =?UTF-8?Q?=BCrgen?= <j@example.com>, team: \"=?iso-8859-1?q?Ren=E9?=\" <r@example.com>;";
+		InternetAddress[] addresses = EmailAddressParser.extractHeaderAddresses(header, RFC_COMPLIANT, false, true);
+		assertThat(addresses).hasSize(2);
+		assertThat(addresses[0].getPersonal()).isEqualTo("J\u00fcrgen");
+		assertThat(addresses[1].getPersonal()).isEqualTo("Ren\u00e9");
+		ParsedAddress[] parsedAddresses = EmailAddressParser.extractParsedAddresses(header, RFC_COMPLIANT, false, true);
+		assertThat(parsedAddresses).hasSize(2);
+		assertThat(parsedAddresses[1].getPersonalName()).isEqualTo("Ren\u00e9");
+		assertThat(parsedAddresses[1].getGroup()).isEqualTo("team");
+
+		// whatever isn't a well-formed encoded-word in a supported charset is left alone
+		for (String name : Arrays.asList("Bob Smith", "=?no-such-charset?Q?Bob?=", "=?UTF-8?X?Bob?=", "=?UTF-8?Q?Bob", "a =? b", "=?UTF-8?B?*?=")) {
+			assertThat(EmailAddressParser.getPersonalName("\"" + name + "\" <bob@example.com>", RFC_COMPLIANT, false, true)).as(name).isEqualTo(name);
+		}
+		// the same as decoding the undecoded name with Jakarta Mail
+		for (String name : Arrays.asList("=?UTF-8?B?SsO8cmdlbg==?= Smith", "Mr =?UTF-8?Q?J=C3=BCrgen?= =?ISO-8859-1?Q?M=FCller?= Jr", "=?utf-8*de?q?M=C3=BCller?=",
+				"=?UTF-8?Q?a?=  =?UTF-8?Q?b?= c =?UTF-8?Q?d?=", "=?windows-1252?Q?=80_sign?=")) {
+			String quotedName = "\"" + name + "\" <bob@example.com>";
+			String expected = MimeUtility.decodeText(EmailAddressParser.getPersonalName(quotedName, RFC_COMPLIANT, false));
+			assertThat(EmailAddressParser.getPersonalName(quotedName, RFC_COMPLIANT, false, true)).as(name).isEqualTo(expected);
+		}
+	}
+
+	@Test
+	public void testUtf8Addresses() {
+		EnumSet<EmailAddressCriteria> recommendedUtf8 = EnumSet.copyOf(RECOMMENDED);
+		recommendedUtf8.add(ALLOW_UTF8);
+		EnumSet<EmailAddressCriteria> compliantUtf8 = EnumSet.copyOf(RFC_COMPLIANT);
+		compliantUtf8.add(ALLOW_UTF8);
+		assertThat(RFC_COMPLIANT).doesNotContain(ALLOW_UTF8);
+
+		for (String email : Arrays.asList("j\u00fcrgen@b\u00fccher.de", "\u7528\u6237@\u4f8b\u5b50.\u5e7f\u544a", "\"\u00dfo\u00b5\" <notifications@example.com>",
+				"\"j\\\u00fc rgen\"@example.com", "bob@example.com (J\u00fcrgen)", "\ud83d\ude00@example.com")) {
+			assertThat(EmailAddressValidator.isValid(email, RECOMMENDED)).as(email).isFalse();
+			assertThat(EmailAddressValidator.isValid(email, recommendedUtf8)).as(email).isTrue();
+			assertThat(EmailAddressValidator.getRequiredCriteria(email)).as(email).contains(ALLOW_UTF8);
+			assertThat(EmailAddressValidator.getValidCriteriaMask(email)).as(email).isZero();
+			assertThat(EmailAddressValidator.validate(email, RECOMMENDED).getMissingCriteria()).as(email).isEqualTo(of(ALLOW_UTF8));
+		}
+		assertThat(EmailAddressValidator.isValid("bob@-\u00fc.com", recommendedUtf8)).isFalse();
+		assertThat(EmailAddressValidator.isValid("bob@example.\u00fc", recommendedUtf8)).isFalse();
+		assertThat(EmailAddressParser.getAddressParts("\"\u00dfo\u00b5\" <notifications@example.com>", compliantUtf8, false))
+				.containsExactly("\u00dfo\u00b5", "notifications", "example.com");
+
+		// U-labels in their ASCII form
+		assertThat(EmailAddressParser.getDomain("J\u00fcrgen@B\u00fccher.de", recommendedUtf8, false)).isEqualTo("B\u00fccher.de");
+		assertThat(EmailAddressParser.getAsciiDomain("J\u00fcrgen@B\u00fccher.de", recommendedUtf8)).isEqualTo("xn--bcher-kva.de");
+		assertThat(EmailAddressParser.getAsciiDomain("bob@Example.com", recommendedUtf8)).isEqualTo("Example.com");
+		assertThat(EmailAddressParser.getCanonicalAddress("J\u00fcrgen@B\u00fccher.DE", recommendedUtf8)).isEqualTo("J\u00fcrgen@xn--bcher-kva.de");
+		assertThat(EmailAddressParser.getCanonicalAddress("J\u00fcrgen@xn--bcher-kva.de", recommendedUtf8)).isEqualTo("J\u00fcrgen@xn--bcher-kva.de");
+
+		// no difference for ASCII addresses
+		for (String email : criteriaCorpus()) {
+			for (int combination = 0; combination < 32; combination++) {
+				EnumSet<EmailAddressCriteria> criteria = EmailAddressValidator.getCriteriaCombination(combination);
+				EnumSet<EmailAddressCriteria> utf8 = EnumSet.copyOf(criteria);
+				utf8.add(ALLOW_UTF8);
+				assertThat(EmailAddressValidator.isValid(email, utf8)).as(email + " " + criteria).isEqualTo(EmailAddressValidator.isValid(email, criteria));
+			}
+		}
+
+		// packed UTF-8 bytes
+		byte[] data = "j\u00fcrgen@b\u00fccher.dejoe@example.com".getBytes(Charset.forName("UTF-8"));
+		int[] offsets = { 0, 18, data.length };
+		long[] valid = new long[1];
+		assertThat(EmailAddressValidator.validateBatch(data, offsets, 2, RECOMMENDED, valid)).isEqualTo(1);
+		assertThat(valid[0]).isEqualTo(2L);
+		assertThat(EmailAddressValidator.validateBatch(data, offsets, 2, recommendedUtf8, valid)).isEqualTo(2);
+		assertThat(valid[0]).isEqualTo(3L);
+		// the length limits of labels count characters, not bytes
+		List<String> labels = new ArrayList<>();
+		for (String c : Arrays.asList("\u00fc", "\u4f8b", "\ud83d\ude00")) {
+			for (int length : new int[] { 1, 2, 13, 21, 26, 27, 31, 32, 63, 64 }) {
+				labels.add("bob@example." + repeat(c, length));
+				labels.add("bob@" + repeat(c, length) + ".com");
+				labels.add("bob@" + repeat(c, length) + "-x.com");
+			}
+		}
+		labels.add("a@b.\u00fc");
+		for (EnumSet<EmailAddressCriteria> criteria : Arrays.asList(recommendedUtf8, compliantUtf8)) {
+			for (String email : labels) {
+				byte[] bytes = email.getBytes(Charset.forName("UTF-8"));
+				EmailAddressValidator.validateBatch(bytes, new int[] { 0, bytes.length }, 1, criteria, valid);
+				assertThat(valid[0] == 1L).as(email + " " + criteria).isEqualTo(EmailAddressValidator.isValid(email, criteria));
+			}
+		}
+		assertThat(EmailAddressValidator.isValid("a@b.\u00fc", recommendedUtf8)).isFalse();
+	}
+
+	@Test
+	public void testPublicSuffixList() {
+		PublicSuffixList suffixes = PublicSuffixList.getDefault();
+		assertThat(suffixes.isKnownTopLevelDomain("GMAIL.COM")).isTrue();
+		assertThat(suffixes.isKnownTopLevelDomain("gmail.cmo")).isFalse();
+		assertThat(suffixes.getRegistrableDomain("mail.google.com")).isEqualTo("google.com");
+		assertThat(suffixes.getRegistrableDomain("www.news.BBC.co.uk")).isEqualTo("BBC.co.uk");
+		assertThat(suffixes.getRegistrableDomain("co.uk")).isNull();
+		assertThat(suffixes.getRegistrableDomain("localhost")).isNull();
+		// wildcard and exception rules: *.ck and !www.ck
+		assertThat(suffixes.getRegistrableDomain("foo.bar.ck")).isEqualTo("foo.bar.ck");
+		assertThat(suffixes.getRegistrableDomain("bar.ck")).isNull();
+		assertThat(suffixes.getRegistrableDomain("mail.www.ck")).isEqualTo("www.ck");
+		// rules with U-labels match in either form
+		assertThat(suffixes.getRegistrableDomain("a.b.\u516C\u53F8.cn")).isEqualTo("b.\u516C\u53F8.cn");
+		assertThat(suffixes.getRegistrableDomain("a.b.xn--55qx5d.cn")).isEqualTo("b.xn--55qx5d.cn");
+		// unknown top-level domains are public suffixes by the default rule
+		assertThat(suffixes.getPublicSuffixStart("a.b.cmo", 0, 7)).isEqualTo(4);
+		assertThat(suffixes.getPublicSuffixStart("a..com", 0, 6)).isEqualTo(-1);
+
+		String email = "bob@mail.example.co.uk>";
+		assertThat(suffixes.getRegistrableDomainStart(email, 4, email.length() - 1)).isEqualTo(9);
+
+		assertThat(EmailAddressValidator.isValid("bob@gmail.com", RFC_COMPLIANT, suffixes)).isTrue();
+		assertThat(EmailAddressValidator.isValid("bob@gmail.cmo", RFC_COMPLIANT, suffixes)).isFalse();
+		assertThat(EmailAddressValidator.isValid("bob@gmail.cmo", RFC_COMPLIANT)).isTrue();
+		assertThat(EmailAddressValidator.isValid("Bob <bob@gmail.com>", RFC_COMPLIANT, suffixes)).isTrue();
+		assertThat(EmailAddressValidator.isValid("Bob <bob@gmail.cmo>", RFC_COMPLIANT, suffixes)).isFalse();
+		assertThat(EmailAddressValidator.isValid("bob@ gmail.com (Bob)", RFC_COMPLIANT, suffixes)).isTrue();
+		assertThat(EmailAddressValidator.isValid("bob@ gmail.cmo (Bob)", RFC_COMPLIANT, suffixes)).isFalse();
+		assertThat(EmailAddressValidator.isValid("bob@[10.0.0.1]", RFC_COMPLIANT, suffixes)).isTrue();
+		assertThat(EmailAddressValidator.isValid("bob@localhost", of(ALLOW_DOMAIN_LITERALS), suffixes)).isFalse();
+		List<EnumSet<EmailAddressCriteria>> criterias = Arrays.asList(RECOMMENDED, RFC_COMPLIANT, of(ALLOW_DOMAIN_LITERALS),
+				EnumSet.noneOf(EmailAddressCriteria.class));
+		for (EnumSet<EmailAddressCriteria> criteria : criterias) {
+			for (String address : Arrays.asList("\"b o b\"@example.org", "<bob@example.org>", "bob@example.org (x)")) {
+				assertThat(EmailAddressValidator.isValid(address, criteria, suffixes)).as(address + " " + criteria)
+						.isEqualTo(EmailAddressValidator.isValid(address, criteria));
+			}
+		}
+	}
+
+	@Test
+	public void testDomainBlocklist() throws Exception {
+		String list = "# disposable domains\nmailinator.com\n\nTrashMail.DE\n.guerrillamail.com.\nm\u00FCll.de\nmailinator.com\n";
+		DomainSet domains = DomainSet.read(new ByteArrayInputStream(list.getBytes("UTF-8")));
+		assertThat(domains.size()).isEqualTo(4);
+		assertThat(domains.contains("mailinator.com")).isTrue();
+		assertThat(domains.contains("MAILINATOR.COM")).isTrue();
+		assertThat(domains.contains("eu.mailinator.com")).isTrue();
+		assertThat(domains.contains("trashmail.de")).isTrue();
+		assertThat(domains.contains("guerrillamail.com")).isTrue();
+		assertThat(domains.contains("xn--mll-hoa.de")).isTrue();
+		assertThat(domains.contains("M\u00DCLL.de")).isTrue();
+		assertThat(domains.contains("mailinator.co")).isFalse();
+		assertThat(domains.contains("notmailinator.com")).isFalse();
+		assertThat(domains.contains("com")).isFalse();
+		assertThat(domains.contains("bob@mailinator.com>", 4, 18)).isTrue();
+
+		DomainBlocklist blocklist = new DomainBlocklist(domains);
+		assertThat(EmailAddressValidator.isValid("bob@example.com", RFC_COMPLIANT, blocklist)).isTrue();
+		assertThat(EmailAddressValidator.isValid("bob@Mailinator.com", RFC_COMPLIANT, blocklist)).isFalse();
+		assertThat(EmailAddressValidator.isValid("Bob <bob@eu.mailinator.com>", RFC_COMPLIANT, blocklist)).isFalse();
+		assertThat(EmailAddressValidator.isValid("bob @ mailinator.com (Bob)", RFC_COMPLIANT, blocklist)).isFalse();
+		assertThat(EmailAddressValidator.isValid("bob@m\u00FCll.de", of(ALLOW_UTF8), blocklist)).isFalse();
+		assertThat(EmailAddressValidator.isValid("bob@[10.0.0.1]", RFC_COMPLIANT, blocklist)).isTrue();
+		assertThat(EmailAddressValidator.isValid("bob@@example.com", RFC_COMPLIANT, blocklist)).isFalse();
+
+		// the same policy during extraction
+		String header = "Bob <bob@mailinator.com>, sue@example.com, team: joe @ eu.mailinator.com (Joe), ann@[10.0.0.1];";
+		ParsedAddress[] allowed = EmailAddressParser.extractParsedAddresses(header, RFC_COMPLIANT, false, false, blocklist);
+		assertThat(allowed).hasSize(2);
+		assertThat(allowed[0].getAddress()).isEqualTo("sue@example.com");
+		assertThat(allowed[1].getAddress()).isEqualTo("ann@[10.0.0.1]");
+		assertThat(allowed[1].getGroup()).isEqualTo("team");
+		assertThat(EmailAddressParser.extractParsedAddresses(header, RFC_COMPLIANT, false)).hasSize(4);
+		assertThat(EmailAddressParser.extractHeaderAddresses(header, RFC_COMPLIANT, false, false, blocklist)).hasSize(2);
+		assertThat(EmailAddressParser.extractHeaderAddresses(header, RFC_COMPLIANT, false, blocklist, new AddressTable(1))).isEqualTo(2);
+		AddressesByDomain byDomain = new AddressesByDomain();
+		assertThat(EmailAddressParser.extractHeaderAddresses(header, RFC_COMPLIANT, blocklist, byDomain)).isEqualTo(2);
+		assertThat(byDomain.getDomainId("mailinator.com")).isNegative();
+
+		blocklist.setDomains(DomainSet.of(Arrays.asList("example.com")));
+		assertThat(EmailAddressValidator.isValid("bob@example.com", RFC_COMPLIANT, blocklist)).isFalse();
+		assertThat(EmailAddressValidator.isValid("bob@mailinator.com", RFC_COMPLIANT, blocklist)).isTrue();
+		assertThat(EmailAddressValidator.isValid("bob@example.com", RFC_COMPLIANT, new DomainBlocklist())).isTrue();
+	}
+
+	@Test
+	public void testDomainLiterals() throws Exception {
+		String[] ipv4 = { "[192.0.2.1]", "[0.0.0.0]", "[255.255.255.255]", "[10.1.1.1]" };
+		String[] ipv6 = { "[IPv6:2001:db8:0:0:0:0:0:1]", "[ipv6:2001:DB8::1]", "[IPv6:::]", "[IPv6:::1]", "[IPv6:1::]", "[IPv6:1:2:3::6:7:8]",
+				"[IPv6:::ffff:192.0.2.1]", "[IPv6:1:2:3:4:5:6:192.0.2.1]", "[IPv6:1:2::4:192.0.2.1]", "[IPv6:fe80::a:b:c:d]" };
+		String[] invalid = { "[999.1.1.1]", "[1.2.3]", "[1.2.3.4.5]", "[1.2.3.]", "[1..2.3]", "[1.2.3.1234]", "[localhost]", "[]", "1.2.3.4", "[ 1.2.3.4]",
+				"[IPv6:1.2.3.4]", "[IPv6:1:2:3:4:5:6:7]", "[IPv6:1:2:3:4:5:6:7:8:9]", "[IPv6:1::2::3]", "[IPv6:1:2:3::5:6:7:8]", "[IPv6::1]", "[IPv6:1:]",
+				"[IPv6:12345::]", "[IPv6:g::]", "[IPv6:::1.2.3.4:5]", "[IPv6:1:2:3:4:5::192.0.2.1]", "[IPv6:]", "[IPv6:1:2:3:4:5:6:7:8", "[IPv6:\uFF11::]" };
+		byte[] address = new byte[16];
+		for (String literal : ipv4) {
+			assertThat(DomainLiteral.parse(literal, 0, literal.length(), address)).as(literal).isEqualTo(DomainLiteral.IPV4);
+			byte[] expected = InetAddress.getByName(literal.substring(1, literal.length() - 1)).getAddress();
+			assertThat(Arrays.copyOfRange(address, 12, 16)).as(literal).isEqualTo(expected);
+			assertThat(Arrays.copyOfRange(address, 0, 12)).as(literal).isEqualTo(new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, -1, -1 });
+		}
+		for (String literal : ipv6) {
+			Arrays.fill(address, (byte) 0x55);
+			assertThat(DomainLiteral.parse(literal, 0, literal.length(), address)).as(literal).isEqualTo(DomainLiteral.IPV6);
+			byte[] expected = InetAddress.getByName("[" + literal.substring(6)).getAddress();
+			if (expected.length == 4) {
+				// InetAddress turns IPv4-mapped addresses into IPv4 addresses
+				assertThat(Arrays.copyOfRange(address, 12, 16)).as(literal).isEqualTo(expected);
+			} else {
+				assertThat(address).as(literal).isEqualTo(expected);
+			}
+		}
+		// RFC 5321 allows leading zeros, which are decimal all the same
+		assertThat(DomainLiteral.parse("[010.001.01.1]", 0, 14, address)).isEqualTo(DomainLiteral.IPV4);
+		assertThat(Arrays.copyOfRange(address, 12, 16)).isEqualTo(new byte[] { 10, 1, 1, 1 });
+		for (String literal : invalid) {
+			assertThat(DomainLiteral.parse(literal, 0, literal.length(), address)).as(literal).isEqualTo(DomainLiteral.INVALID);
+		}
+
+		assertThat(EmailAddressValidator.isValid("bob@[999.1.1.1]", RFC_COMPLIANT)).isTrue();
+		assertThat(EmailAddressValidator.isValid("bob@[999.1.1.1]", RFC_COMPLIANT, true)).isFalse();
+		assertThat(EmailAddressValidator.isValid("bob@[192.0.2.1]", RFC_COMPLIANT, true)).isTrue();
+		assertThat(EmailAddressValidator.isValid("Bob <bob@[IPv6:2001:db8::1]>", RFC_COMPLIANT, true)).isTrue();
+		assertThat(EmailAddressValidator.isValid("Bob <bob@[junk]>", RFC_COMPLIANT, true)).isFalse();
+		assertThat(EmailAddressValidator.isValid("bob@ (x) [192.0.2.1] (y)", RFC_COMPLIANT, true)).isTrue();
+		assertThat(EmailAddressValidator.isValid("bob@[junk] (y)", of(ALLOW_DOMAIN_LITERALS), true)).isFalse();
+		assertThat(EmailAddressValidator.isValid("[Bob] <bob@example.com>", RFC_COMPLIANT, true)).isTrue();
+		assertThat(EmailAddressValidator.isValid("bob@[192.0.2.1]", RECOMMENDED, true)).isFalse();
+
+		// the domain literal of an addr-spec ends up in the domain, and the comment after it in the personal name
+		for (EnumSet<EmailAddressCriteria> criteria : Arrays.asList(RFC_COMPLIANT, of(ALLOW_DOMAIN_LITERALS))) {
+			ParsedAddress parsed = EmailAddressParser.getParsedAddress("bob@[IPv6:::1] (Bob)", criteria, true);
+			assertThat(parsed).isNotNull();
+			assertThat(parsed.getDomain()).isEqualTo("[IPv6:::1]");
+			assertThat(parsed.getPersonalName()).isEqualTo("Bob");
+			assertThat(parsed.getDomainLiteral(address)).isEqualTo(DomainLiteral.IPV6);
+			assertThat(address[15]).isEqualTo((byte) 1);
+			assertThat(EmailAddressParser.getDomain("bob@example.com (Bob)", criteria, true)).isEqualTo("example.com");
+			// as before domain literals were parsed, the comment after a domain name isn't the personal name when domain literals are allowed
+			assertThat(EmailAddressParser.getPersonalName("bob@example.com (Bob)", criteria, true)).isNull();
+			assertThat(EmailAddressParser.getPersonalName("x@y.org(c)", criteria, true)).isNull();
+		}
+		assertThat(EmailAddressParser.getPersonalName("bob@example.com (Bob)", RECOMMENDED, true)).isEqualTo("Bob");
+		assertThat(EmailAddressParser.getPersonalName("bob@example.com (Bob)", of(ALLOW_DOT_IN_A_TEXT), true)).isEqualTo("Bob");
+	}
+
+	@Test
+	public void testAddressesByDomain() {
+		AddressesByDomain target = new AddressesByDomain();
+		assertThat(EmailAddressParser.extractHeaderAddresses("Bob <bob@Example.COM>, \"sue\"@example.com (Sue), joe@other.org", RFC_COMPLIANT, target))
+				.isEqualTo(3);
+		assertThat(EmailAddressParser.extractHeaderAddresses("team: ann@EXAMPLE.com, bob@[10.0.0.1];, al@B\u00FCcher.de", RFC_COMPLIANT, target))
+				.isEqualTo(2);
+		assertThat(EmailAddressParser.extractHeaderAddresses("al@B\u00FCcher.de, AL2@xn--bcher-kva.DE", of(ALLOW_UTF8, ALLOW_QUOTED_IDENTIFIERS), target))
+				.isEqualTo(2);
+		assertThat(EmailAddressParser.extractAddress("Zed <zed@example.com>", RFC_COMPLIANT, target)).isTrue();
+		assertThat(EmailAddressParser.extractAddress("not an address", RFC_COMPLIANT, target)).isFalse();
+
+		assertThat(target.size()).isEqualTo(8);
+		assertThat(target.getDomainCount()).isEqualTo(4);
+		int example = target.getDomainId("EXAMPLE.com");
+		assertThat(target.getDomain(example)).isEqualTo("example.com");
+		assertThat(target.getLocalParts(example)).containsExactly("bob", "sue", "ann", "zed");
+		assertThat(target.getLocalParts(target.getDomainId("other.org"))).containsExactly("joe");
+		assertThat(target.getLocalParts(target.getDomainId("[10.0.0.1]"))).containsExactly("bob");
+		int buecher = target.getDomainId("b\u00FCcher.de");
+		assertThat(target.getDomain(buecher)).isEqualTo("xn--bcher-kva.de");
+		assertThat(target.getLocalPartCount(buecher)).isEqualTo(2);
+		assertThat(target.getLocalPart(buecher, 1)).isEqualTo("AL2");
+		assertThat(target.getDomainId("unknown.org")).isEqualTo(-1);
+
+		// the domains as extracted (which may differ in case) are all the same domain
+		ParsedAddress[] addresses = EmailAddressParser.extractParsedAddresses("Bob <bob@Example.COM>, ann@EXAMPLE.com", RFC_COMPLIANT, false);
+		for (ParsedAddress address : addresses) {
+			assertThat(target.getDomainId(address.getDomain())).isEqualTo(example);
+		}
+
+		target.clear();
+		assertThat(target.size()).isZero();
+		assertThat(target.getDomainCount()).isZero();
+		assertThat(target.add("bob", "Example.com")).isZero();
+		assertThat(target.getLocalParts(0)).containsExactly("bob");
+	}
+
+	@Test
+	public void testAddressListWriter() throws Exception {
+		List<ParsedAddress> addresses = Arrays.asList(
+				new ParsedAddress("Bob Smith", "bob", "example.com", ParsedAddress.Form.NAME_ADDR, null),
+				new ParsedAddress(null, "sue.jones", "example.com", ParsedAddress.Form.ADDR_SPEC, null),
+				new ParsedAddress("Smith, \"Joe\"", "\"j o e\"", "[10.0.0.1]", ParsedAddress.Form.NAME_ADDR, null),
+				new ParsedAddress("=?UTF-8?Q?J=C3=BCrgen?=", "j\u00FCrgen", "example.de", ParsedAddress.Form.NAME_ADDR, "the team"),
+				new ParsedAddress(null, "ann", "example.org", ParsedAddress.Form.ADDR_SPEC, "the team"));
+		assertThat(AddressListWriter.format("To", addresses)).isEqualTo("Bob Smith <bob@example.com>, sue.jones@example.com, \"Smith, \\\"Joe\\\"\"\r\n"
+				+ " <\"j o e\"@[10.0.0.1]>, the team: =?UTF-8?Q?J=C3=BCrgen?= <j\u00FCrgen@example.de>,\r\n"
+				+ " ann@example.org;");
+		StringBuilder oneLine = new StringBuilder("Cc: ");
+		AddressListWriter writer = new AddressListWriter(oneLine, 0, oneLine.length());
+		writer.write("Bob\r\nBcc: evil@example.com", "bob", "example.com", null);
+		writer.write("", "sue", "example.com", null);
+		writer.finish();
+		assertThat(oneLine.toString()).isEqualTo("Cc: \"Bob  Bcc: evil@example.com\" <bob@example.com>, sue@example.com");
+
+		// round trip: whatever is written is parsed back into the same addresses
+		Random random = new Random(2822);
+		String nameChars = "abcXYZ019 .,;:<>@[]()\"\\'!#=?_";
+		String[] domains = { "example.com", "mail.example.co.uk", "[192.0.2.1]", "x.org" };
+		for (int list = 0; list < 500; list++) {
+			List<ParsedAddress> written = new ArrayList<>();
+			String group = null;
+			for (int i = random.nextInt(6); i >= 0; i--) {
+				String name = random.nextInt(3) == 0 ? null : randomText(random, nameChars, 1 + random.nextInt(20)).trim();
+				String localPart = randomText(random, random.nextBoolean() ? "abc.+" : nameChars, 1 + random.nextInt(10));
+				if (random.nextInt(4) == 0) {
+					group = group == null ? randomText(random, "abc :", 1 + random.nextInt(8)).trim() : null;
+				}
+				written.add(new ParsedAddress(name == null || name.isEmpty() ? null : name, localPart, domains[random.nextInt(domains.length)],
+						name == null ? ParsedAddress.Form.ADDR_SPEC : ParsedAddress.Form.NAME_ADDR, group == null || group.isEmpty() ? null : group));
+			}
+			String header = AddressListWriter.format("To", written);
+			ParsedAddress[] parsed = EmailAddressParser.extractParsedAddresses(header, RFC_COMPLIANT, false);
+			assertThat(parsed).as(header).hasSize(written.size());
+			for (int i = 0; i < parsed.length; i++) {
+				ParsedAddress expected = written.get(i);
+				String expectedAddress = AddressListWriter.appendAddrSpec(expected.getLocalPart(), expected.getDomain(), new StringBuilder()).toString();
+				// the parser unquotes local parts where the quotes aren't needed to parse them (not always to keep them the same, as for "b "), so
+				// compare them as written
+				String parsedAddress = AddressListWriter.appendAddrSpec(parsed[i].getLocalPart(), parsed[i].getDomain(), new StringBuilder()).toString();
+				assertThat(parsedAddress).as(header).isEqualTo(expectedAddress);
+				assertThat(parsed[i].getPersonalName()).as(header).isEqualTo(expected.getPersonalName());
+				assertThat(parsed[i].getGroup()).as(header).isEqualTo(expected.getGroup());
+			}
+			for (String line : header.split("\r\n")) {
+				assertThat(line.length()).as(header).isLessThanOrEqualTo(AddressListWriter.DEFAULT_LINE_WIDTH);
+			}
+		}
+	}
+
+	@Test
+	public void testArchiveScanner() throws Exception {
+		String mbox = "From bob@example.com Mon Jan  1 00:00:00 2024\r\n"
+				+ "Return-Path: <bounces@example.com>\r\n"
+				+ "From: Bob <bob@example.com>\r\n"
+				+ "Subject: hi\r\n"
+				+ "TO: ann@example.com,\r\n"
+				+ "\tsue@example.org\r\n"
+				+ "\r\n"
+				+ "To: not@header.com\r\n"
+				+ ">From the body\r\n"
+				+ "\r\n"
+				+ "From sue@example.org Mon Jan  1 00:00:01 2024\n"
+				+ "From: sue@example.org\n"
+				+ "Cc: team: joe@example.net, Max <max@example.net>;\n"
+				+ "Reply-To : list@example.com\n"
+				+ "\n"
+				+ "body\n";
+		String eml = "Sender: owner@example.com\r\nBcc: secret@example.com\r\n\r\nFrom: body@example.com\r\n";
+		File mboxFile = File.createTempFile("archive", ".mbox");
+		File emlFile = File.createTempFile("message", ".eml");
+		mboxFile.deleteOnExit();
+		emlFile.deleteOnExit();
+		writeFile(mboxFile, mbox);
+		writeFile(emlFile, eml);
+		List<File> files = Arrays.asList(mboxFile, emlFile);
+
+		final List<String> found = new ArrayList<>();
+		ArchiveScanner.Handler handler = new ArchiveScanner.Handler() {
+			@Override
+			public void handle(@NotNull File file, long messageOffset, @NotNull String headerName, @NotNull ParsedAddress address) {
+				found.add(file.getName().substring(0, 3) + " " + messageOffset + " " + headerName + ": " + address.getAddress()
+						+ (address.getGroup() != null ? " (" + address.getGroup() + ")" : ""));
+			}
+		};
+		String[] expected = { "arc 0 Return-Path: bounces@example.com", "arc 0 From: bob@example.com", "arc 0 To: ann@example.com",
+				"arc 0 To: sue@example.org", "arc 205 From: sue@example.org", "arc 205 Cc: joe@example.net (team)", "arc 205 Cc: max@example.net (team)",
+				"arc 205 Reply-To: list@example.com", "mes 0 Sender: owner@example.com", "mes 0 Bcc: secret@example.com" };
+		// chunks of a single message each, and everything in one chunk
+		for (int chunkSize : new int[] { 1, ArchiveScanner.DEFAULT_CHUNK_SIZE }) {
+			found.clear();
+			ArchiveScanner.Summary summary = new ArchiveScanner(RECOMMENDED, 2, chunkSize).run(files, handler);
+			assertThat(found).containsExactly(expected);
+			assertThat(summary.getMessages()).isEqualTo(3);
+			assertThat(summary.getHeaders()).isEqualTo(8);
+			assertThat(summary.getAddresses()).isEqualTo(10);
+			assertThat(summary.getBytes()).isEqualTo(mbox.length() + eml.length());
+			assertThat(summary.toString()).contains("MB/s");
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ParsedAddressWriter writer = new ParsedAddressWriter(bytes);
+		new ArchiveScanner(RECOMMENDED, 3, 1).run(files, writer);
+		writer.close();
+		ParsedAddressReader reader = new ParsedAddressReader(ByteBuffer.wrap(bytes.toByteArray()));
+		List<String> read = new ArrayList<>();
+		for (ParsedAddress address = reader.read(); address != null; address = reader.read()) {
+			read.add(address.getAddress());
+		}
+		assertThat(read).hasSize(10).startsWith("bounces@example.com", "bob@example.com");
+	}
+
+	/**
+	 * The time any of the inputs in the slow input corpus may take; generous, as no such input takes more than a few milliseconds.
+	 */
+	private static final long SLOW_INPUT_LIMIT_NANOS = 50_000_000L;
+
+	@Test
+	public void testExtractHeaderAddressesWithGroups() {
+		EnumSet<EmailAddressCriteria> criteria = EnumSet.copyOf(RECOMMENDED);
+		criteria.add(ALLOW_DOMAIN_LITERALS);
+		assertThat(extractWithGroups("undisclosed-recipients:;", criteria)).isEmpty();
+		assertThat(extractWithGroups("team: a@b.com, Bob <bob@example.com>;, c@d.org", criteria))
+				.containsExactly("a@b.com/team", "bob@example.com/team", "c@d.org/null");
+		assertThat(extractWithGroups("a@b.com, undisclosed-recipients:;, c@d.org", criteria)).containsExactly("a@b.com/null", "c@d.org/null");
+		assertThat(extractWithGroups("undisclosed-recipients:; a@b.com", criteria)).containsExactly("a@b.com/null");
+		// an invalid first element skips the group, and anything between the end of a group and the next comma is ignored
+		assertThat(extractWithGroups("list: not an address, x@y.org; , c@d.org", criteria)).containsExactly("c@d.org/null");
+		assertThat(extractWithGroups("team: a@b.com; junk, c@d.org", criteria)).containsExactly("a@b.com/team", "c@d.org/null");
+		// separators in quoted strings, comments and domain literals don't end an element
+		assertThat(extractWithGroups("\"x; y\" <a@b.com>, c@d.org (c, d; e:)", criteria)).containsExactly("a@b.com/null", "c@d.org/null");
+		assertThat(extractWithGroups("a@[IPv6:2001:db8::1], b@c.org", criteria)).containsExactly("a@[IPv6:2001:db8::1]/null", "b@c.org/null");
+		// any other invalid element ends the extraction
+		assertThat(extractWithGroups("a@b.com junk, c@d.org", criteria)).isEmpty();
+		assertThat(extractWithGroups("a@b.com, junk, c@d.org", criteria)).containsExactly("a@b.com/null");
+	}
+
+	private static List<String> extractWithGroups(String header, EnumSet<EmailAddressCriteria> criteria) {
+		List<String> result = new ArrayList<>();
+		for (ParsedAddress address : EmailAddressParser.extractParsedAddresses(header, criteria, false)) {
+			result.add(address.getAddress() + "/" + address.getGroup());
+		}
+		return result;
+	}
+
+	@Test
+	public void testSlowInputs() throws Exception {
+		InputStream in = TestClass.class.getResourceAsStream(LatencyFuzzer.CORPUS_RESOURCE);
+		assertThat(in).isNotNull();
+		List<LatencyFuzzer.Finding> findings;
+		try {
+			findings = LatencyFuzzer.readCorpus(in);
+		} finally {
+			in.close();
+		}
+		assertThat(findings).isNotEmpty();
+		for (LatencyFuzzer.Finding finding : findings) {
+			// warm up, then take the best of a few runs, so a GC pause or a slow build server doesn't fail the test; the limit is meant to catch blow-ups
+			// (super-linear matching), not to benchmark
+			finding.run();
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i < 3; i++) {
+				best = Math.min(best, finding.run());
+			}
+			assertThat(best).as(finding.toString()).isLessThan(SLOW_INPUT_LIMIT_NANOS);
+		}
+	}
+
+	@Test
+	public void testHardenedMailboxPattern() {
+		Random random = new Random(49);
+		List<String> inputs = criteriaCorpus();
+		for (int i = 0; i < 1000; i++) {
+			inputs.add(randomText(random, "ab.@<>()[]\"\\ \t\r\n:;,\u00e9", 1 + random.nextInt(24)));
+		}
+		for (int combination = 0; combination < 64; combination++) {
+			EnumSet<EmailAddressCriteria> criteria = EmailAddressValidator.getCriteriaCombination(combination);
+			Pattern regular = EmailAddressParser.getMailboxPattern(criteria, false);
+			Pattern hardened = EmailAddressParser.getMailboxPattern(criteria, true);
+			// the hardened pattern gives the same parts as the parser...
+			for (String email : inputs) {
+				Matcher m = hardened.matcher(email);
+				String[] parts = EmailAddressParser.getAddressParts(email, criteria, true);
+				assertThat(m.matches()).as(criteria + " " + email).isEqualTo(parts != null);
+				if (parts != null) {
+					assertThat(EmailAddressParser.getMatcherParts(m, criteria, true)).as(criteria + " " + email).containsExactly(parts);
+				}
+			}
+			// ...and the same groups as the regular pattern, on the corpus only, as random input may take the regular one exponential time (see below)
+			for (String email : criteriaCorpus()) {
+				Matcher r = regular.matcher(email);
+				Matcher h = hardened.matcher(email);
+				assertThat(h.matches()).as(criteria + " " + email).isEqualTo(r.matches());
+				for (int group = 0; r.matches() && group <= r.groupCount(); group++) {
+					assertThat(h.start(group)).as(criteria + " " + email + " " + group).isEqualTo(r.start(group));
+					assertThat(h.end(group)).as(criteria + " " + email + " " + group).isEqualTo(r.end(group));
+				}
+			}
+		}
+		// near misses that take exponential time with the regular pattern (the phrase one over half a minute with just 14 names)
+		Pattern hardened = EmailAddressParser.getMailboxPattern(EnumSet.allOf(EmailAddressCriteria.class), true);
+		for (String nearMiss : Arrays.asList("bob@[" + repeat("a", 64), repeat("Bob  ", 40) + "bob@example.com", repeat("(a) ", 40) + "x",
+				"\"" + repeat("a ", 64) + "@example.com", repeat("a.", 64) + "a")) {
+			hardened.matcher(nearMiss).matches();
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i < 3; i++) {
+				long start = System.nanoTime();
+				assertThat(hardened.matcher(nearMiss).matches()).as(nearMiss).isFalse();
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			assertThat(best).as(nearMiss).isLessThan(SLOW_INPUT_LIMIT_NANOS);
+		}
+	}
+
+	@Test
+	public void testValidationServer() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		ValidationServer server = new ValidationServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), RECOMMENDED, pool, 1024);
+		server.start();
+		try {
+			String base = "http://127.0.0.1:" + server.getAddress().getPort();
+			assertThat(request("POST", base + "/validate", "bob@example.com\r\nnot an address\nbob@[10.0.0.1]\n\njürgen@example.de\n"))
+					.isEqualTo("200 10000\n");
+			assertThat(request("POST", base + "/validate?criteria=RFC_COMPLIANT", "bob@[10.0.0.1]\nbob@example.com"))
+					.isEqualTo("200 11\n");
+			assertThat(request("POST", base + "/validate?criteria=ALLOW_QUOTED_IDENTIFIERS%2CALLOW_UTF8", "jürgen@example.de\n"))
+					.isEqualTo("200 1\n");
+			assertThat(request("POST", base + "/validate", "")).isEqualTo("200 \n");
+			assertThat(request("POST", base + "/extract", "Bob <bob@example.com>, team: ann@example.com, sue@example.org;\r\nnothing here\n"))
+					.isEqualTo("200 bob@example.com\tann@example.com\tsue@example.org\n\n");
+			// a quoted local part may hold a tab or a backslash, which are escaped so the tabs between the addresses stay unambiguous
+			assertThat(request("POST", base + "/extract", "\"a\tb\"@x.org, \"c\\\\d\"@x.org\n"))
+					.isEqualTo("200 \"a\\tb\"@x.org\t\"c\\\\\\\\d\"@x.org\n");
+			assertThat(request("POST", base + "/validate?criteria=BOGUS", "bob@example.com\n")).startsWith("400 ");
+			assertThat(request("GET", base + "/validate", null)).startsWith("405 ");
+			assertThat(request("POST", base + "/validate", repeat("bob@example.com\n", 100))).startsWith("413 ");
+			assertThat(server.getRequests()).isEqualTo(6);
+			assertThat(server.getLines()).isEqualTo(11);
+		} finally {
+			server.stop(0);
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * @return The status code and the body of the response, separated by a space.
+	 */
+	private static String request(String method, String url, @Nullable String body) throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestMethod(method);
+		if (body != null) {
+			connection.setDoOutput(true);
+			OutputStream out = connection.getOutputStream();
+			out.write(body.getBytes("UTF-8"));
+			out.close();
+		}
+		int status = connection.getResponseCode();
+		InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+			response.write(buffer, 0, read);
+		}
+		in.close();
+		return status + " " + response.toString("UTF-8");
+	}
+
+	private static void writeFile(File file, String content) throws Exception {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.write(content.getBytes("UTF-8"));
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static String repeat(String s, int count) {
+		StringBuilder sb = new StringBuilder(s.length() * count);
+		for (int i = 0; i < count; i++) {
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+
+	private static String randomText(Random random, String chars, int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append(chars.charAt(random.nextInt(chars.length())));
+		}
+		return sb.toString();
+	}
+
+	private static void assertValidationResult(EnumSet<EmailAddressCriteria> criteria, String email, int offset, @Nullable ValidationResult.Element element,
+			@Nullable EnumSet<EmailAddressCriteria> missingCriteria) {
+		ValidationResult result = EmailAddressValidator.validate(email, criteria);
+		assertThat(result.isValid()).as(email).isFalse();
+		assertThat(result.getOffset()).as(email).isEqualTo(offset);
+		assertThat(result.getElement()).as(email).isEqualTo(element);
+		assertThat(result.getMissingCriteria()).as(email).isEqualTo(missingCriteria);
+	}
+
+	private static List<String> criteriaCorpus() {
+		List<String> emails = new ArrayList<>(Arrays.asList("me@example.com", "!#$%&'+-/=.?^`{|}~@[1.0.0.127]", "me(this is a comment)@example.com",
+				"me.example@com", "NotAnEmail", "me@", ".me@example.com", "me@example..com", "Kayaks.org <kayaks@kayaks.org>", "[Kayaks] <kayaks@kayaks.org>",
+				"\"bob(hi)smith\"@test.com", "?UTF-8?Q?Gesellschaft_fC3BCr_Freiheitsrechte_e2EV=2E? <info@freiheitsrechte.org>",
+				"\"<bob \\\" (here) \" < (hi there) \"bob(the man)smith\" (hi) @ (there) example.com (hello) > (again)"));
+		String[] names = { "", "Bob ", "Bob.S ", "[Bob] ", "\"B.o[b]\" ", "Bob (x.y) ", "a.b [c] " };
+		String[] localParts = { "bob", "\"bob\"", "\"b(o)b\"", "\"b\\(o\\)b\"", "b.o.b", "\"b o b\"", ".bob" };
+		String[] domains = { "example.com", "localhost", "[10.0.0.1]", "ex-ample.co.uk", "-bad.com", "a.b", "example.c0m", "x.123", "a-.com" };
+		for (String name : names) {
+			for (String localPart : localParts) {
+				for (String domain : domains) {
+					emails.add(name + "<" + localPart + "@" + domain + ">");
+					if (name.isEmpty()) {
+						emails.add(localPart + "@" + domain);
+						emails.add(localPart + "@" + domain + " (Bob.[x])");
+					}
+				}
+			}
+		}
+		return emails;
+	}
+}
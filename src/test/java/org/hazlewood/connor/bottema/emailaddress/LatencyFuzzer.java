@@ -0,0 +1,387 @@
+package org.hazlewood.connor.bottema.emailaddress;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Hunts for inputs that take the grammar a long time, rather than relying on the adversarial cases we thought of ourselves. Not part of the normal test run:
+ * run it with <code>mvn test -Pfuzz</code>, optionally with <code>-Dfuzz.seconds=...</code> (60 by default) and <code>-Dfuzz.seed=...</code>.
+ * <p>
+ * Starting from a few seeds and the regression corpus, it mutates inputs (inserting the characters that matter to the grammar, repeating parts, splicing
+ * inputs together) and runs them through {@link EmailAddressValidator} and {@link EmailAddressParser} with each combination of {@link
+ * EmailAddressCriteria} in turn. The feedback is the number of steps the matchers and the DFA take (see {@link AutomatonMatcher#getSteps()}, which the
+ * profile turns on), with the time taken only breaking ties: a mutation is kept for further mutation when it is the slowest input of its length class so
+ * far. Each input is run once to warm up (which also builds the DFA states it needs, so the steps counted don't depend on what ran before), then timed over
+ * a few more runs, keeping the best. When done, the slowest input per operation and length class (a power of two) is merged into the regression corpus in
+ * <code>src/test/resources/slow-inputs.txt</code>, which the normal test run replays with latency assertions (see {@link #readCorpus(InputStream)}); inputs
+ * shorter than {@value #MIN_CORPUS_LENGTH} characters are left out, as they can't be slow.
+ */
+public class LatencyFuzzer {
+
+	/**
+	 * The name of the regression corpus on the test classpath.
+	 */
+	public static final String CORPUS_RESOURCE = "/slow-inputs.txt";
+
+	private static final int MAX_LENGTH = 512;
+	private static final int MAX_QUEUE_SIZE = 4096;
+	private static final int MIN_CORPUS_LENGTH = 16;
+	private static final int TIMED_RUNS = 3;
+
+	private static final String[] TOKENS = { "\"", "\\", "\\\"", "(", ")", "<", ">", "@", "[", "]", ".", ",", ":", ";", " ", "\t", "\r\n ", "a", "b.c",
+			"=?UTF-8?Q?", "?=", "IPv6:", "é", "bob", "!#$%&'*+-/=?^_`{|}~" };
+
+	private static final String[] SEEDS = { "bob@example.com", "\"Bob Smith\" <bob.smith@example.com>", "me(comment)@example.com",
+			"\"b(o)b\"@[10.0.0.1]", "team: a@b.com, Sue <sue@x.org>;, c@d.org", "undisclosed-recipients:;", "=?UTF-8?Q?J=C3=BCrgen?= <j@bücher.de>",
+			"a.b.c.d.e.f@g.h.i.j.k", "<@route:bob@example.com>", "joe@[IPv6:2001:db8::1] (Joe)" };
+
+	/**
+	 * The operations fuzzed, each with an input and criteria.
+	 */
+	public enum Target {
+		IS_VALID {
+			@Override
+			void run(@NotNull final String input, @NotNull final EnumSet<EmailAddressCriteria> criteria) {
+				EmailAddressValidator.isValid(input, criteria);
+			}
+		},
+		GET_PARSED_ADDRESS {
+			@Override
+			void run(@NotNull final String input, @NotNull final EnumSet<EmailAddressCriteria> criteria) {
+				EmailAddressParser.getParsedAddress(input, criteria, true);
+			}
+		},
+		EXTRACT_PARSED_ADDRESSES {
+			@Override
+			void run(@NotNull final String input, @NotNull final EnumSet<EmailAddressCriteria> criteria) {
+				EmailAddressParser.extractParsedAddresses(input, criteria, true);
+			}
+		};
+
+		abstract void run(@NotNull String input, @NotNull EnumSet<EmailAddressCriteria> criteria);
+	}
+
+	/**
+	 * A slow input of the regression corpus: an operation, with the input and criteria to run it with.
+	 */
+	public static final class Finding {
+		@NotNull
+		private final Target target;
+		@NotNull
+		private final EnumSet<EmailAddressCriteria> criteria;
+		@NotNull
+		private final String input;
+		private final long steps;
+		private final long nanos;
+
+		Finding(@NotNull final Target target, @NotNull final EnumSet<EmailAddressCriteria> criteria, @NotNull final String input, final long steps,
+				final long nanos) {
+			this.target = target;
+			this.criteria = criteria;
+			this.input = input;
+			this.steps = steps;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * Runs the operation once.
+		 *
+		 * @return The time it took in nanoseconds.
+		 */
+		public long run() {
+			final long start = System.nanoTime();
+			target.run(input, criteria);
+			return System.nanoTime() - start;
+		}
+
+		@NotNull
+		public String getInput() {
+			return input;
+		}
+
+		@Override
+		public String toString() {
+			return target + " " + formatCriteria(criteria) + " " + escape(input);
+		}
+	}
+
+	@Test
+	public void fuzz() throws IOException {
+		final long seconds = Long.getLong("fuzz.seconds", 60);
+		final long seed = Long.getLong("fuzz.seed", System.nanoTime());
+		final File corpusFile = new File(System.getProperty("fuzz.corpus", "src/test/resources/slow-inputs.txt"));
+		if (!AutomatonMatcher.COUNT_STEPS) {
+			System.out.println("step counting is off (see the fuzz profile), so only the time taken is used as feedback");
+		}
+		System.out.println("fuzzing for " + seconds + " s with seed " + seed);
+
+		final List<EnumSet<EmailAddressCriteria>> combinations = allCombinations();
+		final Map<String, Finding> slowest = new TreeMap<>();
+		final List<String> queue = new ArrayList<>(Arrays.asList(SEEDS));
+		if (corpusFile.exists()) {
+			final InputStream in = new FileInputStream(corpusFile);
+			try {
+				for (final Finding finding : readCorpus(in)) {
+					queue.add(finding.input);
+					measure(finding.target, finding.input, finding.criteria, slowest);
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		final Random random = new Random(seed);
+		final long deadline = System.nanoTime() + seconds * 1000000000L;
+		long executions = 0;
+		while (System.nanoTime() < deadline) {
+			final String input = mutate(random, queue);
+			if (input.isEmpty() || input.length() > MAX_LENGTH) {
+				continue;
+			}
+			// every combination of criteria in turn
+			final EnumSet<EmailAddressCriteria> criteria = combinations.get((int) (executions++ % combinations.size()));
+			boolean interesting = false;
+			for (final Target target : Target.values()) {
+				interesting |= measure(target, input, criteria, slowest);
+			}
+			if (interesting) {
+				if (queue.size() < MAX_QUEUE_SIZE) {
+					queue.add(input);
+				} else {
+					queue.set(random.nextInt(queue.size()), input);
+				}
+			}
+		}
+
+		final List<Finding> findings = new ArrayList<>();
+		for (final Finding finding : slowest.values()) {
+			if (finding.input.length() >= MIN_CORPUS_LENGTH) {
+				findings.add(finding);
+			}
+		}
+		writeCorpus(corpusFile, findings);
+		System.out.println(executions + " inputs tried, " + findings.size() + " slowest inputs written to " + corpusFile);
+		for (final Finding finding : findings) {
+			System.out.println(String.format(Locale.ROOT, "%10d steps %10.1f us  %s", finding.steps, finding.nanos / 1e3, finding));
+		}
+	}
+
+	/**
+	 * Runs the given operation once to warm up, then {@link #TIMED_RUNS} times, counting the steps of the first of these and keeping the best time; and
+	 * records it as the slowest of its kind if it is.
+	 *
+	 * @return Whether it was the slowest of its kind so far.
+	 */
+	private static boolean measure(@NotNull final Target target, @NotNull final String input, @NotNull final EnumSet<EmailAddressCriteria> criteria,
+			@NotNull final Map<String, Finding> slowest) {
+		target.run(input, criteria);
+		long steps = 0;
+		long nanos = Long.MAX_VALUE;
+		for (int i = 0; i < TIMED_RUNS; i++) {
+			final long stepsBefore = AutomatonMatcher.getSteps();
+			final long start = System.nanoTime();
+			target.run(input, criteria);
+			nanos = Math.min(nanos, System.nanoTime() - start);
+			if (i == 0) {
+				steps = AutomatonMatcher.getSteps() - stepsBefore;
+			}
+		}
+		// sorts by operation, then by length class
+		final String key = String.format(Locale.ROOT, "%d-%02d", target.ordinal(), 32 - Integer.numberOfLeadingZeros(input.length()));
+		final Finding previous = slowest.get(key);
+		// without step counting, all steps are 0 and it comes down to time
+		final boolean slower = previous == null || steps > previous.steps || (steps == previous.steps && nanos > previous.nanos);
+		if (slower) {
+			slowest.put(key, new Finding(target, EnumSet.copyOf(criteria), input, steps, nanos));
+		}
+		return slower;
+	}
+
+	@NotNull
+	private static String mutate(@NotNull final Random random, @NotNull final List<String> queue) {
+		final StringBuilder sb = new StringBuilder(queue.get(random.nextInt(queue.size())));
+		final int mutations = 1 + random.nextInt(4);
+		for (int i = 0; i < mutations; i++) {
+			final int pos = random.nextInt(sb.length() + 1);
+			switch (random.nextInt(6)) {
+				case 0:
+					sb.insert(pos, TOKENS[random.nextInt(TOKENS.length)]);
+					break;
+				case 1:
+					if (pos < sb.length()) {
+						sb.delete(pos, Math.min(sb.length(), pos + 1 + random.nextInt(4)));
+					}
+					break;
+				case 2:
+					if (pos < sb.length()) {
+						sb.setCharAt(pos, (char) (0x20 + random.nextInt(0x5F)));
+					}
+					break;
+				case 3:
+					// repeating a part is what makes backtracking matchers blow up
+					if (pos < sb.length()) {
+						final String part = sb.substring(pos, Math.min(sb.length(), pos + 1 + random.nextInt(8)));
+						for (int n = 1 + random.nextInt(16); n > 0; n--) {
+							sb.insert(pos, part);
+						}
+					}
+					break;
+				case 4:
+					final String other = queue.get(random.nextInt(queue.size()));
+					sb.setLength(pos);
+					sb.append(other.substring(random.nextInt(other.length() + 1)));
+					break;
+				default:
+					sb.insert(pos, TOKENS[random.nextInt(TOKENS.length)] + TOKENS[random.nextInt(TOKENS.length)]);
+			}
+		}
+		return sb.toString();
+	}
+
+	@NotNull
+	private static List<EnumSet<EmailAddressCriteria>> allCombinations() {
+		final EmailAddressCriteria[] values = EmailAddressCriteria.values();
+		final List<EnumSet<EmailAddressCriteria>> combinations = new ArrayList<>();
+		for (int bits = 0; bits < 1 << values.length; bits++) {
+			final EnumSet<EmailAddressCriteria> criteria = EnumSet.noneOf(EmailAddressCriteria.class);
+			for (int i = 0; i < values.length; i++) {
+				if ((bits & 1 << i) != 0) {
+					criteria.add(values[i]);
+				}
+			}
+			combinations.add(criteria);
+		}
+		return combinations;
+	}
+
+	/**
+	 * Reads a regression corpus: one slow input per line, as the operation, the criteria (comma-separated, or NONE), the steps and time it took when found
+	 * and the input (with \\, \t, \r, \n and \\uXXXX escapes), separated by tabs; lines starting with # are comments.
+	 */
+	@NotNull
+	public static List<Finding> readCorpus(@NotNull final InputStream in) throws IOException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		final List<Finding> findings = new ArrayList<>();
+		for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			final String[] fields = line.split("\t", 5);
+			if (fields.length != 5) {
+				throw new IOException("invalid corpus line: " + line);
+			}
+			findings.add(new Finding(Target.valueOf(fields[0]), parseCriteria(fields[1]), unescape(fields[4]), Long.parseLong(fields[2]),
+					Long.parseLong(fields[3])));
+		}
+		return findings;
+	}
+
+	private static void writeCorpus(@NotNull final File file, @NotNull final Iterable<Finding> findings) throws IOException {
+		final Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			out.write("# The slowest inputs found by LatencyFuzzer (mvn test -Pfuzz), per operation and input length class; replayed by the tests with latency\n");
+			out.write("# assertions. Fields: operation, criteria, steps, nanoseconds (the best of a few warmed-up runs when found, on the machine\n");
+			out.write("# that found it), escaped input.\n");
+			for (final Finding finding : findings) {
+				out.write(finding.target + "\t" + formatCriteria(finding.criteria) + "\t" + finding.steps + "\t" + finding.nanos + "\t" + escape(finding.input)
+						+ "\n");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	@NotNull
+	private static String formatCriteria(@NotNull final EnumSet<EmailAddressCriteria> criteria) {
+		if (criteria.isEmpty()) {
+			return "NONE";
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (final EmailAddressCriteria criterion : criteria) {
+			sb.append(sb.length() > 0 ? "," : "").append(criterion.name());
+		}
+		return sb.toString();
+	}
+
+	@NotNull
+	private static EnumSet<EmailAddressCriteria> parseCriteria(@NotNull final String value) {
+		final EnumSet<EmailAddressCriteria> criteria = EnumSet.noneOf(EmailAddressCriteria.class);
+		if (!value.equals("NONE")) {
+			for (final String name : value.split(",")) {
+				criteria.add(EmailAddressCriteria.valueOf(name));
+			}
+		}
+		return criteria;
+	}
+
+	@NotNull
+	private static String escape(@NotNull final String s) {
+		final StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '\\') {
+				sb.append("\\\\");
+			} else if (c == '\t') {
+				sb.append("\\t");
+			} else if (c == '\r') {
+				sb.append("\\r");
+			} else if (c == '\n') {
+				sb.append("\\n");
+			} else if (c < 0x20 || c > 0x7E) {
+				sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	@NotNull
+	private static String unescape(@NotNull final String s) {
+		final StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c != '\\' || i + 1 == s.length()) {
+				sb.append(c);
+				continue;
+			}
+			final char escaped = s.charAt(++i);
+			switch (escaped) {
+				case 't':
+					sb.append('\t');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'u':
+					sb.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+					i += 4;
+					break;
+				default:
+					sb.append(escaped);
+			}
+		}
+		return sb.toString();
+	}
+}